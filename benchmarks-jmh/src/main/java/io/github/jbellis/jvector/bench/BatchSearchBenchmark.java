@@ -0,0 +1,126 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.bench;
+
+import io.github.jbellis.jvector.disk.ReaderSupplier;
+import io.github.jbellis.jvector.disk.ReaderSupplierFactory;
+import io.github.jbellis.jvector.example.util.SiftLoader;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.SearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link GraphSearcher#searchBatch} against the same queries issued one at a time
+ * through {@link GraphSearcher#search}, against an OnDiskGraphIndex built from siftsmall.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(1)
+public class BatchSearchBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(BatchSearchBenchmark.class);
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+
+    @Param({"1", "16", "64"})
+    private int batchSize;
+
+    @Param({"10"})
+    private int topK;
+
+    private Path indexPath;
+    private ReaderSupplier readerSupplier;
+    private OnDiskGraphIndex index;
+    private GraphSearcher searcher;
+    private List<VectorFloat<?>> queryVectors;
+    private int nextQuery;
+
+    @Setup
+    public void setup() throws IOException {
+        var siftPath = "siftsmall";
+        var baseVectors = SiftLoader.readFvecs(String.format("%s/siftsmall_base.fvecs", siftPath));
+        queryVectors = SiftLoader.readFvecs(String.format("%s/siftsmall_query.fvecs", siftPath));
+        int dimension = baseVectors.get(0).length();
+        log.info("base vectors size: {}, query vectors size: {}, dimensions {}",
+                baseVectors.size(), queryVectors.size(), dimension);
+
+        RandomAccessVectorValues ravv = new ListRandomAccessVectorValues(baseVectors, dimension);
+        var bsp = BuildScoreProvider.randomAccessScoreProvider(ravv, VSF);
+        try (var builder = new GraphIndexBuilder(bsp, dimension, 16, 100, 1.2f, 1.2f, true)) {
+            var graph = builder.build(ravv);
+            indexPath = Files.createTempFile("batch-search-bench", ".odgi");
+            OnDiskGraphIndex.write(graph, ravv, indexPath);
+        }
+
+        readerSupplier = ReaderSupplierFactory.open(indexPath);
+        index = OnDiskGraphIndex.load(readerSupplier);
+        searcher = new GraphSearcher(index);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        searcher.close();
+        index.close();
+        readerSupplier.close();
+        Files.deleteIfExists(indexPath);
+    }
+
+    private List<SearchScoreProvider> nextBatch() {
+        var view = (OnDiskGraphIndex.View) searcher.getView();
+        var ssps = new ArrayList<SearchScoreProvider>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            var q = queryVectors.get(nextQuery);
+            nextQuery = (nextQuery + 1) % queryVectors.size();
+            ssps.add(DefaultSearchScoreProvider.exact(q, VSF, view));
+        }
+        return ssps;
+    }
+
+    @Benchmark
+    public void sequentialSearch(Blackhole blackhole) {
+        for (var ssp : nextBatch()) {
+            SearchResult sr = searcher.search(ssp, topK, Bits.ALL);
+            blackhole.consume(sr);
+        }
+    }
+
+    @Benchmark
+    public void batchSearch(Blackhole blackhole) {
+        blackhole.consume(searcher.searchBatch(nextBatch(), topK, Bits.ALL));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.bench;
+
+import io.github.jbellis.jvector.example.util.SiftLoader;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.OnHeapGraphIndex;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.quantization.CompressedVectors;
+import io.github.jbellis.jvector.quantization.MultiBitBinaryQuantization;
+import io.github.jbellis.jvector.quantization.ProductQuantization;
+import io.github.jbellis.jvector.quantization.ScoreErrorCalibration;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how many full-resolution vectors are read during reranking, and the resulting recall, when the
+ * approximate scores carry error bounds (calibrated for PQ, or reported by multi-bit BQ) compared with
+ * reranking a fixed rerankK candidates.  Run with siftsmall in the working directory; the counters
+ * `rerankedPerQuery` and `recall` are the interesting output, alongside throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(1)
+public class BoundedRerankBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(BoundedRerankBenchmark.class);
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+    // calibration queries are drawn from the base vectors, so the sift queries stay unseen
+    private static final int CALIBRATION_QUERIES = 100;
+
+    @Param({"pq", "pq-calibrated", "mbq4", "mbq4-bounded"})
+    private String scoring;
+
+    @Param({"10"})
+    private int topK;
+
+    @Param({"100"})
+    private int rerankK;
+
+    private RandomAccessVectorValues ravv;
+    private List<VectorFloat<?>> queryVectors;
+    private List<? extends List<Integer>> groundTruth;
+    private OnHeapGraphIndex graph;
+    private GraphSearcher searcher;
+    private CompressedVectors cv;
+    private ScoreErrorCalibration calibration;
+    private int nextQuery;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RerankCounters {
+        private long reranked;
+        private double recallSum;
+        private long queries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            reranked = 0;
+            recallSum = 0;
+            queries = 0;
+        }
+
+        public double rerankedPerQuery() {
+            return queries == 0 ? 0 : (double) reranked / queries;
+        }
+
+        public double recall() {
+            return queries == 0 ? 0 : recallSum / queries;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        var siftPath = "siftsmall";
+        var baseVectors = SiftLoader.readFvecs(String.format("%s/siftsmall_base.fvecs", siftPath));
+        queryVectors = SiftLoader.readFvecs(String.format("%s/siftsmall_query.fvecs", siftPath));
+        groundTruth = SiftLoader.readIvecs(String.format("%s/siftsmall_groundtruth.ivecs", siftPath));
+        int dimension = baseVectors.get(0).length();
+        log.info("base vectors size: {}, query vectors size: {}, dimensions {}",
+                baseVectors.size(), queryVectors.size(), dimension);
+
+        ravv = new ListRandomAccessVectorValues(baseVectors, dimension);
+        var bsp = BuildScoreProvider.randomAccessScoreProvider(ravv, VSF);
+        try (var builder = new GraphIndexBuilder(bsp, dimension, 16, 100, 1.2f, 1.2f, true)) {
+            graph = builder.build(ravv);
+        }
+        searcher = new GraphSearcher(graph);
+
+        if (scoring.startsWith("pq")) {
+            cv = ProductQuantization.compute(ravv, dimension / 4, 256, true).encodeAll(ravv);
+        } else {
+            cv = MultiBitBinaryQuantization.compute(ravv, 4).encodeAll(ravv);
+        }
+        if (scoring.equals("pq-calibrated")) {
+            int stride = baseVectors.size() / CALIBRATION_QUERIES;
+            var calibrationQueries = IntStream.range(0, CALIBRATION_QUERIES)
+                    .<VectorFloat<?>>mapToObj(i -> baseVectors.get(i * stride))
+                    .collect(Collectors.toList());
+            calibration = ScoreErrorCalibration.calibrate(cv, ravv, VSF, calibrationQueries, 0.99f);
+            log.info("calibrated error bounds {}", calibration);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        searcher.close();
+    }
+
+    private ScoreFunction scoreFunctionFor(VectorFloat<?> q) {
+        var sf = cv.precomputedScoreFunctionFor(q, VSF);
+        switch (scoring) {
+            case "pq-calibrated":
+                return calibration.bound(sf);
+            case "mbq4-bounded":
+                return sf;
+            default:
+                // hide any bounds so that GraphSearcher reranks all rerankK candidates
+                return (ScoreFunction.ApproximateScoreFunction) sf::similarityTo;
+        }
+    }
+
+    @Benchmark
+    public void search(RerankCounters counters, Blackhole blackhole) {
+        int i = nextQuery;
+        nextQuery = (nextQuery + 1) % queryVectors.size();
+        var q = queryVectors.get(i);
+
+        var ssp = new DefaultSearchScoreProvider(scoreFunctionFor(q), ravv.rerankerFor(q, VSF));
+        var sr = searcher.search(ssp, topK, rerankK, 0.0f, 0.0f, Bits.ALL);
+
+        var expected = new HashSet<>(groundTruth.get(i).subList(0, topK));
+        int found = 0;
+        for (var ns : sr.getNodes()) {
+            if (expected.contains(ns.node)) {
+                found++;
+            }
+        }
+        counters.recallSum += (double) found / topK;
+        counters.reranked += sr.getRerankedCount();
+        counters.queries++;
+        blackhole.consume(sr);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.bench;
+
+import io.github.jbellis.jvector.disk.BlockCache;
+import io.github.jbellis.jvector.disk.CachingReaderSupplier;
+import io.github.jbellis.jvector.disk.ReaderSupplier;
+import io.github.jbellis.jvector.disk.ReaderSupplierFactory;
+import io.github.jbellis.jvector.example.util.SiftLoader;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndexWriter;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares searches of an OnDiskGraphIndex written with {@link OnDiskGraphIndexWriter#sequentialRenumbering}
+ * against one written with {@link OnDiskGraphIndexWriter#localityRenumbering}.  Besides the time per query,
+ * reports `pagesPerQuery`, the number of distinct 4KB pages of the index file each query reads, which is
+ * what determines the page cache hit rate once the index no longer fits in memory.
+ * <p>
+ * Each query runs against a cold {@link BlockCache}, so its misses are exactly the pages it touches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(1)
+public class NodeReorderingBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(NodeReorderingBenchmark.class);
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+
+    @Param({"sequential", "locality"})
+    private String renumbering;
+
+    @Param({"10"})
+    private int topK;
+
+    private Path indexPath;
+    private ReaderSupplier fileSupplier;
+    private BlockCache cache;
+    private List<VectorFloat<?>> queryVectors;
+    private int nextQuery;
+
+    // recreated for each query so that it starts with a cold cache
+    private CachingReaderSupplier cachingSupplier;
+    private OnDiskGraphIndex index;
+    private GraphSearcher searcher;
+    private long missesBeforeQuery;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PageCounters {
+        private long pages;
+        private long queries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pages = 0;
+            queries = 0;
+        }
+
+        public double pagesPerQuery() {
+            return queries == 0 ? 0 : (double) pages / queries;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        var siftPath = "siftsmall";
+        var baseVectors = SiftLoader.readFvecs(String.format("%s/siftsmall_base.fvecs", siftPath));
+        queryVectors = SiftLoader.readFvecs(String.format("%s/siftsmall_query.fvecs", siftPath));
+        int dimension = baseVectors.get(0).length();
+        log.info("base vectors size: {}, query vectors size: {}, dimensions {}",
+                baseVectors.size(), queryVectors.size(), dimension);
+
+        RandomAccessVectorValues ravv = new ListRandomAccessVectorValues(baseVectors, dimension);
+        var bsp = BuildScoreProvider.randomAccessScoreProvider(ravv, VSF);
+        try (var builder = new GraphIndexBuilder(bsp, dimension, 16, 100, 1.2f, 1.2f, true)) {
+            var graph = builder.build(ravv);
+            var oldToNew = renumbering.equals("locality")
+                    ? OnDiskGraphIndexWriter.localityRenumbering(graph)
+                    : OnDiskGraphIndexWriter.sequentialRenumbering(graph);
+            indexPath = Files.createTempFile("node-reordering-bench", ".odgi");
+            OnDiskGraphIndex.write(graph, ravv, oldToNew, indexPath);
+        }
+
+        fileSupplier = ReaderSupplierFactory.open(indexPath);
+        // big enough that nothing is evicted during a single query
+        cache = new BlockCache(4 * Files.size(indexPath) + (1 << 20));
+    }
+
+    @Setup(Level.Invocation)
+    public void openIndex() throws IOException {
+        // wrap in a lambda so that closing the caching supplier does not close the file
+        cachingSupplier = new CachingReaderSupplier(() -> fileSupplier.get(), cache);
+        index = OnDiskGraphIndex.load(cachingSupplier);
+        if (index.getMaxLevel() > 0) {
+            // load the in-memory upper layers now, so that they are not counted against the query
+            index.getNodes(index.getMaxLevel());
+        }
+        searcher = new GraphSearcher(index);
+        missesBeforeQuery = cache.missCount();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeIndex() throws IOException {
+        searcher.close();
+        index.close();
+        // drops this index's pages, leaving the cache cold for the next query
+        cachingSupplier.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileSupplier.close();
+        Files.deleteIfExists(indexPath);
+    }
+
+    @Benchmark
+    public SearchResult search(PageCounters counters) {
+        var q = queryVectors.get(nextQuery);
+        nextQuery = (nextQuery + 1) % queryVectors.size();
+        var view = (OnDiskGraphIndex.View) searcher.getView();
+        var result = searcher.search(DefaultSearchScoreProvider.exact(q, VSF, view), topK, Bits.ALL);
+        counters.pages += cache.missCount() - missesBeforeQuery;
+        counters.queries++;
+        return result;
+    }
+}
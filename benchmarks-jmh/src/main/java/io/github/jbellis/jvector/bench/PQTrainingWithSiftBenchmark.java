@@ -19,6 +19,8 @@ import io.github.jbellis.jvector.example.util.SiftLoader;
 import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
 import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
 import io.github.jbellis.jvector.quantization.ProductQuantization;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
@@ -29,6 +31,12 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Compares the time to train PQ codebooks with full Lloyd iterations ({@link ProductQuantization#compute}) against
+ * mini-batch k-means ({@link ProductQuantization#computeMiniBatch}).  Besides the training time, reports
+ * `reconstructionError`, the mean squared L2 distance between a base vector and its decoded PQ code, measured on
+ * the first ERROR_SAMPLE_SIZE base vectors (encoding those is small next to training, so it is left in the timing).
+ */
 @BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
 @State(Scope.Thread)
@@ -38,14 +46,34 @@ import java.util.concurrent.TimeUnit;
 @Threads(1)
 public class PQTrainingWithSiftBenchmark {
     private static final Logger log = LoggerFactory.getLogger(PQTrainingWithSiftBenchmark.class);
+    private static final int ERROR_SAMPLE_SIZE = 1000;
     private RandomAccessVectorValues ravv;
     private List<VectorFloat<?>> baseVectors;
     private List<VectorFloat<?>> queryVectors;
     private List<List<Integer>> groundTruth;
     @Param({"16", "32", "64"})
     private int M; // Number of subspaces
+    @Param({"lloyd", "minibatch"})
+    private String training;
     int originalDimension;
 
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class QualityCounters {
+        private double error;
+        private long trainings;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            error = 0;
+            trainings = 0;
+        }
+
+        public double reconstructionError() {
+            return trainings == 0 ? 0 : error / trainings;
+        }
+    }
+
     @Setup
     public void setup() throws IOException {
         var siftPath = "siftsmall";
@@ -67,13 +95,35 @@ public class PQTrainingWithSiftBenchmark {
     }
 
     @Benchmark
-    public void productQuantizationComputeBenchmark(Blackhole blackhole) throws IOException {
+    public void productQuantizationComputeBenchmark(Blackhole blackhole, QualityCounters counters) throws IOException {
         // Compress the original vectors using PQ. this represents a compression ratio of 128 * 4 / 16 = 32x
-        ProductQuantization pq = ProductQuantization.compute(ravv,
-                M, // number of subspaces
-                256, // number of centroids per subspace
-                true); // center the dataset
+        ProductQuantization pq;
+        if (training.equals("minibatch")) {
+            pq = ProductQuantization.computeMiniBatch(ravv,
+                    M, // number of subspaces
+                    256, // number of centroids per subspace
+                    true); // center the dataset
+        } else {
+            pq = ProductQuantization.compute(ravv,
+                    M, // number of subspaces
+                    256, // number of centroids per subspace
+                    true); // center the dataset
+        }
 
+        counters.error += reconstructionError(pq);
+        counters.trainings++;
         blackhole.consume(pq);
     }
+
+    private double reconstructionError(ProductQuantization pq) {
+        int n = Math.min(ERROR_SAMPLE_SIZE, baseVectors.size());
+        var decoded = VectorizationProvider.getInstance().getVectorTypeSupport().createFloatVector(originalDimension);
+        double error = 0;
+        for (int i = 0; i < n; i++) {
+            var v = baseVectors.get(i);
+            pq.decode(pq.encode(v), decoded);
+            error += VectorUtil.squareL2Distance(v, decoded);
+        }
+        return error / n;
+    }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.disk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A RandomAccessReader that reads through an {@link AsynchronousFileChannel} instead of memory-mapping
+ * the file, for indexes much larger than RAM on fast (NVMe) storage.
+ * <p>
+ * Each reader owns a small direct-mapped cache of page-sized buffers.  {@link #prefetch} submits
+ * asynchronous reads for the requested pages into that cache and returns immediately, so a searcher
+ * that hints its upcoming candidates (see {@link io.github.jbellis.jvector.graph.GraphSearcher#usePrefetching})
+ * can keep as many reads in flight as there are cache slots.  A foreground read of a page that is
+ * in flight waits only for that page; a read of a page that was never hinted is issued synchronously.
+ * Hints for pages whose slot is still busy with another in-flight read are dropped.
+ * <p>
+ * Compared to the mmap-based readers this never takes a page fault on the searching thread and
+ * does not pollute the OS page cache with readahead the searcher will not use, at the cost of copying
+ * each page once and of re-reading pages that have been evicted from the reader's own cache.
+ */
+public class AsyncFileReader implements RandomAccessReader {
+    static final int PAGE_SIZE = 4096;
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_SIZE);
+
+    private final AsynchronousFileChannel channel;
+    private final long fileSize;
+    private final int slotMask;
+    private final long[] slotPage;
+    private final ByteBuffer[] slotBuffer;
+    private final Future<Integer>[] slotPending;
+    private ByteBuffer scratch;
+    private long position;
+
+    /**
+     * @param channel     the channel to read from; it is shared, and is not closed by this reader
+     * @param cachedPages the number of pages to cache and keep in flight; must be a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public AsyncFileReader(AsynchronousFileChannel channel, int cachedPages) throws IOException {
+        if (Integer.bitCount(cachedPages) != 1) {
+            throw new IllegalArgumentException("cachedPages must be a power of two, got " + cachedPages);
+        }
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.slotMask = cachedPages - 1;
+        this.slotPage = new long[cachedPages];
+        Arrays.fill(slotPage, -1);
+        this.slotBuffer = new ByteBuffer[cachedPages];
+        this.slotPending = new Future[cachedPages];
+        this.scratch = ByteBuffer.allocate(64).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * {@code Supplier} opens the file once and vends readers that share the channel.
+     */
+    public static class Supplier implements ReaderSupplier {
+        public static final int DEFAULT_CACHED_PAGES = 256;
+
+        private final AsynchronousFileChannel channel;
+        private final int cachedPages;
+
+        public Supplier(Path path) throws IOException {
+            this(path, DEFAULT_CACHED_PAGES);
+        }
+
+        /**
+         * @param path        the path to the file
+         * @param cachedPages the number of pages each reader caches, which is also the maximum number
+         *                    of reads each reader keeps in flight; must be a power of two
+         */
+        public Supplier(Path path, int cachedPages) throws IOException {
+            this.channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            this.cachedPages = cachedPages;
+        }
+
+        @Override
+        public RandomAccessReader get() throws IOException {
+            return new AsyncFileReader(channel, cachedPages);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void seek(long offset) {
+        position = offset;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        var page = pageFor(position);
+        int inPage = (int) (position & (PAGE_SIZE - 1));
+        if (inPage + Integer.BYTES <= page.limit()) {
+            position += Integer.BYTES;
+            return page.getInt(inPage);
+        }
+        return readToScratch(Integer.BYTES).getInt(0);
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        var page = pageFor(position);
+        int inPage = (int) (position & (PAGE_SIZE - 1));
+        if (inPage + Long.BYTES <= page.limit()) {
+            position += Long.BYTES;
+            return page.getLong(inPage);
+        }
+        return readToScratch(Long.BYTES).getLong(0);
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+        readFully(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            var page = pageFor(position);
+            int inPage = (int) (position & (PAGE_SIZE - 1));
+            int n = Math.min(buffer.remaining(), page.limit() - inPage);
+            if (n <= 0) {
+                throw new EOFException("Read past end of file at " + position);
+            }
+            var src = page.duplicate();
+            src.position(inPage).limit(inPage + n);
+            buffer.put(src);
+            position += n;
+        }
+    }
+
+    @Override
+    public void readFully(long[] vector) throws IOException {
+        readToScratch(vector.length * Long.BYTES).asLongBuffer().get(vector);
+    }
+
+    @Override
+    public void read(int[] ints, int offset, int count) throws IOException {
+        readToScratch(count * Integer.BYTES).asIntBuffer().get(ints, offset, count);
+    }
+
+    @Override
+    public void read(float[] floats, int offset, int count) throws IOException {
+        readToScratch(count * Float.BYTES).asFloatBuffer().get(floats, offset, count);
+    }
+
+    /**
+     * Submits asynchronous reads for the pages covering [offset, offset + length) that are not already
+     * cached or in flight.  Never blocks.
+     */
+    @Override
+    public void prefetch(long offset, long length) {
+        long end = Math.min(offset + length, fileSize);
+        for (long pageNo = offset >> PAGE_SHIFT; (pageNo << PAGE_SHIFT) < end; pageNo++) {
+            int slot = (int) (pageNo & slotMask);
+            if (slotPage[slot] == pageNo) {
+                continue;
+            }
+            var pending = slotPending[slot];
+            if (pending != null && !pending.isDone()) {
+                continue; // slot is busy with another page, drop the hint
+            }
+            var buffer = bufferFor(slot);
+            buffer.clear();
+            slotPage[slot] = pageNo;
+            try {
+                slotPending[slot] = channel.read(buffer, pageNo << PAGE_SHIFT);
+            } catch (RuntimeException e) {
+                // e.g. the channel was closed concurrently; the foreground read will report it
+                slotPage[slot] = -1;
+                slotPending[slot] = null;
+            }
+        }
+    }
+
+    @Override
+    public long length() {
+        return fileSize;
+    }
+
+    @Override
+    public void close() {
+        // in-flight reads complete into buffers nobody will look at; the channel is managed by Supplier
+    }
+
+    /**
+     * Copies `size` bytes at the current position into the scratch buffer and returns it, flipped.
+     */
+    private ByteBuffer readToScratch(int size) throws IOException {
+        if (scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(Math.max(size, 2 * scratch.capacity())).order(ByteOrder.BIG_ENDIAN);
+        }
+        scratch.clear().limit(size);
+        readFully(scratch);
+        return scratch.flip();
+    }
+
+    /**
+     * @return the buffer holding the page containing `offset`, positioned at 0 with its limit at the end
+     * of the valid data
+     */
+    private ByteBuffer pageFor(long offset) throws IOException {
+        long pageNo = offset >> PAGE_SHIFT;
+        int slot = (int) (pageNo & slotMask);
+        if (slotPage[slot] == pageNo) {
+            if (slotPending[slot] != null) {
+                await(slot);
+                slotPage[slot] = -1;
+                fill(slot, pageNo);
+                slotPage[slot] = pageNo;
+            }
+            return slotBuffer[slot];
+        }
+
+        if (slotPending[slot] != null) {
+            // the slot's buffer may not be reused until the read into it has finished
+            await(slot);
+        }
+        slotPage[slot] = -1;
+        bufferFor(slot).clear();
+        fill(slot, pageNo);
+        slotPage[slot] = pageNo;
+        return slotBuffer[slot];
+    }
+
+    private ByteBuffer bufferFor(int slot) {
+        if (slotBuffer[slot] == null) {
+            slotBuffer[slot] = ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.BIG_ENDIAN);
+        }
+        return slotBuffer[slot];
+    }
+
+    private void await(int slot) throws IOException {
+        var pending = slotPending[slot];
+        slotPending[slot] = null;
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            var pageNo = slotPage[slot];
+            abandon(slot);
+            throw new InterruptedIOException("Interrupted while waiting for read of page " + pageNo);
+        } catch (ExecutionException e) {
+            // discard whatever was read; the caller will re-read synchronously or surface the error
+            slotPage[slot] = -1;
+            slotBuffer[slot].clear();
+        }
+    }
+
+    /**
+     * Gives up on a slot whose read is still in flight.  The channel may keep writing into the slot's
+     * buffer after we stop waiting, so the buffer is left to that read and the slot gets a fresh one.
+     */
+    private void abandon(int slot) {
+        slotPage[slot] = -1;
+        slotBuffer[slot] = null;
+    }
+
+    /**
+     * Completes the slot's (possibly partially) filled page buffer with synchronous reads, then flips it.
+     */
+    private void fill(int slot, long pageNo) throws IOException {
+        var buffer = slotBuffer[slot];
+        long pageStart = pageNo << PAGE_SHIFT;
+        int pageBytes = (int) Math.min(PAGE_SIZE, fileSize - pageStart);
+        if (pageBytes <= 0) {
+            throw new EOFException("Read past end of file at " + pageStart);
+        }
+        buffer.limit(pageBytes);
+        try {
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, pageStart + buffer.position()).get();
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of file at " + (pageStart + buffer.position()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(slot);
+            throw new InterruptedIOException("Interrupted while reading page " + pageNo);
+        } catch (ExecutionException e) {
+            throw new IOException("Error reading page " + pageNo, e.getCause());
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Issues background reads of small file ranges, so that the pages backing them are already in the
+ * OS page cache by the time a memory-mapped reader touches them.  The data read is discarded; the
+ * point is only to take the page fault off the searching thread.
+ * <p>
+ * Reads are issued one page at a time into a fixed pool of direct buffers.  When every buffer is
+ * in flight, further hints are dropped rather than queued, so a burst of hints can never cause
+ * unbounded memory use or delay the caller.
+ * <p>
+ * Threadsafe; a single instance is meant to be shared by all the readers vended by a ReaderSupplier.
+ */
+public class AsyncReadAhead implements AutoCloseable {
+    static final int PAGE_SIZE = 4096;
+
+    private final AsynchronousFileChannel channel;
+    private final ArrayBlockingQueue<ByteBuffer> buffers;
+    private final CompletionHandler<Integer, ByteBuffer> recycler;
+
+    /**
+     * @param path the file to read ahead from
+     * @param maxInFlight the maximum number of page reads outstanding at once
+     */
+    public AsyncReadAhead(Path path, int maxInFlight) throws IOException {
+        this.channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+        this.buffers = new ArrayBlockingQueue<>(maxInFlight);
+        for (int i = 0; i < maxInFlight; i++) {
+            buffers.add(ByteBuffer.allocateDirect(PAGE_SIZE));
+        }
+        this.recycler = new CompletionHandler<>() {
+            @Override
+            public void completed(Integer result, ByteBuffer buffer) {
+                buffers.offer(buffer);
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer buffer) {
+                // read-ahead is best-effort; the foreground read will surface any real problem
+                buffers.offer(buffer);
+            }
+        };
+    }
+
+    /**
+     * Hint that the bytes in [offset, offset + length) will be read soon.  Returns immediately.
+     */
+    public void prefetch(long offset, long length) {
+        long end = offset + length;
+        for (long page = offset & -PAGE_SIZE; page < end; page += PAGE_SIZE) {
+            var buffer = buffers.poll();
+            if (buffer == null) {
+                return; // saturated, drop the rest of the hint
+            }
+            buffer.clear();
+            try {
+                channel.read(buffer, page, buffer, recycler);
+            } catch (RuntimeException e) {
+                // e.g. the channel was closed concurrently
+                buffers.offer(buffer);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
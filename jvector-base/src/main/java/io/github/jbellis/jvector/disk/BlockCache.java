@@ -0,0 +1,318 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.disk;
+
+import org.agrona.collections.Long2LongHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded, off-heap cache of fixed-size file pages, meant to be shared by every index in a JVM
+ * so that what stays hot is decided by search traffic rather than by whatever else is using the OS page cache.
+ * Files are attached by wrapping their ReaderSupplier in a {@link CachingReaderSupplier}.
+ * <p>
+ * Pages are spread over independently locked stripes, each of which owns a fixed share of the capacity and
+ * evicts with the CLOCK (second chance) algorithm.  Pinned pages are never evicted; a stripe whose pages
+ * are all pinned simply stops admitting new ones.
+ * <p>
+ * Readers never hold a reference into the cache: page contents are copied out under the stripe lock.
+ * <p>
+ * Threadsafe.
+ */
+public class BlockCache {
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    private static final int DEFAULT_STRIPES = 16;
+    private static final int SLAB_BYTES = 1 << 30;
+    private static final int FILE_ID_SHIFT = 40;
+
+    private final int pageSize;
+    private final Stripe[] stripes;
+    private final AtomicInteger nextFileId = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache of 4KB pages.
+     * @param capacityBytes the maximum amount of off-heap memory to use for cached pages
+     */
+    public BlockCache(long capacityBytes) {
+        this(capacityBytes, DEFAULT_PAGE_SIZE, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param capacityBytes the maximum amount of off-heap memory to use for cached pages
+     * @param pageSize the size of a cached page; must be a power of two
+     * @param stripeCount the number of independently locked stripes; must be a power of two
+     */
+    public BlockCache(long capacityBytes, int pageSize, int stripeCount) {
+        if (Integer.bitCount(pageSize) != 1 || pageSize > SLAB_BYTES) {
+            throw new IllegalArgumentException("pageSize must be a power of two no larger than 1GB, got " + pageSize);
+        }
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("stripeCount must be a power of two, got " + stripeCount);
+        }
+        long framesPerStripe = capacityBytes / pageSize / stripeCount;
+        if (framesPerStripe < 1 || framesPerStripe > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("capacity %d does not fit %d stripes of %d byte pages",
+                                                             capacityBytes, stripeCount, pageSize));
+        }
+        this.pageSize = pageSize;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe((int) framesPerStripe);
+        }
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /** @return the number of page lookups that found the page in the cache */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of page lookups that did not find the page in the cache */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /** @return the number of pages that were evicted to make room for others */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /** @return the number of pages currently cached */
+    public long cachedPages() {
+        long n = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                n += stripe.index.size();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return a new id under which a file's pages are cached; ids are never reused.
+     */
+    int register() {
+        int id = nextFileId.getAndIncrement();
+        if (id >= 1 << (Long.SIZE - 1 - FILE_ID_SHIFT)) {
+            throw new IllegalStateException("Too many files registered with this cache");
+        }
+        return id;
+    }
+
+    /**
+     * Drops every page cached for the given file, pinned or not.
+     */
+    void invalidate(int fileId) {
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                stripe.removeFile(fileId);
+            }
+        }
+    }
+
+    /**
+     * If the page is cached, copies it into `dst` (from position 0, setting its limit to the page's length)
+     * and returns true.
+     */
+    boolean read(int fileId, long pageNo, ByteBuffer dst) {
+        long key = keyFor(fileId, pageNo);
+        var stripe = stripeFor(key);
+        synchronized (stripe) {
+            int frame = stripe.lookup(key);
+            if (frame < 0) {
+                misses.increment();
+                return false;
+            }
+            hits.increment();
+            stripe.referenced[frame] = true;
+            stripe.copyOut(frame, dst);
+            return true;
+        }
+    }
+
+    /**
+     * Caches the page whose contents are in `src` (from position 0 to its limit), unless it is already cached
+     * or every frame in its stripe is pinned.  If `pin` is true the page is pinned, whether or not it was
+     * already cached.
+     *
+     * @return true if the page is in the cache when this method returns
+     */
+    boolean put(int fileId, long pageNo, ByteBuffer src, boolean pin) {
+        assert src.limit() <= pageSize;
+        long key = keyFor(fileId, pageNo);
+        var stripe = stripeFor(key);
+        synchronized (stripe) {
+            int frame = stripe.lookup(key);
+            if (frame < 0) {
+                frame = stripe.claimFrame();
+                if (frame < 0) {
+                    return false;
+                }
+                stripe.copyIn(frame, key, src);
+            }
+            stripe.referenced[frame] = true;
+            stripe.pinned[frame] |= pin;
+            return true;
+        }
+    }
+
+    /**
+     * Pins the page if it is cached.  Unlike {@link #read}, this does not count as a hit or a miss,
+     * so warming the cache does not skew its statistics.
+     *
+     * @return true if the page was cached
+     */
+    boolean pinIfCached(int fileId, long pageNo) {
+        long key = keyFor(fileId, pageNo);
+        var stripe = stripeFor(key);
+        synchronized (stripe) {
+            int frame = stripe.lookup(key);
+            if (frame < 0) {
+                return false;
+            }
+            stripe.referenced[frame] = true;
+            stripe.pinned[frame] = true;
+            return true;
+        }
+    }
+
+    /**
+     * Makes the page evictable again, if it is cached.
+     */
+    void unpin(int fileId, long pageNo) {
+        long key = keyFor(fileId, pageNo);
+        var stripe = stripeFor(key);
+        synchronized (stripe) {
+            int frame = stripe.lookup(key);
+            if (frame >= 0) {
+                stripe.pinned[frame] = false;
+            }
+        }
+    }
+
+    private static long keyFor(int fileId, long pageNo) {
+        assert pageNo < 1L << FILE_ID_SHIFT;
+        return ((long) fileId << FILE_ID_SHIFT) | pageNo;
+    }
+
+    private Stripe stripeFor(long key) {
+        // fibonacci hashing so that consecutive pages spread across stripes
+        int h = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    /**
+     * A fixed set of frames with its own CLOCK hand.  All access must be synchronized on the Stripe.
+     */
+    private final class Stripe {
+        private final ByteBuffer[] slabs;
+        private final int framesPerSlab;
+        private final long[] frameKey;
+        private final int[] frameLength;
+        private final boolean[] referenced;
+        private final boolean[] pinned;
+        private final Long2LongHashMap index;
+        private int framesUsed;
+        private int hand;
+
+        Stripe(int frames) {
+            this.framesPerSlab = SLAB_BYTES / pageSize;
+            int slabCount = (frames + framesPerSlab - 1) / framesPerSlab;
+            this.slabs = new ByteBuffer[slabCount];
+            for (int i = 0; i < slabCount; i++) {
+                int framesInSlab = Math.min(framesPerSlab, frames - i * framesPerSlab);
+                slabs[i] = ByteBuffer.allocateDirect(framesInSlab * pageSize);
+            }
+            this.frameKey = new long[frames];
+            this.frameLength = new int[frames];
+            this.referenced = new boolean[frames];
+            this.pinned = new boolean[frames];
+            this.index = new Long2LongHashMap(-1);
+        }
+
+        int lookup(long key) {
+            return (int) index.get(key);
+        }
+
+        /**
+         * @return an empty frame, evicting a page if necessary, or -1 if every frame is pinned
+         */
+        int claimFrame() {
+            if (framesUsed < frameKey.length) {
+                return framesUsed++;
+            }
+            // two sweeps: the first may only clear reference bits
+            for (int i = 0; i < 2 * frameKey.length; i++) {
+                int frame = hand;
+                hand = hand + 1 == frameKey.length ? 0 : hand + 1;
+                if (pinned[frame]) {
+                    continue;
+                }
+                if (frameKey[frame] < 0) {
+                    return frame;
+                }
+                if (referenced[frame]) {
+                    referenced[frame] = false;
+                    continue;
+                }
+                index.remove(frameKey[frame]);
+                frameKey[frame] = -1;
+                evictions.increment();
+                return frame;
+            }
+            return -1;
+        }
+
+        void removeFile(int fileId) {
+            for (int frame = 0; frame < framesUsed; frame++) {
+                long key = frameKey[frame];
+                if (key >= 0 && (key >>> FILE_ID_SHIFT) == fileId) {
+                    index.remove(key);
+                    frameKey[frame] = -1;
+                    referenced[frame] = false;
+                    pinned[frame] = false;
+                }
+            }
+        }
+
+        void copyIn(int frame, long key, ByteBuffer src) {
+            var slab = slabs[frame / framesPerSlab].duplicate();
+            slab.position((frame % framesPerSlab) * pageSize);
+            slab.put(src.duplicate().position(0));
+            frameKey[frame] = key;
+            frameLength[frame] = src.limit();
+            index.put(key, frame);
+        }
+
+        void copyOut(int frame, ByteBuffer dst) {
+            var slab = slabs[frame / framesPerSlab].duplicate();
+            int start = (frame % framesPerSlab) * pageSize;
+            slab.position(start).limit(start + frameLength[frame]);
+            dst.clear();
+            dst.put(slab);
+            dst.flip();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.disk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Wraps any ReaderSupplier so that its readers go through a (possibly shared) {@link BlockCache}.
+ * Pages that miss are read from a reader of the wrapped supplier and then cached.
+ * <p>
+ * Closing this supplier drops its pages from the cache and closes the wrapped supplier.
+ */
+public class CachingReaderSupplier implements ReaderSupplier {
+    private final ReaderSupplier delegate;
+    private final BlockCache cache;
+    private final int fileId;
+    private final long length;
+    private Reader pinReader;
+
+    public CachingReaderSupplier(ReaderSupplier delegate, BlockCache cache) throws IOException {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.fileId = cache.register();
+        try (var reader = delegate.get()) {
+            this.length = reader.length();
+        }
+    }
+
+    public BlockCache cache() {
+        return cache;
+    }
+
+    @Override
+    public RandomAccessReader get() throws IOException {
+        return new Reader();
+    }
+
+    /**
+     * Loads the pages covering [offset, offset + length) and pins them in the cache, so that they are
+     * never evicted.  Pages that cannot be cached because their stripe is entirely pinned are skipped.
+     * Pinning does not count towards the cache's hit and miss statistics.
+     */
+    public synchronized void pin(long offset, long length) throws IOException {
+        if (pinReader == null) {
+            pinReader = new Reader();
+        }
+        for (long pageNo = firstPage(offset); pageNo <= lastPage(offset, length); pageNo++) {
+            if (!cache.pinIfCached(fileId, pageNo)) {
+                pinReader.loadFromDelegate(pageNo);
+                cache.put(fileId, pageNo, pinReader.page, true);
+            }
+        }
+    }
+
+    /**
+     * Makes the pages covering [offset, offset + length) evictable again.
+     */
+    public void unpin(long offset, long length) {
+        for (long pageNo = firstPage(offset); pageNo <= lastPage(offset, length); pageNo++) {
+            cache.unpin(fileId, pageNo);
+        }
+    }
+
+    private long firstPage(long offset) {
+        return offset / cache.pageSize();
+    }
+
+    private long lastPage(long offset, long length) {
+        return (Math.min(offset + length, this.length) - 1) / cache.pageSize();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (pinReader != null) {
+            pinReader.close();
+        }
+        cache.invalidate(fileId);
+        delegate.close();
+    }
+
+    /**
+     * Keeps a copy of the most recently used page, so that sequential reads within a page
+     * do not go back to the cache.
+     */
+    private class Reader implements RandomAccessReader {
+        private final int pageSize = cache.pageSize();
+        private final ByteBuffer page = ByteBuffer.allocate(pageSize).order(ByteOrder.BIG_ENDIAN);
+        private ByteBuffer scratch = ByteBuffer.allocate(64).order(ByteOrder.BIG_ENDIAN);
+        private RandomAccessReader delegateReader;
+        private long pageNo = -1;
+        private long position;
+
+        @Override
+        public void seek(long offset) {
+            position = offset;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            int inPage = pageFor(position);
+            if (inPage + Integer.BYTES <= page.limit()) {
+                position += Integer.BYTES;
+                return page.getInt(inPage);
+            }
+            return readToScratch(Integer.BYTES).getInt(0);
+        }
+
+        @Override
+        public float readFloat() throws IOException {
+            return Float.intBitsToFloat(readInt());
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            int inPage = pageFor(position);
+            if (inPage + Long.BYTES <= page.limit()) {
+                position += Long.BYTES;
+                return page.getLong(inPage);
+            }
+            return readToScratch(Long.BYTES).getLong(0);
+        }
+
+        @Override
+        public void readFully(byte[] bytes) throws IOException {
+            readFully(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                int inPage = pageFor(position);
+                int n = Math.min(buffer.remaining(), page.limit() - inPage);
+                if (n <= 0) {
+                    throw new EOFException("Read past end of file at " + position);
+                }
+                var src = page.duplicate();
+                src.position(inPage).limit(inPage + n);
+                buffer.put(src);
+                position += n;
+            }
+        }
+
+        @Override
+        public void readFully(long[] vector) throws IOException {
+            readToScratch(vector.length * Long.BYTES).asLongBuffer().get(vector);
+        }
+
+        @Override
+        public void read(int[] ints, int offset, int count) throws IOException {
+            readToScratch(count * Integer.BYTES).asIntBuffer().get(ints, offset, count);
+        }
+
+        @Override
+        public void read(float[] floats, int offset, int count) throws IOException {
+            readToScratch(count * Float.BYTES).asFloatBuffer().get(floats, offset, count);
+        }
+
+        @Override
+        public void prefetch(long offset, long length) {
+            if (delegateReader != null) {
+                delegateReader.prefetch(offset, length);
+            }
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (delegateReader != null) {
+                delegateReader.close();
+            }
+        }
+
+        private ByteBuffer readToScratch(int size) throws IOException {
+            if (scratch.capacity() < size) {
+                scratch = ByteBuffer.allocate(Math.max(size, 2 * scratch.capacity())).order(ByteOrder.BIG_ENDIAN);
+            }
+            scratch.clear().limit(size);
+            readFully(scratch);
+            return scratch.flip();
+        }
+
+        /**
+         * Makes `page` hold the page containing `offset`.
+         * @return the position of `offset` within the page
+         */
+        private int pageFor(long offset) throws IOException {
+            long wanted = offset / pageSize;
+            if (wanted != pageNo) {
+                pageNo = -1;
+                if (!cache.read(fileId, wanted, page)) {
+                    loadFromDelegate(wanted);
+                    cache.put(fileId, wanted, page, false);
+                }
+                pageNo = wanted;
+            }
+            return (int) (offset - wanted * pageSize);
+        }
+
+        private void loadFromDelegate(long pageNo) throws IOException {
+            if (delegateReader == null) {
+                delegateReader = delegate.get();
+            }
+            long start = pageNo * pageSize;
+            if (start >= length) {
+                throw new EOFException("Read past end of file at " + start);
+            }
+            page.clear().limit((int) Math.min(pageSize, length - start));
+            delegateReader.seek(start);
+            delegateReader.readFully(page);
+            page.flip();
+            this.pageNo = -1;
+        }
+    }
+}
@@ -38,6 +38,7 @@ public class MappedChunkReader implements RandomAccessReader {
     private final FileChannel channel;
     private final long fileSize;
     private final ByteOrder byteOrder;
+    private final AsyncReadAhead readAhead;
     private long position;
 
     private ByteBuffer currentBuffer;
@@ -51,8 +52,17 @@ public class MappedChunkReader implements RandomAccessReader {
      * @throws IOException if an I/O error occurs
      */
     public MappedChunkReader(FileChannel channel, ByteOrder byteOrder) throws IOException {
+        this(channel, byteOrder, null);
+    }
+
+    /**
+     * Constructs a new {@code MappedChunkReader} that services {@link #prefetch} hints with the given
+     * {@link AsyncReadAhead}, or ignores them if it is null.
+     */
+    MappedChunkReader(FileChannel channel, ByteOrder byteOrder, AsyncReadAhead readAhead) throws IOException {
         this.channel = channel;
         this.byteOrder = byteOrder;
+        this.readAhead = readAhead;
         this.fileSize = channel.size();
         this.position = 0;
         mapChunk(0);
@@ -63,7 +73,10 @@ public class MappedChunkReader implements RandomAccessReader {
      * from a given file path.
      */
     public static class Supplier implements ReaderSupplier {
+        private static final int READ_AHEAD_MAX_IN_FLIGHT = 256;
+
         private final FileChannel channel;
+        private final AsyncReadAhead readAhead;
 
         /**
          * Opens a file channel for the specified path in read-only mode.
@@ -72,7 +85,20 @@ public class MappedChunkReader implements RandomAccessReader {
          * @throws IOException if an I/O error occurs
          */
         public Supplier(Path path) throws IOException {
+            this(path, false);
+        }
+
+        /**
+         * Opens a file channel for the specified path in read-only mode.
+         *
+         * @param path      the path to the file
+         * @param readAhead if true, readers will service {@link RandomAccessReader#prefetch} hints by
+         *                  reading the requested pages in the background
+         * @throws IOException if an I/O error occurs
+         */
+        public Supplier(Path path, boolean readAhead) throws IOException {
             this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.readAhead = readAhead ? new AsyncReadAhead(path, READ_AHEAD_MAX_IN_FLIGHT) : null;
         }
 
         /**
@@ -83,7 +109,7 @@ public class MappedChunkReader implements RandomAccessReader {
         @Override
         public RandomAccessReader get() {
             try {
-                return new MappedChunkReader(channel, ByteOrder.BIG_ENDIAN);
+                return new MappedChunkReader(channel, ByteOrder.BIG_ENDIAN, readAhead);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -96,6 +122,9 @@ public class MappedChunkReader implements RandomAccessReader {
          */
         @Override
         public void close() throws IOException {
+            if (readAhead != null) {
+                readAhead.close();
+            }
             channel.close();
         }
     }
@@ -288,6 +317,19 @@ public class MappedChunkReader implements RandomAccessReader {
         tmp.flip().asFloatBuffer().get(floats, offset, count);
     }
 
+    /**
+     * Starts reading the given range in the background, if this reader was created with read-ahead enabled.
+     *
+     * @param offset the start of the range
+     * @param length the number of bytes in the range
+     */
+    @Override
+    public void prefetch(long offset, long length) {
+        if (readAhead != null) {
+            readAhead.prefetch(offset, length);
+        }
+    }
+
     /**
      * Returns the total length of the file.
      *
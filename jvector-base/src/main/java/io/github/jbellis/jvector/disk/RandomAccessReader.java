@@ -56,6 +56,14 @@ public interface RandomAccessReader extends AutoCloseable {
 
     void read(float[] floats, int offset, int count) throws IOException;
 
+    /**
+     * Hint that the bytes in [offset, offset + length) are likely to be read soon.  Implementations
+     * backed by slow storage may start loading them in the background; this must never block
+     * on I/O.  The default implementation does nothing.  Does not change the current position.
+     */
+    default void prefetch(long offset, long length) {
+    }
+
     void close() throws IOException;
 
     // Length of the reader slice
@@ -52,4 +52,35 @@ public class ReaderSupplierFactory {
             return new MappedChunkReader.Supplier(path);
         }
     }
+
+    /**
+     * Like {@link #open(Path)}, but when `readAhead` is true the returned supplier honors
+     * {@link RandomAccessReader#prefetch} hints, e.g. from {@link io.github.jbellis.jvector.graph.GraphSearcher#usePrefetching}.
+     * MMapReader does not support read-ahead, so it is skipped in that case.
+     */
+    public static ReaderSupplier open(Path path, boolean readAhead) throws IOException {
+        if (!readAhead) {
+            return open(path);
+        }
+
+        try {
+            var supplierClass = Class.forName(MEMORY_SEGMENT_READER_CLASSNAME);
+            Constructor<?> ctor = supplierClass.getConstructor(Path.class, boolean.class);
+            return (ReaderSupplier) ctor.newInstance(path, true);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "MemorySegmentReaderSupplier not available, falling back to MappedChunkReader. Reason: {0}: {1}",
+                    new Object[]{e.getClass().getName(), e.getMessage()});
+            return new MappedChunkReader.Supplier(path, true);
+        }
+    }
+
+    /**
+     * Opens the file with {@link AsyncFileReader}, which reads through asynchronous positional reads instead
+     * of memory-mapping.  Intended for indexes on fast storage that are much larger than RAM, searched with
+     * {@link io.github.jbellis.jvector.graph.GraphSearcher#usePrefetching} enabled so that each reader keeps
+     * many reads in flight.
+     */
+    public static ReaderSupplier openAsync(Path path) throws IOException {
+        return new AsyncFileReader.Supplier(path);
+    }
 }
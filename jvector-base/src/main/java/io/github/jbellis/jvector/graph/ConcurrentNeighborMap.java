@@ -24,6 +24,8 @@ import io.github.jbellis.jvector.util.DenseIntMap;
 import io.github.jbellis.jvector.util.FixedBitSet;
 import io.github.jbellis.jvector.util.IntMap;
 
+import java.util.function.IntConsumer;
+
 import static java.lang.Math.min;
 
 /**
@@ -41,6 +43,9 @@ public class ConcurrentNeighborMap {
     /** the maximum number of neighbors a node can have temporarily during construction */
     public final int maxOverflowDegree;
 
+    /** called with the node id after each change to a node's neighbors, including its addition or removal */
+    private volatile IntConsumer changeListener;
+
     public ConcurrentNeighborMap(DiversityProvider diversityProvider, int maxDegree, int maxOverflowDegree) {
         this(new DenseIntMap<>(1024), diversityProvider, maxDegree, maxOverflowDegree);
     }
@@ -57,7 +62,11 @@ public class ConcurrentNeighborMap {
         while (true) {
             var old = neighbors.get(fromId);
             var next = old.insert(toId, score, overflow, this);
-            if (next == null || neighbors.compareAndPut(fromId, old, next)) {
+            if (next == null) {
+                break;
+            }
+            if (neighbors.compareAndPut(fromId, old, next)) {
+                changed(fromId);
                 break;
             }
         }
@@ -67,7 +76,11 @@ public class ConcurrentNeighborMap {
         while (true) {
             var old = neighbors.get(fromId);
             var next = old.insertNotDiverse(toId, score, this);
-            if (next == old || neighbors.compareAndPut(fromId, old, next)) {
+            if (next == old) {
+                break;
+            }
+            if (neighbors.compareAndPut(fromId, old, next)) {
+                changed(fromId);
                 break;
             }
         }
@@ -85,7 +98,11 @@ public class ConcurrentNeighborMap {
         while (true) {
             old = neighbors.get(nodeId);
             var nwse = old.enforceDegree(this);
-            if (nwse.neighbors == old || neighbors.compareAndPut(nodeId, old, nwse.neighbors)) {
+            if (nwse.neighbors == old) {
+                return nwse.shortEdges;
+            }
+            if (neighbors.compareAndPut(nodeId, old, nwse.neighbors)) {
+                changed(nodeId);
                 return nwse.shortEdges;
             }
         }
@@ -95,7 +112,11 @@ public class ConcurrentNeighborMap {
         while (true) {
             var old = neighbors.get(nodeId);
             var next = old.replaceDeletedNeighbors(toDelete, candidates, this);
-            if (next == old || neighbors.compareAndPut(nodeId, old, next)) {
+            if (next == old) {
+                break;
+            }
+            if (neighbors.compareAndPut(nodeId, old, next)) {
+                changed(nodeId);
                 break;
             }
         }
@@ -106,7 +127,11 @@ public class ConcurrentNeighborMap {
             var old = neighbors.get(nodeId);
             assert old != null : nodeId; // graph.addNode should always be called before this method
             var next = old.insertDiverse(candidates, this);
-            if (next == old || neighbors.compareAndPut(nodeId, old, next)) {
+            if (next == old) {
+                return next;
+            }
+            if (neighbors.compareAndPut(nodeId, old, next)) {
+                changed(nodeId);
                 return next;
             }
         }
@@ -128,6 +153,21 @@ public class ConcurrentNeighborMap {
         if (!neighbors.compareAndPut(nodeId, null, next)) {
             throw new IllegalStateException("Node " + nodeId + " already exists");
         }
+        changed(nodeId);
+    }
+
+    /**
+     * Only for replaying a change log: sets the neighbors of the given node, whether it exists or not
+     */
+    void put(int nodeId, NodeArray nodes, int diverseBefore) {
+        var next = new Neighbors(nodeId, nodes, diverseBefore);
+        while (true) {
+            var old = neighbors.get(nodeId);
+            if (neighbors.compareAndPut(nodeId, old, next)) {
+                break;
+            }
+        }
+        changed(nodeId);
     }
 
     public void addNode(int nodeId) {
@@ -135,7 +175,11 @@ public class ConcurrentNeighborMap {
     }
 
     public Neighbors remove(int node) {
-        return neighbors.remove(node);
+        var old = neighbors.remove(node);
+        if (old != null) {
+            changed(node);
+        }
+        return old;
     }
 
     public boolean contains(int nodeId) {
@@ -146,6 +190,17 @@ public class ConcurrentNeighborMap {
         neighbors.forEach(consumer);
     }
 
+    void setChangeListener(IntConsumer changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed(int node) {
+        var listener = changeListener;
+        if (listener != null) {
+            listener.accept(node);
+        }
+    }
+
     int nodeArrayLength() {
         // one extra so that insert() against a full NodeArray doesn't invoke growArrays()
         return maxOverflowDegree + 1;
@@ -187,9 +242,21 @@ public class ConcurrentNeighborMap {
          * `nodeArray` is assumed to have had diversity enforced already
          */
         private Neighbors(int nodeId, NodeArray nodeArray) {
+            this(nodeId, nodeArray, nodeArray.size());
+        }
+
+        /**
+         * uses the node and score references directly from `nodeArray`, without copying.
+         * Only for adjacency stores that keep Neighbors in another form, and so must restore `diverseBefore`
+         */
+        Neighbors(int nodeId, NodeArray nodeArray, int diverseBefore) {
             super(nodeArray);
             this.nodeId = nodeId;
-            this.diverseBefore = size();
+            this.diverseBefore = diverseBefore;
+        }
+
+        int diverseBefore() {
+            return diverseBefore;
         }
 
         public NodesIterator iterator() {
@@ -285,7 +352,7 @@ public class ConcurrentNeighborMap {
          */
         private double retainDiverseInternal(NodeArray neighbors, int diverseBefore, ConcurrentNeighborMap map) {
             BitSet selected = new FixedBitSet(neighbors.size());
-            double shortEdges = map.diversityProvider.retainDiverse(neighbors, map.maxDegree, diverseBefore, selected);
+            double shortEdges = map.diversityProvider.retainDiverse(nodeId, neighbors, map.maxDegree, diverseBefore, selected);
             neighbors.retain(selected);
             return shortEdges;
         }
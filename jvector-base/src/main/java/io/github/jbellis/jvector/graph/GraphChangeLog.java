@@ -0,0 +1,594 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph;
+
+import io.github.jbellis.jvector.annotations.Experimental;
+import io.github.jbellis.jvector.graph.GraphIndex.NodeAtLevel;
+import io.github.jbellis.jvector.util.DocIdSetIterator;
+import io.github.jbellis.jvector.util.GrowableBitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Persists an OnHeapGraphIndex incrementally, so that a continuously updated graph can be recovered after a
+ * restart without rewriting the whole graph each time it changes.
+ * <p>
+ * Every change to the graph (each successful update of a node's neighbors by insertEdge, insertDiverse,
+ * backlink and the rest, each removal, each change of entry node and each node marked deleted) is logged.
+ * The log records the node's resulting neighbors rather than the operation that produced them,
+ * since pruning for diversity depends on the other threads' changes and could not be replayed faithfully.
+ * Replaying a record is idempotent, and the last record for a node is its final state.
+ * <p>
+ * The threads changing the graph only mark the nodes they changed as dirty, in buffers of their own, so
+ * that logging neither serializes them nor does I/O on their behalf.  The dirty nodes' current state is
+ * appended to the log by {@link #sync}, and folded into the next checkpoint by {@link #checkpoint}.
+ * <p>
+ * {@link #checkpoint()} writes the current neighbors of the nodes that changed since the previous
+ * checkpoint, so its cost is proportional to the number of nodes changed, and starts a new log.  The previous
+ * log is deleted once the checkpoint is durable.  {@link #fullCheckpoint()} writes every node and deletes all
+ * older checkpoints, which bounds the time to recover.
+ * <p>
+ * {@link #recover} loads the checkpoints in order and replays the logs that follow them.  A record that was
+ * torn by a crash at the end of a log is ignored, as is anything else that was not {@link #sync}ed.
+ * Nodes that were being inserted at the time of the crash are recovered with whatever neighbors they had.
+ * Vectors are not persisted; the caller must persist and restore those itself.
+ */
+@Experimental
+public class GraphChangeLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(GraphChangeLog.class);
+
+    private static final int MAGIC = 0x75EC4013;
+    private static final int VERSION = 1;
+
+    private static final byte NEIGHBORS = 1;
+    private static final byte REMOVED = 2;
+    private static final byte ENTRY_NODE = 3;
+    private static final byte DELETED = 4;
+
+    // far larger than any valid record, to catch garbage lengths
+    private static final int MAX_RECORD_LENGTH = 1 << 26;
+
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String LOG_PREFIX = "log-";
+    private static final Pattern FILE_PATTERN = Pattern.compile("(" + CHECKPOINT_PREFIX + "|" + LOG_PREFIX + ")(\\d+)");
+
+    private final OnHeapGraphIndex graph;
+    private final Path directory;
+
+    // nodes changed since the log was last flushed, by the id of the thread that changed them
+    private final ConcurrentHashMap<Long, DirtyNodes> dirtyByThread = new ConcurrentHashMap<>();
+    private final AtomicBoolean entryChanged = new AtomicBoolean();
+
+    // guards the log and the set of changed nodes
+    private final Object lock = new Object();
+    private int sequence;
+    private RecordOutput log;
+    // nodes changed since the last checkpoint, by level
+    private List<GrowableBitSet> changed = new ArrayList<>();
+    // only one checkpoint at a time
+    private final Object checkpointLock = new Object();
+    // only used while recovering
+    private NodeAtLevel recoveredEntry;
+
+    private GraphChangeLog(OnHeapGraphIndex graph, Path directory, int sequence) throws IOException {
+        this.graph = graph;
+        this.directory = directory;
+        this.sequence = sequence;
+        this.log = new RecordOutput(logPath(sequence));
+    }
+
+    /**
+     * Starts logging the changes to the builder's graph in `directory`, which must be empty or nonexistent.
+     * If the graph is not empty, the first checkpoint will include all of it.
+     */
+    public static GraphChangeLog create(GraphIndexBuilder builder, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            if (files.findAny().isPresent()) {
+                throw new IllegalArgumentException("Directory " + directory + " is not empty");
+            }
+        }
+        var changeLog = new GraphChangeLog(builder.graph, directory, 0);
+        changeLog.markAllChanged();
+        changeLog.attach();
+        return changeLog;
+    }
+
+    /**
+     * Restores the graph persisted in `directory` into the builder, which must be empty and created with
+     * the same parameters as the original, and resumes logging its changes.
+     */
+    public static GraphChangeLog recover(GraphIndexBuilder builder, Path directory) throws IOException {
+        var graph = builder.graph;
+        if (graph.size(0) != 0) {
+            throw new IllegalStateException("Cannot recover into a non-empty graph");
+        }
+
+        // checkpoint-N covers the changes logged in log-(N-1) and earlier, so it is applied first
+        var sequences = new TreeSet<Integer>();
+        var checkpoints = new TreeSet<Integer>();
+        var logs = new TreeSet<Integer>();
+        try (var files = Files.list(directory)) {
+            for (var path : files.collect(Collectors.toList())) {
+                var m = FILE_PATTERN.matcher(path.getFileName().toString());
+                if (!m.matches()) {
+                    continue;
+                }
+                int n = Integer.parseInt(m.group(2));
+                sequences.add(n);
+                (m.group(1).equals(CHECKPOINT_PREFIX) ? checkpoints : logs).add(n);
+            }
+        }
+
+        var recovering = new GraphChangeLog(graph, directory, sequences.isEmpty() ? 0 : sequences.last() + 1);
+        for (int n : sequences) {
+            if (checkpoints.contains(n)) {
+                recovering.replay(checkpointPath(directory, n), false);
+            }
+            if (logs.contains(n)) {
+                // changes that were only logged are not in any checkpoint, so the next checkpoint must include them
+                recovering.replay(logPath(directory, n), true);
+            }
+        }
+
+        // every node is complete as far as the graph is concerned
+        for (int level = graph.getMaxLevel(); level >= 0; level--) {
+            for (var it = graph.getNodes(level); it.hasNext(); ) {
+                int node = it.nextInt();
+                if (level == graph.getMaxLevel() || graph.getNeighbors(level + 1, node) == null) {
+                    graph.markComplete(new NodeAtLevel(level, node));
+                }
+            }
+        }
+        // markComplete picks an entry node of the top layer, but restore the one that was logged
+        var entry = recovering.recoveredEntry;
+        if (entry != null && graph.getNeighbors(entry.level, entry.node) != null) {
+            graph.updateEntryNode(entry);
+        }
+        builder.restoreLabelEntryNodes();
+
+        recovering.attach();
+        return recovering;
+    }
+
+    /**
+     * Flushes the log and forces it to disk, so that all changes so far will survive a crash.
+     */
+    public void sync() throws IOException {
+        synchronized (lock) {
+            flushDirty(true);
+            log.sync();
+        }
+    }
+
+    /**
+     * Writes the nodes that changed since the last checkpoint to a new checkpoint and starts a new log.
+     * Changes made while the checkpoint is being written go to the new log.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            writeCheckpoint(false);
+        }
+    }
+
+    /**
+     * Writes every node to a new checkpoint and deletes the older checkpoints and logs.
+     */
+    public void fullCheckpoint() throws IOException {
+        synchronized (checkpointLock) {
+            synchronized (lock) {
+                markAllChanged();
+            }
+            writeCheckpoint(true);
+        }
+    }
+
+    /**
+     * Stops logging changes to the graph, and syncs and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        graph.setMutationListener(null);
+        synchronized (lock) {
+            flushDirty(true);
+            log.sync();
+            log.close();
+        }
+    }
+
+    private void writeCheckpoint(boolean full) throws IOException {
+        List<GrowableBitSet> toWrite;
+        int previousSequence;
+        synchronized (lock) {
+            // the checkpoint is written from the graph's current state, so there is no need to log the dirty nodes first
+            flushDirty(false);
+            toWrite = changed;
+            changed = new ArrayList<>();
+            previousSequence = sequence;
+            sequence++;
+            log.sync();
+            log.close();
+            log = new RecordOutput(logPath(sequence));
+        }
+
+        // any change made after the swap is in the new log, so it is fine if we see it here too
+        var tmp = directory.resolve(CHECKPOINT_PREFIX + "tmp");
+        try (var out = new RecordOutput(tmp)) {
+            for (int level = 0; level < toWrite.size(); level++) {
+                var nodes = toWrite.get(level);
+                for (int node = nodes.nextSetBit(0); node != DocIdSetIterator.NO_MORE_DOCS; node = nodes.nextSetBit(node + 1)) {
+                    writeNode(out, level, node);
+                }
+            }
+            var deleted = graph.getDeletedNodes();
+            for (int node = deleted.nextSetBit(0); node != DocIdSetIterator.NO_MORE_DOCS; node = deleted.nextSetBit(node + 1)) {
+                out.writeDeleted(node);
+            }
+            out.writeEntryNode(graph.entry());
+            out.sync();
+        }
+        Files.move(tmp, checkpointPath(directory, sequence), StandardCopyOption.ATOMIC_MOVE);
+
+        // everything through the previous log is now in checkpoints
+        Files.deleteIfExists(logPath(previousSequence));
+        if (full) {
+            try (var files = Files.list(directory)) {
+                for (var path : files.collect(Collectors.toList())) {
+                    var m = FILE_PATTERN.matcher(path.getFileName().toString());
+                    if (m.matches() && Integer.parseInt(m.group(2)) < sequence) {
+                        Files.delete(path);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeNode(RecordOutput out, int level, int node) throws IOException {
+        var neighbors = graph.getNeighbors(level, node);
+        if (neighbors == null) {
+            out.writeRemoved(level, node);
+        } else {
+            out.writeNeighbors(level, node, neighbors);
+        }
+    }
+
+    private void markAllChanged() {
+        for (int level = 0; level <= graph.getMaxLevel(); level++) {
+            if (graph.size(level) == 0) {
+                continue;
+            }
+            for (var it = graph.getNodes(level); it.hasNext(); ) {
+                markChanged(level, it.nextInt());
+            }
+        }
+    }
+
+    /**
+     * Collects the nodes that the graph's threads marked dirty, and notes them as changed since the last
+     * checkpoint.  If `write` is true, their current state is also appended to the log.  Must hold `lock`.
+     */
+    private void flushDirty(boolean write) throws IOException {
+        var neighbors = new ArrayList<GrowableBitSet>();
+        var deleted = new GrowableBitSet(0);
+        for (var dirty : dirtyByThread.values()) {
+            dirty.drainTo(neighbors, deleted);
+        }
+
+        for (int level = 0; level < neighbors.size(); level++) {
+            var nodes = neighbors.get(level);
+            for (int node = nodes.nextSetBit(0); node != DocIdSetIterator.NO_MORE_DOCS; node = nodes.nextSetBit(node + 1)) {
+                if (write) {
+                    // log the current state rather than the one that marked the node, so that
+                    // concurrent changes to the same node are logged as they took effect
+                    writeNode(log, level, node);
+                }
+                markChanged(level, node);
+            }
+        }
+        // after the neighbors, since replaying the removal of a node from layer 0 clears its deleted flag
+        var deletedNodes = graph.getDeletedNodes();
+        for (int node = deleted.nextSetBit(0); node != DocIdSetIterator.NO_MORE_DOCS; node = deleted.nextSetBit(node + 1)) {
+            if (write && deletedNodes.get(node)) {
+                log.writeDeleted(node);
+            }
+        }
+        if (entryChanged.getAndSet(false) && write) {
+            log.writeEntryNode(graph.entry());
+        }
+    }
+
+    private DirtyNodes dirtyNodes() {
+        long threadId = Thread.currentThread().getId();
+        var dirty = dirtyByThread.get(threadId);
+        return dirty != null ? dirty : dirtyByThread.computeIfAbsent(threadId, k -> new DirtyNodes());
+    }
+
+    private void markChanged(int level, int node) {
+        while (changed.size() <= level) {
+            changed.add(new GrowableBitSet(0));
+        }
+        changed.get(level).set(node);
+    }
+
+    private void attach() {
+        graph.setMutationListener(new OnHeapGraphIndex.MutationListener() {
+            @Override
+            public void neighborsChanged(int level, int node) {
+                dirtyNodes().neighborsChanged(level, node);
+            }
+
+            @Override
+            public void entryNodeChanged() {
+                entryChanged.set(true);
+            }
+
+            @Override
+            public void nodeDeleted(int node) {
+                dirtyNodes().nodeDeleted(node);
+            }
+        });
+    }
+
+    private void replay(Path path, boolean isLog) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a graph change log: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported graph change log version " + version + " in " + path);
+            }
+
+            var crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                var record = readRecord(in, length, crc);
+                if (record == null) {
+                    // checkpoints are moved into place only once complete, so they should never be torn
+                    if (!isLog) {
+                        throw new IOException("Corrupt checkpoint " + path);
+                    }
+                    logger.warn("Ignoring a torn or corrupt record at the end of {}", path);
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(record)), isLog);
+            }
+        }
+    }
+
+    /**
+     * @return the record, or null if it was torn or its checksum does not match
+     */
+    private static byte[] readRecord(DataInputStream in, int length, CRC32 crc) throws IOException {
+        if (length <= 0 || length > MAX_RECORD_LENGTH) {
+            return null;
+        }
+        var record = new byte[length];
+        int expected;
+        try {
+            in.readFully(record);
+            expected = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        crc.reset();
+        crc.update(record, 0, length);
+        return (int) crc.getValue() == expected ? record : null;
+    }
+
+    private void apply(DataInputStream in, boolean isLog) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NEIGHBORS: {
+                int level = in.readInt();
+                int node = in.readInt();
+                int diverseBefore = in.readInt();
+                int size = in.readInt();
+                var nodes = new int[size];
+                var scores = new float[size];
+                for (int i = 0; i < size; i++) {
+                    nodes[i] = in.readInt();
+                    scores[i] = in.readFloat();
+                }
+                graph.setNeighbors(level, node, new NodeArray(nodes, scores, size), diverseBefore);
+                if (isLog) {
+                    markChanged(level, node);
+                }
+                break;
+            }
+            case REMOVED: {
+                int level = in.readInt();
+                int node = in.readInt();
+                graph.removeNode(level, node);
+                if (isLog) {
+                    markChanged(level, node);
+                }
+                break;
+            }
+            case ENTRY_NODE: {
+                int level = in.readInt();
+                int node = in.readInt();
+                recoveredEntry = level < 0 ? null : new NodeAtLevel(level, node);
+                break;
+            }
+            case DELETED: {
+                graph.getDeletedNodes().set(in.readInt());
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private Path logPath(int sequence) {
+        return logPath(directory, sequence);
+    }
+
+    private static Path logPath(Path directory, int sequence) {
+        return directory.resolve(String.format("%s%010d", LOG_PREFIX, sequence));
+    }
+
+    private static Path checkpointPath(Path directory, int sequence) {
+        return directory.resolve(String.format("%s%010d", CHECKPOINT_PREFIX, sequence));
+    }
+
+    /**
+     * The nodes changed by one thread since the log was last flushed.  The lock is only contended while
+     * the log is being flushed.
+     */
+    private static class DirtyNodes {
+        // by level
+        private List<GrowableBitSet> neighbors = new ArrayList<>();
+        private GrowableBitSet deleted = new GrowableBitSet(0);
+
+        synchronized void neighborsChanged(int level, int node) {
+            while (neighbors.size() <= level) {
+                neighbors.add(new GrowableBitSet(0));
+            }
+            neighbors.get(level).set(node);
+        }
+
+        synchronized void nodeDeleted(int node) {
+            deleted.set(node);
+        }
+
+        /**
+         * Adds the nodes marked so far to the given sets, and starts over.
+         */
+        void drainTo(List<GrowableBitSet> allNeighbors, GrowableBitSet allDeleted) {
+            List<GrowableBitSet> drainedNeighbors;
+            GrowableBitSet drainedDeleted;
+            synchronized (this) {
+                drainedNeighbors = neighbors;
+                drainedDeleted = deleted;
+                neighbors = new ArrayList<>();
+                deleted = new GrowableBitSet(0);
+            }
+
+            for (int level = 0; level < drainedNeighbors.size(); level++) {
+                while (allNeighbors.size() <= level) {
+                    allNeighbors.add(new GrowableBitSet(0));
+                }
+                var nodes = drainedNeighbors.get(level);
+                for (int node = nodes.nextSetBit(0); node != DocIdSetIterator.NO_MORE_DOCS; node = nodes.nextSetBit(node + 1)) {
+                    allNeighbors.get(level).set(node);
+                }
+            }
+            for (int node = drainedDeleted.nextSetBit(0); node != DocIdSetIterator.NO_MORE_DOCS; node = drainedDeleted.nextSetBit(node + 1)) {
+                allDeleted.set(node);
+            }
+        }
+    }
+
+    /**
+     * Writes records framed by their length and CRC32, so that a record torn by a crash can be detected.
+     */
+    private static class RecordOutput implements Closeable {
+        private final FileOutputStream file;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        private final DataOutputStream record = new DataOutputStream(recordBytes);
+        private final CRC32 crc = new CRC32();
+
+        RecordOutput(Path path) throws IOException {
+            file = new FileOutputStream(path.toFile());
+            out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        void writeNeighbors(int level, int node, ConcurrentNeighborMap.Neighbors neighbors) throws IOException {
+            record.writeByte(NEIGHBORS);
+            record.writeInt(level);
+            record.writeInt(node);
+            record.writeInt(neighbors.diverseBefore());
+            record.writeInt(neighbors.size());
+            for (int i = 0; i < neighbors.size(); i++) {
+                record.writeInt(neighbors.getNode(i));
+                record.writeFloat(neighbors.getScore(i));
+            }
+            finishRecord();
+        }
+
+        void writeRemoved(int level, int node) throws IOException {
+            record.writeByte(REMOVED);
+            record.writeInt(level);
+            record.writeInt(node);
+            finishRecord();
+        }
+
+        void writeEntryNode(NodeAtLevel entry) throws IOException {
+            record.writeByte(ENTRY_NODE);
+            record.writeInt(entry == null ? -1 : entry.level);
+            record.writeInt(entry == null ? -1 : entry.node);
+            finishRecord();
+        }
+
+        void writeDeleted(int node) throws IOException {
+            record.writeByte(DELETED);
+            record.writeInt(node);
+            finishRecord();
+        }
+
+        private void finishRecord() throws IOException {
+            record.flush();
+            byte[] bytes = recordBytes.toByteArray();
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeInt((int) crc.getValue());
+            recordBytes.reset();
+        }
+
+        void sync() throws IOException {
+            out.flush();
+            file.getFD().sync();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -125,6 +125,14 @@ public interface GraphIndex extends AutoCloseable, Accountable {
          */
         NodesIterator getNeighborsIterator(int level, int node);
 
+        /**
+         * Hint that the neighbors of the given node are likely to be requested soon.  Views backed by
+         * slow storage may use this to start loading them in the background; this must not block.
+         * The default implementation does nothing.
+         */
+        default void prefetchNeighbors(int level, int node) {
+        }
+
         /**
          * This method is deprecated as most View usages should not need size.
          * Where they do, they could access the graph.
@@ -150,6 +158,14 @@ public interface GraphIndex extends AutoCloseable, Accountable {
         default int getIdUpperBound() {
             return size();
         }
+
+        /**
+         * @return the node to start searches filtered to the given label at, or -1 if the graph does not
+         *         record one.  Used by the label-filtered overload of {@link GraphSearcher}'s search.
+         */
+        default int labelEntryNode(int label) {
+            return -1;
+        }
     }
 
     /**
@@ -16,21 +16,26 @@
 
 package io.github.jbellis.jvector.graph;
 
+import io.github.jbellis.jvector.annotations.Experimental;
 import io.github.jbellis.jvector.annotations.VisibleForTesting;
 import io.github.jbellis.jvector.disk.RandomAccessReader;
 import io.github.jbellis.jvector.graph.GraphIndex.NodeAtLevel;
 import io.github.jbellis.jvector.graph.SearchResult.NodeScore;
+import io.github.jbellis.jvector.graph.diversity.LabelAwareDiversityProvider;
 import io.github.jbellis.jvector.graph.diversity.VamanaDiversityProvider;
 import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
 import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
 import io.github.jbellis.jvector.graph.similarity.SearchScoreProvider;
+import io.github.jbellis.jvector.util.BitSet;
 import io.github.jbellis.jvector.util.Bits;
 import io.github.jbellis.jvector.util.ExceptionUtils;
 import io.github.jbellis.jvector.util.ExplicitThreadLocal;
 import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.util.ThreadSafeGrowableBitSet;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
 import org.agrona.collections.IntArrayList;
+import org.agrona.collections.IntHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,11 +43,11 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.IntStream;
 
 import static io.github.jbellis.jvector.util.DocIdSetIterator.NO_MORE_DOCS;
@@ -59,18 +64,26 @@ import static java.lang.Math.*;
  */
 public class GraphIndexBuilder implements Closeable {
     private static final int BUILD_BATCH_SIZE = 50;
+    // how often removeDeletedNodes checks whether the insertions it is waiting for have completed
+    private static final long INSERTION_POLL_NANOS = 100_000;
 
     private static final Logger logger = LoggerFactory.getLogger(GraphIndexBuilder.class);
 
     private final int beamWidth;
     private final ExplicitThreadLocal<NodeArray> naturalScratch;
     private final ExplicitThreadLocal<NodeArray> concurrentScratch;
+    // used when repairing the neighborhoods of deleted nodes
+    private final ExplicitThreadLocal<NodeArray> repairCandidateScratch;
+    private final ExplicitThreadLocal<IntHashSet> repairSeenScratch;
 
     private final int dimension;
     private final float neighborOverflow;
     private final float alpha;
     private final boolean addHierarchy;
     private final boolean refineFinalGraph;
+    private final boolean offHeapAdjacency;
+    // null unless building a label-aware graph
+    private final NodeLabels labels;
 
     @VisibleForTesting
     final OnHeapGraphIndex graph;
@@ -300,6 +313,118 @@ public class GraphIndexBuilder implements Closeable {
                              boolean refineFinalGraph,
                              ForkJoinPool simdExecutor,
                              ForkJoinPool parallelExecutor)
+    {
+        this(scoreProvider, dimension, maxDegrees, beamWidth, neighborOverflow, alpha, addHierarchy, refineFinalGraph, simdExecutor, parallelExecutor, false);
+    }
+
+    /**
+     * Reads all the vectors from vector values, builds a graph connecting them by their dense
+     * ordinals, using the given hyperparameter settings, and returns the resulting graph.
+     * By default, refineFinalGraph = true.
+     * <p>
+     * The graph is built to also serve searches filtered to one of the given labels; see
+     * {@link #GraphIndexBuilder(BuildScoreProvider, int, List, int, float, float, boolean, boolean, ForkJoinPool, ForkJoinPool, boolean, NodeLabels)}.
+     *
+     * @param labels           the labels of each node
+     */
+    @Experimental
+    public GraphIndexBuilder(RandomAccessVectorValues vectorValues,
+                             VectorSimilarityFunction similarityFunction,
+                             int M,
+                             int beamWidth,
+                             float neighborOverflow,
+                             float alpha,
+                             boolean addHierarchy,
+                             NodeLabels labels)
+    {
+        this(BuildScoreProvider.randomAccessScoreProvider(vectorValues, similarityFunction),
+                vectorValues.dimension(),
+                List.of(M),
+                beamWidth,
+                neighborOverflow,
+                alpha,
+                addHierarchy,
+                true,
+                PhysicalCoreExecutor.pool(),
+                ForkJoinPool.commonPool(),
+                false,
+                labels);
+    }
+
+    /**
+     * Reads all the vectors from vector values, builds a graph connecting them by their dense
+     * ordinals, using the given hyperparameter settings, and returns the resulting graph.
+     *
+     * @param scoreProvider    describes how to determine the similarities between vectors
+     * @param maxDegrees       the maximum number of connections a node can have in each layer; if fewer entries
+     *                         are specified than the number of layers, the last entry is used for all remaining layers.
+     * @param beamWidth        the size of the beam search to use when finding nearest neighbors.
+     * @param neighborOverflow the ratio of extra neighbors to allow temporarily when inserting a
+     *                         node. larger values will build more efficiently, but use more memory.
+     * @param alpha            how aggressive pruning diverse neighbors should be.  Set alpha &gt; 1.0 to
+     *                         allow longer edges.  If alpha = 1.0 then the equivalent of the lowest level of
+     *                         an HNSW graph will be created, which is usually not what you want.
+     * @param addHierarchy     whether we want to add an HNSW-style hierarchy on top of the Vamana index.
+     * @param refineFinalGraph whether we do a second pass over each node in the graph to refine its connections
+     * @param simdExecutor     ForkJoinPool instance for SIMD operations, best is to use a pool with the size of
+     *                         the number of physical cores.
+     * @param parallelExecutor ForkJoinPool instance for parallel stream operations
+     * @param offHeapAdjacency (Experimental!) whether to keep the neighbors of the base layer off-heap, in
+     *                         fixed-size records, instead of as a few heap objects per node.  This greatly reduces
+     *                         heap use and GC work when building very large graphs, at some cost in speed.
+     */
+    @Experimental
+    public GraphIndexBuilder(BuildScoreProvider scoreProvider,
+                             int dimension,
+                             List<Integer> maxDegrees,
+                             int beamWidth,
+                             float neighborOverflow,
+                             float alpha,
+                             boolean addHierarchy,
+                             boolean refineFinalGraph,
+                             ForkJoinPool simdExecutor,
+                             ForkJoinPool parallelExecutor,
+                             boolean offHeapAdjacency)
+    {
+        this(scoreProvider, dimension, maxDegrees, beamWidth, neighborOverflow, alpha, addHierarchy, refineFinalGraph, simdExecutor, parallelExecutor, offHeapAdjacency, null);
+    }
+
+    /**
+     * Reads all the vectors from vector values, builds a graph connecting them by their dense
+     * ordinals, using the given hyperparameter settings, and returns the resulting graph.
+     * <p>
+     * If `labels` is not null, the graph is built as described in "Filtered-DiskANN: Graph Algorithms for
+     * Approximate Nearest Neighbor Search with Filters" (Filtered-Vamana), so that searches restricted to the
+     * nodes with a given label stay navigable even when that label is rare:
+     * <ul>
+     *   <li>each new node is also linked to its nearest neighbors among the nodes sharing one of its labels,
+     *       found by a second layer 0 search that starts from the entry nodes of its labels;</li>
+     *   <li>neighbor lists are pruned with {@link LabelAwareDiversityProvider}, which does not let a neighbor
+     *       prune an edge that a search filtered to one of the node's labels would need, and fills half of the
+     *       degree with nodes sharing a label first;</li>
+     *   <li>the graph records an entry node per label (the first node inserted with it, replaced when that
+     *       node is removed), for {@link GraphSearcher}'s label-filtered search.  Write them to disk with
+     *       the {@link io.github.jbellis.jvector.graph.disk.feature.LabelEntryPoints} feature.</li>
+     * </ul>
+     * The second search roughly doubles the cost of inserting a node that has labels.
+     *
+     * @param offHeapAdjacency (Experimental!) whether to keep the neighbors of the base layer off-heap
+     * @param labels           the labels of each node, or null to build a graph that ignores labels
+     * @see #GraphIndexBuilder(BuildScoreProvider, int, List, int, float, float, boolean, boolean, ForkJoinPool, ForkJoinPool, boolean)
+     */
+    @Experimental
+    public GraphIndexBuilder(BuildScoreProvider scoreProvider,
+                             int dimension,
+                             List<Integer> maxDegrees,
+                             int beamWidth,
+                             float neighborOverflow,
+                             float alpha,
+                             boolean addHierarchy,
+                             boolean refineFinalGraph,
+                             ForkJoinPool simdExecutor,
+                             ForkJoinPool parallelExecutor,
+                             boolean offHeapAdjacency,
+                             NodeLabels labels)
     {
         if (maxDegrees.stream().anyMatch(i -> i <= 0)) {
             throw new IllegalArgumentException("layer degrees must be positive");
@@ -323,11 +448,16 @@ public class GraphIndexBuilder implements Closeable {
         this.alpha = alpha;
         this.addHierarchy = addHierarchy;
         this.refineFinalGraph = refineFinalGraph;
+        this.offHeapAdjacency = offHeapAdjacency;
+        this.labels = labels;
         this.beamWidth = beamWidth;
         this.simdExecutor = simdExecutor;
         this.parallelExecutor = parallelExecutor;
 
-        this.graph = new OnHeapGraphIndex(maxDegrees, neighborOverflow, new VamanaDiversityProvider(scoreProvider, alpha), BUILD_BATCH_SIZE);
+        var diversityProvider = labels == null
+                ? new VamanaDiversityProvider(scoreProvider, alpha)
+                : new LabelAwareDiversityProvider(scoreProvider, alpha, labels);
+        this.graph = new OnHeapGraphIndex(maxDegrees, neighborOverflow, diversityProvider, BUILD_BATCH_SIZE, offHeapAdjacency);
         this.searchers = ExplicitThreadLocal.withInitial(() -> {
             var gs = new GraphSearcher(graph);
             gs.usePruning(false);
@@ -337,6 +467,8 @@ public class GraphIndexBuilder implements Closeable {
         // in scratch we store candidates in reverse order: worse candidates are first
         this.naturalScratch = ExplicitThreadLocal.withInitial(() -> new NodeArray(max(beamWidth, graph.maxDegree() + 1)));
         this.concurrentScratch = ExplicitThreadLocal.withInitial(() -> new NodeArray(max(beamWidth, graph.maxDegree() + 1)));
+        this.repairCandidateScratch = ExplicitThreadLocal.withInitial(() -> new NodeArray(graph.maxDegree()));
+        this.repairSeenScratch = ExplicitThreadLocal.withInitial(IntHashSet::new);
 
         this.rng = new Random(0);
     }
@@ -352,7 +484,9 @@ public class GraphIndexBuilder implements Closeable {
                 other.addHierarchy,
                 other.refineFinalGraph,
                 other.simdExecutor,
-                other.parallelExecutor);
+                other.parallelExecutor,
+                other.offHeapAdjacency,
+                other.labels);
 
         // Copy each node and its neighbors from the old graph to the new one
         other.parallelExecutor.submit(() -> {
@@ -387,6 +521,7 @@ public class GraphIndexBuilder implements Closeable {
 
         // Set the entry node
         newBuilder.graph.updateEntryNode(other.graph.entry());
+        other.graph.getLabelEntryNodes().forEach(newBuilder.graph::updateLabelEntryNode);
 
         return newBuilder;
     }
@@ -560,7 +695,8 @@ public class GraphIndexBuilder implements Closeable {
             var naturalScratchPooled = naturalScratch.get();
             var concurrentScratchPooled = concurrentScratch.get();
 
-            var bits = new ExcludingBits(nodeLevel.node);
+            // never link to deleted nodes, which removeDeletedNodes may be about to remove
+            var bits = Bits.intersectionOf(new ExcludingBits(nodeLevel.node), gs.getView().liveNodes());
             var entry = graph.entry();
             SearchResult result;
             if (entry == null) {
@@ -590,9 +726,19 @@ public class GraphIndexBuilder implements Closeable {
                 result = gs.resume(beamWidth, beamWidth, 0.0f, 0.0f);
             }
 
-            updateNeighborsOneLayer(0, nodeLevel.node, result.getNodes(), naturalScratchPooled, inProgressBefore, concurrentScratchPooled, searchScoreProvider);
+            var naturalCandidates = result.getNodes();
+            int[] nodeLabels = labels == null ? null : labels.labelsOf(nodeLevel.node);
+            if (nodeLabels != null && nodeLabels.length > 0) {
+                naturalCandidates = addLabelCandidates(gs, searchScoreProvider, nodeLabels, bits, naturalCandidates);
+            }
+            updateNeighborsOneLayer(0, nodeLevel.node, naturalCandidates, naturalScratchPooled, inProgressBefore, concurrentScratchPooled, searchScoreProvider);
 
             graph.markComplete(nodeLevel);
+            if (nodeLabels != null) {
+                for (int label : nodeLabels) {
+                    graph.addLabelEntryNode(label, nodeLevel.node);
+                }
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
@@ -602,6 +748,50 @@ public class GraphIndexBuilder implements Closeable {
         return IntStream.range(0, nodeLevel.level).mapToLong(graph::ramBytesUsedOneNode).sum();
     }
 
+    /**
+     * Searches layer 0 for the nearest nodes that share a label with the new node, starting from the entry nodes
+     * of its labels, and merges them into `candidates`.  Nodes with a rare label are unlikely to be among the
+     * unfiltered nearest neighbors, so without this a search filtered to that label could not reach them.
+     */
+    private NodeScore[] addLabelCandidates(GraphSearcher gs, SearchScoreProvider ssp, int[] nodeLabels, Bits bits, NodeScore[] candidates) {
+        int firstEntry = -1;
+        for (int label : nodeLabels) {
+            firstEntry = graph.getLabelEntryNode(label);
+            if (firstEntry >= 0) {
+                break;
+            }
+        }
+        if (firstEntry < 0) {
+            // no completed node has any of these labels yet
+            return candidates;
+        }
+
+        Bits sharesLabel = i -> NodeLabels.intersects(nodeLabels, labels.labelsOf(i));
+        gs.initializeInternal(ssp, new NodeAtLevel(0, firstEntry), Bits.intersectionOf(bits, sharesLabel));
+        for (int label : nodeLabels) {
+            gs.addEntryPoint(graph.getLabelEntryNode(label));
+        }
+        var labelCandidates = gs.resume(beamWidth, beamWidth, 0.0f, 0.0f).getNodes();
+        if (labelCandidates.length == 0) {
+            return candidates;
+        }
+
+        var merged = Arrays.copyOf(candidates, candidates.length + labelCandidates.length);
+        int n = candidates.length;
+        var seen = new IntHashSet();
+        for (var ns : candidates) {
+            seen.add(ns.node);
+        }
+        for (var ns : labelCandidates) {
+            if (seen.add(ns.node)) {
+                merged[n++] = ns;
+            }
+        }
+        merged = Arrays.copyOf(merged, n);
+        Arrays.sort(merged);
+        return merged;
+    }
+
     private void updateNeighborsOneLayer(int layer, int node, NodeScore[] neighbors, NodeArray naturalScratchPooled, ConcurrentSkipListSet<NodeAtLevel> inProgressBefore, NodeArray concurrentScratchPooled, SearchScoreProvider ssp) {
         // Update neighbors with these candidates.
         // The DiskANN paper calls for using the entire set of visited nodes along the search path as
@@ -625,92 +815,71 @@ public class GraphIndexBuilder implements Closeable {
 
     /**
      * Remove nodes marked for deletion from the graph, and update neighbor lists
-     * to maintain connectivity.  Not threadsafe with respect to other modifications;
-     * the `synchronized` flag only prevents concurrent calls to this method.
+     * to maintain connectivity.  Processes every deleted node in one pass; see
+     * {@link #removeDeletedNodes(int)} to bound the work done per call.
      *
      * @return approximate size of memory no longer used
      */
-    public synchronized long removeDeletedNodes() {
-        // Take a snapshot of the nodes to delete
-        var toDelete = graph.getDeletedNodes().copy();
-        var nRemoved = toDelete.cardinality();
+    public long removeDeletedNodes() {
+        return removeDeletedNodes(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Remove up to `maxNodes` of the nodes marked for deletion from the graph, and update neighbor lists
+     * to maintain connectivity.  Nodes that are not removed by this call stay marked for deletion, so calling
+     * this repeatedly (e.g. from a background thread) consolidates deletions incrementally.
+     * <p>
+     * Safe to call concurrently with `addGraphNode`: nodes are removed only after every insertion that was
+     * in progress when they were selected has completed, and insertions never link to nodes already
+     * marked for deletion.  Concurrent calls to this method are serialized.
+     * <p>
+     * Each call scans the adjacency lists of the whole graph once per layer to find the edges into the
+     * removed nodes, so `maxNodes` should be large enough to amortize that scan, while small enough that
+     * the neighborhoods repaired per call are a bounded amount of work.
+     *
+     * @return approximate size of memory no longer used
+     */
+    public synchronized long removeDeletedNodes(int maxNodes) {
+        if (maxNodes <= 0) {
+            throw new IllegalArgumentException("maxNodes must be positive");
+        }
+
+        // Select the batch.  Its nodes are already marked deleted, so insertions that start from now on
+        // will not link to them
+        var toDelete = new ThreadSafeGrowableBitSet(0);
+        var deletedNodes = graph.getDeletedNodes();
+        int nRemoved = 0;
+        for (int i = deletedNodes.nextSetBit(0); i != NO_MORE_DOCS && nRemoved < maxNodes; i = deletedNodes.nextSetBit(i + 1)) {
+            toDelete.set(i);
+            nRemoved++;
+        }
         if (nRemoved == 0) {
             return 0;
         }
 
+        // but insertions already in progress may have chosen them as neighbors before they were deleted
+        awaitInsertions(insertionsInProgress.clone());
+
         for (int currentLevel = 0; currentLevel < graph.layers.size(); currentLevel++) {
             final int level = currentLevel;  // Create effectively final copy for lambda
-            // Compute new edges to insert.  If node j is deleted, we add edges (i, k)
-            // whenever (i, j) and (j, k) are directed edges in the current graph.  This
-            // strategy is proposed in "FreshDiskANN: A Fast and Accurate Graph-Based
-            // ANN Index for Streaming Similarity Search" section 4.2.
-            var newEdges = new ConcurrentHashMap<Integer, Set<Integer>>(); // new edges for key k are values v
-            parallelExecutor.submit(() -> {
-                IntStream.range(0, graph.getIdUpperBound()).parallel().forEach(i -> {
-                    if (toDelete.get(i)) {
-                        return;
-                    }
-                    for (var it = graph.getNeighborsIterator(level, i); it.hasNext(); ) {
-                        var j = it.nextInt();
-                        if (toDelete.get(j)) {
-                            var newEdgesForI = newEdges.computeIfAbsent(i, __ -> ConcurrentHashMap.newKeySet());
-                            for (var jt = graph.getNeighborsIterator(level, j); jt.hasNext(); ) {
-                                int k = jt.nextInt();
-                                if (i != k && !toDelete.get(k)) {
-                                    newEdgesForI.add(k);
-                                }
-                            }
-                        }
-                    }
-                });
-            }).join();
-
-            // Remove deleted nodes from neighbors lists;
-            // Score the new edges, and connect the most diverse ones as neighbors
+            // If node j is deleted, we add edges (i, k) whenever (i, j) and (j, k) are directed edges
+            // in the current graph.  This strategy is proposed in "FreshDiskANN: A Fast and Accurate
+            // Graph-Based ANN Index for Streaming Similarity Search" section 4.2.
+            // The neighbors of deleted nodes are not modified, so each node can be repaired as soon as
+            // its new edges are known, without collecting the new edges of the whole graph first.
             simdExecutor.submit(() -> {
-                newEdges.entrySet().stream().parallel().forEach(e -> {
-                    // turn the new edges into a NodeArray
-                    int node = e.getKey();
-                    // each deleted node has ALL of its neighbors added as candidates, so using approximate
-                    // scoring and then re-scoring only the best options later makes sense here
-                    var sf = scoreProvider.searchProviderFor(node).scoreFunction();
-                    var candidates = new NodeArray(graph.getDegree(level));
-                    for (var k : e.getValue()) {
-                        candidates.insertSorted(k, sf.similarityTo(k));
-                    }
-
-                    // it's unlikely, but possible, that all the potential replacement edges were to nodes that have also
-                    // been deleted.  if that happens, keep the graph connected by adding random edges.
-                    // (this is overly conservative -- really what we care about is that the end result of
-                    // replaceDeletedNeighbors not be empty -- but we want to avoid having the node temporarily
-                    // neighborless while concurrent searches run.  empirically, this only results in a little extra work.)
-                    if (candidates.size() == 0) {
-                        var R = ThreadLocalRandom.current();
-                        // doing actual sampling-without-replacement is expensive so we'll loop a fixed number of times instead
-                        for (int i = 0; i < 2 * graph.getDegree(level); i++) {
-                            int randomNode = R.nextInt(graph.getIdUpperBound());
-                            while(toDelete.get(randomNode)) {
-                                randomNode = R.nextInt(graph.getIdUpperBound());
-                            }
-                            if (randomNode != node && !candidates.contains(randomNode) && graph.layers.get(level).contains(randomNode)) {
-                                float score = sf.similarityTo(randomNode);
-                                candidates.insertSorted(randomNode, score);
-                            }
-                            if (candidates.size() == graph.getDegree(level)) {
-                                break;
-                            }
-                        }
+                IntStream.range(0, graph.getIdUpperBound()).parallel().forEach(i -> {
+                    if (!toDelete.get(i)) {
+                        replaceDeletedNeighbors(level, i, toDelete);
                     }
-
-                    // remove edges to deleted nodes and add the new connections, maintaining diversity
-                    graph.layers.get(level).replaceDeletedNeighbors(node, toDelete, candidates);
                 });
             }).join();
         }
 
         // Generally we want to keep entryPoint update and node removal distinct, because both can be expensive,
         // but if the entry point was deleted then we have no choice
-        if (toDelete.get(graph.entry().node)) {
+        var entry = graph.entry();
+        if (entry != null && toDelete.get(entry.node)) {
             // pick a random node at the top layer
             int newLevel = graph.getMaxLevel();
             int newEntry = -1;
@@ -728,6 +897,9 @@ public class GraphIndexBuilder implements Closeable {
 
             graph.updateEntryNode(newEntry >= 0 ? new NodeAtLevel(newLevel, newEntry) : null);
         }
+        if (labels != null) {
+            replaceDeletedLabelEntryNodes(toDelete);
+        }
 
         long memorySize = 0;
 
@@ -742,6 +914,106 @@ public class GraphIndexBuilder implements Closeable {
         return memorySize;
     }
 
+    /**
+     * Replaces the entry nodes of labels whose entry node is about to be removed with another node carrying
+     * the label, or forgets them if no other node has it
+     */
+    private void replaceDeletedLabelEntryNodes(BitSet toDelete) {
+        var orphaned = new IntHashSet();
+        graph.getLabelEntryNodes().forEach((label, node) -> {
+            if (toDelete.get(node)) {
+                orphaned.add(label);
+            }
+        });
+        if (orphaned.isEmpty()) {
+            return;
+        }
+
+        var deletedNodes = graph.getDeletedNodes();
+        for (int i = 0; i < graph.getIdUpperBound() && !orphaned.isEmpty(); i++) {
+            if (!graph.containsNode(i) || deletedNodes.get(i)) {
+                continue;
+            }
+            for (int label : labels.labelsOf(i)) {
+                if (orphaned.remove(label)) {
+                    graph.updateLabelEntryNode(label, i);
+                }
+            }
+        }
+        for (var it = orphaned.iterator(); it.hasNext(); ) {
+            graph.updateLabelEntryNode(it.nextValue(), -1);
+        }
+    }
+
+    /**
+     * Waits for the given insertions to complete
+     */
+    private void awaitInsertions(Set<NodeAtLevel> insertions) {
+        for (var nodeLevel : insertions) {
+            while (insertionsInProgress.contains(nodeLevel)) {
+                LockSupport.parkNanos(INSERTION_POLL_NANOS);
+            }
+        }
+    }
+
+    /**
+     * If `node` has neighbors in `toDelete` at `level`, replaces them with the best of their own neighbors
+     */
+    private void replaceDeletedNeighbors(int level, int node, BitSet toDelete) {
+        var seen = repairSeenScratch.get();
+        seen.clear();
+        ScoreFunction sf = null;
+        NodeArray candidates = null;
+        for (var it = graph.getNeighborsIterator(level, node); it.hasNext(); ) {
+            var j = it.nextInt();
+            if (!toDelete.get(j)) {
+                continue;
+            }
+            if (candidates == null) {
+                // each deleted node has ALL of its neighbors added as candidates, so using approximate
+                // scoring and then re-scoring only the best options later makes sense here
+                sf = scoreProvider.searchProviderFor(node).scoreFunction();
+                candidates = repairCandidateScratch.get();
+                candidates.clear();
+            }
+            for (var jt = graph.getNeighborsIterator(level, j); jt.hasNext(); ) {
+                int k = jt.nextInt();
+                if (k != node && !toDelete.get(k) && seen.add(k)) {
+                    candidates.insertSorted(k, sf.similarityTo(k));
+                }
+            }
+        }
+        if (candidates == null) {
+            return;
+        }
+
+        // it's unlikely, but possible, that all the potential replacement edges were to nodes that have also
+        // been deleted.  if that happens, keep the graph connected by adding random edges.
+        // (this is overly conservative -- really what we care about is that the end result of
+        // replaceDeletedNeighbors not be empty -- but we want to avoid having the node temporarily
+        // neighborless while concurrent searches run.  empirically, this only results in a little extra work.)
+        if (candidates.size() == 0) {
+            var R = ThreadLocalRandom.current();
+            // doing actual sampling-without-replacement is expensive so we'll loop a fixed number of times instead
+            for (int i = 0; i < 2 * graph.getDegree(level); i++) {
+                int randomNode = R.nextInt(graph.getIdUpperBound());
+                while(toDelete.get(randomNode)) {
+                    randomNode = R.nextInt(graph.getIdUpperBound());
+                }
+                if (randomNode != node && !candidates.contains(randomNode) && graph.layers.get(level).contains(randomNode)) {
+                    float score = sf.similarityTo(randomNode);
+                    candidates.insertSorted(randomNode, score);
+                }
+                if (candidates.size() == graph.getDegree(level)) {
+                    break;
+                }
+            }
+        }
+
+        // remove edges to deleted nodes and add the new connections, maintaining diversity
+        graph.layers.get(level).replaceDeletedNeighbors(node, toDelete, candidates);
+    }
+
     private void updateNeighbors(int layer, int nodeId, NodeArray natural, NodeArray concurrent) {
         // if either natural or concurrent is empty, skip the merge
         NodeArray toMerge;
@@ -773,7 +1045,7 @@ public class GraphIndexBuilder implements Closeable {
     {
         scratch.clear();
         for (NodeAtLevel n : inProgress) {
-            if (n.node == newNode || n.level < layer) {
+            if (n.node == newNode || n.level < layer || graph.getDeletedNodes().get(n.node)) {
                 continue;
             }
             scratch.insertSorted(n.node, scoreFunction.similarityTo(n.node));
@@ -819,6 +1091,27 @@ public class GraphIndexBuilder implements Closeable {
             version = in.readInt();
             loadV4(in);
         }
+        restoreLabelEntryNodes();
+    }
+
+    /**
+     * Picks an entry node for each label among the nodes in the graph, for a graph that was loaded or
+     * recovered rather than built by this builder.  Entry nodes are not saved with an on-heap graph: any
+     * node carrying a label can serve as its entry, since construction linked it to the rest of the label.
+     */
+    void restoreLabelEntryNodes() {
+        if (labels == null) {
+            return;
+        }
+        var deletedNodes = graph.getDeletedNodes();
+        for (int i = 0; i < graph.getIdUpperBound(); i++) {
+            if (!graph.containsNode(i) || deletedNodes.get(i)) {
+                continue;
+            }
+            for (int label : labels.labelsOf(i)) {
+                graph.addLabelEntryNode(label, i);
+            }
+        }
     }
 
     private void loadV4(RandomAccessReader in) throws IOException {
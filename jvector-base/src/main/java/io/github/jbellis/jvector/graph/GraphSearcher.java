@@ -29,6 +29,8 @@ import io.github.jbellis.jvector.graph.GraphIndex.NodeAtLevel;
 import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
 import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
 import io.github.jbellis.jvector.graph.similarity.SearchScoreProvider;
+import io.github.jbellis.jvector.util.ArrayUtil;
+import io.github.jbellis.jvector.util.BitSet;
 import io.github.jbellis.jvector.util.Bits;
 import io.github.jbellis.jvector.util.BoundedLongHeap;
 import io.github.jbellis.jvector.util.GrowableLongHeap;
@@ -40,6 +42,9 @@ import org.agrona.collections.IntHashSet;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 /**
@@ -47,8 +52,30 @@ import java.io.IOException;
  * search algorithm, see {@link GraphIndex}.
  */
 public class GraphSearcher implements Closeable {
-    private boolean pruneSearch;
+    // the maximum number of neighbor lists that searchBatch will retain for re-use across the queries in a batch
+    private static final int BATCH_NEIGHBOR_CACHE_SIZE = 1 << 16;
+    // the number of ordinals sampled to estimate the selectivity of a filter that cannot count itself
+    private static final int SELECTIVITY_SAMPLES = 1024;
+    // below this many accepted neighbors per node on average, the accepted nodes stop forming a navigable subgraph
+    private static final int TWO_HOP_MIN_ACCEPTED_NEIGHBORS = 8;
+    private static final double GOLDEN_RATIO_FRACTION = 0.6180339887498949;
 
+    private boolean pruneSearch;
+    private boolean adaptiveFiltering;
+    private int prefetchDepth;
+    private int[] prefetchScratch;
+    // the unvisited neighbors of the node being expanded, and their scores
+    private int[] neighborScratch;
+    private float[] scoreScratch;
+    // the neighbors of the node being expanded, copied so that two-hop expansion can read their own neighbors
+    private int[] hopScratch;
+    // shared with searches of other indexes for the same query; null when searching a single index
+    private SearchBounds searchBounds;
+    // the traversal floor is not applied until the search has found this many results of its own
+    private int searchBoundsMinResults;
+
+    // null if this searcher was created from a View, which rules out brute force
+    private final GraphIndex graph;
     private GraphIndex.View view;
 
     // Scratch data structures that are used in each {@link #searchInternal} call. These can be expensive
@@ -63,6 +90,7 @@ public class GraphSearcher implements Closeable {
     private Bits acceptOrds;
     private SearchScoreProvider scoreProvider;
     private CachingReranker cachingReranker;
+    private SearchResult.FilterStrategy filterStrategy;
 
     private int visitedCount;
     private int expandedCount;
@@ -72,10 +100,11 @@ public class GraphSearcher implements Closeable {
      * Creates a new graph searcher from the given GraphIndex
      */
     public GraphSearcher(GraphIndex graph) {
-        this(graph.getView());
+        this(graph, graph.getView());
     }
 
-    private GraphSearcher(GraphIndex.View view) {
+    private GraphSearcher(GraphIndex graph, GraphIndex.View view) {
+        this.graph = graph;
         this.view = view;
         this.candidates = new NodeQueue(new GrowableLongHeap(100), NodeQueue.Order.MAX_HEAP);
         this.evictedResults = new NodesUnsorted(100);
@@ -83,6 +112,11 @@ public class GraphSearcher implements Closeable {
         this.rerankedResults = new NodeQueue(new BoundedLongHeap(100), NodeQueue.Order.MIN_HEAP);
         this.visited = new IntHashSet();
         this.pruneSearch = true;
+        this.prefetchScratch = new int[0];
+        this.neighborScratch = new int[32];
+        this.scoreScratch = new float[32];
+        this.hopScratch = new int[32];
+        this.filterStrategy = SearchResult.FilterStrategy.GRAPH;
     }
 
     private void initializeScoreProvider(SearchScoreProvider scoreProvider) {
@@ -108,6 +142,53 @@ public class GraphSearcher implements Closeable {
         pruneSearch = usage;
     }
 
+    /**
+     * Shares score bounds with the searches of other indexes for the same query, or stops sharing if null.
+     * See {@link MultiIndexSearcher}.
+     */
+    void setSearchBounds(SearchBounds searchBounds) {
+        this.searchBounds = searchBounds;
+    }
+
+    /**
+     * When prefetching, each time the searcher expands a candidate it first hints to the View that the
+     * neighbors of the next `depth` best candidates will be needed soon, so that Views backed by slow storage
+     * can load them while the current candidate's neighbors are being scored.  This helps when the index
+     * does not fit in the page cache, and is pure overhead when it does.  Set to 0 (the default) to disable.
+     * <p>
+     * Whether the hints have any effect depends on the View; for OnDiskGraphIndex it depends on the
+     * RandomAccessReader, see e.g. {@link io.github.jbellis.jvector.disk.MappedChunkReader.Supplier}.
+     * @param depth the number of upcoming candidates to prefetch
+     */
+    public void usePrefetching(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("prefetch depth must be non-negative");
+        }
+        prefetchDepth = depth;
+        // +1 because the first peeked node is the one we are about to expand
+        prefetchScratch = new int[depth + 1];
+    }
+
+    /**
+     * With adaptive filtering, each search whose acceptOrds is not {@link Bits#ALL} first estimates the fraction
+     * of nodes the filter accepts (exactly for a {@link BitSet}, otherwise by sampling), and picks one of the
+     * {@link SearchResult.FilterStrategy strategies} reported by {@link SearchResult#getFilterStrategy()}:
+     * <ul>
+     * <li>BRUTE_FORCE, when scoring every accepted node is expected to be cheaper than searching the graph,
+     * whose cost grows with the inverse of the selectivity.  Not available to searchers created from a View.
+     * <li>TWO_HOP, when too few of each node's neighbors are accepted for the accepted nodes to be navigable
+     * on their own.  Rejected neighbors are not scored; their accepted neighbors are scored instead.
+     * Not used with score functions that load scores along with the edges, like FusedADC.
+     * <li>GRAPH, the usual search, otherwise.
+     * </ul>
+     * This bounds the work a search does at any selectivity, so the caller no longer needs to ensure that there
+     * are enough acceptable nodes.  Disabled by default, in which case every search uses GRAPH.
+     * @param usage whether to adapt the search to the selectivity of acceptOrds
+     */
+    public void useAdaptiveFiltering(boolean usage) {
+        adaptiveFiltering = usage;
+    }
+
     /**
      * Convenience function for simple one-off searches.  It is caller's responsibility to make sure that it
      * is the unique owner of the vectors instance passed in here.
@@ -163,7 +244,7 @@ public class GraphSearcher implements Closeable {
         }
 
         public GraphSearcher build() {
-            return new GraphSearcher(view);
+            return new GraphSearcher(null, view);
         }
     }
 
@@ -172,6 +253,9 @@ public class GraphSearcher implements Closeable {
      * @param topK            the number of results to look for. With threshold=0, the search will continue until at least
      *                        `topK` results have been found, or until the entire graph has been searched.
      * @param rerankK         the number of (approximately-scored) results to rerank before returning the best `topK`.
+     *                        If the primary score function is a {@link ScoreFunction.BoundedApproximateScoreFunction},
+     *                        this is an upper bound: reranking stops once the remaining candidates' upper bounds
+     *                        cannot reach the topK, and {@link SearchResult#getRerankedCount()} reports how many were reranked.
      * @param threshold       the minimum similarity (0..1) to accept; 0 will accept everything. May be used
      *                        with a large topK to find (approximately) all nodes above the given threshold.
      *                        If threshold > 0 then the search will stop when it is probabilistically unlikely
@@ -185,7 +269,8 @@ public class GraphSearcher implements Closeable {
      * @param acceptOrds      a Bits instance indicating which nodes are acceptable results.
      *                        If {@link Bits#ALL}, all nodes are acceptable.
      *                        It is caller's responsibility to ensure that there are enough acceptable nodes
-     *                        that we don't search the entire graph trying to satisfy topK.
+     *                        that we don't search the entire graph trying to satisfy topK, unless
+     *                        {@link #useAdaptiveFiltering adaptive filtering} is enabled.
      * @return a SearchResult containing the topK results and the number of nodes visited during the search.
      */
     @Experimental
@@ -196,7 +281,43 @@ public class GraphSearcher implements Closeable {
                                float rerankFloor,
                                Bits acceptOrds)
     {
-        NodeAtLevel entry = view.entryNode();
+        return search(scoreProvider, topK, rerankK, threshold, rerankFloor, acceptOrds, view.entryNode(), -1);
+    }
+
+    /**
+     * Searches for the nearest neighbors among the nodes with the given label, in a graph built with
+     * {@link NodeLabels}.  The layer 0 search starts from the label's entry node (see
+     * {@link GraphIndex.View#labelEntryNode}) as well as from the node found by descending the upper layers,
+     * so that it finds nodes carrying a rare label even when none of them is close to the global entry point.
+     * If the graph has no entry node for the label, this is the same as the search without a label.
+     * <p>
+     * Labels are not stored with the graph, so `acceptOrds` must still accept only the nodes with the label
+     * (or a subset of them).
+     *
+     * @param label the label that `acceptOrds` restricts the results to
+     * @see #search(SearchScoreProvider, int, int, float, float, Bits)
+     */
+    @Experimental
+    public SearchResult search(SearchScoreProvider scoreProvider,
+                               int topK,
+                               int rerankK,
+                               float threshold,
+                               float rerankFloor,
+                               Bits acceptOrds,
+                               int label)
+    {
+        return search(scoreProvider, topK, rerankK, threshold, rerankFloor, acceptOrds, view.entryNode(), view.labelEntryNode(label));
+    }
+
+    private SearchResult search(SearchScoreProvider scoreProvider,
+                                int topK,
+                                int rerankK,
+                                float threshold,
+                                float rerankFloor,
+                                Bits acceptOrds,
+                                NodeAtLevel entry,
+                                int labelEntry)
+    {
         if (acceptOrds == null) {
             throw new IllegalArgumentException("Use MatchAllBits to indicate that all ordinals are accepted, instead of null");
         }
@@ -209,6 +330,20 @@ public class GraphSearcher implements Closeable {
         }
 
         initializeInternal(scoreProvider, entry, acceptOrds);
+        if (adaptiveFiltering && !(acceptOrds instanceof Bits.MatchAllBits)) {
+            filterStrategy = chooseFilterStrategy(acceptOrds, rerankK, entry);
+            if (filterStrategy == SearchResult.FilterStrategy.BRUTE_FORCE) {
+                scoreAllAccepted();
+                return resume(topK, rerankK, threshold, rerankFloor);
+            }
+        }
+        if (labelEntry >= 0 && filterStrategy == SearchResult.FilterStrategy.GRAPH
+            && !scoreProvider.scoreFunction().supportsEdgeLoadingSimilarity())
+        {
+            // label-aware graphs keep the nodes with each label connected to each other, so there is no need to
+            // wander through the nodes without the label (two-hop expansion still steps over the few that are needed)
+            filterStrategy = SearchResult.FilterStrategy.TWO_HOP;
+        }
 
         // Move downward from entry.level to 1
         for (int lvl = entry.level; lvl > 0; lvl--) {
@@ -217,6 +352,7 @@ public class GraphSearcher implements Closeable {
             assert approximateResults.size() == 1 : approximateResults.size();
             setEntryPointsFromPreviousLayer();
         }
+        addEntryPoint(labelEntry);
 
         // Now do the main search at layer 0
         return resume(topK, rerankK, threshold, rerankFloor);
@@ -261,6 +397,65 @@ public class GraphSearcher implements Closeable {
         return search(scoreProvider, topK, 0.0f, acceptOrds);
     }
 
+    /**
+     * Experimental!
+     * <p>
+     * Searches for the nearest neighbors of each of the given queries.  This is equivalent to calling
+     * {@link #search(SearchScoreProvider, int, int, float, float, Bits)} once per query, but the queries
+     * share this searcher's scratch space (visited set, candidate queues) and, for graphs whose adjacency
+     * is not already held in memory, the neighbor lists read while searching earlier queries in the batch.
+     * Queries against the same index tend to converge on the same hubs and upper-layer nodes, so later
+     * queries in the batch mostly expand neighbor lists that have already been read.
+     * <p>
+     * Each query still descends the upper layers on its own: the neighbor reads are shared, but the
+     * scoring is not, so the results are exactly those of the single-query search.
+     * <p>
+     * The parameters are the same as for the single-query search, and are applied to every query.
+     * It is NOT valid to call `resume` after `searchBatch`.
+     *
+     * @param scoreProviders one SearchScoreProvider per query
+     * @return one SearchResult per query, in the same order as `scoreProviders`
+     */
+    @Experimental
+    public List<SearchResult> searchBatch(List<? extends SearchScoreProvider> scoreProviders,
+                                          int topK,
+                                          int rerankK,
+                                          float threshold,
+                                          float rerankFloor,
+                                          Bits acceptOrds)
+    {
+        var results = new ArrayList<SearchResult>(scoreProviders.size());
+        if (scoreProviders.isEmpty()) {
+            return results;
+        }
+
+        // on-heap graphs already serve neighbor lists from memory, so there is nothing to be gained by caching them,
+        // and a concurrent view's lists may change during the batch, so copies of them could go stale
+        var originalView = view;
+        boolean onHeap = originalView instanceof OnHeapGraphIndex.FrozenView
+                         || originalView instanceof OnHeapGraphIndex.ConcurrentGraphIndexView;
+        boolean useCache = scoreProviders.size() > 1 && !onHeap;
+        if (useCache) {
+            view = new BatchNeighborCache(originalView, BATCH_NEIGHBOR_CACHE_SIZE);
+        }
+        try {
+            for (var ssp : scoreProviders) {
+                results.add(search(ssp, topK, rerankK, threshold, rerankFloor, acceptOrds));
+            }
+        } finally {
+            view = originalView;
+        }
+        return results;
+    }
+
+    /**
+     * Convenience overload of {@link #searchBatch(List, int, int, float, float, Bits)} with rerankK = topK,
+     * and no threshold or rerank floor.
+     */
+    public List<SearchResult> searchBatch(List<? extends SearchScoreProvider> scoreProviders, int topK, Bits acceptOrds) {
+        return searchBatch(scoreProviders, topK, topK, 0.0f, 0.0f, acceptOrds);
+    }
+
     void setEntryPointsFromPreviousLayer() {
         // push the candidates seen so far back onto the queue for the next layer
         // at worst we save recomputing the similarity; at best we might connect to a more distant cluster
@@ -270,6 +465,16 @@ public class GraphSearcher implements Closeable {
         approximateResults.clear();
     }
 
+    /**
+     * Adds a node to start the next layer's search from, in addition to those already queued.
+     * Does nothing if `node` is negative or has already been visited.
+     */
+    void addEntryPoint(int node) {
+        if (node >= 0 && visited.add(node)) {
+            candidates.push(node, scoreProvider.scoreFunction().similarityTo(node));
+        }
+    }
+
     void initializeInternal(SearchScoreProvider scoreProvider, NodeAtLevel entry, Bits rawAcceptOrds) {
         // save search parameters for potential later resume
         initializeScoreProvider(scoreProvider);
@@ -288,6 +493,92 @@ public class GraphSearcher implements Closeable {
         visitedCount = 0;
         expandedCount = 0;
         expandedCountBaseLayer = 0;
+        filterStrategy = SearchResult.FilterStrategy.GRAPH;
+    }
+
+    private SearchResult.FilterStrategy chooseFilterStrategy(Bits rawAcceptOrds, int rerankK, NodeAtLevel entry) {
+        int idUpperBound = view.getIdUpperBound();
+        double selectivity = estimateSelectivity(rawAcceptOrds, idUpperBound);
+        int degree = graph != null ? graph.getDegree(0) : countNeighbors(entry.node);
+
+        // an unfiltered search scores on the order of rerankK * degree nodes, and a filtered one 1/selectivity
+        // times as many, while brute force scores each of the selectivity * idUpperBound accepted nodes once
+        if (graph != null && selectivity * selectivity * idUpperBound <= (double) rerankK * degree) {
+            return SearchResult.FilterStrategy.BRUTE_FORCE;
+        }
+        if (selectivity * degree < TWO_HOP_MIN_ACCEPTED_NEIGHBORS && !scoreProvider.scoreFunction().supportsEdgeLoadingSimilarity()) {
+            return SearchResult.FilterStrategy.TWO_HOP;
+        }
+        return SearchResult.FilterStrategy.GRAPH;
+    }
+
+    private int countNeighbors(int node) {
+        int count = 0;
+        for (var it = view.getNeighborsIterator(0, node); it.hasNext(); it.nextInt()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the fraction of [0, idUpperBound) accepted by `rawAcceptOrds` and this view's live nodes
+     */
+    private double estimateSelectivity(Bits rawAcceptOrds, int idUpperBound) {
+        if (idUpperBound == 0) {
+            return 0;
+        }
+        // a BitSet counts itself exactly, but only stands in for acceptOrds when there are no deleted nodes to exclude
+        if (rawAcceptOrds instanceof BitSet && view.liveNodes() instanceof Bits.MatchAllBits) {
+            return Math.min(1.0, ((BitSet) rawAcceptOrds).cardinality() / (double) idUpperBound);
+        }
+
+        int samples = Math.min(SELECTIVITY_SAMPLES, idUpperBound);
+        int accepted = 0;
+        for (int i = 0; i < samples; i++) {
+            // the golden ratio sequence spreads the samples evenly, without aliasing with filters that are periodic in the ordinal
+            int node = samples == idUpperBound ? i : (int) ((i * GOLDEN_RATIO_FRACTION % 1.0) * idUpperBound);
+            if (acceptOrds.get(node)) {
+                accepted++;
+            }
+        }
+        return accepted / (double) samples;
+    }
+
+    /**
+     * Replaces the candidates with every accepted node, scored.  searchOneLayer then pops them best-first
+     * without expanding them, and leaves the rest for resume().
+     */
+    private void scoreAllAccepted() {
+        candidates.clear();
+        visited.clear();
+        var scoreFunction = scoreProvider.scoreFunction();
+        int count = 0;
+        for (int node = 0; node < view.getIdUpperBound(); node++) {
+            if (!graph.containsNode(node) || !acceptOrds.get(node)) {
+                continue;
+            }
+            neighborScratch[count++] = node;
+            if (count == neighborScratch.length) {
+                pushScored(scoreFunction, count);
+                count = 0;
+            }
+        }
+        pushScored(scoreFunction, count);
+    }
+
+    private void pushScored(ScoreFunction scoreFunction, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (scoreScratch.length < count) {
+            scoreScratch = ArrayUtil.grow(scoreScratch, count);
+        }
+        scoreFunction.similarityTo(neighborScratch, count, scoreScratch);
+        for (int i = 0; i < count; i++) {
+            visited.add(neighborScratch[i]);
+            candidates.push(neighborScratch[i], scoreScratch[i]);
+        }
+        visitedCount += count;
     }
 
     /**
@@ -351,11 +642,27 @@ public class GraphSearcher implements Closeable {
                 if (threshold > 0 && scoreTracker.shouldStop()) {
                     break;
                 }
+                // likewise, once we have our own topK, when it is worse than the combined results of the searches of other indexes
+                if (level == 0 && searchBounds != null && approximateResults.size() >= searchBoundsMinResults && topCandidateScore < searchBounds.traversalFloor()) {
+                    break;
+                }
+
+                if (prefetchDepth > 0) {
+                    prefetchUpcomingCandidates(level);
+                }
 
                 // process the top candidate
                 int topCandidateNode = candidates.pop();
                 if (acceptOrdsThisLayer.get(topCandidateNode) && topCandidateScore >= threshold) {
                     addTopCandidate(topCandidateNode, topCandidateScore, rerankK);
+                    if (level == 0 && searchBounds != null) {
+                        searchBounds.offer(topCandidateScore);
+                    }
+                }
+
+                // brute force has already scored every accepted node
+                if (level == 0 && filterStrategy == SearchResult.FilterStrategy.BRUTE_FORCE) {
+                    continue;
                 }
 
                 // skip edge loading if we've found a local maximum and we have enough results
@@ -374,20 +681,59 @@ public class GraphSearcher implements Closeable {
                 if (useEdgeLoading) {
                     similarities = scoreFunction.edgeLoadingSimilarityTo(topCandidateNode);
                 }
-                int i = 0;
-                for (var it = view.getNeighborsIterator(level, topCandidateNode); it.hasNext(); ) {
-                    var friendOrd = it.nextInt();
-                    if (!visited.add(friendOrd)) {
+                if (useEdgeLoading) {
+                    int i = 0;
+                    for (var it = view.getNeighborsIterator(level, topCandidateNode); it.hasNext(); ) {
+                        var friendOrd = it.nextInt();
+                        if (!visited.add(friendOrd)) {
+                            continue;
+                        }
+                        visitedCount++;
+
+                        float friendSimilarity = similarities.get(i);
+                        scoreTracker.track(friendSimilarity);
+                        candidates.push(friendOrd, friendSimilarity);
+                        i++;
+                    }
+                } else if (level == 0 && filterStrategy == SearchResult.FilterStrategy.TWO_HOP) {
+                    int count = collectTwoHopNeighbors(topCandidateNode, acceptOrdsThisLayer);
+                    if (count == 0) {
                         continue;
                     }
-                    visitedCount++;
-
-                    float friendSimilarity = useEdgeLoading
-                            ? similarities.get(i)
-                            : scoreFunction.similarityTo(friendOrd);
-                    scoreTracker.track(friendSimilarity);
-                    candidates.push(friendOrd, friendSimilarity);
-                    i++;
+                    if (scoreScratch.length < count) {
+                        scoreScratch = ArrayUtil.grow(scoreScratch, count);
+                    }
+                    scoreFunction.similarityTo(neighborScratch, count, scoreScratch);
+                    for (int i = 0; i < count; i++) {
+                        scoreTracker.track(scoreScratch[i]);
+                        candidates.push(neighborScratch[i], scoreScratch[i]);
+                    }
+                } else {
+                    // collect the unvisited neighbors first, so that they can be scored with one bulk call
+                    int count = 0;
+                    for (var it = view.getNeighborsIterator(level, topCandidateNode); it.hasNext(); ) {
+                        var friendOrd = it.nextInt();
+                        if (!visited.add(friendOrd)) {
+                            continue;
+                        }
+                        visitedCount++;
+
+                        if (count == neighborScratch.length) {
+                            neighborScratch = ArrayUtil.grow(neighborScratch, count + 1);
+                        }
+                        neighborScratch[count++] = friendOrd;
+                    }
+                    if (count == 0) {
+                        continue;
+                    }
+                    if (scoreScratch.length < count) {
+                        scoreScratch = ArrayUtil.grow(scoreScratch, count);
+                    }
+                    scoreFunction.similarityTo(neighborScratch, count, scoreScratch);
+                    for (int i = 0; i < count; i++) {
+                        scoreTracker.track(scoreScratch[i]);
+                        candidates.push(neighborScratch[i], scoreScratch[i]);
+                    }
                 }
             }
         } catch (Throwable t) {
@@ -397,10 +743,65 @@ public class GraphSearcher implements Closeable {
         }
     }
 
+    /**
+     * Collects into neighborScratch the unvisited accepted neighbors of `node` at layer 0, and, for each rejected
+     * neighbor, its own unvisited accepted neighbors, stopping at as many nodes as `node` has neighbors (ACORN-1).
+     * Rejected nodes are marked visited but never scored.
+     * @return the number of nodes collected
+     */
+    private int collectTwoHopNeighbors(int node, Bits acceptOrdsThisLayer) {
+        // copy the neighbors, since only the most recently instantiated iterator is guaranteed to be valid
+        int nNeighbors = 0;
+        for (var it = view.getNeighborsIterator(0, node); it.hasNext(); ) {
+            if (nNeighbors == hopScratch.length) {
+                hopScratch = ArrayUtil.grow(hopScratch, nNeighbors + 1);
+            }
+            hopScratch[nNeighbors++] = it.nextInt();
+        }
+        int degree = nNeighbors;
+        if (neighborScratch.length < degree) {
+            neighborScratch = ArrayUtil.grow(neighborScratch, degree);
+        }
+
+        int count = 0;
+        // direct neighbors first, so the two-hop ones only fill the remaining slots
+        for (int i = 0; i < nNeighbors && count < degree; i++) {
+            int friendOrd = hopScratch[i];
+            if (acceptOrdsThisLayer.get(friendOrd) && visited.add(friendOrd)) {
+                visitedCount++;
+                neighborScratch[count++] = friendOrd;
+            }
+        }
+        for (int i = 0; i < nNeighbors && count < degree; i++) {
+            int friendOrd = hopScratch[i];
+            if (acceptOrdsThisLayer.get(friendOrd) || !visited.add(friendOrd)) {
+                continue;
+            }
+            visitedCount++;
+            for (var it2 = view.getNeighborsIterator(0, friendOrd); it2.hasNext() && count < degree; ) {
+                int secondOrd = it2.nextInt();
+                if (acceptOrdsThisLayer.get(secondOrd) && visited.add(secondOrd)) {
+                    visitedCount++;
+                    neighborScratch[count++] = secondOrd;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void prefetchUpcomingCandidates(int level) {
+        // the first node is the one we are about to expand; its neighbors will be read right away
+        int n = candidates.peekTopNodes(prefetchScratch, prefetchDepth + 1);
+        for (int i = 1; i < n; i++) {
+            view.prefetchNeighbors(level, prefetchScratch[i]);
+        }
+    }
+
     SearchResult resume(int topK, int rerankK, float threshold, float rerankFloor) {
         // rR is persistent to save on allocations
         rerankedResults.clear();
         rerankedResults.setMaxSize(topK);
+        searchBoundsMinResults = topK;
 
         // add evicted results from the last call back to the candidates
         evictedResults.foreach(candidates::push);
@@ -426,7 +827,15 @@ public class GraphSearcher implements Closeable {
             popFromQueue = approximateResults;
         } else {
             int oldReranked = cachingReranker.getRerankCalls();
-            worstApproximateInTopK = approximateResults.rerank(topK, cachingReranker, rerankFloor, rerankedResults, evictedResults);
+            if (searchBounds != null) {
+                rerankFloor = Math.max(rerankFloor, searchBounds.rerankFloor());
+            }
+            // when the approximate scores come with bounds, stop reranking once no remaining candidate can enter the topK
+            var scoreFunction = scoreProvider.scoreFunction();
+            var bounds = scoreFunction instanceof ScoreFunction.BoundedApproximateScoreFunction
+                    ? (ScoreFunction.BoundedApproximateScoreFunction) scoreFunction
+                    : null;
+            worstApproximateInTopK = approximateResults.rerank(topK, cachingReranker, bounds, rerankFloor, rerankedResults, evictedResults);
             reranked = cachingReranker.getRerankCalls() - oldReranked;
             approximateResults.clear();
             popFromQueue = rerankedResults;
@@ -442,7 +851,7 @@ public class GraphSearcher implements Closeable {
         // that should be everything
         assert popFromQueue.size() == 0;
 
-        return new SearchResult(nodes, visitedCount, expandedCount, expandedCountBaseLayer, reranked, worstApproximateInTopK);
+        return new SearchResult(nodes, visitedCount, expandedCount, expandedCountBaseLayer, reranked, worstApproximateInTopK, filterStrategy);
     }
 
     @SuppressWarnings("StatementWithEmptyBody")
@@ -485,6 +894,94 @@ public class GraphSearcher implements Closeable {
         view.close();
     }
 
+    /**
+     * A View that remembers the neighbor lists read through it, so that the queries in a batch
+     * only read each neighbor list from the underlying View once.  Once `maxCachedNodes` lists have been
+     * retained, further lists are passed through uncached.  Only valid for the duration of a single batch.
+     */
+    private static class BatchNeighborCache implements GraphIndex.View {
+        private final GraphIndex.View view;
+        private final List<Int2ObjectHashMap<int[]>> cachedByLevel;
+        private final int maxCachedNodes;
+        private int cachedNodes;
+
+        BatchNeighborCache(GraphIndex.View view, int maxCachedNodes) {
+            this.view = view;
+            this.maxCachedNodes = maxCachedNodes;
+            this.cachedByLevel = new ArrayList<>();
+        }
+
+        @Override
+        public NodesIterator getNeighborsIterator(int level, int node) {
+            while (cachedByLevel.size() <= level) {
+                cachedByLevel.add(new Int2ObjectHashMap<>());
+            }
+            var cache = cachedByLevel.get(level);
+            int[] neighbors = cache.get(node);
+            if (neighbors == null) {
+                var it = view.getNeighborsIterator(level, node);
+                if (cachedNodes >= maxCachedNodes) {
+                    return it;
+                }
+                neighbors = copyOf(it);
+                cache.put(node, neighbors);
+                cachedNodes++;
+            }
+            return new NodesIterator.ArrayNodesIterator(neighbors);
+        }
+
+        @Override
+        public void prefetchNeighbors(int level, int node) {
+            if (level >= cachedByLevel.size() || !cachedByLevel.get(level).containsKey(node)) {
+                view.prefetchNeighbors(level, node);
+            }
+        }
+
+        private static int[] copyOf(NodesIterator it) {
+            // don't rely on it.size(), some iterators (e.g. ConcurrentGraphIndexView's) don't know it up front
+            int[] a = new int[16];
+            int n = 0;
+            while (it.hasNext()) {
+                if (n == a.length) {
+                    a = Arrays.copyOf(a, 2 * n);
+                }
+                a[n++] = it.nextInt();
+            }
+            return Arrays.copyOf(a, n);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public int size() {
+            return view.size();
+        }
+
+        @Override
+        public int labelEntryNode(int label) {
+            return view.labelEntryNode(label);
+        }
+
+        @Override
+        public NodeAtLevel entryNode() {
+            return view.entryNode();
+        }
+
+        @Override
+        public Bits liveNodes() {
+            return view.liveNodes();
+        }
+
+        @Override
+        public int getIdUpperBound() {
+            return view.getIdUpperBound();
+        }
+
+        @Override
+        public void close() {
+            // the underlying view belongs to the GraphSearcher
+        }
+    }
+
     private static class CachingReranker implements ScoreFunction.ExactScoreFunction {
         // this cache never gets cleared out (until a new search reinitializes it),
         // but we expect resume() to be called at most a few times so it's fine
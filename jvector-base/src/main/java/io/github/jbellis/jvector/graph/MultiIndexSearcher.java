@@ -0,0 +1,360 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph;
+
+import io.github.jbellis.jvector.annotations.Experimental;
+import io.github.jbellis.jvector.graph.similarity.SearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Searches several indexes, e.g. the segments of a logical index, for the same query and combines the results.
+ * <p>
+ * Rather than asking every index for the full topK, each index is initially asked for its share of topK in
+ * proportion to its size (plus some overquery), and the searches run concurrently.  While they run they share
+ * {@link SearchBounds}: once a search has its share, it stops expanding when its best candidate is worse than
+ * the combined results of all the searches, and it picks up the rerank floor learned by searches that have
+ * already finished.  Each search keeps the full rerankK as its beam width, since a narrower beam costs recall.
+ * The bounds are approximate scores, so they are only shared when the indexes' approximate scores are comparable:
+ * when every score function is exact, or when the caller says so with {@link #setApproximateScoresComparable}.
+ * Once the results are combined, only the indexes whose results all made the combined top K (and so
+ * probably have more to contribute) are resumed, and this repeats until no index qualifies.
+ * <p>
+ * Like GraphSearcher, this is not threadsafe; use one MultiIndexSearcher per thread.
+ */
+@Experimental
+public class MultiIndexSearcher implements Closeable {
+    // how many more results than its share of topK each index is asked for
+    private static final float SHARE_OVERQUERY = 1.5f;
+
+    private final List<? extends GraphIndex> indexes;
+    private final GraphSearcher[] searchers;
+    private final Executor executor;
+    private final long totalSize;
+    private boolean approximateScoresComparable;
+
+    /**
+     * Creates a searcher over the given indexes that runs the per-index searches in the common ForkJoinPool.
+     */
+    public MultiIndexSearcher(List<? extends GraphIndex> indexes) {
+        this(indexes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a searcher over the given indexes that runs the per-index searches in the given executor.
+     */
+    public MultiIndexSearcher(List<? extends GraphIndex> indexes, Executor executor) {
+        if (indexes.isEmpty()) {
+            throw new IllegalArgumentException("At least one index is required");
+        }
+        this.indexes = indexes;
+        this.executor = executor;
+        this.searchers = new GraphSearcher[indexes.size()];
+        long total = 0;
+        for (int i = 0; i < indexes.size(); i++) {
+            searchers[i] = new GraphSearcher(indexes.get(i));
+            total += indexes.get(i).size(0);
+        }
+        this.totalSize = total;
+    }
+
+    /**
+     * Declares whether the approximate scores from the different indexes can be compared with one another,
+     * which is the case when their score providers all use the same compressor (e.g. the same PQ codebooks).
+     * Scores from compressors trained separately for each index are not comparable: one index's optimistic
+     * codebook would raise the shared floor and cut off another index's true neighbors.
+     * <p>
+     * Defaults to false, in which case searches with approximate score functions do not share bounds.
+     */
+    public void setApproximateScoresComparable(boolean comparable) {
+        this.approximateScoresComparable = comparable;
+    }
+
+    /**
+     * @return the View used to search the given index, for creating its SearchScoreProvider
+     */
+    public GraphIndex.View getView(int index) {
+        return searchers[index].getView();
+    }
+
+    /**
+     * Searches every index for the same query.  The score providers must produce comparable final scores
+     * (exact scores, or reranked ones, from the same similarity function), since those are what the results
+     * are combined by.  Their approximate scores are only used to share bounds between the searches if they
+     * are exact or {@link #setApproximateScoresComparable declared comparable}.
+     *
+     * @param scoreProviders one SearchScoreProvider per index, in the same order as the indexes, each
+     *                       created against the View from {@link #getView(int)}
+     * @param topK           the number of results to look for across all the indexes
+     * @param rerankK        the number of (approximately-scored) results to rerank across all the indexes
+     * @param acceptOrds     one Bits per index, indicating which of its nodes are acceptable results
+     * @return the best topK results across all the indexes
+     */
+    public Result search(List<? extends SearchScoreProvider> scoreProviders,
+                         int topK,
+                         int rerankK,
+                         List<? extends Bits> acceptOrds)
+    {
+        if (scoreProviders.size() != searchers.length || acceptOrds.size() != searchers.length) {
+            throw new IllegalArgumentException("Need one SearchScoreProvider and one Bits per index");
+        }
+        if (rerankK < topK) {
+            throw new IllegalArgumentException(String.format("rerankK %d must be >= topK %d", rerankK, topK));
+        }
+
+        var bounds = approximateScoresComparable || allExact(scoreProviders) ? new SearchBounds(rerankK) : null;
+        var states = new IndexState[searchers.length];
+        for (int i = 0; i < searchers.length; i++) {
+            double share = totalSize == 0 ? 1.0 : (double) indexes.get(i).size(0) / totalSize;
+            int k = Math.min(topK, Math.max(1, (int) Math.ceil(topK * share * SHARE_OVERQUERY)));
+            states[i] = new IndexState(i, k, rerankK);
+        }
+
+        var result = new Result();
+        runConcurrently(Arrays.asList(states), state -> {
+            var searcher = searchers[state.index];
+            searcher.setSearchBounds(bounds);
+            try {
+                var sr = searcher.search(scoreProviders.get(state.index), state.topK, state.rerankK, 0.0f, 0.0f, acceptOrds.get(state.index));
+                // only a full top K says anything about the score needed to make the combined top K
+                if (bounds != null && state.topK == topK && sr.getNodes().length == topK) {
+                    bounds.publishRerankFloor(sr.getWorstApproximateScoreInTopK());
+                }
+                return sr;
+            } finally {
+                searcher.setSearchBounds(null);
+            }
+        }, result);
+
+        var combined = new ArrayList<Result.IndexedNodeScore>();
+        for (var state : states) {
+            state.addTo(combined);
+        }
+        combine(combined, topK);
+
+        // resume the indexes that are likely to have more results good enough to make the combined top K
+        while (true) {
+            var toResume = new ArrayList<IndexState>();
+            for (var state : states) {
+                if (state.isLikelyToContribute(combined, topK)) {
+                    toResume.add(state);
+                }
+            }
+            if (toResume.isEmpty()) {
+                break;
+            }
+            result.resumedCount += toResume.size();
+            runConcurrently(toResume, state -> searchers[state.index].resume(state.topK, state.rerankK), result);
+            for (var state : toResume) {
+                state.addTo(combined);
+            }
+            combine(combined, topK);
+        }
+
+        result.nodes = combined.toArray(new Result.IndexedNodeScore[0]);
+        return result;
+    }
+
+    /**
+     * Convenience overload of {@link #search(List, int, int, List)} with rerankK = topK, accepting all nodes.
+     */
+    public Result search(List<? extends SearchScoreProvider> scoreProviders, int topK) {
+        return search(scoreProviders, topK, topK, Collections.nCopies(searchers.length, Bits.ALL));
+    }
+
+    private static boolean allExact(List<? extends SearchScoreProvider> scoreProviders) {
+        for (var ssp : scoreProviders) {
+            if (!ssp.scoreFunction().isExact()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private interface IndexSearch {
+        SearchResult run(IndexState state);
+    }
+
+    private void runConcurrently(List<IndexState> states, IndexSearch search, Result result) {
+        var futures = new CompletableFuture<?>[states.size()];
+        for (int i = 0; i < states.size(); i++) {
+            var state = states.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> state.last = search.run(state), executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+
+        for (var state : states) {
+            result.visitedCount += state.last.getVisitedCount();
+            result.expandedCount += state.last.getExpandedCount();
+            result.rerankedCount += state.last.getRerankedCount();
+        }
+    }
+
+    private static void combine(List<Result.IndexedNodeScore> combined, int topK) {
+        Collections.sort(combined);
+        if (combined.size() > topK) {
+            combined.subList(topK, combined.size()).clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var searcher : searchers) {
+            searcher.close();
+        }
+    }
+
+    private static class IndexState {
+        final int index;
+        final int topK;
+        final int rerankK;
+        SearchResult last;
+
+        IndexState(int index, int topK, int rerankK) {
+            this.index = index;
+            this.topK = topK;
+            this.rerankK = rerankK;
+        }
+
+        void addTo(List<Result.IndexedNodeScore> combined) {
+            for (var ns : last.getNodes()) {
+                combined.add(new Result.IndexedNodeScore(index, ns.node, ns.score));
+            }
+        }
+
+        /**
+         * An index is likely to contribute more results if it found all that it was asked for (so it is not
+         * exhausted), and even the worst of them made the combined top K.
+         */
+        boolean isLikelyToContribute(List<Result.IndexedNodeScore> combined, int globalTopK) {
+            var nodes = last.getNodes();
+            if (nodes.length < topK) {
+                return false;
+            }
+            if (combined.size() < globalTopK) {
+                return true;
+            }
+            return nodes[nodes.length - 1].score >= combined.get(combined.size() - 1).score;
+        }
+    }
+
+    /**
+     * The combined results of a search of several indexes, along with metrics summed over the per-index searches.
+     */
+    public static final class Result {
+        private IndexedNodeScore[] nodes;
+        private int visitedCount;
+        private int expandedCount;
+        private int rerankedCount;
+        private int resumedCount;
+
+        /**
+         * @return the closest neighbors discovered by the search, sorted best-first
+         */
+        public IndexedNodeScore[] getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return the total number of graph nodes visited across all the indexes
+         */
+        public int getVisitedCount() {
+            return visitedCount;
+        }
+
+        /**
+         * @return the total number of graph nodes expanded across all the indexes
+         */
+        public int getExpandedCount() {
+            return expandedCount;
+        }
+
+        /**
+         * @return the total number of nodes reranked across all the indexes
+         */
+        public int getRerankedCount() {
+            return rerankedCount;
+        }
+
+        /**
+         * @return the number of times an index's search was resumed
+         */
+        public int getResumedCount() {
+            return resumedCount;
+        }
+
+        public static final class IndexedNodeScore implements Comparable<IndexedNodeScore> {
+            public final int index;
+            public final int node;
+            public final float score;
+
+            public IndexedNodeScore(int index, int node, float score) {
+                this.index = index;
+                this.node = node;
+                this.score = score;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("IndexedNodeScore(%d, %d, %s)", index, node, score);
+            }
+
+            @Override
+            public int compareTo(IndexedNodeScore o) {
+                // best score first, then break ties by index and node
+                int scoreCompare = Float.compare(o.score, score);
+                if (scoreCompare != 0) {
+                    return scoreCompare;
+                }
+                int indexCompare = Integer.compare(index, o.index);
+                return indexCompare != 0 ? indexCompare : Integer.compare(node, o.node);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (o == null || getClass() != o.getClass()) return false;
+                IndexedNodeScore that = (IndexedNodeScore) o;
+                return index == that.index && node == that.node && Float.compare(score, that.score) == 0;
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(index, node, score);
+            }
+        }
+    }
+}
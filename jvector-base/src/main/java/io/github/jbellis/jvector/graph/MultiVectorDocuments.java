@@ -0,0 +1,117 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph;
+
+import java.util.Arrays;
+
+/**
+ * Maps the ordinals of a graph of token vectors (e.g. ColBERT token embeddings) to the documents they belong to,
+ * and each document to its token ordinals.  Documents are numbered densely from 0.  See {@link MultiVectorSearcher}.
+ */
+public class MultiVectorDocuments {
+    private final int[] docOfOrdinal;
+    // the token ordinals of document d are ordinals[offsets[d]] .. ordinals[offsets[d + 1] - 1]
+    private final int[] offsets;
+    private final int[] ordinals;
+
+    private MultiVectorDocuments(int[] docOfOrdinal, int[] offsets, int[] ordinals) {
+        this.docOfOrdinal = docOfOrdinal;
+        this.offsets = offsets;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * For token vectors added to the graph one document after another: document 0 has ordinals
+     * 0 .. tokenCounts[0] - 1, document 1 the next tokenCounts[1] ordinals, and so on.
+     */
+    public static MultiVectorDocuments ofTokenCounts(int[] tokenCounts) {
+        var offsets = new int[tokenCounts.length + 1];
+        for (int d = 0; d < tokenCounts.length; d++) {
+            if (tokenCounts[d] <= 0) {
+                throw new IllegalArgumentException("Document " + d + " has no tokens");
+            }
+            offsets[d + 1] = offsets[d] + tokenCounts[d];
+        }
+        var docOfOrdinal = new int[offsets[tokenCounts.length]];
+        for (int d = 0; d < tokenCounts.length; d++) {
+            Arrays.fill(docOfOrdinal, offsets[d], offsets[d + 1], d);
+        }
+        var ordinals = new int[docOfOrdinal.length];
+        Arrays.setAll(ordinals, i -> i);
+        return new MultiVectorDocuments(docOfOrdinal, offsets, ordinals);
+    }
+
+    /**
+     * For token vectors in any order.
+     * @param docOfOrdinal the document of each ordinal; every document from 0 to the largest must have a token
+     */
+    public static MultiVectorDocuments ofDocIds(int[] docOfOrdinal) {
+        int nDocs = 0;
+        for (int doc : docOfOrdinal) {
+            if (doc < 0) {
+                throw new IllegalArgumentException("Document ids must be non-negative");
+            }
+            nDocs = Math.max(nDocs, doc + 1);
+        }
+        var offsets = new int[nDocs + 1];
+        for (int doc : docOfOrdinal) {
+            offsets[doc + 1]++;
+        }
+        for (int d = 0; d < nDocs; d++) {
+            if (offsets[d + 1] == 0) {
+                throw new IllegalArgumentException("Document " + d + " has no tokens");
+            }
+            offsets[d + 1] += offsets[d];
+        }
+        var ordinals = new int[docOfOrdinal.length];
+        var next = Arrays.copyOf(offsets, nDocs);
+        for (int i = 0; i < docOfOrdinal.length; i++) {
+            ordinals[next[docOfOrdinal[i]]++] = i;
+        }
+        return new MultiVectorDocuments(docOfOrdinal.clone(), offsets, ordinals);
+    }
+
+    /**
+     * @return the document that the token at the given ordinal belongs to
+     */
+    public int docOf(int ordinal) {
+        return docOfOrdinal[ordinal];
+    }
+
+    public int documentCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return the number of token ordinals
+     */
+    public int tokenCount() {
+        return docOfOrdinal.length;
+    }
+
+    public int tokenCount(int doc) {
+        return offsets[doc + 1] - offsets[doc];
+    }
+
+    /**
+     * @return the ordinal of the i-th token of the given document
+     */
+    public int tokenOrdinal(int doc, int i) {
+        return ordinals[offsets[doc] + i];
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph;
+
+import io.github.jbellis.jvector.annotations.Experimental;
+import io.github.jbellis.jvector.graph.SearchResult.NodeScore;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.BoundedLongHeap;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.ExceptionUtils;
+import io.github.jbellis.jvector.util.ExplicitThreadLocal;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.agrona.collections.Int2ObjectHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Late-interaction (ColBERT-style) document search over a graph of token vectors.
+ * <p>
+ * A document is a set of token vectors, each of which is a node of the graph; {@link MultiVectorDocuments}
+ * maps between the two.  The score of a document for a query, which is also a set of token vectors, is MaxSim:
+ * the sum over the query tokens of their best similarity to any of the document's tokens.
+ * (With DOT_PRODUCT, this ranks documents exactly as the raw dot products would, since jvector's similarity
+ * is an increasing affine function of the dot product.)
+ * <p>
+ * Each query token is searched for its `tokenTopK` nearest tokens, and every document that owns one of them
+ * is a candidate.  Its MaxSim has an upper bound: for each query token, the best of the document's tokens found
+ * by that token's search, or, if none was found, the worst similarity found by that search (as any token of the
+ * document scores lower than that).  Candidates are then reranked with their exact MaxSim, computed from all their
+ * token vectors, in order of decreasing upper bound, and reranking stops as soon as the top K documents cannot
+ * change, i.e. once the K-th best exact score is at least the upper bound of the next candidate.  The token
+ * searches are approximate, so the bounds (and the results) are too.
+ * <p>
+ * The token searches of a query run concurrently in the given executor, using a pool of GraphSearchers shared
+ * by all the searches.  Unlike GraphSearcher, this class is threadsafe; use one instance for all threads.
+ * For throughput with many concurrent queries, pass an executor that runs tasks in the calling thread
+ * (`Runnable::run`), so that each query's token searches run one after another in its own thread.
+ */
+@Experimental
+public class MultiVectorSearcher implements Closeable {
+    private final MultiVectorDocuments documents;
+    private final VectorSimilarityFunction similarityFunction;
+    private final Supplier<RandomAccessVectorValues> tokenVectors;
+    private final ExplicitThreadLocal<GraphSearcher> searchers;
+    private final Executor executor;
+
+    /**
+     * Creates a searcher that runs the token searches in the common ForkJoinPool.
+     */
+    public MultiVectorSearcher(GraphIndex graph,
+                               RandomAccessVectorValues tokenVectors,
+                               VectorSimilarityFunction similarityFunction,
+                               MultiVectorDocuments documents)
+    {
+        this(graph, tokenVectors, similarityFunction, documents, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param graph              the graph of token vectors
+     * @param tokenVectors       the token vectors, by graph ordinal, for scoring the token searches and reranking
+     * @param similarityFunction the similarity function the graph was built with
+     * @param documents          the document of each token
+     * @param executor           runs the token searches of each query
+     */
+    public MultiVectorSearcher(GraphIndex graph,
+                               RandomAccessVectorValues tokenVectors,
+                               VectorSimilarityFunction similarityFunction,
+                               MultiVectorDocuments documents,
+                               Executor executor)
+    {
+        if (tokenVectors.size() < documents.tokenCount()) {
+            throw new IllegalArgumentException(String.format("%d token vectors for %d tokens", tokenVectors.size(), documents.tokenCount()));
+        }
+        this.documents = documents;
+        this.similarityFunction = similarityFunction;
+        this.tokenVectors = tokenVectors.threadLocalSupplier();
+        this.searchers = ExplicitThreadLocal.withInitial(() -> new GraphSearcher(graph));
+        this.executor = executor;
+    }
+
+    /**
+     * @param queryTokens the token vectors of the query
+     * @param topK        the number of documents to return
+     * @param tokenTopK   the number of nearest tokens to search for, for each query token.  Larger values find
+     *                    more candidate documents, and give them tighter upper bounds, so fewer are reranked.
+     * @return the topK documents by MaxSim, best first, with their exact scores.  The nodes of the result are
+     *         document ids; its visited and expanded counts are the totals of the token searches, its reranked count
+     *         is the number of documents whose exact MaxSim was computed, and its worst approximate score is the
+     *         upper bound of the last document reranked.
+     */
+    public SearchResult search(List<VectorFloat<?>> queryTokens, int topK, int tokenTopK) {
+        if (queryTokens.isEmpty()) {
+            throw new IllegalArgumentException("The query must have at least one token");
+        }
+        if (topK <= 0 || tokenTopK <= 0) {
+            throw new IllegalArgumentException("topK and tokenTopK must be positive");
+        }
+
+        var tokenResults = searchTokens(queryTokens, tokenTopK);
+        int nq = queryTokens.size();
+
+        // best similarity found for each query token, per candidate document
+        var hits = new Int2ObjectHashMap<float[]>();
+        // any token that a search did not find scores lower than the worst one it did find
+        var floors = new float[nq];
+        int visitedCount = 0;
+        int expandedCount = 0;
+        int expandedCountL0 = 0;
+        for (int i = 0; i < nq; i++) {
+            var result = tokenResults[i];
+            visitedCount += result.getVisitedCount();
+            expandedCount += result.getExpandedCount();
+            expandedCountL0 += result.getExpandedCountBaseLayer();
+            var nodes = result.getNodes();
+            // a search that found fewer tokens than asked for has seen them all
+            floors[i] = nodes.length == tokenTopK ? nodes[nodes.length - 1].score : 0.0f;
+            for (var ns : nodes) {
+                int doc = documents.docOf(ns.node);
+                var docHits = hits.get(doc);
+                if (docHits == null) {
+                    docHits = new float[nq];
+                    Arrays.fill(docHits, Float.NaN);
+                    hits.put(doc, docHits);
+                }
+                if (Float.isNaN(docHits[i]) || ns.score > docHits[i]) {
+                    docHits[i] = ns.score;
+                }
+            }
+        }
+
+        var candidates = new NodeScore[hits.size()];
+        int n = 0;
+        for (var it = hits.entrySet().iterator(); it.hasNext(); ) {
+            it.next();
+            var docHits = it.getValue();
+            float bound = 0;
+            for (int i = 0; i < nq; i++) {
+                bound += Float.isNaN(docHits[i]) ? floors[i] : docHits[i];
+            }
+            candidates[n++] = new NodeScore(it.getIntKey(), bound);
+        }
+        Arrays.sort(candidates);
+
+        // rerank until the top K is stable
+        var best = new NodeQueue(new BoundedLongHeap(topK), NodeQueue.Order.MIN_HEAP);
+        var ravv = tokenVectors.get();
+        int rerankedCount = 0;
+        float worstBound = Float.POSITIVE_INFINITY;
+        for (var candidate : candidates) {
+            if (best.size() >= topK && best.topScore() >= candidate.score) {
+                break;
+            }
+            best.push(candidate.node, maxSim(ravv, queryTokens, candidate.node));
+            rerankedCount++;
+            worstBound = candidate.score;
+        }
+
+        var docs = new NodeScore[best.size()];
+        for (int i = docs.length - 1; i >= 0; i--) {
+            float score = best.topScore();
+            docs[i] = new NodeScore(best.pop(), score);
+        }
+        return new SearchResult(docs, visitedCount, expandedCount, expandedCountL0, rerankedCount, worstBound);
+    }
+
+    /**
+     * @return the exact MaxSim of the given document for the given query
+     */
+    public float maxSim(List<VectorFloat<?>> queryTokens, int doc) {
+        return maxSim(tokenVectors.get(), queryTokens, doc);
+    }
+
+    private float maxSim(RandomAccessVectorValues ravv, List<VectorFloat<?>> queryTokens, int doc) {
+        int nTokens = documents.tokenCount(doc);
+        float total = 0;
+        for (var q : queryTokens) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int t = 0; t < nTokens; t++) {
+                max = Math.max(max, similarityFunction.compare(q, ravv.getVector(documents.tokenOrdinal(doc, t))));
+            }
+            total += max;
+        }
+        return total;
+    }
+
+    private SearchResult[] searchTokens(List<VectorFloat<?>> queryTokens, int tokenTopK) {
+        var results = new SearchResult[queryTokens.size()];
+        var futures = new CompletableFuture<?>[queryTokens.size()];
+        for (int i = 0; i < queryTokens.size(); i++) {
+            int token = i;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                var ssp = DefaultSearchScoreProvider.exact(queryTokens.get(token), similarityFunction, tokenVectors.get());
+                results[token] = searchers.get().search(ssp, tokenTopK, Bits.ALL);
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    public MultiVectorDocuments getDocuments() {
+        return documents;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            searchers.close();
+        } catch (Exception e) {
+            ExceptionUtils.throwIoException(e);
+        }
+    }
+}
@@ -52,6 +52,16 @@ public class NodeArray {
         scores = new float[initialSize];
     }
 
+    /**
+     * Wraps the given arrays, whose first `size` entries must already be sorted, without copying them
+     */
+    NodeArray(int[] nodes, float[] scores, int size) {
+        assert nodes.length == scores.length && size <= nodes.length;
+        this.nodes = nodes;
+        this.scores = scores;
+        this.size = size;
+    }
+
     // this idiosyncratic constructor exists for the benefit of subclass ConcurrentNeighborMap
     protected NodeArray(NodeArray nodeArray) {
         this.size = nodeArray.size();
@@ -0,0 +1,79 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph;
+
+/**
+ * The set of categorical labels (e.g. tenants, categories, tags) attached to each node, for building graphs
+ * whose searches are filtered to a single label.  See {@link GraphIndexBuilder} and
+ * {@link io.github.jbellis.jvector.graph.diversity.LabelAwareDiversityProvider}.
+ * <p>
+ * Labels are non-negative ints.  Implementations must be threadsafe, and should be cheap, since they are
+ * consulted whenever a neighbor list is pruned.
+ */
+@FunctionalInterface
+public interface NodeLabels {
+    /**
+     * @return the labels of the given node, sorted in ascending order without duplicates.  May be empty, but not null.
+     *         Callers must not modify the returned array.
+     */
+    int[] labelsOf(int node);
+
+    /**
+     * @return true if the sorted arrays `a` and `b` have at least one label in common
+     */
+    static boolean intersects(int[] a, int[] b) {
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                return true;
+            }
+            if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every label shared by the sorted arrays `a` and `b` is also in the sorted array `c`,
+     *         i.e. (a ∩ b) ⊆ c
+     */
+    static boolean sharedLabelsIn(int[] a, int[] b, int[] c) {
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                int label = a[i];
+                while (k < c.length && c[k] < label) {
+                    k++;
+                }
+                if (k == c.length || c[k] != label) {
+                    return false;
+                }
+                i++;
+                j++;
+            }
+        }
+        return true;
+    }
+}
@@ -28,6 +28,7 @@ import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
 import io.github.jbellis.jvector.util.AbstractLongHeap;
 import io.github.jbellis.jvector.util.BoundedLongHeap;
 import io.github.jbellis.jvector.util.NumericUtils;
+import java.util.Arrays;
 import java.util.PrimitiveIterator;
 import org.agrona.collections.Int2ObjectHashMap;
 
@@ -141,6 +142,21 @@ public class NodeQueue {
         return decodeNodeId(heap.pop());
     }
 
+    /**
+     * Copies up to `count` node ids from the top of the heap into `dest`, without removing them.
+     * These are drawn from the first levels of the heap, so they are among the best nodes in the queue
+     * (and the first one is the top node), but they are not necessarily the `count` best, nor in order.
+     *
+     * @return the number of node ids copied
+     */
+    public int peekTopNodes(int[] dest, int count) {
+        int n = min(count, size());
+        for (int i = 0; i < n; i++) {
+            dest[i] = decodeNodeId(heap.get(i + 1));
+        }
+        return n;
+    }
+
     /** Returns a copy of the internal nodes array. Not sorted by score! */
     public int[] nodesCopy() {
         int size = size();
@@ -158,9 +174,25 @@ public class NodeQueue {
      * Only the best result or results whose approximate score is at least `rerankFloor` will be reranked.
      */
     public float rerank(int topK, ScoreFunction.ExactScoreFunction reranker, float rerankFloor, NodeQueue reranked, NodesUnsorted unused) {
-        // Rescore the nodes whose approximate score meets the floor.  Nodes that do not will be marked as -1
+        return rerank(topK, reranker, null, rerankFloor, reranked, unused);
+    }
+
+    /**
+     * Like {@link #rerank(int, ScoreFunction.ExactScoreFunction, float, NodeQueue, NodesUnsorted)}, but if `bounds`
+     * is not null, candidates are reranked in decreasing order of their upper bound, and reranking stops as soon as
+     * the topK is full and the next candidate's upper bound is below the worst exact score in it.  The candidates
+     * that are skipped are placed into `unused`.  `bounds` must be the score function that produced the approximate
+     * scores in this queue.
+     */
+    public float rerank(int topK,
+                        ScoreFunction.ExactScoreFunction reranker,
+                        ScoreFunction.BoundedApproximateScoreFunction bounds,
+                        float rerankFloor,
+                        NodeQueue reranked,
+                        NodesUnsorted unused)
+    {
+        // Find the nodes whose approximate score meets the floor.  Nodes that do not will be marked as -1
         int[] ids = new int[size()];
-        float[] exactScores = new float[size()];
         var approximateScoresById = new Int2ObjectHashMap<Float>();
         float bestScore = Float.NEGATIVE_INFINITY;
         int bestIndex = -1;
@@ -178,8 +210,6 @@ public class NodeQueue {
             if (score >= rerankFloor) {
                 // rerank this one
                 ids[i] = nodeId;
-                exactScores[i] = reranker.similarityTo(ids[i]);
-                approximateScoresById.put(ids[i], Float.valueOf(score));
                 scoresAboveFloor++;
             } else {
                 // mark it unranked
@@ -190,26 +220,56 @@ public class NodeQueue {
         if (scoresAboveFloor == 0 && bestIndex >= 0) {
             // if nothing was above the floor, then rerank the best one found
             ids[bestIndex] = decodeNodeId(heap.get(bestIndex + 1));
-            exactScores[bestIndex] = reranker.similarityTo(ids[bestIndex]);
-            approximateScoresById.put(ids[bestIndex], Float.valueOf(bestScore));
+            scoresAboveFloor = 1;
         }
 
-        // go through the entries and add to the appropriate collection
-        for (int i = 0; i < ids.length; i++) {
+        // the order in which to rerank: heap order, or best upper bound first
+        int[] rerankOrder = new int[scoresAboveFloor];
+        float[] upperBounds = bounds == null ? null : new float[ids.length];
+        long[] sortKeys = bounds == null ? null : new long[scoresAboveFloor];
+        for (int i = 0, j = 0; i < ids.length; i++) {
             if (ids[i] == -1) {
                 unused.add(decodeNodeId(heap.get(i + 1)), decodeScore(heap.get(i + 1)));
                 continue;
             }
+            if (bounds == null) {
+                rerankOrder[j++] = i;
+            } else {
+                upperBounds[i] = bounds.upperBound(ids[i]);
+                // ascending sort of the negated bound puts the best upper bound first
+                sortKeys[j++] = (((long) NumericUtils.floatToSortableInt(-upperBounds[i])) << 32) | i;
+            }
+        }
+        if (bounds != null) {
+            Arrays.sort(sortKeys);
+            for (int j = 0; j < sortKeys.length; j++) {
+                rerankOrder[j] = (int) sortKeys[j];
+            }
+        }
+
+        // go through the entries and add to the appropriate collection
+        for (int j = 0; j < rerankOrder.length; j++) {
+            int i = rerankOrder[j];
+            if (bounds != null && reranked.size() >= topK && upperBounds[i] < reranked.topScore()) {
+                // neither this candidate nor any of those after it can enter the topK
+                for (int k = j; k < rerankOrder.length; k++) {
+                    int skipped = rerankOrder[k];
+                    unused.add(ids[skipped], decodeScore(heap.get(skipped + 1)));
+                }
+                break;
+            }
 
+            float exactScore = reranker.similarityTo(ids[i]);
+            approximateScoresById.put(ids[i], Float.valueOf(decodeScore(heap.get(i + 1))));
             // if the reranked queue is full, then either this node, or the one it replaces on the heap, will be added
             // to the unused pile, but push() can't tell us what node was evicted when the queue was already full, so
             // we examine that manually
             if (reranked.size() < topK) {
-                reranked.push(ids[i], exactScores[i]);
-            } else if (exactScores[i] > reranked.topScore()) {
+                reranked.push(ids[i], exactScore);
+            } else if (exactScore > reranked.topScore()) {
                 int evictedNode = reranked.topNode();
                 unused.add(evictedNode, approximateScoresById.get(evictedNode));
-                reranked.push(ids[i], exactScores[i]);
+                reranked.push(ids[i], exactScore);
             } else {
                 unused.add(ids[i], decodeScore(heap.get(i + 1)));
             }
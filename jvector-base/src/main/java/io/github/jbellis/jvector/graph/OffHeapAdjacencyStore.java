@@ -0,0 +1,310 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph;
+
+import io.github.jbellis.jvector.graph.ConcurrentNeighborMap.Neighbors;
+import io.github.jbellis.jvector.util.IntMap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An IntMap of Neighbors that keeps them off-heap, in fixed-stride records in direct ByteBuffer slabs, instead
+ * of as one Neighbors object (and two arrays) per node.  At hundreds of millions of nodes, that is billions of
+ * long-lived heap objects that the garbage collector has to trace through during construction.
+ * <p>
+ * Each record holds a version stamp, the size and `diverseBefore` of the Neighbors, and room for
+ * `capacity` node ids and scores.  Updates are guarded by the version stamp, which acts as a seqlock:
+ * a writer CASes it from the (even) version that its expected value was read at, to odd, writes the record,
+ * and then releases it as the next even version.  Readers never block writers; they copy the record and
+ * retry if the version changed underneath them.  Since Neighbors are still immutable once read,
+ * ConcurrentNeighborMap's copy-on-write CAS loops work unchanged: get() returns a copy that remembers the
+ * version it was read at, and compareAndPut succeeds only if the record is still at that version.
+ * <p>
+ * Reads allocate a short-lived copy of the record, which is much cheaper for the collector than
+ * the long-lived objects it replaces.  Slabs are never moved or freed until the store is unreachable.
+ */
+class OffHeapAdjacencyStore implements IntMap<Neighbors> {
+    private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final int NODES_PER_SLAB_SHIFT = 14;
+    private static final int NODES_PER_SLAB = 1 << NODES_PER_SLAB_SHIFT;
+
+    // record layout: version, size + 1 (so that zeroed memory reads as absent), diverseBefore, nodes, scores
+    private static final int VERSION_OFFSET = 0;
+    private static final int SIZE_OFFSET = Integer.BYTES;
+    private static final int DIVERSE_BEFORE_OFFSET = 2 * Integer.BYTES;
+    private static final int NODES_OFFSET = 3 * Integer.BYTES;
+
+    private final int capacity;
+    private final int stride;
+    private final int scoresOffset;
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+
+    /**
+     * @param capacity the maximum number of neighbors of any node
+     */
+    OffHeapAdjacencyStore(int capacity) {
+        if ((long) NODES_PER_SLAB * (NODES_OFFSET + 2L * capacity * Integer.BYTES) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is too large");
+        }
+        this.capacity = capacity;
+        this.scoresOffset = NODES_OFFSET + capacity * Integer.BYTES;
+        this.stride = scoresOffset + capacity * Float.BYTES;
+    }
+
+    @Override
+    public boolean compareAndPut(int key, Neighbors existing, Neighbors value) {
+        if (value == null) {
+            throw new IllegalArgumentException("compareAndPut() value cannot be null -- use remove() instead");
+        }
+        if (value.size() > capacity) {
+            throw new IllegalStateException(String.format("Node %d has %d neighbors, more than the capacity %d", key, value.size(), capacity));
+        }
+
+        ensureCapacity(key);
+        var slab = slabs[key >>> NODES_PER_SLAB_SHIFT];
+        int base = recordOffset(key);
+        int version;
+        if (existing == null) {
+            while (true) {
+                version = stableVersion(slab, base);
+                boolean absent = slab.getInt(base + SIZE_OFFSET) == 0;
+                if (version != (int) INT_HANDLE.getVolatile(slab, base + VERSION_OFFSET)) {
+                    continue;
+                }
+                if (!absent) {
+                    return false;
+                }
+                if (INT_HANDLE.compareAndSet(slab, base + VERSION_OFFSET, version, version + 1)) {
+                    break;
+                }
+            }
+        } else {
+            // only values read from this store know what version they were read at
+            if (!(existing instanceof VersionedNeighbors)) {
+                return false;
+            }
+            version = ((VersionedNeighbors) existing).version;
+            if (!INT_HANDLE.compareAndSet(slab, base + VERSION_OFFSET, version, version + 1)) {
+                return false;
+            }
+        }
+
+        slab.putInt(base + SIZE_OFFSET, value.size() + 1);
+        slab.putInt(base + DIVERSE_BEFORE_OFFSET, value.diverseBefore());
+        for (int i = 0; i < value.size(); i++) {
+            slab.putInt(base + NODES_OFFSET + i * Integer.BYTES, value.getNode(i));
+            slab.putFloat(base + scoresOffset + i * Float.BYTES, value.getScore(i));
+        }
+        INT_HANDLE.setRelease(slab, base + VERSION_OFFSET, version + 2);
+
+        if (existing == null) {
+            size.incrementAndGet();
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Neighbors get(int key) {
+        var slab = slabFor(key);
+        if (slab == null) {
+            return null;
+        }
+        int base = recordOffset(key);
+        while (true) {
+            int version = stableVersion(slab, base);
+            int n = slab.getInt(base + SIZE_OFFSET) - 1;
+            if (n < 0 || n > capacity) {
+                // absent, or torn by a concurrent write
+                VarHandle.loadLoadFence();
+                if (version == (int) INT_HANDLE.getVolatile(slab, base + VERSION_OFFSET)) {
+                    if (n < 0) {
+                        return null;
+                    }
+                    throw new IllegalStateException(String.format("Corrupt record for node %d: size %d", key, n));
+                }
+                continue;
+            }
+
+            int diverseBefore = slab.getInt(base + DIVERSE_BEFORE_OFFSET);
+            // sized like ConcurrentNeighborMap.nodeArrayLength(), so that inserting does not grow the arrays
+            var nodes = new int[capacity];
+            var scores = new float[capacity];
+            for (int i = 0; i < n; i++) {
+                nodes[i] = slab.getInt(base + NODES_OFFSET + i * Integer.BYTES);
+                scores[i] = slab.getFloat(base + scoresOffset + i * Float.BYTES);
+            }
+            VarHandle.loadLoadFence();
+            if (version == (int) INT_HANDLE.getVolatile(slab, base + VERSION_OFFSET)) {
+                return new VersionedNeighbors(key, new NodeArray(nodes, scores, n), diverseBefore, version);
+            }
+        }
+    }
+
+    /**
+     * @return the neighbor ids of `key`, without the scores, or an empty iterator if it is absent
+     */
+    NodesIterator neighborsIterator(int key) {
+        var slab = slabFor(key);
+        if (slab == null) {
+            return NodesIterator.EMPTY_NODE_ITERATOR;
+        }
+        int base = recordOffset(key);
+        while (true) {
+            int version = stableVersion(slab, base);
+            int n = slab.getInt(base + SIZE_OFFSET) - 1;
+            int[] nodes = null;
+            if (n > 0 && n <= capacity) {
+                nodes = new int[n];
+                for (int i = 0; i < n; i++) {
+                    nodes[i] = slab.getInt(base + NODES_OFFSET + i * Integer.BYTES);
+                }
+            }
+            VarHandle.loadLoadFence();
+            if (version == (int) INT_HANDLE.getVolatile(slab, base + VERSION_OFFSET)) {
+                return nodes == null ? NodesIterator.EMPTY_NODE_ITERATOR : new NodesIterator.ArrayNodesIterator(nodes);
+            }
+        }
+    }
+
+    @Override
+    public Neighbors remove(int key) {
+        var slab = slabFor(key);
+        if (slab == null) {
+            return null;
+        }
+        int base = recordOffset(key);
+        while (true) {
+            var old = (VersionedNeighbors) get(key);
+            if (old == null) {
+                return null;
+            }
+            if (INT_HANDLE.compareAndSet(slab, base + VERSION_OFFSET, old.version, old.version + 1)) {
+                slab.putInt(base + SIZE_OFFSET, 0);
+                INT_HANDLE.setRelease(slab, base + VERSION_OFFSET, old.version + 2);
+                size.decrementAndGet();
+                return old;
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        var slab = slabFor(key);
+        if (slab == null) {
+            return false;
+        }
+        int base = recordOffset(key);
+        while (true) {
+            int version = stableVersion(slab, base);
+            boolean present = slab.getInt(base + SIZE_OFFSET) != 0;
+            VarHandle.loadLoadFence();
+            if (version == (int) INT_HANDLE.getVolatile(slab, base + VERSION_OFFSET)) {
+                return present;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(IntBiConsumer<Neighbors> consumer) {
+        long upperBound = (long) slabs.length * NODES_PER_SLAB;
+        for (int i = 0; i < upperBound; i++) {
+            var value = get(i);
+            if (value != null) {
+                consumer.consume(i, value);
+            }
+        }
+    }
+
+    /**
+     * @return the off-heap bytes used by each node's record
+     */
+    int bytesPerNode() {
+        return stride;
+    }
+
+    /**
+     * @return the off-heap bytes allocated
+     */
+    long offHeapBytesUsed() {
+        return (long) slabs.length * NODES_PER_SLAB * stride;
+    }
+
+    private ByteBuffer slabFor(int key) {
+        var current = slabs;
+        int slabIndex = key >>> NODES_PER_SLAB_SHIFT;
+        return slabIndex < current.length ? current[slabIndex] : null;
+    }
+
+    private int recordOffset(int key) {
+        return (key & (NODES_PER_SLAB - 1)) * stride;
+    }
+
+    /**
+     * Waits out any write in progress
+     * @return the (even) version of the record
+     */
+    private static int stableVersion(ByteBuffer slab, int base) {
+        while (true) {
+            int version = (int) INT_HANDLE.getAcquire(slab, base + VERSION_OFFSET);
+            if ((version & 1) == 0) {
+                return version;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void ensureCapacity(int key) {
+        int slabIndex = key >>> NODES_PER_SLAB_SHIFT;
+        if (slabIndex < slabs.length) {
+            return;
+        }
+
+        synchronized (this) {
+            var oldSlabs = slabs;
+            if (slabIndex < oldSlabs.length) {
+                return;
+            }
+            var newSlabs = new ByteBuffer[Math.max(slabIndex + 1, oldSlabs.length + (oldSlabs.length >> 1))];
+            System.arraycopy(oldSlabs, 0, newSlabs, 0, oldSlabs.length);
+            for (int i = oldSlabs.length; i < newSlabs.length; i++) {
+                newSlabs[i] = ByteBuffer.allocateDirect(NODES_PER_SLAB * stride).order(ByteOrder.nativeOrder());
+            }
+            slabs = newSlabs;
+        }
+    }
+
+    /**
+     * Neighbors read from the store, which remember the version of the record they were read from.
+     */
+    private static class VersionedNeighbors extends Neighbors {
+        private final int version;
+
+        VersionedNeighbors(int nodeId, NodeArray nodeArray, int diverseBefore, int version) {
+            super(nodeId, nodeArray, diverseBefore);
+            this.version = version;
+        }
+    }
+}
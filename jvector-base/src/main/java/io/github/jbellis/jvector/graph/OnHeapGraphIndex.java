@@ -30,6 +30,7 @@ import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
 import io.github.jbellis.jvector.util.Accountable;
 import io.github.jbellis.jvector.util.Bits;
 import io.github.jbellis.jvector.util.DenseIntMap;
+import io.github.jbellis.jvector.util.IntMap;
 import io.github.jbellis.jvector.util.RamUsageEstimator;
 import io.github.jbellis.jvector.util.SparseIntMap;
 import io.github.jbellis.jvector.util.ThreadSafeGrowableBitSet;
@@ -40,7 +41,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -79,18 +82,36 @@ public class OnHeapGraphIndex implements GraphIndex {
 
     public final ConcurrentMap<NodeAtLevel, VectorFloat<?>> constructionBatch;
 
+    // notified of every change to the graph, for GraphChangeLog
+    private volatile MutationListener mutationListener;
+
+    // entry node for searches filtered to each label, for graphs built with NodeLabels
+    private final ConcurrentMap<Integer, Integer> labelEntryNodes = new ConcurrentHashMap<>();
+
     OnHeapGraphIndex(List<Integer> maxDegrees, double overflowRatio, DiversityProvider diversityProvider, int batchSize) {
+        this(maxDegrees, overflowRatio, diversityProvider, batchSize, false);
+    }
+
+    /**
+     * @param offHeapAdjacency if true, the base layer's neighbors are kept off-heap; see {@link OffHeapAdjacencyStore}
+     */
+    OnHeapGraphIndex(List<Integer> maxDegrees, double overflowRatio, DiversityProvider diversityProvider, int batchSize, boolean offHeapAdjacency) {
         this.overflowRatio = overflowRatio;
         this.maxDegrees = new IntArrayList();
         setDegrees(maxDegrees);
         entryPoint = new AtomicReference<>();
         this.completions = new CompletionTracker(1024);
         // Initialize the base layer (layer 0) with a dense map.
+        int maxOverflowDegree = (int) (getDegree(0) * overflowRatio);
+        // one extra, to match ConcurrentNeighborMap.nodeArrayLength()
+        IntMap<Neighbors> baseLayer = offHeapAdjacency
+                ? new OffHeapAdjacencyStore(maxOverflowDegree + 1)
+                : new DenseIntMap<>(1024);
         this.layers.add(new ConcurrentNeighborMap(
-                new DenseIntMap<>(1024),
+                baseLayer,
                 diversityProvider,
                 getDegree(0),
-                (int) (getDegree(0) * overflowRatio))
+                maxOverflowDegree)
         );
         this.constructionBatch = new ConcurrentHashMap<>(batchSize);
     }
@@ -120,7 +141,12 @@ public class OnHeapGraphIndex implements GraphIndex {
         if (level >= layers.size()) {
             return NodesIterator.EMPTY_NODE_ITERATOR;
         }
-        var neighs = layers.get(level).get(node);
+        var layer = layers.get(level);
+        if (layer.neighbors instanceof OffHeapAdjacencyStore) {
+            // skip copying the scores
+            return ((OffHeapAdjacencyStore) layer.neighbors).neighborsIterator(node);
+        }
+        var neighs = layer.get(node);
         if (neighs == null) {
             return NodesIterator.EMPTY_NODE_ITERATOR;
         } else {
@@ -163,6 +189,11 @@ public class OnHeapGraphIndex implements GraphIndex {
                                                         denseMap.diversityProvider,
                                                         getDegree(level),
                                                         (int) (getDegree(level) * overflowRatio));
+                    if (mutationListener != null) {
+                        int newLevel = i;
+                        var listener = mutationListener;
+                        map.setChangeListener(node -> listener.neighborsChanged(newLevel, node));
+                    }
                     layers.add(map);
                 }
             }
@@ -184,11 +215,15 @@ public class OnHeapGraphIndex implements GraphIndex {
      */
     public void markDeleted(int node) {
         deletedNodes.set(node);
+        var listener = mutationListener;
+        if (listener != null) {
+            listener.nodeDeleted(node);
+        }
     }
 
     /** must be called after addNode once neighbors are linked in all levels. */
     void markComplete(NodeAtLevel nodeLevel) {
-        entryPoint.accumulateAndGet(
+        var entry = entryPoint.accumulateAndGet(
                 nodeLevel,
                 (oldEntry, newEntry) -> {
                     if (oldEntry == null || newEntry.level > oldEntry.level) {
@@ -198,10 +233,99 @@ public class OnHeapGraphIndex implements GraphIndex {
                     }
                 });
         completions.markComplete(nodeLevel.node);
+        if (entry == nodeLevel) {
+            entryNodeChanged();
+        }
+    }
+
+    /**
+     * @return the entry node for searches filtered to the given label, or -1 if there is none
+     */
+    public int getLabelEntryNode(int label) {
+        return labelEntryNodes.getOrDefault(label, -1);
+    }
+
+    /**
+     * @return a copy of the label to entry node mapping
+     */
+    public Map<Integer, Integer> getLabelEntryNodes() {
+        return new HashMap<>(labelEntryNodes);
+    }
+
+    /** sets the entry node for the given label, unless it already has one */
+    void addLabelEntryNode(int label, int node) {
+        labelEntryNodes.putIfAbsent(label, node);
+    }
+
+    /** sets the entry node for the given label, or clears it if node is -1 */
+    void updateLabelEntryNode(int label, int node) {
+        if (node < 0) {
+            labelEntryNodes.remove(label);
+        } else {
+            labelEntryNodes.put(label, node);
+        }
     }
 
     void updateEntryNode(NodeAtLevel newEntry) {
         entryPoint.set(newEntry);
+        entryNodeChanged();
+    }
+
+    private void entryNodeChanged() {
+        var listener = mutationListener;
+        if (listener != null) {
+            listener.entryNodeChanged();
+        }
+    }
+
+    /**
+     * Only for replaying a change log: sets the neighbors of the given node, adding it if necessary
+     */
+    void setNeighbors(int level, int nodeId, NodeArray nodes, int diverseBefore) {
+        ensureLayersExist(level);
+        layers.get(level).put(nodeId, nodes, diverseBefore);
+        maxNodeId.accumulateAndGet(nodeId, Math::max);
+    }
+
+    /**
+     * Only for replaying a change log: removes the given node from the given layer
+     */
+    void removeNode(int level, int nodeId) {
+        if (level < layers.size()) {
+            layers.get(level).remove(nodeId);
+        }
+        if (level == 0) {
+            deletedNodes.clear(nodeId);
+        }
+    }
+
+    /**
+     * Registers a listener to be notified of every change to the graph, replacing any previous listener,
+     * or stops notifying if null.  Notifications happen after the change, on the thread that made it.
+     */
+    void setMutationListener(MutationListener listener) {
+        synchronized (layers) {
+            this.mutationListener = listener;
+            for (int level = 0; level < layers.size(); level++) {
+                int l = level;
+                layers.get(level).setChangeListener(listener == null ? null : node -> listener.neighborsChanged(l, node));
+            }
+        }
+    }
+
+    /**
+     * Receives notifications of changes to an OnHeapGraphIndex.  Only the identity of what changed is passed;
+     * listeners that need the new state should read it from the graph, which may have changed again since.
+     */
+    interface MutationListener {
+        /** the neighbors of `node` in layer `level` changed, or it was added to or removed from the layer */
+        void neighborsChanged(int level, int node);
+
+        /** the entry node changed */
+        void entryNodeChanged();
+
+        /** `node` was marked deleted */
+        void nodeDeleted(int node);
     }
 
     NodeAtLevel entry() {
@@ -215,13 +339,13 @@ public class OnHeapGraphIndex implements GraphIndex {
     }
 
     /**
-     * this does call get() internally to filter level 0, so if you're going to use it in a pipeline
+     * this does look up each node internally to filter level 0, so if you're going to use it in a pipeline
      * that also calls get(), consider using your own raw IntStream.range instead
      */
     IntStream nodeStream(int level) {
         var layer = layers.get(level);
         return level == 0
-                ? IntStream.range(0, getIdUpperBound()).filter(i -> layer.get(i) != null)
+                ? IntStream.range(0, getIdUpperBound()).filter(layer::contains)
                 : ((SparseIntMap<Neighbors>) layer.neighbors).keysStream();
     }
 
@@ -243,6 +367,10 @@ public class OnHeapGraphIndex implements GraphIndex {
     public long ramBytesUsedOneNode(int layer) {
         // we include the REF_BYTES for the CNS reference here to make it self-contained for addGraphNode()
         int REF_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        var neighbors = layers.get(layer).neighbors;
+        if (neighbors instanceof OffHeapAdjacencyStore) {
+            return ((OffHeapAdjacencyStore) neighbors).bytesPerNode();
+        }
         return REF_BYTES + Neighbors.ramBytesUsed(layers.get(layer).nodeArrayLength());
     }
 
@@ -424,7 +552,7 @@ public class OnHeapGraphIndex implements GraphIndex {
         }
     }
 
-    private class FrozenView implements View {
+    class FrozenView implements View {
         @Override
         public NodesIterator getNeighborsIterator(int level, int node) {
             return OnHeapGraphIndex.this.getNeighborsIterator(level, node);
@@ -441,6 +569,11 @@ public class OnHeapGraphIndex implements GraphIndex {
             return entryPoint.get();
         }
 
+        @Override
+        public int labelEntryNode(int label) {
+            return getLabelEntryNode(label);
+        }
+
         @Override
         public Bits liveNodes() {
             // this Bits will return true for node ids that no longer exist in the graph after being purged,
@@ -0,0 +1,82 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph;
+
+import io.github.jbellis.jvector.util.BoundedLongHeap;
+import io.github.jbellis.jvector.util.NumericUtils;
+
+/**
+ * Score bounds shared by the GraphSearchers of concurrent searches for the same query in several indexes.
+ * <p>
+ * The traversal floor is the approximate score of the `rerankK`th best result found by any of the searches
+ * so far.  A search whose best remaining candidate is worse than that can stop expanding, since nothing it
+ * finds from there on would make the combined approximate results.
+ * <p>
+ * The rerank floor is the best (highest) `worstApproximateScoreInTopK` reported by a search that returned
+ * a full top K, as in the rerankFloor that Astra passes from one index to the next.  Unlike a floor
+ * passed to `search`, it is read when each search reaches its rerank step, so searches that finish later
+ * benefit from the ones that finished earlier.
+ * <p>
+ * Both floors compare approximate scores across searches, so they are only meaningful when the searches
+ * score with the same compressor (or exactly).
+ */
+class SearchBounds {
+    // best approximate scores seen, encoded as sortable ints
+    private final BoundedLongHeap approximateScores;
+    private final int rerankK;
+    private volatile float traversalFloor = Float.NEGATIVE_INFINITY;
+    private volatile float rerankFloor = Float.NEGATIVE_INFINITY;
+
+    SearchBounds(int rerankK) {
+        this.rerankK = rerankK;
+        this.approximateScores = new BoundedLongHeap(rerankK);
+    }
+
+    /**
+     * Records the approximate score of a node that a search added to its results.
+     */
+    void offer(float score) {
+        // cheap unsynchronized check, since most scores do not change the floor
+        if (score <= traversalFloor) {
+            return;
+        }
+        synchronized (approximateScores) {
+            approximateScores.push(NumericUtils.floatToSortableInt(score));
+            if (approximateScores.size() >= rerankK) {
+                traversalFloor = NumericUtils.sortableIntToFloat((int) approximateScores.top());
+            }
+        }
+    }
+
+    float traversalFloor() {
+        return traversalFloor;
+    }
+
+    /**
+     * Records the worst approximate score that made it into the top K of a search that found a full top K.
+     */
+    synchronized void publishRerankFloor(float worstApproximateScoreInTopK) {
+        // no reranking was done, so there is nothing to learn
+        if (Float.isInfinite(worstApproximateScoreInTopK)) {
+            return;
+        }
+        rerankFloor = Math.max(rerankFloor, worstApproximateScoreInTopK);
+    }
+
+    float rerankFloor() {
+        return rerankFloor;
+    }
+}
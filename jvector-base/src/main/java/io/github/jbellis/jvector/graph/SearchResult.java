@@ -29,14 +29,20 @@ public final class SearchResult {
     private final int expandedCountL0;
     private final int rerankedCount;
     private final float worstApproximateScoreInTopK;
+    private final FilterStrategy filterStrategy;
 
     public SearchResult(NodeScore[] nodes, int visitedCount, int expandedCount, int expandedCountL0, int rerankedCount, float worstApproximateScoreInTopK) {
+        this(nodes, visitedCount, expandedCount, expandedCountL0, rerankedCount, worstApproximateScoreInTopK, FilterStrategy.GRAPH);
+    }
+
+    public SearchResult(NodeScore[] nodes, int visitedCount, int expandedCount, int expandedCountL0, int rerankedCount, float worstApproximateScoreInTopK, FilterStrategy filterStrategy) {
         this.nodes = nodes;
         this.visitedCount = visitedCount;
         this.expandedCount = expandedCount;
         this.expandedCountL0 = expandedCountL0;
         this.rerankedCount = rerankedCount;
         this.worstApproximateScoreInTopK = worstApproximateScoreInTopK;
+        this.filterStrategy = filterStrategy;
     }
 
     /**
@@ -83,6 +89,28 @@ public final class SearchResult {
         return worstApproximateScoreInTopK;
     }
 
+    /**
+     * @return how the search applied its acceptOrds; see {@link GraphSearcher#useAdaptiveFiltering}
+     */
+    public FilterStrategy getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    /**
+     * How a search found the nodes accepted by its filter.
+     */
+    public enum FilterStrategy {
+        /** Searched the graph as usual, discarding the nodes that the filter rejects */
+        GRAPH,
+        /**
+         * Searched the graph without scoring the nodes that the filter rejects; instead, the accepted
+         * neighbors of each rejected neighbor were considered (two-hop expansion, as in ACORN)
+         */
+        TWO_HOP,
+        /** Scored every accepted node without using the graph */
+        BRUTE_FORCE
+    }
+
     public static final class NodeScore implements Comparable<NodeScore> {
         public final int node;
         public final float score;
@@ -122,11 +150,11 @@ public final class SearchResult {
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
         SearchResult that = (SearchResult) o;
-        return visitedCount == that.visitedCount && rerankedCount == that.rerankedCount && Float.compare(worstApproximateScoreInTopK, that.worstApproximateScoreInTopK) == 0 && Objects.deepEquals(nodes, that.nodes);
+        return visitedCount == that.visitedCount && rerankedCount == that.rerankedCount && Float.compare(worstApproximateScoreInTopK, that.worstApproximateScoreInTopK) == 0 && filterStrategy == that.filterStrategy && Objects.deepEquals(nodes, that.nodes);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(Arrays.hashCode(nodes), visitedCount, rerankedCount, worstApproximateScoreInTopK);
+        return Objects.hash(Arrays.hashCode(nodes), visitedCount, rerankedCount, worstApproximateScoreInTopK, filterStrategy);
     }
 }
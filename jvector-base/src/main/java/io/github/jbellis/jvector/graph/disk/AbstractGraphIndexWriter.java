@@ -22,6 +22,7 @@ import io.github.jbellis.jvector.graph.GraphIndex;
 import io.github.jbellis.jvector.graph.OnHeapGraphIndex;
 import io.github.jbellis.jvector.graph.disk.feature.*;
 import org.agrona.collections.Int2IntHashMap;
+import org.agrona.collections.IntArrayList;
 
 import java.io.IOException;
 import java.util.EnumMap;
@@ -120,6 +121,54 @@ public abstract class AbstractGraphIndexWriter<T extends IndexWriter> implements
         }
     }
 
+    /**
+     * @return a Map of old to new graph ordinals where the new ordinals are sequential starting at 0 and
+     * follow a breadth-first traversal of layer 0, starting from the entry node.  Nodes that are adjacent in the
+     * graph are thereby written close together on disk, so a search touches fewer distinct pages than with
+     * {@link #sequentialRenumbering}, which matters when the index does not fit in the page cache.
+     * Nodes unreachable from the entry node are numbered in the same way, starting from the lowest old ordinal
+     * of each remaining component.
+     */
+    public static Map<Integer, Integer> localityRenumbering(GraphIndex graph) {
+        try (var view = graph instanceof OnHeapGraphIndex ? ((OnHeapGraphIndex) graph).getFrozenView() : graph.getView()) {
+            int idUpperBound = view.getIdUpperBound();
+            Int2IntHashMap oldToNewMap = new Int2IntHashMap(-1);
+            var queue = new IntArrayList(graph.size(0), IntArrayList.DEFAULT_NULL_VALUE);
+            int nextOrdinal = 0;
+            int nextRoot = 0;
+            var entry = view.entryNode();
+            int root = entry == null ? -1 : entry.node;
+            while (true) {
+                // find the next unvisited node to start a traversal from
+                while (root < 0 || oldToNewMap.containsKey(root)) {
+                    while (nextRoot < idUpperBound && (!graph.containsNode(nextRoot) || oldToNewMap.containsKey(nextRoot))) {
+                        nextRoot++;
+                    }
+                    if (nextRoot == idUpperBound) {
+                        return oldToNewMap;
+                    }
+                    root = nextRoot;
+                }
+
+                oldToNewMap.put(root, nextOrdinal++);
+                queue.clear();
+                queue.addInt(root);
+                for (int head = 0; head < queue.size(); head++) {
+                    var it = view.getNeighborsIterator(0, queue.getInt(head));
+                    while (it.hasNext()) {
+                        int neighbor = it.nextInt();
+                        if (graph.containsNode(neighbor) && !oldToNewMap.containsKey(neighbor)) {
+                            oldToNewMap.put(neighbor, nextOrdinal++);
+                            queue.addInt(neighbor);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Write the {@link Header} as a footer for the graph index.
      * <p>
@@ -283,6 +332,12 @@ public abstract class AbstractGraphIndexWriter<T extends IndexWriter> implements
                 dimension = ((SeparatedVectors) features.get(FeatureId.SEPARATED_VECTORS)).dimension();
             } else if (features.containsKey(FeatureId.SEPARATED_NVQ)) {
                 dimension = ((SeparatedNVQ) features.get(FeatureId.SEPARATED_NVQ)).dimension();
+            } else if (features.containsKey(FeatureId.INLINE_HALF_VECTORS)) {
+                dimension = ((InlineHalfVectors) features.get(FeatureId.INLINE_HALF_VECTORS)).dimension();
+            } else if (features.containsKey(FeatureId.SEPARATED_HALF_VECTORS)) {
+                dimension = ((SeparatedHalfVectors) features.get(FeatureId.SEPARATED_HALF_VECTORS)).dimension();
+            } else if (features.containsKey(FeatureId.SQ_VECTORS)) {
+                dimension = ((SQ) features.get(FeatureId.SQ_VECTORS)).dimension();
             } else {
                 throw new IllegalArgumentException("Inline or separated vector feature must be provided");
             }
@@ -290,6 +345,18 @@ public abstract class AbstractGraphIndexWriter<T extends IndexWriter> implements
             if (ordinalMapper == null) {
                 ordinalMapper = new OrdinalMapper.MapMapper(sequentialRenumbering(graphIndex));
             }
+            if (features.containsKey(FeatureId.TOMBSTONES)) {
+                int capacity = ((Tombstones) features.get(FeatureId.TOMBSTONES)).capacity();
+                if (capacity < ordinalMapper.maxOrdinal() + 1) {
+                    var msg = String.format("Tombstones cover %d ordinals but the index has %d", capacity, ordinalMapper.maxOrdinal() + 1);
+                    throw new IllegalArgumentException(msg);
+                }
+            }
+            if (features.containsKey(FeatureId.LABEL_ENTRY_POINTS)) {
+                // entry nodes are recorded with the graph's ordinals, but must be written with the new ones
+                var entryPoints = (LabelEntryPoints) features.get(FeatureId.LABEL_ENTRY_POINTS);
+                features.put(FeatureId.LABEL_ENTRY_POINTS, entryPoints.withOrdinals(ordinalMapper));
+            }
             return reallyBuild(dimension);
         }
 
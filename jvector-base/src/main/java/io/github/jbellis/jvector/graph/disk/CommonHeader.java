@@ -46,6 +46,8 @@ import java.util.stream.IntStream;
  * - v2: Basic format with no magic number
  * - v3: Added magic number and feature set support
  * - v4: Added multi-layer support and ID upper bound
+ * - v5: Metadata is written to a footer after the graph
+ * - v6: ProductQuantization carries an optional OPQ rotation (no change to this header)
  * <p>
  * The on-disk layout for v4+ is:
  * - Magic number (to identify JVector files)
@@ -17,6 +17,7 @@
 package io.github.jbellis.jvector.graph.disk;
 
 import io.github.jbellis.jvector.annotations.VisibleForTesting;
+import io.github.jbellis.jvector.disk.CachingReaderSupplier;
 import io.github.jbellis.jvector.disk.RandomAccessReader;
 import io.github.jbellis.jvector.disk.ReaderSupplier;
 import io.github.jbellis.jvector.graph.GraphIndex;
@@ -26,13 +27,19 @@ import io.github.jbellis.jvector.graph.disk.feature.Feature;
 import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
 import io.github.jbellis.jvector.graph.disk.feature.FeatureSource;
 import io.github.jbellis.jvector.graph.disk.feature.FusedADC;
+import io.github.jbellis.jvector.graph.disk.feature.InlineHalfVectors;
 import io.github.jbellis.jvector.graph.disk.feature.InlineVectors;
 import io.github.jbellis.jvector.graph.disk.feature.NVQ;
+import io.github.jbellis.jvector.graph.disk.feature.SQ;
 import io.github.jbellis.jvector.graph.disk.feature.SeparatedFeature;
+import io.github.jbellis.jvector.graph.disk.feature.SeparatedHalfVectors;
+import io.github.jbellis.jvector.graph.disk.feature.LabelEntryPoints;
+import io.github.jbellis.jvector.graph.disk.feature.Tombstones;
 import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
 import io.github.jbellis.jvector.util.Accountable;
 import org.agrona.collections.Int2ObjectHashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import io.github.jbellis.jvector.util.Bits;
 import io.github.jbellis.jvector.util.RamUsageEstimator;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
@@ -64,8 +71,9 @@ import static io.github.jbellis.jvector.graph.disk.OnDiskSequentialGraphIndexWri
 public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
 {
     private static final Logger logger = LoggerFactory.getLogger(OnDiskGraphIndex.class);
-    public static final int CURRENT_VERSION = 5;
+    public static final int CURRENT_VERSION = 6;
     static final int MAGIC = 0xFFFF0D61; // FFFF to distinguish from old graphs, which should never start with a negative size "ODGI"
+    private static final int RECENTLY_PREFETCHED_SIZE = 64; // must be a power of two
     static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
     final ReaderSupplier readerSupplier;
     final int version;
@@ -77,9 +85,12 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
     final EnumMap<FeatureId, Integer> inlineOffsets;
     private final List<CommonHeader.LayerInfo> layerInfo;
     // offset of L0 adjacency data
-    private final long neighborsOffset;
+    final long neighborsOffset;
     /** For layers > 0, store adjacency fully in memory. */
     private final AtomicReference<List<Int2ObjectHashMap<int[]>>> inMemoryNeighbors;
+    private final Bits liveNodes;
+    // null unless the index has the LABEL_ENTRY_POINTS feature
+    private final LabelEntryPoints labelEntryPoints;
 
     OnDiskGraphIndex(ReaderSupplier readerSupplier, Header header, long neighborsOffset)
     {
@@ -102,6 +113,11 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
         }
         this.inlineBlockSize = inlineBlockSize;
         inMemoryNeighbors = new AtomicReference<>(null);
+        var tombstones = (Tombstones) features.get(FeatureId.TOMBSTONES);
+        this.liveNodes = tombstones == null || tombstones.cardinality() == 0
+                ? Bits.ALL
+                : Bits.inverseOf(tombstones.deletedNodes());
+        this.labelEntryPoints = (LabelEntryPoints) features.get(FeatureId.LABEL_ENTRY_POINTS);
     }
 
     private List<Int2ObjectHashMap<int[]>> getInMemoryLayers(RandomAccessReader in) throws IOException {
@@ -290,6 +306,33 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
         }
     }
 
+    /**
+     * Pins the layer 0 records (neighbors and inline features) of the entry node and of every node in the
+     * upper layers, which every search scores on its way down, so that they are never evicted from the cache.
+     * The upper layers' adjacency lists are already held in memory.
+     *
+     * @throws IllegalStateException if this index is not read through a {@link CachingReaderSupplier}
+     */
+    public void pinUpperLayerNodes() throws IOException {
+        if (!(readerSupplier instanceof CachingReaderSupplier)) {
+            throw new IllegalStateException("Index is not read through a CachingReaderSupplier");
+        }
+        var cachingSupplier = (CachingReaderSupplier) readerSupplier;
+        long nodeBytes = Integer.BYTES + inlineBlockSize + Integer.BYTES * (1L + layerInfo.get(0).degree);
+
+        cachingSupplier.pin(neighborsOffset + entryNode.node * nodeBytes, nodeBytes);
+        try (var reader = readerSupplier.get()) {
+            var imn = getInMemoryLayers(reader);
+            for (int level = 1; level < imn.size(); level++) {
+                var it = imn.get(level).keySet().iterator();
+                while (it.hasNext()) {
+                    int node = it.nextInt();
+                    cachingSupplier.pin(neighborsOffset + node * nodeBytes, nodeBytes);
+                }
+            }
+        }
+    }
+
     @Override
     public long ramBytesUsed() {
         return Long.BYTES + 6 * Integer.BYTES + RamUsageEstimator.NUM_BYTES_OBJECT_REF
@@ -329,10 +372,14 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
     public class View implements FeatureSource, ScoringView, RandomAccessVectorValues {
         protected final RandomAccessReader reader;
         private final int[] neighbors;
+        // direct-mapped record of recent prefetch hints, so re-hinting a node still on the candidate heap is cheap
+        private final int[] recentlyPrefetched;
 
         public View(RandomAccessReader reader) {
             this.reader = reader;
             this.neighbors = new int[layerInfo.stream().mapToInt(li -> li.degree).max().orElse(0)];
+            this.recentlyPrefetched = new int[RECENTLY_PREFETCHED_SIZE];
+            Arrays.fill(recentlyPrefetched, -1);
         }
 
         @Override
@@ -375,14 +422,16 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
         }
 
         private long baseNodeOffsetFor(int node) {
+            long offsetWithinLayer = nodeBlockBytes() * node;
+            return neighborsOffset + offsetWithinLayer;
+        }
+
+        private long nodeBlockBytes() {
             int degree = layerInfo.get(0).degree;
 
             // skip node ID + inline features
             long skipInline = Integer.BYTES + inlineBlockSize;
-            long blockBytes = skipInline + (long) Integer.BYTES * (degree + 1);
-
-            long offsetWithinLayer = blockBytes * node;
-            return neighborsOffset + offsetWithinLayer;
+            return skipInline + (long) Integer.BYTES * (degree + 1);
         }
 
 
@@ -407,7 +456,8 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
                 feature = features.get(FeatureId.SEPARATED_VECTORS);
             }
             if (feature == null) {
-                throw new UnsupportedOperationException("No full-resolution vectors in this graph");
+                getHalfVectorInto(node, vector, offset);
+                return;
             }
 
             try {
@@ -419,6 +469,40 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
             }
         }
 
+        /**
+         * Without full-resolution vectors, the half-precision ones are the closest thing, converted to float32
+         */
+        private void getHalfVectorInto(int node, VectorFloat<?> vector, int offset) {
+            try {
+                if (features.containsKey(FeatureId.INLINE_HALF_VECTORS)) {
+                    ((InlineHalfVectors) features.get(FeatureId.INLINE_HALF_VECTORS)).readInto(this, node, vector, offset);
+                } else if (features.containsKey(FeatureId.SEPARATED_HALF_VECTORS)) {
+                    ((SeparatedHalfVectors) features.get(FeatureId.SEPARATED_HALF_VECTORS)).readInto(this, node, vector, offset);
+                } else {
+                    throw new UnsupportedOperationException("No full-resolution vectors in this graph");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Asks the reader to start loading the layer 0 record for the node, which contains both its
+         * neighbors and any inline features used to score it.  Upper layers are already in memory.
+         */
+        @Override
+        public void prefetchNeighbors(int level, int node) {
+            if (level != 0) {
+                return;
+            }
+            int slot = node & (RECENTLY_PREFETCHED_SIZE - 1);
+            if (recentlyPrefetched[slot] == node) {
+                return;
+            }
+            recentlyPrefetched[slot] = node;
+            reader.prefetch(baseNodeOffsetFor(node), nodeBlockBytes());
+        }
+
         public NodesIterator getNeighborsIterator(int level, int node) {
             try {
                 if (level == 0) {
@@ -457,9 +541,20 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
             return idUpperBound;
         }
 
+        /**
+         * @return the label's entry node, if the index has the LABEL_ENTRY_POINTS feature; otherwise -1
+         */
+        @Override
+        public int labelEntryNode(int label) {
+            return labelEntryPoints == null ? -1 : labelEntryPoints.entryNode(label);
+        }
+
+        /**
+         * @return the nodes that are not tombstoned, if the index has the TOMBSTONES feature; otherwise all nodes
+         */
         @Override
         public Bits liveNodes() {
-            return Bits.ALL;
+            return liveNodes;
         }
 
         @Override
@@ -471,8 +566,14 @@ public class OnDiskGraphIndex implements GraphIndex, AutoCloseable, Accountable
         public ScoreFunction.ExactScoreFunction rerankerFor(VectorFloat<?> queryVector, VectorSimilarityFunction vsf) {
             if (features.containsKey(FeatureId.INLINE_VECTORS)) {
                 return RandomAccessVectorValues.super.rerankerFor(queryVector, vsf);
+            } else if (features.containsKey(FeatureId.INLINE_HALF_VECTORS)) {
+                return ((InlineHalfVectors) features.get(FeatureId.INLINE_HALF_VECTORS)).rerankerFor(queryVector, vsf, this);
+            } else if (features.containsKey(FeatureId.SEPARATED_HALF_VECTORS)) {
+                return ((SeparatedHalfVectors) features.get(FeatureId.SEPARATED_HALF_VECTORS)).rerankerFor(queryVector, vsf, this);
             } else if (features.containsKey(FeatureId.NVQ_VECTORS)) {
                 return ((NVQ) features.get(FeatureId.NVQ_VECTORS)).rerankerFor(queryVector, vsf, this);
+            } else if (features.containsKey(FeatureId.SQ_VECTORS)) {
+                return ((SQ) features.get(FeatureId.SQ_VECTORS)).rerankerFor(queryVector, vsf, this);
             } else {
                 throw new UnsupportedOperationException("No reranker available for this graph");
             }
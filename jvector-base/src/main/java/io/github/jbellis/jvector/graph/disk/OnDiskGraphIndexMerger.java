@@ -0,0 +1,778 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph.disk;
+
+import io.github.jbellis.jvector.annotations.Experimental;
+import io.github.jbellis.jvector.disk.IndexWriter;
+import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.NodeArray;
+import io.github.jbellis.jvector.graph.NodeQueue;
+import io.github.jbellis.jvector.graph.NodesIterator;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.diversity.VamanaDiversityProvider;
+import io.github.jbellis.jvector.graph.disk.feature.Feature;
+import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
+import io.github.jbellis.jvector.graph.disk.feature.InlineVectors;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.BoundedLongHeap;
+import io.github.jbellis.jvector.util.ExplicitThreadLocal;
+import io.github.jbellis.jvector.util.FixedBitSet;
+import io.github.jbellis.jvector.util.GrowableLongHeap;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import org.agrona.collections.Int2IntHashMap;
+import org.agrona.collections.IntArrayList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * Merges several OnDiskGraphIndex segments into a single index, as in compaction, without re-inserting every
+ * vector.  Each node's existing neighbor list in its own segment is kept as a set of candidates, to which are
+ * added the cross-segment neighbors its segment could not have known about.  Only a node none of whose neighbors
+ * has been merged yet searches the other segments for those; the rest start from the cross-segment neighbors
+ * of two merged neighbors and refine them with a search of at most M expansions.  The union is pruned to the
+ * maximum degree with the Vamana diversity rule, and then every node is offered as a neighbor to the nodes
+ * that selected it (backlinks), as in a build.
+ * <p>
+ * Each segment comes with an OrdinalMapper from its ordinals to the ordinals of the merged index.  A mapper
+ * may return a negative ordinal for nodes that should be dropped, e.g. because they were deleted.  The merged
+ * ordinals must be exactly [0, total live nodes).  A node that loses neighbors this way is offered their
+ * neighbors instead, as in {@link io.github.jbellis.jvector.graph.GraphIndexBuilder#removeDeletedNodes()}.
+ * <p>
+ * The merged graph has as many layers as the segment with the most live nodes still has live nodes in, and
+ * enters at a live node of its top layer, preferably that segment's own entry point.  Each node stays in the
+ * layers it was in, up to that height, and its upper-layer neighbors are merged the same way as its base-layer
+ * ones, from its own segment's neighbors in that layer plus a search of the same layer of every other segment.
+ * <p>
+ * The segments must have full-resolution vectors (inline or separated); the merged index is written with
+ * inline vectors.  Vectors are read through the segments' views as they are needed.  The merged adjacency is
+ * held on heap while merging, plus M ints per node and other segment for the cross-segment neighbors.
+ */
+@Experimental
+public class OnDiskGraphIndexMerger {
+    private static final VectorTypeSupport vts = VectorizationProvider.getInstance().getVectorTypeSupport();
+    // how many merged neighbors a node takes its initial cross-segment neighbors from
+    private static final int INHERIT_FROM = 2;
+
+    private final List<OnDiskGraphIndex> segments;
+    private final VectorSimilarityFunction similarityFunction;
+    private final int M;
+    private final int beamWidth;
+    private final float alpha;
+
+    // (segment, ordinal in segment) -> merged ordinal, or -1 if dropped
+    private final int[][] mergedOf;
+    // merged ordinal -> (segment, ordinal in segment)
+    private final int[] segmentOf;
+    private final int[] localOf;
+    private final int maxLevel;
+    // level -> sorted merged ordinals of the nodes in that layer; null for the base layer, which has them all
+    private final int[][] layerNodes;
+    private final int entryNode;
+
+    /**
+     * @param segments           the indexes to merge
+     * @param mappers            for each segment, the mapping from its ordinals to merged ordinals
+     * @param similarityFunction the similarity function the segments were built with
+     * @param M                  the maximum degree of the merged graph
+     * @param beamWidth          the beam width of the searches for cross-segment neighbors
+     * @param alpha              the diversity threshold used when pruning
+     */
+    public OnDiskGraphIndexMerger(List<OnDiskGraphIndex> segments,
+                                  List<OrdinalMapper> mappers,
+                                  VectorSimilarityFunction similarityFunction,
+                                  int M,
+                                  int beamWidth,
+                                  float alpha)
+    {
+        if (segments.isEmpty() || segments.size() != mappers.size()) {
+            throw new IllegalArgumentException("Need one OrdinalMapper for each of one or more segments");
+        }
+        int dimension = segments.get(0).getDimension();
+        for (var segment : segments) {
+            if (segment.getDimension() != dimension) {
+                throw new IllegalArgumentException("Segments have different dimensions");
+            }
+        }
+        this.segments = segments;
+        this.similarityFunction = similarityFunction;
+        this.M = M;
+        this.beamWidth = beamWidth;
+        this.alpha = alpha;
+
+        // the mappers are consulted for every neighbor visited while merging, so resolve them once up front
+        int total = 0;
+        var liveCounts = new int[segments.size()];
+        mergedOf = new int[segments.size()][];
+        for (int s = 0; s < segments.size(); s++) {
+            mergedOf[s] = new int[segments.get(s).getIdUpperBound()];
+            for (int local = 0; local < mergedOf[s].length; local++) {
+                mergedOf[s][local] = Math.max(-1, mappers.get(s).oldToNew(local));
+                if (mergedOf[s][local] >= 0) {
+                    liveCounts[s]++;
+                }
+            }
+            total += liveCounts[s];
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Every node of every segment is dropped");
+        }
+        segmentOf = new int[total];
+        localOf = new int[total];
+        Arrays.fill(segmentOf, -1);
+        for (int s = 0; s < segments.size(); s++) {
+            for (int local = 0; local < mergedOf[s].length; local++) {
+                int merged = mergedOf[s][local];
+                if (merged < 0) {
+                    continue;
+                }
+                if (merged >= total || segmentOf[merged] >= 0) {
+                    throw new IllegalArgumentException(String.format("Segment %d maps node %d to %d, which is %s",
+                                                                     s, local, merged, merged >= total ? "out of bounds" : "already taken"));
+                }
+                segmentOf[merged] = s;
+                localOf[merged] = local;
+            }
+        }
+
+        // enter at the largest segment's entry point, or if that is dropped, at a live node of the highest of
+        // its layers that still has one
+        int largest = 0;
+        for (int s = 1; s < segments.size(); s++) {
+            if (liveCounts[s] > liveCounts[largest]) {
+                largest = s;
+            }
+        }
+        var segment = segments.get(largest);
+        int level = segment.getMaxLevel();
+        int entry = mergedOf[largest][segment.entryNode.node];
+        while (entry < 0) {
+            for (var it = segment.getNodes(level); it.hasNext() && entry < 0; ) {
+                entry = mergedOf[largest][it.nextInt()];
+            }
+            if (entry < 0) {
+                level--;
+            }
+        }
+        this.entryNode = entry;
+        this.maxLevel = level;
+
+        // the nodes of the other segments that are higher than that stay in its top layer
+        layerNodes = new int[maxLevel + 1][];
+        for (level = 1; level <= maxLevel; level++) {
+            var nodes = new IntArrayList();
+            for (int s = 0; s < segments.size(); s++) {
+                if (segments.get(s).getMaxLevel() < level) {
+                    continue;
+                }
+                for (var it = segments.get(s).getNodes(level); it.hasNext(); ) {
+                    int merged = mergedOf[s][it.nextInt()];
+                    if (merged >= 0) {
+                        nodes.addInt(merged);
+                    }
+                }
+            }
+            layerNodes[level] = nodes.toIntArray();
+            Arrays.sort(layerNodes[level]);
+        }
+    }
+
+    /**
+     * Merges the segments and writes the result, with inline vectors, to `out`.
+     * Flushing `out` is the caller's responsibility.
+     */
+    public void merge(IndexWriter out) throws IOException {
+        var liveNodes = new Bits[segments.size()];
+        for (int s = 0; s < segments.size(); s++) {
+            var merged = mergedOf[s];
+            liveNodes[s] = local -> merged[local] >= 0;
+        }
+
+        try (var searchers = ExplicitThreadLocal.withInitial(SegmentSearchers::new)) {
+            var adjacency = new int[maxLevel + 1][][];
+            adjacency[0] = seedBaseLayer(searchers, liveNodes);
+            for (int level = 1; level <= maxLevel; level++) {
+                adjacency[level] = seedUpperLayer(level, searchers, liveNodes);
+            }
+            for (int level = 0; level <= maxLevel; level++) {
+                addBacklinks(level, adjacency[level], searchers);
+            }
+
+            var graph = new MergedGraph(adjacency);
+            try (var writer = new OnDiskSequentialGraphIndexWriter.Builder(graph, out)
+                    .withMapper(new OrdinalMapper.IdentityMapper(segmentOf.length - 1))
+                    .with(new InlineVectors(segments.get(0).getDimension()))
+                    .build())
+            {
+                writer.write(Feature.singleStateFactory(FeatureId.INLINE_VECTORS,
+                                                        node -> new InlineVectors.State(searchers.get().vectors.getVector(node))));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Seeds each node with its own segment's neighbors, plus its nearest neighbors in every other segment.
+     * Those are found by searching the other segments only when none of the node's neighbors has been merged
+     * yet; otherwise the node starts from what its merged neighbors found, and refines it.
+     *
+     * @return the pruned neighbors of each node, by merged ordinal
+     */
+    private int[][] seedBaseLayer(ExplicitThreadLocal<SegmentSearchers> searchers, Bits[] liveNodes) {
+        int total = segmentOf.length;
+        var adjacency = new int[total][];
+        var crossNeighbors = new AtomicReferenceArray<int[]>(total);
+        PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, total).parallel().forEach(node -> {
+            var ss = searchers.get();
+            var candidates = new IntArrayList();
+            addSegmentNeighbors(0, node, ss, candidates);
+            if (segments.size() > 1) {
+                var inherited = new IntArrayList();
+                for (int i = 0, inheritedFrom = 0; i < candidates.size() && inheritedFrom < INHERIT_FROM; i++) {
+                    var cross = crossNeighbors.get(candidates.getInt(i));
+                    if (cross != null) {
+                        addAll(inherited, cross);
+                        inheritedFrom++;
+                    }
+                }
+                var v = ss.vectors.getVector(node);
+                var cross = inherited.isEmpty()
+                        ? searchOtherSegments(v, 0, segmentOf[node], ss, liveNodes)
+                        : refineInherited(v, inherited, ss);
+                crossNeighbors.set(node, cross);
+                addAll(candidates, cross);
+            }
+            adjacency[node] = prune(node, candidates, ss);
+        })).join();
+        return adjacency;
+    }
+
+    /**
+     * Seeds each node of an upper layer with its own segment's neighbors in that layer, plus its nearest
+     * neighbors in the same layer of every other segment that has it.
+     *
+     * @return the pruned neighbors of each node, in the order of `layerNodes[level]`
+     */
+    private int[][] seedUpperLayer(int level, ExplicitThreadLocal<SegmentSearchers> searchers, Bits[] liveNodes) {
+        var nodes = layerNodes[level];
+        var adjacency = new int[nodes.length][];
+        PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, nodes.length).parallel().forEach(i -> {
+            var ss = searchers.get();
+            int node = nodes[i];
+            var candidates = new IntArrayList();
+            addSegmentNeighbors(level, node, ss, candidates);
+            addAll(candidates, searchOtherSegments(ss.vectors.getVector(node), level, segmentOf[node], ss, liveNodes));
+            adjacency[i] = prune(node, candidates, ss);
+        })).join();
+        return adjacency;
+    }
+
+    /**
+     * Offers every node of the layer as a neighbor to the nodes that selected it, re-pruning nodes that overflow.
+     */
+    private void addBacklinks(int level, int[][] adjacency, ExplicitThreadLocal<SegmentSearchers> searchers) {
+        var incoming = new IntArrayList[adjacency.length];
+        for (int i = 0; i < adjacency.length; i++) {
+            for (int neighbor : adjacency[i]) {
+                int j = indexOf(level, neighbor);
+                if (incoming[j] == null) {
+                    incoming[j] = new IntArrayList();
+                }
+                incoming[j].addInt(nodeAt(level, i));
+            }
+        }
+        PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, adjacency.length).parallel().forEach(i -> {
+            if (incoming[i] == null) {
+                return;
+            }
+            var candidates = new IntArrayList(adjacency[i].length + incoming[i].size(), IntArrayList.DEFAULT_NULL_VALUE);
+            addAll(candidates, adjacency[i]);
+            candidates.addAll(incoming[i]);
+            incoming[i] = null;
+            adjacency[i] = prune(nodeAt(level, i), candidates, searchers.get());
+        })).join();
+    }
+
+    private int nodeAt(int level, int index) {
+        return level == 0 ? index : layerNodes[level][index];
+    }
+
+    private int indexOf(int level, int node) {
+        return level == 0 ? node : Arrays.binarySearch(layerNodes[level], node);
+    }
+
+    /**
+     * Adds the merged ordinals of `node`'s live neighbors in its own segment to `candidates`.  The hole each
+     * dropped neighbor leaves is repaired with that neighbor's own live neighbors, as in removeDeletedNodes.
+     */
+    private void addSegmentNeighbors(int level, int node, SegmentSearchers ss, IntArrayList candidates) {
+        int s = segmentOf[node];
+        var view = ss.views[s];
+        // copy the neighbors out, since the view reuses its buffer for the next iterator
+        for (int local : toArray(view.getNeighborsIterator(level, localOf[node]))) {
+            int merged = mergedOf[s][local];
+            if (merged >= 0) {
+                candidates.addInt(merged);
+                continue;
+            }
+            for (var it = view.getNeighborsIterator(level, local); it.hasNext(); ) {
+                int twoHop = mergedOf[s][it.nextInt()];
+                if (twoHop >= 0) {
+                    candidates.addInt(twoHop);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the merged ordinals of the M nearest neighbors of `v` in the given layer of each segment other
+     * than `segment` that has that layer
+     */
+    private int[] searchOtherSegments(VectorFloat<?> v, int level, int segment, SegmentSearchers ss, Bits[] liveNodes) {
+        var result = new IntArrayList(M * (segments.size() - 1), IntArrayList.DEFAULT_NULL_VALUE);
+        for (int t = 0; t < segments.size(); t++) {
+            if (t == segment || segments.get(t).getMaxLevel() < level) {
+                continue;
+            }
+            var ssp = new DefaultSearchScoreProvider(ss.scoreFunctionFor(v, t));
+            for (var ns : ss.searcher(t, level).search(ssp, M, beamWidth, 0.0f, 0.0f, liveNodes[t]).getNodes()) {
+                result.addInt(mergedOf[t][ns.node]);
+            }
+        }
+        return result.toIntArray();
+    }
+
+    /**
+     * @return the cross-segment neighbors of the node with vector `v`, found by a best-first search of the other
+     * segments that starts from the ones it inherits from its merged neighbors instead of from the entry points.
+     * Since those are already close, the search is limited to M expansions, a fraction of what searching from
+     * scratch costs.
+     */
+    private int[] refineInherited(VectorFloat<?> v, IntArrayList inherited, SegmentSearchers ss) {
+        var candidates = ss.candidates;
+        var closest = ss.closest;
+        candidates.clear();
+        closest.clear();
+        var batch = ss.batch;
+        batch.clear();
+        for (int i = 0; i < inherited.size(); i++) {
+            int candidate = inherited.getInt(i);
+            if (ss.visit(candidate)) {
+                batch.addInt(candidate);
+            }
+        }
+        scoreBatch(v, batch, ss, candidates, closest);
+        for (int expansions = 0; expansions < M && candidates.size() > 0 && candidates.topScore() >= closest.topScore(); expansions++) {
+            int expanded = candidates.pop();
+            int t = segmentOf[expanded];
+            batch.clear();
+            for (var it = ss.views[t].getNeighborsIterator(0, localOf[expanded]); it.hasNext(); ) {
+                int merged = mergedOf[t][it.nextInt()];
+                if (merged >= 0 && ss.visit(merged)) {
+                    batch.addInt(merged);
+                }
+            }
+            scoreBatch(v, batch, ss, candidates, closest);
+        }
+        ss.clearVisited();
+        return closest.nodesCopy();
+    }
+
+    /**
+     * Adds each node of `batch` to `closest` and, if it made the cut, to `candidates`.
+     */
+    private void scoreBatch(VectorFloat<?> v, IntArrayList batch, SegmentSearchers ss, NodeQueue candidates, NodeQueue closest) {
+        var scores = score(v, batch, ss);
+        for (int i = 0; i < batch.size(); i++) {
+            if (closest.push(batch.getInt(i), scores[i])) {
+                candidates.push(batch.getInt(i), scores[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the similarities of `v` to the nodes of `batch`, computed in one call, as the searcher does
+     */
+    private float[] score(VectorFloat<?> v, IntArrayList batch, SegmentSearchers ss) {
+        var batchVectors = ss.batchVectors(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            ss.vectors.getVectorInto(batch.getInt(i), batchVectors[i], 0);
+        }
+        var scores = new float[batch.size()];
+        similarityFunction.compare(v, batchVectors, batch.size(), scores);
+        return scores;
+    }
+
+    private static int[] toArray(NodesIterator it) {
+        var result = new int[it.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = it.nextInt();
+        }
+        return result;
+    }
+
+    private static void addAll(IntArrayList list, int[] values) {
+        for (int value : values) {
+            list.addInt(value);
+        }
+    }
+
+    /**
+     * @return up to M diverse neighbors for `node` from `candidates`, which may contain duplicates
+     */
+    private int[] prune(int node, IntArrayList candidates, SegmentSearchers ss) {
+        var batch = ss.batch;
+        batch.clear();
+        ss.visit(node);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (ss.visit(candidates.getInt(i))) {
+                batch.addInt(candidates.getInt(i));
+            }
+        }
+        ss.clearVisited();
+        var scores = score(ss.vectors.getVector(node), batch, ss);
+        var scored = new NodeArray(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            scored.insertSorted(batch.getInt(i), scores[i]);
+        }
+
+        var selected = new FixedBitSet(Math.max(1, scored.size()));
+        if (scored.size() <= M) {
+            selected.set(0, scored.size());
+        } else {
+            // the diversity check compares the candidates to each other, so let it reuse the vectors just scored
+            for (int i = 0; i < batch.size(); i++) {
+                ss.loaded.put(batch.getInt(i), i);
+            }
+            ss.diversityProvider.retainDiverse(scored, M, 0, selected);
+            ss.loaded.clear();
+        }
+        var result = new IntArrayList(M, IntArrayList.DEFAULT_NULL_VALUE);
+        for (int i = 0; i < scored.size(); i++) {
+            if (selected.get(i)) {
+                result.addInt(scored.getNode(i));
+            }
+        }
+        return result.toIntArray();
+    }
+
+    /**
+     * Per-thread searchers for each segment and their views, through which vectors are read, plus scratch space
+     * for refining and pruning that is reused from one node to the next.  The searchers of the upper layers are
+     * created as they are needed.
+     */
+    private class SegmentSearchers implements AutoCloseable {
+        final GraphSearcher[] searchers = new GraphSearcher[segments.size()];
+        final OnDiskGraphIndex.View[] views = new OnDiskGraphIndex.View[segments.size()];
+        final MergedVectorValues vectors = new MergedVectorValues(this);
+        final VamanaDiversityProvider diversityProvider = new VamanaDiversityProvider(BuildScoreProvider.randomAccessScoreProvider(vectors, similarityFunction), alpha);
+        final NodeQueue candidates = new NodeQueue(new GrowableLongHeap(M), NodeQueue.Order.MAX_HEAP);
+        final NodeQueue closest = new NodeQueue(new BoundedLongHeap(Math.max(1, M * (segments.size() - 1))), NodeQueue.Order.MIN_HEAP);
+        final IntArrayList batch = new IntArrayList();
+        /** the position in batchVectors of each node whose vector is already there, while pruning */
+        final Int2IntHashMap loaded = new Int2IntHashMap(-1);
+        private final GraphSearcher[][] layerSearchers = new GraphSearcher[segments.size()][maxLevel + 1];
+        private VectorFloat<?>[] batchVectors = new VectorFloat<?>[0];
+        private final FixedBitSet visited = new FixedBitSet(segmentOf.length);
+        private final IntArrayList visitedNodes = new IntArrayList();
+
+        SegmentSearchers() {
+            for (int s = 0; s < segments.size(); s++) {
+                searchers[s] = new GraphSearcher(segments.get(s));
+                views[s] = (OnDiskGraphIndex.View) searchers[s].getView();
+            }
+        }
+
+        /**
+         * @return a searcher that treats the given layer of segment `s` as its base layer
+         */
+        GraphSearcher searcher(int s, int level) {
+            if (level == 0) {
+                return searchers[s];
+            }
+            if (layerSearchers[s][level] == null) {
+                var searcher = new GraphSearcher(segments.get(s));
+                searcher.setView(new LayerView((OnDiskGraphIndex.View) searcher.getView(), level));
+                layerSearchers[s][level] = searcher;
+            }
+            return layerSearchers[s][level];
+        }
+
+        /**
+         * @return the similarity of `v` to the nodes of segment `s`, computed in batches like the merger's own
+         * scoring, without allocating a vector for each node
+         */
+        ScoreFunction.ExactScoreFunction scoreFunctionFor(VectorFloat<?> v, int s) {
+            var view = views[s];
+            return new ScoreFunction.ExactScoreFunction() {
+                @Override
+                public float similarityTo(int node2) {
+                    var scratch = batchVectors(1)[0];
+                    view.getVectorInto(node2, scratch, 0);
+                    return similarityFunction.compare(v, scratch);
+                }
+
+                @Override
+                public void similarityTo(int[] nodes, int count, float[] out) {
+                    var batch = batchVectors(count);
+                    for (int i = 0; i < count; i++) {
+                        view.getVectorInto(nodes[i], batch[i], 0);
+                    }
+                    similarityFunction.compare(v, batch, count, out);
+                }
+            };
+        }
+
+        /**
+         * @return at least `count` vectors to read a batch into
+         */
+        VectorFloat<?>[] batchVectors(int count) {
+            if (batchVectors.length < count) {
+                int allocated = batchVectors.length;
+                batchVectors = Arrays.copyOf(batchVectors, Math.max(count, 2 * allocated));
+                for (int i = allocated; i < batchVectors.length; i++) {
+                    batchVectors[i] = vts.createFloatVector(vectors.dimension());
+                }
+            }
+            return batchVectors;
+        }
+
+        /**
+         * @return true if `node` had not been visited since the last clearVisited()
+         */
+        boolean visit(int node) {
+            if (visited.getAndSet(node)) {
+                return false;
+            }
+            visitedNodes.addInt(node);
+            return true;
+        }
+
+        void clearVisited() {
+            for (int i = 0; i < visitedNodes.size(); i++) {
+                visited.clear(visitedNodes.getInt(i));
+            }
+            visitedNodes.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (var searcher : searchers) {
+                searcher.close();
+            }
+            for (var layers : layerSearchers) {
+                for (var searcher : layers) {
+                    if (searcher != null) {
+                        searcher.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Presents one upper layer of a segment, and the layers above it, as if it were the base layer, so that
+     * a GraphSearcher can search it.
+     */
+    private static class LayerView implements GraphIndex.View {
+        private final OnDiskGraphIndex.View view;
+        private final int level;
+
+        LayerView(OnDiskGraphIndex.View view, int level) {
+            this.view = view;
+            this.level = level;
+        }
+
+        @Override
+        public NodesIterator getNeighborsIterator(int level, int node) {
+            return view.getNeighborsIterator(this.level + level, node);
+        }
+
+        @Override
+        public int size() {
+            return view.size();
+        }
+
+        @Override
+        public GraphIndex.NodeAtLevel entryNode() {
+            var entry = view.entryNode();
+            return new GraphIndex.NodeAtLevel(entry.level - level, entry.node);
+        }
+
+        @Override
+        public Bits liveNodes() {
+            return view.liveNodes();
+        }
+
+        @Override
+        public int getIdUpperBound() {
+            return view.getIdUpperBound();
+        }
+
+        @Override
+        public void close() throws IOException {
+            view.close();
+        }
+    }
+
+    /**
+     * Presents the vectors of all the segments by merged ordinal, read through one thread's views unless
+     * they are already loaded in its batch.
+     */
+    private class MergedVectorValues implements RandomAccessVectorValues {
+        private final SegmentSearchers ss;
+        private final VectorFloat<?> scratch;
+
+        MergedVectorValues(SegmentSearchers ss) {
+            this.ss = ss;
+            this.scratch = vts.createFloatVector(dimension());
+        }
+
+        @Override
+        public int size() {
+            return segmentOf.length;
+        }
+
+        @Override
+        public int dimension() {
+            return segments.get(0).getDimension();
+        }
+
+        @Override
+        public VectorFloat<?> getVector(int nodeId) {
+            int i = ss.loaded.get(nodeId);
+            if (i >= 0) {
+                return ss.batchVectors[i];
+            }
+            getVectorInto(nodeId, scratch, 0);
+            return scratch;
+        }
+
+        @Override
+        public void getVectorInto(int node, VectorFloat<?> destinationVector, int offset) {
+            ss.views[segmentOf[node]].getVectorInto(localOf[node], destinationVector, offset);
+        }
+
+        @Override
+        public boolean isValueShared() {
+            return true;
+        }
+
+        /**
+         * @return values with their own scratch vector that read through the same views, so only for use by
+         * the thread that owns them
+         */
+        @Override
+        public RandomAccessVectorValues copy() {
+            return new MergedVectorValues(ss);
+        }
+    }
+
+    /**
+     * A GraphIndex over the merged adjacency.  Only supports what the writer needs.
+     */
+    private class MergedGraph implements GraphIndex {
+        private final int[][][] adjacency;
+
+        MergedGraph(int[][][] adjacency) {
+            this.adjacency = adjacency;
+        }
+
+        @Override
+        public NodesIterator getNodes(int level) {
+            if (level == 0) {
+                return NodesIterator.fromPrimitiveIterator(IntStream.range(0, segmentOf.length).iterator(), segmentOf.length);
+            }
+            return new NodesIterator.ArrayNodesIterator(layerNodes[level]);
+        }
+
+        @Override
+        public View getView() {
+            return new View() {
+                @Override
+                public NodesIterator getNeighborsIterator(int level, int node) {
+                    return new NodesIterator.ArrayNodesIterator(adjacency[level][indexOf(level, node)]);
+                }
+
+                @Override
+                public int size() {
+                    return segmentOf.length;
+                }
+
+                @Override
+                public NodeAtLevel entryNode() {
+                    return new NodeAtLevel(maxLevel, entryNode);
+                }
+
+                @Override
+                public Bits liveNodes() {
+                    return Bits.ALL;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public int maxDegree() {
+            return M;
+        }
+
+        @Override
+        public int getMaxLevel() {
+            return maxLevel;
+        }
+
+        @Override
+        public int getDegree(int level) {
+            return M;
+        }
+
+        @Override
+        public int size(int level) {
+            if (level > maxLevel) {
+                return 0;
+            }
+            return level == 0 ? segmentOf.length : layerNodes[level].length;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph.disk;
+
+import io.github.jbellis.jvector.annotations.Experimental;
+import io.github.jbellis.jvector.disk.BufferedRandomAccessWriter;
+import io.github.jbellis.jvector.disk.RandomAccessWriter;
+import io.github.jbellis.jvector.graph.NodeArray;
+import io.github.jbellis.jvector.graph.NodesIterator;
+import io.github.jbellis.jvector.graph.diversity.VamanaDiversityProvider;
+import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
+import io.github.jbellis.jvector.graph.disk.feature.FusedADC;
+import io.github.jbellis.jvector.graph.disk.feature.Tombstones;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.ExplicitThreadLocal;
+import io.github.jbellis.jvector.util.FixedBitSet;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.ByteSequence;
+import org.agrona.collections.Int2IntHashMap;
+import org.agrona.collections.IntHashSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Deletes nodes from an OnDiskGraphIndex without rewriting it.  This is the on-disk counterpart of
+ * {@link io.github.jbellis.jvector.graph.GraphIndexBuilder#removeDeletedNodes}: every live node that has a
+ * deleted neighbor gets a new neighbor list, chosen from its live neighbors and the live neighbors of its
+ * deleted ones (the FreshDiskANN repair) and pruned to the layer's degree with the Vamana diversity rule.
+ * Only those neighbor lists, and the tombstone bitmap, are overwritten in place; vectors, ordinals and
+ * the size of the index do not change.  For an index with the {@link FeatureId#FUSED_ADC} feature, the fused
+ * codes of each repaired node are rewritten to match its new neighbors, re-encoding the neighbors' vectors with
+ * the feature's PQ; this reproduces the original codes as long as they were encoded from the same vectors.
+ * <p>
+ * The index must have been written with the {@link FeatureId#TOMBSTONES} feature, which reserves the space for the
+ * bitmap, and with full-resolution vectors (inline or separated), to score the replacement neighbors.
+ * <p>
+ * Deleted nodes keep their own records, so a deleted entry node still routes searches into the graph,
+ * but searches never return them.  This trades some wasted space for not having to compact the index;
+ * once a large fraction of it is deleted, {@link OnDiskGraphIndexMerger} is the better choice.
+ * <p>
+ * The OnDiskGraphIndex passed to the constructor must not be used after {@link #patch}; load it again to see
+ * the tombstones and repaired neighbors.  The checksum of the index changes as well.
+ */
+@Experimental
+public class OnDiskGraphIndexPatcher {
+    private final OnDiskGraphIndex index;
+    private final VectorSimilarityFunction similarityFunction;
+    private final float alpha;
+    private final Tombstones tombstones;
+    private final FusedADC fusedADC;
+    private final FixedBitSet toDelete;
+
+    /**
+     * @param index              the index to delete nodes from
+     * @param similarityFunction the similarity function the index was built with
+     * @param alpha              the diversity threshold used when pruning
+     */
+    public OnDiskGraphIndexPatcher(OnDiskGraphIndex index, VectorSimilarityFunction similarityFunction, float alpha) {
+        this.tombstones = (Tombstones) index.features.get(FeatureId.TOMBSTONES);
+        if (tombstones == null || tombstones.getOffset() < 0) {
+            throw new IllegalArgumentException("Index was not written with the TOMBSTONES feature");
+        }
+        this.fusedADC = (FusedADC) index.features.get(FeatureId.FUSED_ADC);
+        this.index = index;
+        this.similarityFunction = similarityFunction;
+        this.alpha = alpha;
+        this.toDelete = new FixedBitSet(index.getIdUpperBound());
+    }
+
+    /**
+     * Mark the given node deleted.  Nothing is written until {@link #patch} is called.
+     */
+    public void markNodeDeleted(int node) {
+        if (node < 0 || node >= index.getIdUpperBound()) {
+            throw new IllegalArgumentException(String.format("Node %d out of bounds [0, %d)", node, index.getIdUpperBound()));
+        }
+        toDelete.set(node);
+    }
+
+    /**
+     * Tombstone the nodes marked deleted and repair the neighbor lists that point to them, writing to the
+     * file the index was loaded from.  The index must start at the beginning of the file.
+     *
+     * @return the number of neighbor lists rewritten, across all layers
+     */
+    public int patch(Path path) throws IOException {
+        try (var out = new BufferedRandomAccessWriter(path)) {
+            return patch(out);
+        }
+    }
+
+    /**
+     * Tombstone the nodes marked deleted and repair the neighbor lists that point to them.  `out` must
+     * address the same bytes as the index's ReaderSupplier, at the same positions.  The output IS flushed.
+     *
+     * @return the number of neighbor lists rewritten, across all layers
+     */
+    public synchronized int patch(RandomAccessWriter out) throws IOException {
+        var deleted = tombstones.copyOfDeletedNodes();
+        deleted.or(toDelete);
+        if (deleted.cardinality() == tombstones.cardinality()) {
+            return 0;
+        }
+
+        // compute all the repairs against the unpatched index before writing any of them
+        int levels = index.getMaxLevel() + 1;
+        var nodes = new int[levels][];
+        var repaired = new int[levels][][];
+        ByteSequence<?>[] fusedCodes = null;
+        try (var workers = ExplicitThreadLocal.withInitial(Worker::new)) {
+            for (int level = 0; level < levels; level++) {
+                nodes[level] = toArray(index.getNodes(level));
+                int lvl = level;
+                var layerNodes = nodes[level];
+                var layerRepairs = new int[layerNodes.length][];
+                PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, layerNodes.length).parallel().forEach(i -> {
+                    if (!deleted.get(layerNodes[i])) {
+                        layerRepairs[i] = workers.get().replaceDeletedNeighbors(lvl, layerNodes[i], deleted, layerNodes);
+                    }
+                })).join();
+                repaired[level] = layerRepairs;
+            }
+            if (fusedADC != null) {
+                fusedCodes = encodeNeighbors(repaired[0], workers);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        int nPatched = 0;
+        long l0RecordBytes = Integer.BYTES + index.inlineBlockSize + Integer.BYTES * (1L + index.getDegree(0));
+        for (int i = 0; i < nodes[0].length; i++) {
+            if (repaired[0][i] != null) {
+                long recordOffset = index.neighborsOffset + nodes[0][i] * l0RecordBytes;
+                if (fusedADC != null) {
+                    // the fused codes are stored in the order of the neighbors they describe
+                    out.seek(recordOffset + Integer.BYTES + index.inlineOffsets.get(FeatureId.FUSED_ADC));
+                    var codes = fusedCodes;
+                    fusedADC.writeInline(out, new NodesIterator.ArrayNodesIterator(repaired[0][i]), n -> codes[n]);
+                }
+                out.seek(recordOffset + Integer.BYTES + index.inlineBlockSize);
+                writeNeighbors(out, repaired[0][i], index.getDegree(0));
+                nPatched++;
+            }
+        }
+
+        // upper layers follow layer 0, in the order they were written rather than by ordinal
+        long layerOffset = index.neighborsOffset + index.getIdUpperBound() * l0RecordBytes;
+        try (var reader = index.readerSupplier.get()) {
+            for (int level = 1; level < levels; level++) {
+                var positions = new Int2IntHashMap(-1);
+                for (int i = 0; i < nodes[level].length; i++) {
+                    if (repaired[level][i] != null) {
+                        positions.put(nodes[level][i], i);
+                    }
+                }
+                long recordBytes = Integer.BYTES * (2L + index.getDegree(level));
+                for (int r = 0; r < index.size(level) && !positions.isEmpty(); r++) {
+                    long recordOffset = layerOffset + r * recordBytes;
+                    reader.seek(recordOffset);
+                    int i = positions.remove(reader.readInt());
+                    if (i >= 0) {
+                        out.seek(recordOffset + Integer.BYTES);
+                        writeNeighbors(out, repaired[level][i], index.getDegree(level));
+                        nPatched++;
+                    }
+                }
+                layerOffset += index.size(level) * recordBytes;
+            }
+        }
+
+        // tombstones go last, so that an interrupted patch leaves a valid graph whose nodes are merely less reachable
+        out.seek(tombstones.getOffset());
+        for (long word : deleted.getBits()) {
+            out.writeLong(word);
+        }
+        out.flush();
+        toDelete.clear();
+        return nPatched;
+    }
+
+    /**
+     * @return the PQ codes of the nodes in the given neighbor lists, indexed by node
+     */
+    private ByteSequence<?>[] encodeNeighbors(int[][] neighborLists, ExplicitThreadLocal<Worker> workers) {
+        var pq = fusedADC.getPQ();
+        var toEncode = new FixedBitSet(index.getIdUpperBound());
+        for (var neighbors : neighborLists) {
+            if (neighbors != null) {
+                for (int n : neighbors) {
+                    toEncode.set(n);
+                }
+            }
+        }
+        var codes = new ByteSequence<?>[index.getIdUpperBound()];
+        PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, codes.length).parallel().forEach(n -> {
+            if (toEncode.get(n)) {
+                codes[n] = pq.encode(workers.get().view.getVector(n));
+            }
+        })).join();
+        return codes;
+    }
+
+    private static void writeNeighbors(RandomAccessWriter out, int[] neighbors, int degree) throws IOException {
+        out.writeInt(neighbors.length);
+        int n = 0;
+        for (; n < neighbors.length; n++) {
+            out.writeInt(neighbors[n]);
+        }
+        // pad out to degree
+        for (; n < degree; n++) {
+            out.writeInt(-1);
+        }
+    }
+
+    private static int[] toArray(NodesIterator it) {
+        var nodes = new int[it.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = it.nextInt();
+        }
+        return nodes;
+    }
+
+    /**
+     * Per-thread view of the index, which both reads neighbors and scores candidates.
+     */
+    private class Worker implements AutoCloseable {
+        private final OnDiskGraphIndex.View view = index.getView();
+        private final BuildScoreProvider scoreProvider = BuildScoreProvider.randomAccessScoreProvider(view, similarityFunction);
+        private final VamanaDiversityProvider diversityProvider = new VamanaDiversityProvider(scoreProvider, alpha);
+        private final IntHashSet seen = new IntHashSet();
+
+        /**
+         * @return the new neighbors of `node` at `level`, or null if none of its neighbors are deleted
+         */
+        int[] replaceDeletedNeighbors(int level, int node, Bits deleted, int[] layerNodes) {
+            // the view reuses its neighbor buffer, so copy the list before reading the second hop
+            int[] neighbors = toArray(view.getNeighborsIterator(level, node));
+            boolean affected = false;
+            for (int j : neighbors) {
+                affected |= deleted.get(j);
+            }
+            if (!affected) {
+                return null;
+            }
+
+            var sf = scoreProvider.searchProviderFor(node).scoreFunction();
+            var candidates = new NodeArray(2 * index.getDegree(level));
+            seen.clear();
+            for (int j : neighbors) {
+                if (!deleted.get(j) && seen.add(j)) {
+                    candidates.insertSorted(j, sf.similarityTo(j));
+                }
+            }
+            for (int j : neighbors) {
+                if (!deleted.get(j)) {
+                    continue;
+                }
+                for (int k : toArray(view.getNeighborsIterator(level, j))) {
+                    if (k != node && !deleted.get(k) && seen.add(k)) {
+                        candidates.insertSorted(k, sf.similarityTo(k));
+                    }
+                }
+            }
+
+            // as in GraphIndexBuilder, if every replacement was deleted too, keep the node connected with random edges
+            if (candidates.size() == 0) {
+                var R = ThreadLocalRandom.current();
+                for (int i = 0; i < 2 * index.getDegree(level) && candidates.size() < index.getDegree(level); i++) {
+                    int randomNode = layerNodes[R.nextInt(layerNodes.length)];
+                    if (randomNode != node && !deleted.get(randomNode) && seen.add(randomNode)) {
+                        candidates.insertSorted(randomNode, sf.similarityTo(randomNode));
+                    }
+                }
+            }
+
+            var selected = new FixedBitSet(Math.max(1, candidates.size()));
+            if (candidates.size() > 0) {
+                diversityProvider.retainDiverse(candidates, index.getDegree(level), 0, selected);
+            }
+            candidates.retain(selected);
+            var result = new int[candidates.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = candidates.getNode(i);
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            view.close();
+        }
+    }
+}
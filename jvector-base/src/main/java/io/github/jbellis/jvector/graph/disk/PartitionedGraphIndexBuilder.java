@@ -0,0 +1,530 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph.disk;
+
+import io.github.jbellis.jvector.annotations.Experimental;
+import io.github.jbellis.jvector.disk.MappedChunkReader;
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.disk.ReaderSupplier;
+import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.NodeArray;
+import io.github.jbellis.jvector.graph.NodesIterator;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.diversity.VamanaDiversityProvider;
+import io.github.jbellis.jvector.graph.disk.feature.Feature;
+import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
+import io.github.jbellis.jvector.graph.disk.feature.InlineVectors;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.quantization.KMeansPlusPlusClusterer;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.FixedBitSet;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.IntHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Builds an OnDiskGraphIndex over more vectors than fit in the heap, in the manner of DiskANN's
+ * "merged Vamana": the vectors are split into overlapping partitions by k-means, a graph is built for each
+ * partition in turn with {@link GraphIndexBuilder}, and the partition graphs are merged into a single graph
+ * that is written with {@link OnDiskGraphIndexWriter}.  Because each vector is assigned to several
+ * partitions, the partition graphs share nodes and the merged graph is connected.
+ * <p>
+ * Peak heap usage is governed by `memoryBudget`: it bounds the size of each partition and of each batch of
+ * nodes processed during the merge.  Partition assignments and adjacency lists are spilled to
+ * `workDirectory` between phases; allow roughly (overlap + 1) * (M + 2) * 4 bytes per vector there.
+ * The input vectors are read repeatedly, so `ravv` should be backed by something with cheap random access,
+ * e.g. a memory-mapped file, rather than held on heap.
+ * <p>
+ * The resulting graph has a single layer, with the node nearest to the dataset's approximate centroid as
+ * its entry point.
+ */
+@Experimental
+public class PartitionedGraphIndexBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedGraphIndexBuilder.class);
+
+    public static final int DEFAULT_OVERLAP = 2;
+    private static final int KMEANS_ITERATIONS = 8;
+    private static final int KMEANS_SAMPLES_PER_CENTROID = 128;
+    // leave headroom so that capping partitions at maxPartitionSize still leaves room for every vector
+    private static final float PARTITION_SLACK = 1.25f;
+
+    private final RandomAccessVectorValues ravv;
+    private final VectorSimilarityFunction similarityFunction;
+    private final int M;
+    private final int beamWidth;
+    private final float neighborOverflow;
+    private final float alpha;
+    private final int overlap;
+    private final int maxPartitionSize;
+    private final Path workDirectory;
+
+    public PartitionedGraphIndexBuilder(RandomAccessVectorValues ravv,
+                                        VectorSimilarityFunction similarityFunction,
+                                        int M,
+                                        int beamWidth,
+                                        float neighborOverflow,
+                                        float alpha,
+                                        long memoryBudget,
+                                        Path workDirectory)
+    {
+        this(ravv, similarityFunction, M, beamWidth, neighborOverflow, alpha, memoryBudget, DEFAULT_OVERLAP, workDirectory);
+    }
+
+    /**
+     * @param ravv               the vectors to index
+     * @param similarityFunction the similarity function to build the graph with
+     * @param M                  the maximum degree of the graph
+     * @param beamWidth          the beam width used while building each partition's graph
+     * @param neighborOverflow   the neighbor overflow used while building each partition's graph
+     * @param alpha              the diversity threshold used both within partitions and when merging
+     * @param memoryBudget       the approximate number of bytes of heap the build may use at once
+     * @param overlap            the number of partitions each vector is assigned to
+     * @param workDirectory      where to spill intermediate files; they are deleted when the build finishes
+     */
+    public PartitionedGraphIndexBuilder(RandomAccessVectorValues ravv,
+                                        VectorSimilarityFunction similarityFunction,
+                                        int M,
+                                        int beamWidth,
+                                        float neighborOverflow,
+                                        float alpha,
+                                        long memoryBudget,
+                                        int overlap,
+                                        Path workDirectory)
+    {
+        if (overlap < 1) {
+            throw new IllegalArgumentException("overlap must be at least 1");
+        }
+        this.ravv = ravv;
+        this.similarityFunction = similarityFunction;
+        this.M = M;
+        this.beamWidth = beamWidth;
+        this.neighborOverflow = neighborOverflow;
+        this.alpha = alpha;
+        this.overlap = overlap;
+        this.workDirectory = workDirectory;
+
+        long bytesPerNode = estimateBytesPerNode(ravv.dimension(), M, neighborOverflow);
+        long partitionSize = memoryBudget / bytesPerNode;
+        if (partitionSize <= M) {
+            throw new IllegalArgumentException(String.format("Memory budget of %d bytes is too small for partitions of more than %d nodes",
+                                                             memoryBudget, partitionSize));
+        }
+        this.maxPartitionSize = (int) Math.min(partitionSize, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * @return the approximate heap used per node while building a partition's graph: a copy of the vector,
+     * plus an adjacency list of scored neighbors with room for overflow, plus object overhead
+     */
+    public static long estimateBytesPerNode(int dimension, int M, float neighborOverflow) {
+        long vectorBytes = (long) Float.BYTES * dimension;
+        long adjacencyBytes = (long) (Integer.BYTES + Float.BYTES) * ((int) (M * neighborOverflow) + 1);
+        return vectorBytes + adjacencyBytes + 128;
+    }
+
+    /**
+     * Builds the graph and writes it, with inline full-resolution vectors, to `outputPath`.
+     */
+    public void build(Path outputPath) throws IOException {
+        int size = ravv.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("Cannot build a graph with no vectors");
+        }
+        int partitionCount = size <= maxPartitionSize ? 1 : (int) Math.ceil(PARTITION_SLACK * size * overlap / maxPartitionSize);
+        int effectiveOverlap = Math.min(overlap, partitionCount);
+        logger.info("Building graph of {} vectors in {} partitions of at most {} nodes", size, partitionCount, maxPartitionSize);
+
+        var spills = new ArrayList<Path>();
+        try {
+            // assign vectors to partitions
+            var assignmentPaths = new Path[partitionCount];
+            for (int p = 0; p < partitionCount; p++) {
+                assignmentPaths[p] = Files.createTempFile(workDirectory, "partition-" + p, ".ordinals");
+                spills.add(assignmentPaths[p]);
+            }
+            int entryNode = partition(assignmentPaths, effectiveOverlap);
+
+            // build the graph of each partition, spilling its adjacency with global ordinals into one file
+            // per range of nodes that the merge processes together, so that the merge reads each record once
+            int batchSize = mergeBatchSize();
+            int batchCount = (size + batchSize - 1) / batchSize;
+            var adjacencyPaths = new Path[batchCount];
+            var adjacencyOuts = new DataOutputStream[batchCount];
+            try {
+                for (int b = 0; b < batchCount; b++) {
+                    adjacencyPaths[b] = Files.createTempFile(workDirectory, "batch-" + b, ".adjacency");
+                    spills.add(adjacencyPaths[b]);
+                    adjacencyOuts[b] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(adjacencyPaths[b])));
+                }
+                for (int p = 0; p < partitionCount; p++) {
+                    buildPartition(assignmentPaths[p], batchSize, adjacencyOuts);
+                    Files.delete(assignmentPaths[p]);
+                }
+            } finally {
+                for (var out : adjacencyOuts) {
+                    if (out != null) {
+                        out.close();
+                    }
+                }
+            }
+
+            // merge the partition graphs into fixed-size adjacency records, ordered by node
+            var mergedPath = Files.createTempFile(workDirectory, "merged", ".adjacency");
+            spills.add(mergedPath);
+            merge(adjacencyPaths, batchSize, mergedPath);
+
+            try (var readerSupplier = new MappedChunkReader.Supplier(mergedPath);
+                 var graph = new SpilledGraphIndex(readerSupplier, size, M, entryNode);
+                 var writer = new OnDiskGraphIndexWriter.Builder(graph, outputPath)
+                         .withMapper(new OrdinalMapper.IdentityMapper(size - 1))
+                         .with(new InlineVectors(ravv.dimension()))
+                         .build())
+            {
+                var vectors = ravv.threadLocalSupplier();
+                writer.write(Feature.singleStateFactory(FeatureId.INLINE_VECTORS,
+                                                        node -> new InlineVectors.State(vectors.get().getVector(node))));
+            }
+        } finally {
+            for (var path : spills) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Clusters a sample of the vectors, then writes the ordinals assigned to each partition.  Each vector goes
+     * to its `overlap` nearest centroids, skipping partitions that are already full.
+     *
+     * @return the ordinal of the vector nearest to the centroid of the sample
+     */
+    private int partition(Path[] assignmentPaths, int overlap) throws IOException {
+        int size = ravv.size();
+        int partitionCount = assignmentPaths.length;
+        int dimension = ravv.dimension();
+
+        // evenly spaced sample, which is both deterministic and representative of an unshuffled input
+        int sampleSize = (int) Math.min(size, Math.max(KMEANS_SAMPLES_PER_CENTROID * (long) partitionCount, 10_000));
+        var sample = new VectorFloat<?>[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            sample[i] = ravv.getVector((int) ((long) i * size / sampleSize)).copy();
+        }
+        var centroid = KMeansPlusPlusClusterer.centroidOf(Arrays.asList(sample));
+        VectorFloat<?> centroids;
+        if (partitionCount == 1) {
+            centroids = centroid;
+        } else {
+            centroids = new KMeansPlusPlusClusterer(sample, partitionCount).cluster(KMEANS_ITERATIONS, 0);
+        }
+
+        var outs = new DataOutputStream[partitionCount];
+        var counts = new int[partitionCount];
+        int entryNode = -1;
+        float entryDistance = Float.MAX_VALUE;
+        try {
+            for (int p = 0; p < partitionCount; p++) {
+                outs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(assignmentPaths[p])));
+            }
+
+            var distances = new float[partitionCount];
+            var order = new Integer[partitionCount];
+            for (int node = 0; node < size; node++) {
+                var v = ravv.getVector(node);
+                float d = VectorUtil.squareL2Distance(v, centroid);
+                if (d < entryDistance) {
+                    entryDistance = d;
+                    entryNode = node;
+                }
+
+                for (int p = 0; p < partitionCount; p++) {
+                    order[p] = p;
+                    distances[p] = VectorUtil.squareL2Distance(v, 0, centroids, p * dimension, dimension);
+                }
+                Arrays.sort(order, (a, b) -> Float.compare(distances[a], distances[b]));
+                int assigned = 0;
+                for (int i = 0; i < partitionCount && assigned < overlap; i++) {
+                    int p = order[i];
+                    if (counts[p] < maxPartitionSize) {
+                        outs[p].writeInt(node);
+                        counts[p]++;
+                        assigned++;
+                    }
+                }
+                assert assigned > 0 : "every partition is full";
+            }
+        } finally {
+            for (var out : outs) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+        logger.debug("Partition sizes: {}", Arrays.toString(counts));
+        return entryNode;
+    }
+
+    /**
+     * Builds the graph of one partition and appends each node's adjacency, as global ordinals, to the
+     * spill file of the merge batch that the node falls in.
+     */
+    private void buildPartition(Path assignmentPath, int batchSize, DataOutputStream[] adjacencyOuts) throws IOException {
+        int partitionSize = (int) (Files.size(assignmentPath) / Integer.BYTES);
+        var ordinals = new int[partitionSize];
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(assignmentPath)))) {
+            for (int i = 0; i < partitionSize; i++) {
+                ordinals[i] = in.readInt();
+            }
+        }
+
+        var vectors = new ArrayList<VectorFloat<?>>(partitionSize);
+        for (int ordinal : ordinals) {
+            vectors.add(ravv.getVector(ordinal).copy());
+        }
+        var partitionRavv = new ListRandomAccessVectorValues(vectors, ravv.dimension());
+
+        try (var builder = new GraphIndexBuilder(partitionRavv, similarityFunction, M, beamWidth, neighborOverflow, alpha, false)) {
+            var graph = builder.build(partitionRavv);
+            try (var view = graph.getFrozenView()) {
+                for (int i = 0; i < partitionSize; i++) {
+                    var it = view.getNeighborsIterator(0, i);
+                    var out = adjacencyOuts[ordinals[i] / batchSize];
+                    out.writeInt(ordinals[i]);
+                    out.writeInt(it.size());
+                    while (it.hasNext()) {
+                        out.writeInt(ordinals[it.nextInt()]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of nodes the merge holds candidates for at once
+     */
+    private int mergeBatchSize() {
+        // each node collects up to overlap * M candidates, held as ints and then scored
+        long bytesPerNode = (long) overlap * M * (Integer.BYTES + Integer.BYTES + Float.BYTES) + 64;
+        return (int) Math.max(1, Math.min(ravv.size(), (long) maxPartitionSize * estimateBytesPerNode(ravv.dimension(), M, neighborOverflow) / bytesPerNode));
+    }
+
+    /**
+     * Merges the partition graphs a batch of nodes at a time: each batch reads the union of its nodes'
+     * neighbors across all partitions from its spill file, then prunes each union back to M diverse neighbors.
+     */
+    private void merge(Path[] adjacencyPaths, int batchSize, Path mergedPath) throws IOException {
+        int size = ravv.size();
+        var bsp = BuildScoreProvider.randomAccessScoreProvider(ravv, similarityFunction);
+        var diversityProvider = new VamanaDiversityProvider(bsp, alpha);
+        var vectors = ravv.threadLocalSupplier();
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(mergedPath)))) {
+            for (int start = 0; start < size; start += batchSize) {
+                int end = Math.min(size, start + batchSize);
+                var candidates = new IntArrayList[end - start];
+                var adjacencyPath = adjacencyPaths[start / batchSize];
+                collectCandidates(adjacencyPath, start, candidates);
+                Files.delete(adjacencyPath);
+
+                int batchStart = start;
+                var merged = new int[end - start][];
+                IntStream.range(start, end).parallel().forEach(node -> {
+                    var c = candidates[node - batchStart];
+                    merged[node - batchStart] = c == null ? new int[0] : prune(node, c, vectors.get(), diversityProvider);
+                });
+
+                for (var neighbors : merged) {
+                    out.writeInt(neighbors.length);
+                    for (int n = 0; n < M; n++) {
+                        out.writeInt(n < neighbors.length ? neighbors[n] : -1);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void collectCandidates(Path adjacencyPath, int start, IntArrayList[] candidates) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(adjacencyPath)))) {
+            long remaining = Files.size(adjacencyPath);
+            while (remaining > 0) {
+                int node = in.readInt();
+                int count = in.readInt();
+                remaining -= (2L + count) * Integer.BYTES;
+                assert node >= start && node < start + candidates.length : node + " is not in the batch starting at " + start;
+                if (candidates[node - start] == null) {
+                    candidates[node - start] = new IntArrayList(count, IntArrayList.DEFAULT_NULL_VALUE);
+                }
+                for (int i = 0; i < count; i++) {
+                    candidates[node - start].addInt(in.readInt());
+                }
+            }
+        }
+    }
+
+    private int[] prune(int node, IntArrayList candidates, RandomAccessVectorValues vectors, VamanaDiversityProvider diversityProvider) {
+        var v = vectors.getVector(node);
+        var seen = new IntHashSet(candidates.size());
+        var scored = new NodeArray(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            int candidate = candidates.getInt(i);
+            if (candidate != node && seen.add(candidate)) {
+                scored.insertSorted(candidate, similarityFunction.compare(v, vectors.getVector(candidate)));
+            }
+        }
+        if (scored.size() <= M) {
+            var result = new int[scored.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = scored.getNode(i);
+            }
+            return result;
+        }
+
+        var selected = new FixedBitSet(scored.size());
+        diversityProvider.retainDiverse(scored, M, 0, selected);
+        var result = new IntArrayList(M, IntArrayList.DEFAULT_NULL_VALUE);
+        for (int i = 0; i < scored.size(); i++) {
+            if (selected.get(i)) {
+                result.addInt(scored.getNode(i));
+            }
+        }
+        return result.toIntArray();
+    }
+
+    /**
+     * A single-layer GraphIndex whose adjacency is read from the fixed-size records written by `merge`.
+     * Only supports what the writer needs.
+     */
+    private static class SpilledGraphIndex implements GraphIndex {
+        private final ReaderSupplier readerSupplier;
+        private final int size;
+        private final int degree;
+        private final int entryNode;
+
+        SpilledGraphIndex(ReaderSupplier readerSupplier, int size, int degree, int entryNode) {
+            this.readerSupplier = readerSupplier;
+            this.size = size;
+            this.degree = degree;
+            this.entryNode = entryNode;
+        }
+
+        @Override
+        public NodesIterator getNodes(int level) {
+            return NodesIterator.fromPrimitiveIterator(IntStream.range(0, size).iterator(), size);
+        }
+
+        @Override
+        public View getView() {
+            try {
+                return new SpilledView(readerSupplier.get());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int maxDegree() {
+            return degree;
+        }
+
+        @Override
+        public int getMaxLevel() {
+            return 0;
+        }
+
+        @Override
+        public int getDegree(int level) {
+            return degree;
+        }
+
+        @Override
+        public int size(int level) {
+            return level == 0 ? size : 0;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            // the reader supplier is owned by the caller
+        }
+
+        private class SpilledView implements View {
+            private final RandomAccessReader reader;
+            private final int[] neighbors = new int[degree];
+
+            SpilledView(RandomAccessReader reader) {
+                this.reader = reader;
+            }
+
+            @Override
+            public NodesIterator getNeighborsIterator(int level, int node) {
+                assert level == 0;
+                try {
+                    reader.seek((long) node * Integer.BYTES * (degree + 1));
+                    int count = reader.readInt();
+                    reader.read(neighbors, 0, count);
+                    return new NodesIterator.ArrayNodesIterator(neighbors, count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public NodeAtLevel entryNode() {
+                return new NodeAtLevel(0, entryNode);
+            }
+
+            @Override
+            public Bits liveNodes() {
+                return Bits.ALL;
+            }
+
+            @Override
+            public int getIdUpperBound() {
+                return size;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        }
+    }
+}
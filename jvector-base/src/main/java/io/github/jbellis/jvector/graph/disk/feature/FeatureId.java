@@ -35,7 +35,12 @@ public enum FeatureId {
     FUSED_ADC(FusedADC::load),
     NVQ_VECTORS(NVQ::load),
     SEPARATED_VECTORS(SeparatedVectors::load),
-    SEPARATED_NVQ(SeparatedNVQ::load);
+    SEPARATED_NVQ(SeparatedNVQ::load),
+    INLINE_HALF_VECTORS(InlineHalfVectors::load),
+    SEPARATED_HALF_VECTORS(SeparatedHalfVectors::load),
+    SQ_VECTORS(SQ::load),
+    TOMBSTONES(Tombstones::load),
+    LABEL_ENTRY_POINTS(LabelEntryPoints::load);
 
     public static final Set<FeatureId> ALL = Collections.unmodifiableSet(EnumSet.allOf(FeatureId.class));
 
@@ -18,6 +18,7 @@ package io.github.jbellis.jvector.graph.disk.feature;
 
 import io.github.jbellis.jvector.disk.RandomAccessReader;
 import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.NodesIterator;
 import io.github.jbellis.jvector.graph.disk.CommonHeader;
 import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
 import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
@@ -34,29 +35,50 @@ import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.function.IntFunction;
 
 /**
  * Implements Quick ADC-style scoring by fusing PQ-encoded neighbors into an OnDiskGraphIndex.
+ * <p>
+ * The neighbors' codes are stored transposed, so that the codes of all neighbors for the first subspace are
+ * contiguous, then those for the second subspace, and so on.  With a 256-cluster PQ each code takes a byte;
+ * with a 16-cluster PQ two subspaces are packed into each byte (the even subspace in the low nibble), so that
+ * the lookup table for a subspace fits in a single register.
  */
 public class FusedADC implements Feature {
+    /**
+     * maxDegree must be a multiple of this, so that the neighbors can be scored in whole SIMD registers
+     * (sixteen 16-bit lanes in 256 bits).
+     */
+    public static final int DEGREE_MULTIPLE = 16;
+
     private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
     private final ProductQuantization pq;
     private final int maxDegree;
+    private final boolean fourBit;
     private final ThreadLocal<VectorFloat<?>> reusableResults;
     private final ExplicitThreadLocal<ByteSequence<?>> reusableNeighbors;
     private ByteSequence<?> compressedNeighbors = null;
 
     public FusedADC(int maxDegree, ProductQuantization pq) {
-        if (maxDegree != 32) {
-            throw new IllegalArgumentException("maxDegree must be 32 for FusedADC. This limitation may be removed in future releases");
+        if (maxDegree <= 0 || maxDegree % DEGREE_MULTIPLE != 0) {
+            throw new IllegalArgumentException(String.format("maxDegree must be a positive multiple of %d for FusedADC, got %d", DEGREE_MULTIPLE, maxDegree));
         }
-        if (pq.getClusterCount() != 256) {
-            throw new IllegalArgumentException("FusedADC requires a 256-cluster PQ. This limitation may be removed in future releases");
+        if (pq.getClusterCount() != 256 && pq.getClusterCount() != 16) {
+            throw new IllegalArgumentException("FusedADC requires a 256-cluster or 16-cluster PQ, got " + pq.getClusterCount());
         }
         this.maxDegree = maxDegree;
         this.pq = pq;
+        this.fourBit = pq.getClusterCount() == 16;
         this.reusableResults = ThreadLocal.withInitial(() -> vectorTypeSupport.createFloatVector(maxDegree));
-        this.reusableNeighbors = ExplicitThreadLocal.withInitial(() -> vectorTypeSupport.createByteSequence(pq.compressedVectorSize() * maxDegree));
+        this.reusableNeighbors = ExplicitThreadLocal.withInitial(() -> vectorTypeSupport.createByteSequence(featureSize()));
+    }
+
+    /**
+     * @return the number of bytes used to store one subspace's codes for each neighbor
+     */
+    private int packedCodebookCount() {
+        return fourBit ? (pq.getSubspaceCount() + 1) / 2 : pq.getSubspaceCount();
     }
 
     @Override
@@ -71,7 +93,7 @@ public class FusedADC implements Feature {
 
     @Override
     public int featureSize() {
-        return pq.compressedVectorSize() * maxDegree;
+        return packedCodebookCount() * maxDegree;
     }
 
     static FusedADC load(CommonHeader header, RandomAccessReader reader) {
@@ -97,19 +119,33 @@ public class FusedADC implements Feature {
     // generate the fused set based on the neighbors of the node, not just the node itself
     @Override
     public void writeInline(DataOutput out, Feature.State state_) throws IOException {
+        var state = (FusedADC.State) state_;
+        writeInline(out, state.view.getNeighborsIterator(0, state.nodeId), state.pqVectors::get);
+    }
+
+    /**
+     * Writes the packed codes of the given neighbors, as {@link #writeInline(DataOutput, Feature.State)} does
+     * for a node's neighbors in the graph.  Used to rewrite a node's codes when its neighbors change.
+     *
+     * @param codes the PQ codes of each neighbor, encoded with {@link #getPQ()}
+     */
+    public void writeInline(DataOutput out, NodesIterator neighbors, IntFunction<ByteSequence<?>> codes) throws IOException {
         if (compressedNeighbors == null) {
-            compressedNeighbors = vectorTypeSupport.createByteSequence(pq.compressedVectorSize() * maxDegree);
+            compressedNeighbors = vectorTypeSupport.createByteSequence(featureSize());
         }
-        var state = (FusedADC.State) state_;
-        var pqv = state.pqVectors;
 
-        var neighbors = state.view.getNeighborsIterator(0, state.nodeId);
         int n = 0;
         compressedNeighbors.zero();
         while (neighbors.hasNext()) {
-            var compressed = pqv.get(neighbors.nextInt());
-            for (int j = 0; j < pqv.getCompressedSize(); j++) {
-                compressedNeighbors.set(j * maxDegree + n, compressed.get(j));
+            var compressed = codes.apply(neighbors.nextInt());
+            for (int j = 0; j < compressed.length(); j++) {
+                if (fourBit) {
+                    int i = (j / 2) * maxDegree + n;
+                    int code = compressed.get(j) << ((j & 1) * 4);
+                    compressedNeighbors.set(i, (byte) (compressedNeighbors.get(i) | code));
+                } else {
+                    compressedNeighbors.set(j * maxDegree + n, compressed.get(j));
+                }
             }
             n++;
         }
@@ -117,6 +153,13 @@ public class FusedADC implements Feature {
         vectorTypeSupport.writeByteSequence(out, compressedNeighbors);
     }
 
+    /**
+     * @return the PQ whose codes are fused into the index
+     */
+    public ProductQuantization getPQ() {
+        return pq;
+    }
+
     public static class State implements Feature.State {
         public final GraphIndex.View view;
         public final PQVectors pqVectors;
@@ -150,5 +193,12 @@ public class FusedADC implements Feature {
         public int maxDegree() {
             return maxDegree;
         }
+
+        /**
+         * @return true if two subspaces' 4-bit codes are packed into each byte
+         */
+        public boolean isFourBit() {
+            return fourBit;
+        }
     }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.graph.disk.feature;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable space to read one half-precision vector into.  Not threadsafe.
+ */
+class HalfVectorBuffer {
+    private final ByteBuffer bytes;
+    private final short[] values;
+
+    HalfVectorBuffer(int dimension) {
+        // DataOutput.writeShort is big-endian, which is also ByteBuffer's default
+        bytes = ByteBuffer.allocate(dimension * Short.BYTES);
+        values = new short[dimension];
+    }
+
+    /**
+     * Reads a vector from the reader's current position.  The result is overwritten by the next call.
+     */
+    short[] read(RandomAccessReader reader) throws IOException {
+        bytes.clear();
+        reader.readFully(bytes);
+        bytes.flip();
+        bytes.asShortBuffer().get(values);
+        return values;
+    }
+}
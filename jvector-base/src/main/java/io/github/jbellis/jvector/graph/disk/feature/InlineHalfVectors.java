@@ -0,0 +1,125 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.graph.disk.feature;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.disk.CommonHeader;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.vector.HalfFloatType;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Implements the storage of vectors inline into an OnDiskGraphIndex at half precision (float16 or bfloat16),
+ * half the size of {@link InlineVectors}.  These can be used for reranking, converting to float32 on the fly.
+ * Uses InlineVectors.State; the vectors are converted as they are written.
+ */
+public class InlineHalfVectors implements Feature {
+    private final int dimension;
+    private final HalfFloatType type;
+    private final ThreadLocal<HalfVectorBuffer> buffers;
+
+    public InlineHalfVectors(int dimension, HalfFloatType type) {
+        this.dimension = dimension;
+        this.type = type;
+        this.buffers = ThreadLocal.withInitial(() -> new HalfVectorBuffer(dimension));
+    }
+
+    @Override
+    public FeatureId id() {
+        return FeatureId.INLINE_HALF_VECTORS;
+    }
+
+    @Override
+    public int headerSize() {
+        return Integer.BYTES;
+    }
+
+    @Override
+    public int featureSize() {
+        return dimension * Short.BYTES;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public HalfFloatType type() {
+        return type;
+    }
+
+    static InlineHalfVectors load(CommonHeader header, RandomAccessReader reader) {
+        try {
+            return new InlineHalfVectors(header.dimension, loadType(reader));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static HalfFloatType loadType(RandomAccessReader reader) throws IOException {
+        int ordinal = reader.readInt();
+        if (ordinal < 0 || ordinal >= HalfFloatType.values().length) {
+            throw new IOException("Unknown half-precision format " + ordinal);
+        }
+        return HalfFloatType.values()[ordinal];
+    }
+
+    @Override
+    public void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(type.ordinal());
+    }
+
+    @Override
+    public void writeInline(DataOutput out, Feature.State state) throws IOException {
+        type.write(out, ((InlineVectors.State) state).vector);
+    }
+
+    public ScoreFunction.ExactScoreFunction rerankerFor(VectorFloat<?> queryVector,
+                                                        VectorSimilarityFunction vsf,
+                                                        FeatureSource source) {
+        return rerankerFor(queryVector, vsf, type, buffers, source, id());
+    }
+
+    /**
+     * Reads the node's vector, converted to float32, into `vector` starting at `offset`
+     */
+    public void readInto(FeatureSource source, int node, VectorFloat<?> vector, int offset) throws IOException {
+        var values = buffers.get().read(source.featureReaderForNode(node, id()));
+        type.decode(values, dimension, vector, offset);
+    }
+
+    static ScoreFunction.ExactScoreFunction rerankerFor(VectorFloat<?> queryVector,
+                                                        VectorSimilarityFunction vsf,
+                                                        HalfFloatType type,
+                                                        ThreadLocal<HalfVectorBuffer> buffers,
+                                                        FeatureSource source,
+                                                        FeatureId featureId) {
+        return node2 -> {
+            short[] values;
+            try {
+                values = buffers.get().read(source.featureReaderForNode(node2, featureId));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return vsf.compare(queryVector, values, type);
+        };
+    }
+}
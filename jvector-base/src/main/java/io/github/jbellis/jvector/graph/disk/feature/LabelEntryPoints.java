@@ -0,0 +1,132 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph.disk.feature;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.OnHeapGraphIndex;
+import io.github.jbellis.jvector.graph.disk.CommonHeader;
+import io.github.jbellis.jvector.graph.disk.OrdinalMapper;
+import org.agrona.collections.Int2IntHashMap;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The entry node for searches filtered to each label, for graphs built with
+ * {@link io.github.jbellis.jvector.graph.NodeLabels}.  Stored in the header of an OnDiskGraphIndex;
+ * nothing is stored inline.
+ * <p>
+ * Entry nodes are given in the ordinals of the graph being written; the writer maps them to the ordinals
+ * written to disk.
+ */
+public class LabelEntryPoints implements Feature {
+    private final Int2IntHashMap entryNodes;
+
+    /**
+     * @param labelEntryNodes the entry node of each label
+     */
+    public LabelEntryPoints(Map<Integer, Integer> labelEntryNodes) {
+        this.entryNodes = new Int2IntHashMap(-1);
+        labelEntryNodes.forEach((label, node) -> entryNodes.put((int) label, (int) node));
+    }
+
+    private LabelEntryPoints(Int2IntHashMap entryNodes) {
+        this.entryNodes = entryNodes;
+    }
+
+    /**
+     * @return the entry nodes recorded by a graph built with labels
+     */
+    public static LabelEntryPoints of(OnHeapGraphIndex graph) {
+        return new LabelEntryPoints(graph.getLabelEntryNodes());
+    }
+
+    @Override
+    public FeatureId id() {
+        return FeatureId.LABEL_ENTRY_POINTS;
+    }
+
+    @Override
+    public int headerSize() {
+        return Integer.BYTES + 2 * Integer.BYTES * entryNodes.size();
+    }
+
+    @Override
+    public int featureSize() {
+        return 0;
+    }
+
+    /**
+     * @return the entry node for the given label, or -1 if there is none
+     */
+    public int entryNode(int label) {
+        return entryNodes.get(label);
+    }
+
+    /**
+     * @return the number of labels with an entry node
+     */
+    public int size() {
+        return entryNodes.size();
+    }
+
+    /**
+     * @return a copy of this with the entry nodes mapped from old to new ordinals
+     */
+    public LabelEntryPoints withOrdinals(OrdinalMapper ordinalMapper) {
+        var mapped = new Int2IntHashMap(-1);
+        for (var it = entryNodes.keySet().iterator(); it.hasNext(); ) {
+            int label = it.nextValue();
+            mapped.put(label, ordinalMapper.oldToNew(entryNodes.get(label)));
+        }
+        return new LabelEntryPoints(mapped);
+    }
+
+    static LabelEntryPoints load(CommonHeader header, RandomAccessReader reader) {
+        try {
+            int size = reader.readInt();
+            var entryNodes = new Int2IntHashMap(-1);
+            for (int i = 0; i < size; i++) {
+                int label = reader.readInt();
+                entryNodes.put(label, reader.readInt());
+            }
+            return new LabelEntryPoints(entryNodes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeHeader(DataOutput out) throws IOException {
+        // sorted by label, so that the same graph always produces the same bytes
+        int[] labels = new int[entryNodes.size()];
+        int n = 0;
+        for (var it = entryNodes.keySet().iterator(); it.hasNext(); ) {
+            labels[n++] = it.nextValue();
+        }
+        Arrays.sort(labels);
+        out.writeInt(labels.length);
+        for (int label : labels) {
+            out.writeInt(label);
+            out.writeInt(entryNodes.get(label));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.graph.disk.feature;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.disk.CommonHeader;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.quantization.ScalarQuantization;
+import io.github.jbellis.jvector.quantization.ScalarQuantization.QuantizedVector;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Implements the storage of int8 scalar-quantized vectors in an on-disk graph index, at a quarter of the size
+ * of {@link InlineVectors}.  These can be used for reranking.
+ */
+public class SQ implements Feature {
+    private final ScalarQuantization sq;
+    private final ThreadLocal<QuantizedVector> reusableQuantizedVector;
+
+    public SQ(ScalarQuantization sq) {
+        this.sq = sq;
+        reusableQuantizedVector = ThreadLocal.withInitial(() -> QuantizedVector.createEmpty(sq.getOriginalDimension()));
+    }
+
+    @Override
+    public FeatureId id() {
+        return FeatureId.SQ_VECTORS;
+    }
+
+    @Override
+    public int headerSize() {
+        return sq.compressorSize();
+    }
+
+    @Override
+    public int featureSize() {
+        return sq.compressedVectorSize();
+    }
+
+    public int dimension() {
+        return sq.getOriginalDimension();
+    }
+
+    static SQ load(CommonHeader header, RandomAccessReader reader) {
+        try {
+            return new SQ(ScalarQuantization.load(reader));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeHeader(DataOutput out) throws IOException {
+        sq.write(out, OnDiskGraphIndex.CURRENT_VERSION);
+    }
+
+    @Override
+    public void writeInline(DataOutput out, Feature.State state_) throws IOException {
+        var state = (SQ.State) state_;
+        state.vector.write(out);
+    }
+
+    public static class State implements Feature.State {
+        public final QuantizedVector vector;
+
+        public State(QuantizedVector vector) {
+            this.vector = vector;
+        }
+    }
+
+    public ScoreFunction.ExactScoreFunction rerankerFor(VectorFloat<?> queryVector,
+                                                        VectorSimilarityFunction vsf,
+                                                        FeatureSource source) {
+        var encodedQuery = sq.encode(queryVector);
+
+        return node2 -> {
+            try {
+                var reader = source.featureReaderForNode(node2, FeatureId.SQ_VECTORS);
+                QuantizedVector.loadInto(reader, reusableQuantizedVector.get());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return sq.similarity(encodedQuery, reusableQuantizedVector.get(), vsf);
+        };
+    }
+}
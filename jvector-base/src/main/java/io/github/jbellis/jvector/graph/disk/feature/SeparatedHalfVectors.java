@@ -0,0 +1,123 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.graph.disk.feature;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.disk.CommonHeader;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.vector.HalfFloatType;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The separated counterpart of {@link InlineHalfVectors}.
+ */
+public class SeparatedHalfVectors implements SeparatedFeature {
+    private final int dimension;
+    private final HalfFloatType type;
+    private final ThreadLocal<HalfVectorBuffer> buffers;
+    private long offset;
+
+    public SeparatedHalfVectors(int dimension, HalfFloatType type, long offset) {
+        this.dimension = dimension;
+        this.type = type;
+        this.offset = offset;
+        this.buffers = ThreadLocal.withInitial(() -> new HalfVectorBuffer(dimension));
+    }
+
+    @Override
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public FeatureId id() {
+        return FeatureId.SEPARATED_HALF_VECTORS;
+    }
+
+    @Override
+    public int headerSize() {
+        return Integer.BYTES + Long.BYTES;
+    }
+
+    @Override
+    public int featureSize() {
+        return dimension * Short.BYTES;
+    }
+
+    @Override
+    public void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(type.ordinal());
+        out.writeLong(offset);
+    }
+
+    @Override
+    public void writeSeparately(DataOutput out, State state_) throws IOException {
+        var state = (InlineVectors.State) state_;
+        if (state.vector != null) {
+            type.write(out, state.vector);
+        } else {
+            // Write zeros for missing vector
+            for (int j = 0; j < dimension; j++) {
+                out.writeShort(0);
+            }
+        }
+    }
+
+    // Using InlineVectors.State
+
+    static SeparatedHalfVectors load(CommonHeader header, RandomAccessReader reader) {
+        try {
+            var type = InlineHalfVectors.loadType(reader);
+            long offset = reader.readLong();
+            return new SeparatedHalfVectors(header.dimension, type, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public HalfFloatType type() {
+        return type;
+    }
+
+    public ScoreFunction.ExactScoreFunction rerankerFor(VectorFloat<?> queryVector,
+                                                        VectorSimilarityFunction vsf,
+                                                        FeatureSource source) {
+        return InlineHalfVectors.rerankerFor(queryVector, vsf, type, buffers, source, id());
+    }
+
+    /**
+     * Reads the node's vector, converted to float32, into `vector` starting at `offset`
+     */
+    public void readInto(FeatureSource source, int node, VectorFloat<?> vector, int offset) throws IOException {
+        var values = buffers.get().read(source.featureReaderForNode(node, id()));
+        type.decode(values, dimension, vector, offset);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph.disk.feature;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.disk.CommonHeader;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.FixedBitSet;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A bitmap of deleted ("tombstoned") nodes, stored in the header of an OnDiskGraphIndex.  Searches exclude
+ * tombstoned nodes from their results, and {@link io.github.jbellis.jvector.graph.disk.OnDiskGraphIndexPatcher}
+ * sets bits in place (and repairs the neighbor lists that pointed to them) without rewriting the index.
+ * <p>
+ * Writing an index with this feature reserves space for one bit per ordinal, all clear.  Nothing is stored inline.
+ */
+public class Tombstones implements Feature {
+    private final FixedBitSet deleted;
+    // position of the bitmap words in the index, or -1 if this Tombstones was not loaded from an index
+    private final long offset;
+
+    /**
+     * @param idUpperBound the number of ordinals in the index that will be written, i.e. the new ordinals
+     *                     produced by the writer's OrdinalMapper
+     */
+    public Tombstones(int idUpperBound) {
+        this(new FixedBitSet(idUpperBound), -1);
+    }
+
+    private Tombstones(FixedBitSet deleted, long offset) {
+        this.deleted = deleted;
+        this.offset = offset;
+    }
+
+    @Override
+    public FeatureId id() {
+        return FeatureId.TOMBSTONES;
+    }
+
+    @Override
+    public int headerSize() {
+        return Integer.BYTES + Long.BYTES * deleted.getBits().length;
+    }
+
+    @Override
+    public int featureSize() {
+        return 0;
+    }
+
+    /**
+     * @return the number of ordinals covered by the bitmap
+     */
+    public int capacity() {
+        return deleted.length();
+    }
+
+    /**
+     * @return the tombstoned nodes.  Not a copy; callers must not modify it.
+     */
+    public Bits deletedNodes() {
+        return deleted;
+    }
+
+    /**
+     * @return a mutable copy of the tombstoned nodes, whose backing words have the same length as those on disk
+     */
+    public FixedBitSet copyOfDeletedNodes() {
+        return deleted.clone();
+    }
+
+    public int cardinality() {
+        return deleted.cardinality();
+    }
+
+    /**
+     * @return the position of the bitmap words in the index that this was loaded from, or -1
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    static Tombstones load(CommonHeader header, RandomAccessReader reader) {
+        try {
+            long[] words = new long[reader.readInt()];
+            long offset = reader.getPosition();
+            reader.readFully(words);
+            return new Tombstones(new FixedBitSet(words, header.idUpperBound), offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeHeader(DataOutput out) throws IOException {
+        long[] words = deleted.getBits();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+}
@@ -30,4 +30,14 @@ public interface DiversityProvider {
      * @return the fraction of short edges (neighbors within alpha=1.0)
      */
     double retainDiverse(NodeArray neighbors, int maxDegree, int diverseBefore, BitSet selected);
+
+    /**
+     * update `selected` with the diverse members of `neighbors`, which are candidate neighbors of `node`.
+     * The default implementation ignores `node`; providers whose pruning depends on the base node
+     * (such as {@link LabelAwareDiversityProvider}) override it.
+     * @return the fraction of short edges (neighbors within alpha=1.0)
+     */
+    default double retainDiverse(int node, NodeArray neighbors, int maxDegree, int diverseBefore, BitSet selected) {
+        return retainDiverse(neighbors, maxDegree, diverseBefore, selected);
+    }
 }
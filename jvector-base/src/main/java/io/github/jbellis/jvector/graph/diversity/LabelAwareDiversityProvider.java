@@ -0,0 +1,132 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph.diversity;
+
+import io.github.jbellis.jvector.graph.NodeArray;
+import io.github.jbellis.jvector.graph.NodeLabels;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.util.BitSet;
+import io.github.jbellis.jvector.util.DocIdSetIterator;
+
+import static java.lang.Math.min;
+
+/**
+ * The label-aware variant of Vamana's robust pruning, from "Filtered-DiskANN: Graph Algorithms for
+ * Approximate Nearest Neighbor Search with Filters" (FilteredRobustPrune).
+ * <p>
+ * A selected neighbor p' of node p only prunes a candidate p'' if, in addition to the usual distance condition,
+ * p' carries every label that p and p'' have in common.  Otherwise, a search restricted to one of those labels
+ * could not use p' as a detour to reach p'', so the edge to p'' is kept.  Candidates that share no label with p
+ * are pruned exactly as in {@link VamanaDiversityProvider}.
+ * <p>
+ * Unlike Filtered-Vamana, whose neighbor lists only hold nodes sharing a label, the candidates here also include
+ * the unfiltered nearest neighbors (see {@link io.github.jbellis.jvector.graph.GraphIndexBuilder}), and half of the
+ * degree is filled with label-sharing candidates first, so that the graph serves both filtered and unfiltered searches.
+ * <p>
+ * The label-agnostic {@link #retainDiverse(NodeArray, int, int, BitSet)} behaves as VamanaDiversityProvider.
+ */
+public class LabelAwareDiversityProvider extends VamanaDiversityProvider {
+    /** the labels of each node */
+    public final NodeLabels labels;
+
+    public LabelAwareDiversityProvider(BuildScoreProvider scoreProvider, float alpha, NodeLabels labels) {
+        super(scoreProvider, alpha);
+        this.labels = labels;
+    }
+
+    @Override
+    public double retainDiverse(int node, NodeArray neighbors, int maxDegree, int diverseBefore, BitSet selected) {
+        int[] nodeLabels = labels.labelsOf(node);
+        if (nodeLabels.length == 0) {
+            return retainDiverse(neighbors, maxDegree, diverseBefore, selected);
+        }
+
+        for (int i = 0; i < min(diverseBefore, maxDegree); i++) {
+            selected.set(i);
+        }
+
+        int nSelected = diverseBefore;
+        double shortEdges = Double.NaN;
+        // same alpha schedule as VamanaDiversityProvider, but at each step, first fill up to half the degree with
+        // candidates that share a label with the node.  Otherwise, the nearest nodes in the graph as a whole, which
+        // mostly carry other labels, take every slot, and the nodes with a rare label are left with no edges among
+        // themselves.  The other half keeps the graph navigable for searches that are not filtered.
+        int labelDegree = (maxDegree + 1) / 2;
+        float currentAlpha = 1.0f;
+        while (currentAlpha <= alpha + 1E-6 && nSelected < maxDegree) {
+            nSelected = select(nodeLabels, true, neighbors, labelDegree, diverseBefore, selected, nSelected, currentAlpha);
+            nSelected = select(nodeLabels, false, neighbors, maxDegree, diverseBefore, selected, nSelected, currentAlpha);
+
+            if (currentAlpha == 1.0f) {
+                shortEdges = nSelected / (float) maxDegree;
+            }
+
+            currentAlpha += 0.2f;
+        }
+        return shortEdges;
+    }
+
+    /**
+     * Adds the diverse candidates to `selected`, in order, until `limit` are selected
+     * @param sharedOnly only consider candidates that share a label with the base node
+     * @return the new number of selected candidates
+     */
+    private int select(int[] nodeLabels, boolean sharedOnly, NodeArray neighbors, int limit, int diverseBefore, BitSet selected, int nSelected, float currentAlpha) {
+        for (int i = diverseBefore; i < neighbors.size() && nSelected < limit; i++) {
+            if (selected.get(i)) {
+                continue;
+            }
+
+            int cNode = neighbors.getNode(i);
+            if (sharedOnly && !NodeLabels.intersects(nodeLabels, labels.labelsOf(cNode))) {
+                continue;
+            }
+            float cScore = neighbors.getScore(i);
+            var sf = scoreProvider.diversityProviderFor(cNode).scoreFunction();
+            if (isDiverse(nodeLabels, cNode, cScore, neighbors, sf, selected, currentAlpha)) {
+                selected.set(i);
+                nSelected++;
+            }
+        }
+        return nSelected;
+    }
+
+    // is the candidate node with the given score closer to the base node than it is to any of the
+    // already-selected neighbors that carry all the labels it shares with the base node
+    private boolean isDiverse(int[] baseLabels, int node, float score, NodeArray others, ScoreFunction sf, BitSet selected, float alpha) {
+        assert others.size() > 0;
+
+        int[] candidateLabels = null;
+        for (int i = selected.nextSetBit(0); i != DocIdSetIterator.NO_MORE_DOCS; i = selected.nextSetBit(i + 1)) {
+            int otherNode = others.getNode(i);
+            if (node == otherNode) {
+                break;
+            }
+            if (sf.similarityTo(otherNode) > score * alpha) {
+                if (candidateLabels == null) {
+                    candidateLabels = labels.labelsOf(node);
+                }
+                if (NodeLabels.sharedLabelsIn(baseLabels, candidateLabels, labels.labelsOf(otherNode))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -19,6 +19,7 @@ package io.github.jbellis.jvector.graph.similarity;
 import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
 import io.github.jbellis.jvector.quantization.BQVectors;
 import io.github.jbellis.jvector.quantization.PQVectors;
+import io.github.jbellis.jvector.quantization.ResidualPQVectors;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.VectorUtil;
 import io.github.jbellis.jvector.vector.VectorizationProvider;
@@ -181,6 +182,48 @@ public interface BuildScoreProvider {
         };
     }
 
+    /**
+     * Returns a BSP that performs approximate score comparisons using the given ResidualPQVectors.
+     * Like the PQ variant, diversity checks decode the node and compare without precomputed tables.
+     */
+    static BuildScoreProvider pqBuildScoreProvider(VectorSimilarityFunction vsf, ResidualPQVectors rpqv) {
+        int dimension = rpqv.getOriginalSize() / Float.BYTES;
+        final ThreadLocal<VectorFloat<?>> reusableVector = ThreadLocal.withInitial(() -> vts.createFloatVector(dimension));
+
+        return new BuildScoreProvider() {
+            @Override
+            public boolean isExact() {
+                return false;
+            }
+
+            @Override
+            public SearchScoreProvider diversityProviderFor(int node1) {
+                VectorFloat<?> v1 = reusableVector.get();
+                rpqv.getCompressor().decode(rpqv.get(node1), v1);
+                var asf = rpqv.scoreFunctionFor(v1, vsf); // not precomputed!
+                return new DefaultSearchScoreProvider(asf);
+            }
+
+            @Override
+            public SearchScoreProvider searchProviderFor(int node1) {
+                VectorFloat<?> decoded = reusableVector.get();
+                rpqv.getCompressor().decode(rpqv.get(node1), decoded);
+                return searchProviderFor(decoded);
+            }
+
+            @Override
+            public SearchScoreProvider searchProviderFor(VectorFloat<?> vector) {
+                // deliberately skips reranking even though we are using an approximate score function
+                return new DefaultSearchScoreProvider(rpqv.precomputedScoreFunctionFor(vector, vsf));
+            }
+
+            @Override
+            public VectorFloat<?> approximateCentroid() {
+                return rpqv.getCompressor().getOrComputeCentroid();
+            }
+        };
+    }
+
     static BuildScoreProvider bqBuildScoreProvider(BQVectors bqv) {
         return new BuildScoreProvider() {
             @Override
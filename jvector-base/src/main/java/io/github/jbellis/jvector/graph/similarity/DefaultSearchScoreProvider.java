@@ -75,6 +75,20 @@ public final class DefaultSearchScoreProvider implements SearchScoreProvider {
             public float similarityTo(int node2) {
                 return vsf.compare(v, ravv.getVector(node2));
             }
+
+            @Override
+            public void similarityTo(int[] nodes, int count, float[] out) {
+                if (ravv.isValueShared()) {
+                    ExactScoreFunction.super.similarityTo(nodes, count, out);
+                    return;
+                }
+                // allocated per call rather than per instance, to stay threadsafe
+                var vectors = new VectorFloat<?>[count];
+                for (int i = 0; i < count; i++) {
+                    vectors[i] = ravv.getVector(nodes[i]);
+                }
+                vsf.compare(v, vectors, count, out);
+            }
         };
         return new DefaultSearchScoreProvider(sf);
     }
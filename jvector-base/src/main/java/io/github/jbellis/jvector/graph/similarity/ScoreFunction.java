@@ -41,6 +41,18 @@ public interface ScoreFunction {
      */
     float similarityTo(int node2);
 
+    /**
+     * Computes the similarity to each of nodes[0, count), storing the score of nodes[i] in out[i].
+     * Used when expanding the neighbors of a search candidate.  Implementations that can score many
+     * candidates together, overlapping their memory accesses, should override this; the default
+     * calls {@link #similarityTo(int)} once per node.
+     */
+    default void similarityTo(int[] nodes, int count, float[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = similarityTo(nodes[i]);
+        }
+    }
+
     /**
      * @return the similarity to all of the nodes that `node2` has an edge towards.
      * Used when expanding the neighbors of a search candidate.
@@ -67,4 +79,21 @@ public interface ScoreFunction {
             return false;
         }
     }
+
+    /**
+     * An approximate score function that also reports an interval around each estimate.  The exact score
+     * lies within the interval with high probability, so a candidate whose upper bound is below another's
+     * lower bound can be ranked without computing either exact score.
+     */
+    interface BoundedApproximateScoreFunction extends ApproximateScoreFunction {
+        /**
+         * @return a lower bound on the exact similarity to `node2`
+         */
+        float lowerBound(int node2);
+
+        /**
+         * @return an upper bound on the exact similarity to `node2`
+         */
+        float upperBound(int node2);
+    }
 }
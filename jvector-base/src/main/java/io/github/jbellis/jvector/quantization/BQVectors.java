@@ -98,9 +98,25 @@ public abstract class BQVectors implements CompressedVectors {
     @Override
     public ScoreFunction.ApproximateScoreFunction scoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
         var qBQ = bq.encode(q);
-        return node2 -> {
-            var vBQ = compressedVectors[node2];
-            return similarityBetween(qBQ, vBQ);
+        return new ScoreFunction.ApproximateScoreFunction() {
+            @Override
+            public float similarityTo(int node2) {
+                var vBQ = compressedVectors[node2];
+                return similarityBetween(qBQ, vBQ);
+            }
+
+            @Override
+            public void similarityTo(int[] nodes, int count, float[] out) {
+                var vectors = new long[count][];
+                for (int i = 0; i < count; i++) {
+                    vectors[i] = compressedVectors[nodes[i]];
+                }
+                var distances = new int[count];
+                VectorUtil.bulkHammingDistance(qBQ, vectors, count, distances);
+                for (int i = 0; i < count; i++) {
+                    out[i] = 1 - (float) distances[i] / bq.getOriginalDimension();
+                }
+            }
         };
     }
 
@@ -70,8 +70,7 @@ public abstract class FusedADCPQDecoder implements ScoreFunction.ApproximateScor
         partialSums = pq.reusablePartialSums();
         partialBestDistances = pq.reusablePartialBestDistances();
         if (vsf != VectorSimilarityFunction.COSINE) {
-            VectorFloat<?> center = pq.globalCentroid;
-            var centeredQuery = center == null ? query : VectorUtil.sub(query, center);
+            var centeredQuery = pq.centerAndRotate(query);
             for (var i = 0; i < pq.getSubspaceCount(); i++) {
                 int offset = pq.subvectorSizesAndOffsets[i][1];
                 int size = pq.subvectorSizesAndOffsets[i][0];
@@ -92,7 +91,11 @@ public abstract class FusedADCPQDecoder implements ScoreFunction.ApproximateScor
 
         if (supportsQuantizedSimilarity) {
             // we have seen enough data to compute `delta`, so take the fast path using the permuted nodes
-            VectorUtil.bulkShuffleQuantizedSimilarity(permutedNodes, pq.compressedVectorSize(), partialQuantizedSums, delta, bestDistance, results, vsf);
+            if (neighbors.isFourBit()) {
+                VectorUtil.bulkShuffleQuantizedSimilarity4bit(permutedNodes, pq.getSubspaceCount(), partialQuantizedSums, delta, bestDistance, results, vsf);
+            } else {
+                VectorUtil.bulkShuffleQuantizedSimilarity(permutedNodes, pq.compressedVectorSize(), partialQuantizedSums, delta, bestDistance, results, vsf);
+            }
             return results;
         }
 
@@ -101,7 +104,7 @@ public abstract class FusedADCPQDecoder implements ScoreFunction.ApproximateScor
         var nodeCount = results.length();
         for (int i = 0; i < pq.getSubspaceCount(); i++) {
             for (int j = 0; j < nodeCount; j++) {
-                results.set(j, results.get(j) + partialSums.get(i * pq.getClusterCount() + Byte.toUnsignedInt(permutedNodes.get(i * nodeCount + j))));
+                results.set(j, results.get(j) + partialSums.get(i * pq.getClusterCount() + code(permutedNodes, i, j, nodeCount)));
             }
         }
 
@@ -123,6 +126,16 @@ public abstract class FusedADCPQDecoder implements ScoreFunction.ApproximateScor
         return results;
     }
 
+    /**
+     * @return the code of the given neighbor for subspace i, in the transposed (and possibly nibble-packed) layout written by FusedADC
+     */
+    protected int code(ByteSequence<?> permutedNodes, int i, int neighbor, int nodeCount) {
+        if (neighbors.isFourBit()) {
+            return (Byte.toUnsignedInt(permutedNodes.get((i >> 1) * nodeCount + neighbor)) >> ((i & 1) * 4)) & 0xF;
+        }
+        return Byte.toUnsignedInt(permutedNodes.get(i * nodeCount + neighbor));
+    }
+
     @Override
     public boolean supportsEdgeLoadingSimilarity() {
         return true;
@@ -233,9 +246,8 @@ public abstract class FusedADCPQDecoder implements ScoreFunction.ApproximateScor
             partialQuantizedSquaredMagnitudes = pq.partialQuantizedSquaredMagnitudes().get();
 
             // compute partialSums, partialBestDistances, bestDistance, and queryMagnitudeSquared from the codebooks
-            VectorFloat<?> center = pq.globalCentroid;
             float queryMagSum = 0.0f;
-            var centeredQuery = center == null ? query : VectorUtil.sub(query, center);
+            var centeredQuery = pq.centerAndRotate(query);
             for (var i = 0; i < pq.getSubspaceCount(); i++) {
                 int offset = pq.subvectorSizesAndOffsets[i][1];
                 int size = pq.subvectorSizesAndOffsets[i][0];
@@ -258,7 +270,11 @@ public abstract class FusedADCPQDecoder implements ScoreFunction.ApproximateScor
             if (supportsQuantizedSimilarity) {
                 results.zero();
                 // we have seen enough data to compute `delta`, so take the fast path using the permuted nodes
-                VectorUtil.bulkShuffleQuantizedSimilarityCosine(permutedNodes, pq.compressedVectorSize(), partialQuantizedSums, delta, bestDistance, partialQuantizedSquaredMagnitudes, squaredMagnitudeDelta, minSquaredMagnitude, queryMagnitudeSquared, results);
+                if (neighbors.isFourBit()) {
+                    VectorUtil.bulkShuffleQuantizedSimilarityCosine4bit(permutedNodes, pq.getSubspaceCount(), partialQuantizedSums, delta, bestDistance, partialQuantizedSquaredMagnitudes, squaredMagnitudeDelta, minSquaredMagnitude, queryMagnitudeSquared, results);
+                } else {
+                    VectorUtil.bulkShuffleQuantizedSimilarityCosine(permutedNodes, pq.compressedVectorSize(), partialQuantizedSums, delta, bestDistance, partialQuantizedSquaredMagnitudes, squaredMagnitudeDelta, minSquaredMagnitude, queryMagnitudeSquared, results);
+                }
                 return results;
             }
 
@@ -269,8 +285,9 @@ public abstract class FusedADCPQDecoder implements ScoreFunction.ApproximateScor
             Arrays.fill(resultMagnitudeAggregates, 0);
             for (int i = 0; i < pq.getSubspaceCount(); i++) {
                 for (int j = 0; j < nodeCount; j++) {
-                    resultSumAggregates[j] += partialSums.get(i * pq.getClusterCount() + Byte.toUnsignedInt(permutedNodes.get(i * nodeCount + j)));
-                    resultMagnitudeAggregates[j] += partialSquaredMagnitudes.get(i * pq.getClusterCount() + Byte.toUnsignedInt(permutedNodes.get(i * nodeCount + j)));
+                    int code = code(permutedNodes, i, j, nodeCount);
+                    resultSumAggregates[j] += partialSums.get(i * pq.getClusterCount() + code);
+                    resultMagnitudeAggregates[j] += partialSquaredMagnitudes.get(i * pq.getClusterCount() + code);
                 }
             }
 
@@ -57,6 +57,15 @@ public class KMeansPlusPlusClusterer {
     private final int[] centroidDenoms; // the number of points assigned to each cluster
     private final VectorFloat<?>[] centroidNums; // the sum of all points assigned to each cluster
 
+    // the centroids again, dimension-major, for VectorUtil.nearestCentroids
+    private final VectorFloat<?> transposedCentroids;
+    // scratch output of nearestCentroids for `points`
+    private final int[] nearest;
+    private final float[] nearestDistances;
+
+    // the number of points each cluster has been assigned over all mini-batches, or null if clusterOnceMiniBatch has not been called
+    private int[] miniBatchCounts;
+
     /**
      * Constructs a KMeansPlusPlusFloatClusterer with the specified points and number of clusters.
      *
@@ -103,6 +112,9 @@ public class KMeansPlusPlusClusterer {
             centroidNums[i] = vectorTypeSupport.createFloatVector(points[0].length());
         }
         assignments = new int[points.length];
+        transposedCentroids = vectorTypeSupport.createFloatVector(this.centroids.length());
+        nearest = new int[points.length];
+        nearestDistances = new float[points.length];
 
         initializeAssignedPoints();
     }
@@ -158,6 +170,67 @@ public class KMeansPlusPlusClusterer {
         return updateAssignedPointsAnisotropic();
     }
 
+    /**
+     * Performs one step of mini-batch k-means ("Web-Scale K-Means Clustering", Sculley): the points of `batch` are
+     * assigned to their nearest centroids, and each centroid then moves towards the points assigned to it with a
+     * per-centroid learning rate of 1 / (the number of points ever assigned to it), so that it stays the running mean
+     * of those points.  A centroid that no batch has reached yet is replaced outright.
+     * <p>
+     * The points passed to the constructor are only used for seeding; their assignments are not updated here, so
+     * this should not be mixed with clusterOnceUnweighted.
+     *
+     * @return the mean squared distance the centroids moved, relative to the mean squared distance from the batch points
+     *         to their nearest centroid.  This is scale-invariant, so it can be compared to a fixed tolerance to decide
+     *         when training has converged.
+     */
+    public float clusterOnceMiniBatch(VectorFloat<?>[] batch) {
+        if (miniBatchCounts == null) {
+            miniBatchCounts = new int[k];
+        }
+        int dimension = points[0].length();
+
+        var batchNearest = new int[batch.length];
+        var batchDistances = new float[batch.length];
+        transposeCentroids();
+        VectorUtil.nearestCentroids(batch, 0, batch.length, transposedCentroids, k, batchNearest, batchDistances);
+
+        var batchCounts = new int[k];
+        var batchSums = new VectorFloat<?>[k];
+        double error = 0;
+        for (int i = 0; i < batch.length; i++) {
+            int c = batchNearest[i];
+            if (batchSums[c] == null) {
+                batchSums[c] = batch[i].copy();
+            } else {
+                addInPlace(batchSums[c], batch[i]);
+            }
+            batchCounts[c]++;
+            error += batchDistances[i];
+        }
+
+        // c' = c + (sum - b * c) / (n + b) is the same as applying the per-point updates c += (x - c) / n one at a time
+        double movement = 0;
+        for (int c = 0; c < k; c++) {
+            if (batchCounts[c] == 0) {
+                continue;
+            }
+            miniBatchCounts[c] += batchCounts[c];
+            float rate = 1.0f / miniBatchCounts[c];
+            for (int j = 0; j < dimension; j++) {
+                float old = centroids.get(c * dimension + j);
+                float delta = rate * (batchSums[c].get(j) - batchCounts[c] * old);
+                centroids.set(c * dimension + j, old + delta);
+                movement += delta * delta;
+            }
+        }
+        assertFinite(centroids);
+
+        if (error == 0) {
+            return 0;
+        }
+        return (float) ((movement / k) / (error / batch.length));
+    }
+
     /**
      * Chooses the initial centroids for clustering.
      * The first centroid is chosen randomly from the data points. Subsequent centroids
@@ -230,9 +303,10 @@ public class KMeansPlusPlusClusterer {
      * This method should only be called once after initial centroids are chosen.
      */
     private void initializeAssignedPoints() {
+        findNearestCentroids();
         for (int i = 0; i < points.length; i++) {
             VectorFloat<?> point = points[i];
-            var newAssignment = getNearestCluster(point);
+            var newAssignment = nearest[i];
             centroidDenoms[newAssignment] = centroidDenoms[newAssignment] + 1;
             addInPlace(centroidNums[newAssignment], point);
             assignments[i] = newAssignment;
@@ -251,10 +325,11 @@ public class KMeansPlusPlusClusterer {
     private int updateAssignedPointsUnweighted() {
         int changedCount = 0;
 
+        findNearestCentroids();
         for (int i = 0; i < points.length; i++) {
             VectorFloat<?> point = points[i];
             var oldAssignment = assignments[i];
-            var newAssignment = getNearestCluster(point);
+            var newAssignment = nearest[i];
 
             if (newAssignment != oldAssignment) {
                 centroidDenoms[oldAssignment] = centroidDenoms[oldAssignment] - 1;
@@ -324,21 +399,20 @@ public class KMeansPlusPlusClusterer {
     }
 
     /**
-     * Return the index of the closest centroid to the given point
+     * Computes the index of the closest centroid to each point into `nearest`
      */
-    private int getNearestCluster(VectorFloat<?> point) {
-        float minDistance = Float.MAX_VALUE;
-        int nearestCluster = 0;
+    private void findNearestCentroids() {
+        transposeCentroids();
+        VectorUtil.nearestCentroids(points, 0, points.length, transposedCentroids, k, nearest, nearestDistances);
+    }
 
-        for (int i = 0; i < k; i++) {
-            float distance = squareL2Distance(point, 0, centroids, i * point.length(), point.length());
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearestCluster = i;
+    private void transposeCentroids() {
+        int dimension = points[0].length();
+        for (int c = 0; c < k; c++) {
+            for (int j = 0; j < dimension; j++) {
+                transposedCentroids.set(j * k + c, centroids.get(c * dimension + j));
             }
         }
-
-        return nearestCluster;
     }
 
     @SuppressWarnings({"AssertWithSideEffects", "ConstantConditions"})
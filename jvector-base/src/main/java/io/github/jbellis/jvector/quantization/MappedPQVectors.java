@@ -0,0 +1,238 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.disk.ReaderSupplier;
+import io.github.jbellis.jvector.util.ExplicitThreadLocal;
+import io.github.jbellis.jvector.util.RamUsageEstimator;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.ByteSequence;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * PQVectors whose codes stay in the file they were written to, instead of being copied onto the heap.
+ * Opening is O(1) in the number of vectors, and the memory used by the codes is governed by the page cache.
+ * <p>
+ * When the vectorization provider can view the reader's storage in place (MemorySegmentReader with the
+ * native provider), the codes are scored directly from the mapping.  Otherwise, each comparison reads the
+ * node's codes from the file into a small per-thread buffer.
+ * <p>
+ * The ReaderSupplier must stay open as long as this instance is in use.  Call {@link #close} to release the
+ * per-thread readers; it does not close the supplier.
+ */
+public class MappedPQVectors extends PQVectors implements AutoCloseable {
+    private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    private final int vectorCount;
+    // position of the first code in the file
+    private final long codesOffset;
+    // null if the codes are viewed in place through compressedDataChunks
+    private final ExplicitThreadLocal<CodeReader> codeReaders;
+
+    private MappedPQVectors(ProductQuantization pq, int vectorCount, long codesOffset, ByteSequence<?>[] views, int vectorsPerChunk, ReaderSupplier readerSupplier) {
+        super(pq);
+        this.vectorCount = vectorCount;
+        this.codesOffset = codesOffset;
+        if (views != null) {
+            this.compressedDataChunks = views;
+            this.vectorsPerChunk = vectorsPerChunk;
+            this.codeReaders = null;
+        } else {
+            this.compressedDataChunks = new ByteSequence<?>[0];
+            this.vectorsPerChunk = Math.max(1, vectorCount);
+            this.codeReaders = ExplicitThreadLocal.withInitial(() -> new CodeReader(readerSupplier, pq.getSubspaceCount()));
+        }
+    }
+
+    /**
+     * Opens PQVectors that were written by {@link PQVectors#write} at the given offset, without reading the codes.
+     */
+    public static MappedPQVectors load(ReaderSupplier readerSupplier, long offset) throws IOException {
+        try (var in = readerSupplier.get()) {
+            in.seek(offset);
+            var pq = ProductQuantization.load(in);
+
+            int vectorCount = in.readInt();
+            int compressedDimension = in.readInt();
+            if (compressedDimension != pq.getSubspaceCount()) {
+                throw new IOException("Compressed dimension " + compressedDimension + " does not match PQ subspace count " + pq.getSubspaceCount());
+            }
+            int[] params = calculateChunkParameters(vectorCount, compressedDimension);
+            long codesOffset = in.getPosition();
+            long codesEnd = codesOffset + (long) vectorCount * compressedDimension;
+            if (codesEnd > in.length()) {
+                throw new IOException("Expected " + vectorCount + " PQ codes ending at " + codesEnd + " but the file has " + in.length() + " bytes");
+            }
+
+            var views = viewChunks(in, params, compressedDimension);
+            return new MappedPQVectors(pq, vectorCount, codesOffset, views, params[0], readerSupplier);
+        }
+    }
+
+    /**
+     * @return chunks backed by the reader's storage, in the same layout that {@link PQVectors#load} reads into
+     * the heap, or null if the vectorization provider cannot view the storage in place
+     */
+    private static ByteSequence<?>[] viewChunks(RandomAccessReader in, int[] params, int compressedDimension) throws IOException {
+        int vectorsPerChunk = params[0];
+        int totalChunks = params[1];
+        int fullSizeChunks = params[2];
+        int remainingVectors = params[3];
+
+        var chunks = new ByteSequence<?>[totalChunks];
+        for (int i = 0; i < totalChunks; i++) {
+            int vectors = i < fullSizeChunks ? vectorsPerChunk : remainingVectors;
+            chunks[i] = vectorTypeSupport.viewByteSequence(in, vectors * compressedDimension);
+            if (chunks[i] == null) {
+                return null;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @return true if the codes are scored in place in the mapping, false if they are read into a buffer
+     */
+    public boolean isZeroCopy() {
+        return codeReaders == null;
+    }
+
+    @Override
+    protected int validChunkCount() {
+        return compressedDataChunks.length;
+    }
+
+    @Override
+    public int count() {
+        return vectorCount;
+    }
+
+    /**
+     * Unlike the other PQVectors, when the codes are not viewed in place the result is only valid until the
+     * next call to getChunk from the same thread.
+     */
+    @Override
+    ByteSequence<?> getChunk(int ordinal) {
+        if (codeReaders == null) {
+            return super.getChunk(ordinal);
+        }
+        if (ordinal < 0 || ordinal >= count())
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for vector count " + count());
+        return codeReaders.get().read(codesOffset + (long) ordinal * pq.getSubspaceCount());
+    }
+
+    @Override
+    int getOffsetInChunk(int ordinal) {
+        if (codeReaders == null) {
+            return super.getOffsetInChunk(ordinal);
+        }
+        if (ordinal < 0 || ordinal >= count())
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for vector count " + count());
+        return 0;
+    }
+
+    @Override
+    ByteSequence<?> getSharedChunk(int[] nodes, int count, int[] offsets) {
+        // each node's codes are read into the same buffer, so they can't be scored together
+        return codeReaders == null ? super.getSharedChunk(nodes, count, offsets) : null;
+    }
+
+    @Override
+    public ByteSequence<?> get(int ordinal) {
+        if (codeReaders == null) {
+            return super.get(ordinal);
+        }
+        // callers may hold on to the result, so it must not be the per-thread buffer
+        return getChunk(ordinal).copy();
+    }
+
+    @Override
+    public void write(DataOutput out, int version) throws IOException {
+        pq.write(out, version);
+
+        out.writeInt(count());
+        out.writeInt(pq.getSubspaceCount());
+        for (int i = 0; i < count(); i++) {
+            var chunk = getChunk(i);
+            int offset = getOffsetInChunk(i);
+            for (int j = 0; j < pq.getSubspaceCount(); j++) {
+                out.writeByte(chunk.get(offset + j));
+            }
+        }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        // the codes themselves live in the page cache
+        int OH_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+        int REF_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        return pq.ramBytesUsed() + OH_BYTES + (long) (compressedDataChunks.length + 2) * REF_BYTES + Integer.BYTES + Long.BYTES;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (codeReaders != null) {
+            codeReaders.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedPQVectors{" +
+                "pq=" + pq +
+                ", count=" + count() +
+                ", zeroCopy=" + isZeroCopy() +
+                '}';
+    }
+
+    /**
+     * A reader and the buffer it reads one vector's codes into.
+     */
+    private static class CodeReader implements AutoCloseable {
+        private final RandomAccessReader reader;
+        private final ByteSequence<?> codes;
+
+        CodeReader(ReaderSupplier readerSupplier, int codeLength) {
+            try {
+                this.reader = readerSupplier.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.codes = vectorTypeSupport.createByteSequence(codeLength);
+        }
+
+        ByteSequence<?> read(long offset) {
+            try {
+                reader.seek(offset);
+                vectorTypeSupport.readByteSequence(reader, codes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return codes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
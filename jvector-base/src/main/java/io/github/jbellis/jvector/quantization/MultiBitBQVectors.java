@@ -0,0 +1,225 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.util.RamUsageEstimator;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Vectors compressed with {@link MultiBitBinaryQuantization}.  Score functions returned by this class
+ * implement {@link ScoreFunction.BoundedApproximateScoreFunction}, and unlike {@link BQVectors} they
+ * honor the requested similarity function.
+ */
+public class MultiBitBQVectors implements CompressedVectors {
+    private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    final MultiBitBinaryQuantization mbq;
+    final MultiBitBinaryQuantization.QuantizedVector[] compressedVectors;
+
+    public MultiBitBQVectors(MultiBitBinaryQuantization mbq, MultiBitBinaryQuantization.QuantizedVector[] compressedVectors) {
+        this.mbq = mbq;
+        this.compressedVectors = compressedVectors;
+    }
+
+    @Override
+    public int count() {
+        return compressedVectors.length;
+    }
+
+    @Override
+    public void write(DataOutput out, int version) throws IOException {
+        mbq.write(out, version);
+
+        out.writeInt(compressedVectors.length);
+        for (var v : compressedVectors) {
+            v.write(out);
+        }
+    }
+
+    public static MultiBitBQVectors load(RandomAccessReader in) throws IOException {
+        var mbq = MultiBitBinaryQuantization.load(in);
+
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid compressed vector count " + size);
+        }
+        var compressedVectors = new MultiBitBinaryQuantization.QuantizedVector[size];
+        for (int i = 0; i < size; i++) {
+            compressedVectors[i] = MultiBitBinaryQuantization.QuantizedVector.load(in, mbq.codeSize());
+        }
+
+        return new MultiBitBQVectors(mbq, compressedVectors);
+    }
+
+    public static MultiBitBQVectors load(RandomAccessReader in, long offset) throws IOException {
+        in.seek(offset);
+        return load(in);
+    }
+
+    /**
+     * Precomputes, for every byte of the codes, the contribution of each of its 256 values to &lt;g, x&gt;,
+     * so that each comparison is a table lookup per byte, as with PQ.
+     */
+    @Override
+    public ScoreFunction.BoundedApproximateScoreFunction precomputedScoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
+        var rotated = mbq.rotation.multiply(q);
+        var table = vectorTypeSupport.createFloatVector(mbq.codeSize() * 256);
+        mbq.gridDotProductTable(rotated, table);
+        return new BoundedScoreFunction(q, similarityFunction) {
+            @Override
+            protected float gridDotProduct(MultiBitBinaryQuantization.QuantizedVector v) {
+                return VectorUtil.assembleAndSum(table, 256, v.codes);
+            }
+        };
+    }
+
+    @Override
+    public ScoreFunction.BoundedApproximateScoreFunction scoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
+        var rotated = mbq.rotation.multiply(q);
+        return new BoundedScoreFunction(q, similarityFunction) {
+            @Override
+            protected float gridDotProduct(MultiBitBinaryQuantization.QuantizedVector v) {
+                return mbq.gridDotProduct(v.codes, rotated);
+            }
+        };
+    }
+
+    /**
+     * Turns the estimate of &lt;v, q&gt;, and its error bound, into a similarity.  Every supported similarity
+     * is an increasing function of &lt;v, q&gt; once the norms are fixed, so the bounds on the inner product
+     * map directly onto bounds on the score.
+     */
+    private abstract class BoundedScoreFunction implements ScoreFunction.BoundedApproximateScoreFunction {
+        private final VectorSimilarityFunction similarityFunction;
+        private final float centroidDotProduct;
+        private final float queryNormSquared;
+        private final float errorScale;
+
+        BoundedScoreFunction(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
+            this.similarityFunction = similarityFunction;
+            this.centroidDotProduct = VectorUtil.dotProduct(mbq.centroid, q);
+            this.queryNormSquared = VectorUtil.dotProduct(q, q);
+            this.errorScale = MultiBitBinaryQuantization.ERROR_BOUND_EPSILON * (float) Math.sqrt(queryNormSquared);
+        }
+
+        /** &lt;g, Rq&gt; for the grid vector of `v` */
+        protected abstract float gridDotProduct(MultiBitBinaryQuantization.QuantizedVector v);
+
+        private float estimateDotProduct(MultiBitBinaryQuantization.QuantizedVector v) {
+            return centroidDotProduct + v.ipFactor * gridDotProduct(v);
+        }
+
+        @Override
+        public float similarityTo(int node2) {
+            var v = compressedVectors[node2];
+            return toSimilarity(v, estimateDotProduct(v));
+        }
+
+        @Override
+        public float lowerBound(int node2) {
+            var v = compressedVectors[node2];
+            return toSimilarity(v, estimateDotProduct(v) - errorScale * v.errorFactor);
+        }
+
+        @Override
+        public float upperBound(int node2) {
+            var v = compressedVectors[node2];
+            return toSimilarity(v, estimateDotProduct(v) + errorScale * v.errorFactor);
+        }
+
+        private float toSimilarity(MultiBitBinaryQuantization.QuantizedVector v, float dotProduct) {
+            switch (similarityFunction) {
+                case DOT_PRODUCT:
+                    return (1 + dotProduct) / 2;
+                case EUCLIDEAN:
+                    float distance = v.normSquared + queryNormSquared - 2 * dotProduct;
+                    return 1 / (1 + Math.max(0, distance));
+                case COSINE:
+                    float normProduct = (float) Math.sqrt(v.normSquared * queryNormSquared);
+                    float cosine = normProduct == 0 ? 0 : Math.max(-1, Math.min(1, dotProduct / normProduct));
+                    return (1 + cosine) / 2;
+                default:
+                    throw new IllegalArgumentException("Unsupported similarity function " + similarityFunction);
+            }
+        }
+    }
+
+    public MultiBitBinaryQuantization.QuantizedVector get(int ordinal) {
+        return compressedVectors[ordinal];
+    }
+
+    @Override
+    public int getOriginalSize() {
+        return mbq.dimension * Float.BYTES;
+    }
+
+    @Override
+    public int getCompressedSize() {
+        return mbq.compressedVectorSize();
+    }
+
+    @Override
+    public MultiBitBinaryQuantization getCompressor() {
+        return mbq;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        int REF_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        int OH_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+
+        long listSize = (long) REF_BYTES * (1 + compressedVectors.length);
+        long dataSize = (long) (OH_BYTES + REF_BYTES + 3 * Float.BYTES) * compressedVectors.length;
+        for (var v : compressedVectors) {
+            dataSize += v.codes.ramBytesUsed();
+        }
+        return mbq.ramBytesUsed() + listSize + dataSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MultiBitBQVectors that = (MultiBitBQVectors) o;
+        return Objects.equals(mbq, that.mbq) && Arrays.equals(compressedVectors, that.compressedVectors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mbq, Arrays.hashCode(compressedVectors));
+    }
+
+    @Override
+    public String toString() {
+        return "MultiBitBQVectors{" +
+                "mbq=" + mbq +
+                ", count=" + compressedVectors.length +
+                '}';
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.util.Accountable;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.Matrix;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.ByteSequence;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Binary quantization with 1, 2 or 4 bits per dimension and error-bounded similarity estimates, following
+ * RaBitQ (Gao and Long) and its extension to multiple bits.
+ * <p>
+ * Each vector is centered on the dataset mean and randomly rotated, and the direction u of the resulting
+ * residual is quantized to the grid of odd integers g in [-(2^B - 1), 2^B - 1] that is closest to it in angle.
+ * The inner product of the residual with a query x is then estimated as ||r|| &lt;g, x&gt; / &lt;g, u&gt;.
+ * Because of the random rotation this estimate is unbiased, and its error is at most
+ * ||r|| ||x|| sqrt(1 - cos^2) / cos * epsilon / sqrt(D - 1) with high probability, where cos is the cosine
+ * between g and u.  The norm and the correction factors of each vector are stored exactly alongside its code,
+ * so score functions can report an interval for every estimate.
+ */
+public class MultiBitBinaryQuantization implements VectorCompressor<MultiBitBinaryQuantization.QuantizedVector>, Accountable {
+    private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
+    private static final int MAGIC = 0x7AB17B90;
+
+    /**
+     * The confidence parameter of the error bounds, in standard deviations of the estimation error, which
+     * is close to normally distributed.  The RaBitQ paper uses 1.9 (about 94% coverage); at 3 the exact
+     * score falls outside the reported interval for well under 1% of comparisons.
+     */
+    public static final float ERROR_BOUND_EPSILON = 3.0f;
+
+    // number of grid scales tried when quantizing a vector with more than one bit per dimension
+    private static final int SCALE_CANDIDATES = 32;
+
+    final int dimension;
+    final int bitsPerDimension;
+    final VectorFloat<?> centroid;
+    final Matrix rotation;
+
+    /**
+     * Computes the centroid of the dataset and draws a random rotation.
+     * @param bitsPerDimension 1, 2 or 4
+     */
+    public static MultiBitBinaryQuantization compute(RandomAccessVectorValues ravv, int bitsPerDimension) {
+        return compute(ravv, bitsPerDimension, ForkJoinPool.commonPool());
+    }
+
+    public static MultiBitBinaryQuantization compute(RandomAccessVectorValues ravv, int bitsPerDimension, ForkJoinPool parallelExecutor) {
+        var vectors = ProductQuantization.extractTrainingVectors(ravv, parallelExecutor);
+        var centroid = vectorTypeSupport.createFloatVector(ravv.dimension());
+        for (var v : vectors) {
+            VectorUtil.addInPlace(centroid, v);
+        }
+        if (!vectors.isEmpty()) {
+            VectorUtil.scale(centroid, 1.0f / vectors.size());
+        }
+        var rotation = Matrix.randomOrthogonal(ravv.dimension(), ThreadLocalRandom.current());
+        return new MultiBitBinaryQuantization(centroid, rotation, bitsPerDimension);
+    }
+
+    public MultiBitBinaryQuantization(VectorFloat<?> centroid, Matrix rotation, int bitsPerDimension) {
+        if (bitsPerDimension != 1 && bitsPerDimension != 2 && bitsPerDimension != 4) {
+            throw new IllegalArgumentException("Bits per dimension must be 1, 2 or 4, not " + bitsPerDimension);
+        }
+        if (rotation.rowCount() != centroid.length() || rotation.columnCount() != centroid.length()) {
+            var msg = String.format("Rotation of %dx%d does not match vector dimensionality %d", rotation.rowCount(), rotation.columnCount(), centroid.length());
+            throw new IllegalArgumentException(msg);
+        }
+        this.dimension = centroid.length();
+        this.bitsPerDimension = bitsPerDimension;
+        this.centroid = centroid;
+        this.rotation = rotation;
+    }
+
+    @Override
+    public MultiBitBQVectors encodeAll(RandomAccessVectorValues ravv) {
+        return encodeAll(ravv, PhysicalCoreExecutor.pool());
+    }
+
+    @Override
+    public MultiBitBQVectors encodeAll(RandomAccessVectorValues ravv, ForkJoinPool simdExecutor) {
+        var ravvCopy = ravv.threadLocalSupplier();
+        var zero = vectorTypeSupport.createFloatVector(dimension);
+        var cv = simdExecutor.submit(() -> IntStream.range(0, ravv.size())
+                        .parallel()
+                        .mapToObj(i -> {
+                            var v = ravvCopy.get().getVector(i);
+                            return encode(v == null ? zero : v);
+                        })
+                        .toArray(QuantizedVector[]::new))
+                .join();
+        return new MultiBitBQVectors(this, cv);
+    }
+
+    @Override
+    public QuantizedVector encode(VectorFloat<?> v) {
+        var qv = QuantizedVector.createEmpty(codeSize());
+        encodeTo(v, qv);
+        return qv;
+    }
+
+    @Override
+    public void encodeTo(VectorFloat<?> v, QuantizedVector dest) {
+        dest.normSquared = VectorUtil.dotProduct(v, v);
+
+        var residual = v.copy();
+        VectorUtil.subInPlace(residual, centroid);
+        var u = rotation.multiply(residual);
+        float norm = (float) Math.sqrt(VectorUtil.dotProduct(u, u));
+        if (norm == 0) {
+            // the vector is the centroid, and the inner product estimates are exact
+            dest.codes.zero();
+            dest.ipFactor = 0;
+            dest.errorFactor = 0;
+            return;
+        }
+        VectorUtil.scale(u, 1 / norm);
+
+        float scale = bitsPerDimension == 1 ? 1 : bestScale(u);
+        double gu = 0;
+        double gg = 0;
+        dest.codes.zero();
+        for (int i = 0; i < dimension; i++) {
+            int code = quantize(u.get(i), scale);
+            int g = 2 * code - levels() + 1;
+            gu += g * u.get(i);
+            gg += g * g;
+            setCode(dest.codes, i, code);
+        }
+
+        float cos = (float) (gu / Math.sqrt(gg));
+        dest.ipFactor = (float) (norm / gu);
+        dest.errorFactor = norm * (float) Math.sqrt(Math.max(0, 1 - cos * cos)) / cos / (float) Math.sqrt(Math.max(1, dimension - 1));
+    }
+
+    /**
+     * @return the scale of the grid that maximizes the cosine between the unit vector `u` and its quantized form
+     */
+    private float bestScale(VectorFloat<?> u) {
+        float maxAbs = 0;
+        for (int i = 0; i < dimension; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(u.get(i)));
+        }
+        // at maxScale the largest component lands 50% past the outermost level, so a few outliers are
+        // clipped in exchange for finer resolution of the rest
+        float maxScale = 1.5f * levels() / 2 / maxAbs;
+
+        float bestScale = maxScale;
+        double bestCos = -1;
+        for (int k = 1; k <= SCALE_CANDIDATES; k++) {
+            float scale = maxScale * k / SCALE_CANDIDATES;
+            double gu = 0;
+            double gg = 0;
+            for (int i = 0; i < dimension; i++) {
+                int g = 2 * quantize(u.get(i), scale) - levels() + 1;
+                gu += g * u.get(i);
+                gg += g * g;
+            }
+            double cos = gu / Math.sqrt(gg);
+            if (cos > bestCos) {
+                bestCos = cos;
+                bestScale = scale;
+            }
+        }
+        return bestScale;
+    }
+
+    private int quantize(float value, float scale) {
+        int code = (int) Math.floor(value * scale + levels() / 2.0f);
+        return Math.min(Math.max(code, 0), levels() - 1);
+    }
+
+    private int levels() {
+        return 1 << bitsPerDimension;
+    }
+
+    private int dimensionsPerByte() {
+        return Byte.SIZE / bitsPerDimension;
+    }
+
+    private void setCode(ByteSequence<?> codes, int i, int code) {
+        int index = i / dimensionsPerByte();
+        int shift = (i % dimensionsPerByte()) * bitsPerDimension;
+        codes.set(index, (byte) (codes.get(index) | (code << shift)));
+    }
+
+    /**
+     * @return the grid coordinate (an odd integer) of dimension `i` of the encoded vector
+     */
+    int gridValue(ByteSequence<?> codes, int i) {
+        int shift = (i % dimensionsPerByte()) * bitsPerDimension;
+        int code = (Byte.toUnsignedInt(codes.get(i / dimensionsPerByte())) >> shift) & (levels() - 1);
+        return 2 * code - levels() + 1;
+    }
+
+    /**
+     * @return &lt;g, x&gt; for the grid vector g of `codes` and an already-rotated vector `x`
+     */
+    float gridDotProduct(ByteSequence<?> codes, VectorFloat<?> x) {
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += gridValue(codes, i) * x.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Fills `table` so that the sum of table[256 * i + codes[i]] over the code bytes is &lt;g, x&gt;,
+     * for use with {@link VectorUtil#assembleAndSum}.
+     */
+    void gridDotProductTable(VectorFloat<?> x, VectorFloat<?> table) {
+        int perByte = dimensionsPerByte();
+        int mask = levels() - 1;
+        var contributions = new float[perByte][levels()];
+        for (int b = 0; b < codeSize(); b++) {
+            for (int t = 0; t < perByte; t++) {
+                int i = b * perByte + t;
+                float xi = i < dimension ? x.get(i) : 0;
+                for (int code = 0; code < levels(); code++) {
+                    contributions[t][code] = (2 * code - levels() + 1) * xi;
+                }
+            }
+            for (int value = 0; value < 256; value++) {
+                float sum = 0;
+                for (int t = 0; t < perByte; t++) {
+                    sum += contributions[t][(value >> (t * bitsPerDimension)) & mask];
+                }
+                table.set(b * 256 + value, sum);
+            }
+        }
+    }
+
+    /** the number of bytes used for the quantized coordinates of each vector */
+    int codeSize() {
+        return (dimension * bitsPerDimension + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    public int getOriginalDimension() {
+        return dimension;
+    }
+
+    public int getBitsPerDimension() {
+        return bitsPerDimension;
+    }
+
+    @Override
+    public void write(DataOutput out, int version) throws IOException {
+        if (version > OnDiskGraphIndex.CURRENT_VERSION) {
+            throw new IllegalArgumentException("Unsupported serialization version " + version);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+        out.writeInt(dimension);
+        out.writeInt(bitsPerDimension);
+        vectorTypeSupport.writeFloatVector(out, centroid);
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < dimension; j++) {
+                out.writeFloat(rotation.get(i, j));
+            }
+        }
+    }
+
+    public static MultiBitBinaryQuantization load(RandomAccessReader in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a multi-bit BQ: bad magic " + Integer.toHexString(magic));
+        }
+        int version = in.readInt();
+        if (version > OnDiskGraphIndex.CURRENT_VERSION) {
+            throw new IOException("Unsupported serialization version " + version);
+        }
+        int dimension = in.readInt();
+        int bitsPerDimension = in.readInt();
+        var centroid = vectorTypeSupport.readFloatVector(in, dimension);
+        var rotation = new Matrix(dimension, dimension);
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < dimension; j++) {
+                rotation.set(i, j, in.readFloat());
+            }
+        }
+        return new MultiBitBinaryQuantization(centroid, rotation, bitsPerDimension);
+    }
+
+    @Override
+    @Deprecated
+    public CompressedVectors createCompressedVectors(Object[] compressedVectors) {
+        return new MultiBitBQVectors(this, (QuantizedVector[]) compressedVectors);
+    }
+
+    @Override
+    public int compressorSize() {
+        int size = 0;
+        size += Integer.BYTES; // MAGIC
+        size += Integer.BYTES; // version
+        size += Integer.BYTES; // dimension
+        size += Integer.BYTES; // bitsPerDimension
+        size += Float.BYTES * dimension; // centroid
+        size += Float.BYTES * dimension * dimension; // rotation
+        return size;
+    }
+
+    @Override
+    public int compressedVectorSize() {
+        return QuantizedVector.serializedSize(codeSize());
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return centroid.ramBytesUsed() + (long) dimension * centroid.ramBytesUsed();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MultiBitBinaryQuantization that = (MultiBitBinaryQuantization) o;
+        return bitsPerDimension == that.bitsPerDimension
+               && Objects.equals(centroid, that.centroid)
+               && Objects.equals(rotation, that.rotation);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dimension, bitsPerDimension, centroid);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MultiBitBinaryQuantization(%d bits x %d dimensions)", bitsPerDimension, dimension);
+    }
+
+    /**
+     * A quantized vector: its grid coordinates, packed into bytes, and the exact scalars needed to turn
+     * &lt;g, x&gt; into inner product and distance estimates.
+     */
+    public static class QuantizedVector {
+        final ByteSequence<?> codes;
+        /** ||r|| / &lt;g, u&gt;: scales &lt;g, x&gt; to an estimate of &lt;r, x&gt; */
+        float ipFactor;
+        /** the error bound on &lt;r, x&gt; for a unit x, without the epsilon factor */
+        float errorFactor;
+        /** the squared norm of the original (uncentered) vector */
+        float normSquared;
+
+        private QuantizedVector(ByteSequence<?> codes) {
+            this.codes = codes;
+        }
+
+        public static QuantizedVector createEmpty(int codeSize) {
+            return new QuantizedVector(vectorTypeSupport.createByteSequence(codeSize));
+        }
+
+        static int serializedSize(int codeSize) {
+            return codeSize + 3 * Float.BYTES;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            vectorTypeSupport.writeByteSequence(out, codes);
+            out.writeFloat(ipFactor);
+            out.writeFloat(errorFactor);
+            out.writeFloat(normSquared);
+        }
+
+        public static QuantizedVector load(RandomAccessReader in, int codeSize) throws IOException {
+            var qv = new QuantizedVector(vectorTypeSupport.readByteSequence(in, codeSize));
+            qv.ipFactor = in.readFloat();
+            qv.errorFactor = in.readFloat();
+            qv.normSquared = in.readFloat();
+            return qv;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            QuantizedVector that = (QuantizedVector) o;
+            return Float.compare(ipFactor, that.ipFactor) == 0
+                   && Float.compare(errorFactor, that.errorFactor) == 0
+                   && Float.compare(normSquared, that.normSquared) == 0
+                   && codes.equals(that.codes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(codes, ipFactor, errorFactor, normSquared);
+        }
+    }
+}
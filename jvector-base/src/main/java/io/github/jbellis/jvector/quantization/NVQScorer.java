@@ -20,6 +20,8 @@ import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.VectorUtil;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
 
+import java.util.Arrays;
+
 public class NVQScorer {
     final NVQuantization nvq;
 
@@ -56,16 +58,37 @@ public class NVQScorer {
                     VectorUtil.nvqShuffleQueryInPlace8bit(querySubVector);
                 }
 
-                return vector2 -> {
-                    float nvqDot = 0;
-                    for (int i = 0; i < querySubVectors.length; i++) {
-                        var svDB = vector2.subVectors[i];
-                        nvqDot += VectorUtil.nvqDotProduct8bit(querySubVectors[i],
-                                svDB.bytes, svDB.growthRate, svDB.midpoint,
-                                svDB.minValue, svDB.maxValue
-                        );
+                return new NVQScoreFunction() {
+                    @Override
+                    public float similarityTo(NVQuantization.QuantizedVector vector2) {
+                        float nvqDot = 0;
+                        for (int i = 0; i < querySubVectors.length; i++) {
+                            var svDB = vector2.subVectors[i];
+                            nvqDot += VectorUtil.nvqDotProduct8bit(querySubVectors[i],
+                                    svDB.bytes, svDB.growthRate, svDB.midpoint,
+                                    svDB.minValue, svDB.maxValue
+                            );
+                        }
+                        return (1 + nvqDot + queryGlobalBias) / 2;
+                    }
+
+                    @Override
+                    public void similarityTo(NVQuantization.QuantizedVector[] vectors, int count, float[] out) {
+                        Arrays.fill(out, 0, count, 0);
+                        // subvector-major, so each query subvector stays in cache while it is compared to every candidate
+                        for (int i = 0; i < querySubVectors.length; i++) {
+                            for (int j = 0; j < count; j++) {
+                                var svDB = vectors[j].subVectors[i];
+                                out[j] += VectorUtil.nvqDotProduct8bit(querySubVectors[i],
+                                        svDB.bytes, svDB.growthRate, svDB.midpoint,
+                                        svDB.minValue, svDB.maxValue
+                                );
+                            }
+                        }
+                        for (int j = 0; j < count; j++) {
+                            out[j] = (1 + out[j] + queryGlobalBias) / 2;
+                        }
                     }
-                    return (1 + nvqDot + queryGlobalBias) / 2;
                 };
             default:
                 throw new IllegalArgumentException("Unsupported bits per dimension " + this.nvq.bitsPerDimension);
@@ -85,18 +108,40 @@ public class NVQScorer {
                     VectorUtil.nvqShuffleQueryInPlace8bit(querySubVector);
                 }
 
-                return vector2 -> {
-                    float dist = 0;
-                    for (int i = 0; i < querySubVectors.length; i++) {
-                        var svDB = vector2.subVectors[i];
-                        dist += VectorUtil.nvqSquareL2Distance8bit(
-                                querySubVectors[i],
-                                svDB.bytes, svDB.growthRate, svDB.midpoint,
-                                svDB.minValue, svDB.maxValue
-                        );
+                return new NVQScoreFunction() {
+                    @Override
+                    public float similarityTo(NVQuantization.QuantizedVector vector2) {
+                        float dist = 0;
+                        for (int i = 0; i < querySubVectors.length; i++) {
+                            var svDB = vector2.subVectors[i];
+                            dist += VectorUtil.nvqSquareL2Distance8bit(
+                                    querySubVectors[i],
+                                    svDB.bytes, svDB.growthRate, svDB.midpoint,
+                                    svDB.minValue, svDB.maxValue
+                            );
+                        }
+
+                        return 1 / (1 + dist);
                     }
 
-                    return 1 / (1 + dist);
+                    @Override
+                    public void similarityTo(NVQuantization.QuantizedVector[] vectors, int count, float[] out) {
+                        Arrays.fill(out, 0, count, 0);
+                        // subvector-major, so each query subvector stays in cache while it is compared to every candidate
+                        for (int i = 0; i < querySubVectors.length; i++) {
+                            for (int j = 0; j < count; j++) {
+                                var svDB = vectors[j].subVectors[i];
+                                out[j] += VectorUtil.nvqSquareL2Distance8bit(
+                                        querySubVectors[i],
+                                        svDB.bytes, svDB.growthRate, svDB.midpoint,
+                                        svDB.minValue, svDB.maxValue
+                                );
+                            }
+                        }
+                        for (int j = 0; j < count; j++) {
+                            out[j] = 1 / (1 + out[j]);
+                        }
+                    }
                 };
             default:
                 throw new IllegalArgumentException("Unsupported bits per dimension " + this.nvq.bitsPerDimension);
@@ -141,5 +186,14 @@ public class NVQScorer {
          * @return the similarity to another vector
          */
         float similarityTo(NVQuantization.QuantizedVector vector2);
+
+        /**
+         * Stores the similarity to each of vectors[0, count) in out
+         */
+        default void similarityTo(NVQuantization.QuantizedVector[] vectors, int count, float[] out) {
+            for (int i = 0; i < count; i++) {
+                out[i] = similarityTo(vectors[i]);
+            }
+        }
     }
 }
@@ -105,7 +105,21 @@ public class NVQVectors implements CompressedVectors {
     @Override
     public ScoreFunction.ApproximateScoreFunction scoreFunctionFor(VectorFloat<?> query, VectorSimilarityFunction similarityFunction) {
         var function = scorer.scoreFunctionFor(query, similarityFunction);
-        return node2 -> function.similarityTo(compressedVectors[node2]);
+        return new ScoreFunction.ApproximateScoreFunction() {
+            @Override
+            public float similarityTo(int node2) {
+                return function.similarityTo(compressedVectors[node2]);
+            }
+
+            @Override
+            public void similarityTo(int[] nodes, int count, float[] out) {
+                var vectors = new NVQuantization.QuantizedVector[count];
+                for (int i = 0; i < count; i++) {
+                    vectors[i] = compressedVectors[nodes[i]];
+                }
+                function.similarityTo(vectors, count, out);
+            }
+        };
     }
 
     public NVQuantization.QuantizedVector get(int ordinal) {
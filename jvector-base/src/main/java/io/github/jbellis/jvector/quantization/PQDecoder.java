@@ -30,11 +30,24 @@ abstract class PQDecoder implements ScoreFunction.ApproximateScoreFunction {
     private static final VectorTypeSupport vts = VectorizationProvider.getInstance().getVectorTypeSupport();
 
     protected final PQVectors cv;
+    // where each candidate's codes start in their shared chunk, for bulk scoring
+    protected int[] codeOffsets = new int[0];
 
     protected PQDecoder(PQVectors cv) {
         this.cv = cv;
     }
 
+    /**
+     * @return the chunk holding the codes of all of nodes[0, count), with their offsets in `codeOffsets`,
+     * or null if they cannot be scored from a single chunk
+     */
+    protected ByteSequence<?> sharedChunk(int[] nodes, int count) {
+        if (codeOffsets.length < count) {
+            codeOffsets = new int[count];
+        }
+        return cv.getSharedChunk(nodes, count, codeOffsets);
+    }
+
     protected static abstract class CachingDecoder extends PQDecoder {
         protected final VectorFloat<?> partialSums;
 
@@ -43,8 +56,7 @@ abstract class PQDecoder implements ScoreFunction.ApproximateScoreFunction {
             var pq = this.cv.pq;
             partialSums = cv.reusablePartialSums();
 
-            VectorFloat<?> center = pq.globalCentroid;
-            var centeredQuery = center == null ? query : VectorUtil.sub(query, center);
+            var centeredQuery = pq.centerAndRotate(query);
             for (var i = 0; i < pq.getSubspaceCount(); i++) {
                 int offset = pq.subvectorSizesAndOffsets[i][1];
                 int size = pq.subvectorSizesAndOffsets[i][0];
@@ -56,6 +68,21 @@ abstract class PQDecoder implements ScoreFunction.ApproximateScoreFunction {
         protected float decodedSimilarity(ByteSequence<?> encoded, int offset, int length) {
             return VectorUtil.assembleAndSum(partialSums, cv.pq.getClusterCount(), encoded, offset, length);
         }
+
+        /**
+         * Stores the decodedSimilarity of each of nodes[0, count) in out, looking up all of their codes together
+         */
+        protected void decodedSimilarities(int[] nodes, int count, float[] out) {
+            int subspaceCount = cv.pq.getSubspaceCount();
+            var chunk = sharedChunk(nodes, count);
+            if (chunk == null) {
+                for (int i = 0; i < count; i++) {
+                    out[i] = decodedSimilarity(cv.getChunk(nodes[i]), cv.getOffsetInChunk(nodes[i]), subspaceCount);
+                }
+                return;
+            }
+            VectorUtil.bulkAssembleAndSum(partialSums, cv.pq.getClusterCount(), chunk, codeOffsets, subspaceCount, count, out);
+        }
     }
 
     static class DotProductDecoder extends CachingDecoder {
@@ -67,6 +94,14 @@ abstract class PQDecoder implements ScoreFunction.ApproximateScoreFunction {
         public float similarityTo(int node2) {
             return (1 + decodedSimilarity(cv.getChunk(node2), cv.getOffsetInChunk(node2), cv.pq.getSubspaceCount())) / 2;
         }
+
+        @Override
+        public void similarityTo(int[] nodes, int count, float[] out) {
+            decodedSimilarities(nodes, count, out);
+            for (int i = 0; i < count; i++) {
+                out[i] = (1 + out[i]) / 2;
+            }
+        }
     }
 
     static class EuclideanDecoder extends CachingDecoder {
@@ -78,12 +113,21 @@ abstract class PQDecoder implements ScoreFunction.ApproximateScoreFunction {
         public float similarityTo(int node2) {
             return 1 / (1 + decodedSimilarity(cv.getChunk(node2), cv.getOffsetInChunk(node2), cv.pq.getSubspaceCount()));
         }
+
+        @Override
+        public void similarityTo(int[] nodes, int count, float[] out) {
+            decodedSimilarities(nodes, count, out);
+            for (int i = 0; i < count; i++) {
+                out[i] = 1 / (1 + out[i]);
+            }
+        }
     }
 
     static class CosineDecoder extends PQDecoder {
         protected final VectorFloat<?> partialSums;
         protected final VectorFloat<?> aMagnitude;
         protected final float bMagnitude;
+        private float[] magnitudes = new float[0];
 
         public CosineDecoder(PQVectors cv, VectorFloat<?> query) {
             super(cv);
@@ -110,8 +154,7 @@ abstract class PQDecoder implements ScoreFunction.ApproximateScoreFunction {
             // Compute and cache partial sums and magnitudes for query vector
             partialSums = cv.reusablePartialSums();
 
-            VectorFloat<?> center = pq.globalCentroid;
-            VectorFloat<?> centeredQuery = center == null ? query : VectorUtil.sub(query, center);
+            VectorFloat<?> centeredQuery = pq.centerAndRotate(query);
 
             for (int m = 0; m < pq.getSubspaceCount(); ++m) {
                 int offset = pq.subvectorSizesAndOffsets[m][1];
@@ -130,6 +173,28 @@ abstract class PQDecoder implements ScoreFunction.ApproximateScoreFunction {
             return (1 + decodedCosine(node2)) / 2;
         }
 
+        @Override
+        public void similarityTo(int[] nodes, int count, float[] out) {
+            var chunk = sharedChunk(nodes, count);
+            if (chunk == null) {
+                for (int i = 0; i < count; i++) {
+                    out[i] = similarityTo(nodes[i]);
+                }
+                return;
+            }
+            if (magnitudes.length < count) {
+                magnitudes = new float[count];
+            }
+            int subspaceCount = cv.pq.getSubspaceCount();
+            int clusterCount = cv.pq.getClusterCount();
+            VectorUtil.bulkAssembleAndSum(partialSums, clusterCount, chunk, codeOffsets, subspaceCount, count, out);
+            VectorUtil.bulkAssembleAndSum(aMagnitude, clusterCount, chunk, codeOffsets, subspaceCount, count, magnitudes);
+            for (int i = 0; i < count; i++) {
+                float cosine = (float) (out[i] / Math.sqrt(magnitudes[i] * bMagnitude));
+                out[i] = (1 + cosine) / 2;
+            }
+        }
+
         protected float decodedCosine(int node2) {
 
             ByteSequence<?> encoded = cv.getChunk(node2);
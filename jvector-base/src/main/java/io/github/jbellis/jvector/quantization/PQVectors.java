@@ -47,6 +47,10 @@ public abstract class PQVectors implements CompressedVectors {
         this.pq = pq;
     }
 
+    /**
+     * Reads the codebooks and all the compressed vectors onto the heap.  For large files, see
+     * {@link MappedPQVectors#load}, which leaves the compressed vectors in the file.
+     */
     public static ImmutablePQVectors load(RandomAccessReader in) throws IOException {
         // pq codebooks
         var pq = ProductQuantization.load(in);
@@ -225,7 +229,7 @@ public abstract class PQVectors implements CompressedVectors {
 
     @Override
     public ScoreFunction.ApproximateScoreFunction scoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
-        VectorFloat<?> centeredQuery = pq.globalCentroid == null ? q : VectorUtil.sub(q, pq.globalCentroid);
+        VectorFloat<?> centeredQuery = pq.centerAndRotate(q);
         switch (similarityFunction) {
             case DOT_PRODUCT:
                 return (node2) -> {
@@ -322,6 +326,28 @@ public abstract class PQVectors implements CompressedVectors {
         return vectorIndexInChunk * pq.getSubspaceCount();
     }
 
+    /**
+     * Returns the chunk containing the codes of all of nodes[0, count), storing the offset of each node's codes
+     * within it in offsets, so that the nodes can be scored together.
+     * @return the chunk, or null if the nodes are not all in the same chunk
+     */
+    ByteSequence<?> getSharedChunk(int[] nodes, int count, int[] offsets) {
+        if (count == 0) {
+            return null;
+        }
+        int chunkIndex = nodes[0] / vectorsPerChunk;
+        for (int i = 0; i < count; i++) {
+            int ordinal = nodes[i];
+            if (ordinal < 0 || ordinal >= count())
+                throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for vector count " + count());
+            if (ordinal / vectorsPerChunk != chunkIndex) {
+                return null;
+            }
+            offsets[i] = (ordinal % vectorsPerChunk) * pq.getSubspaceCount();
+        }
+        return compressedDataChunks[chunkIndex];
+    }
+
     static ByteSequence<?> getChunk(ByteSequence<?>[] chunks, int ordinal, int vectorsPerChunk) {
         int chunkIndex = ordinal / vectorsPerChunk;
         return chunks[chunkIndex];
@@ -22,6 +22,7 @@ import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
 import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
 import io.github.jbellis.jvector.util.Accountable;
 import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.Matrix;
 import io.github.jbellis.jvector.vector.VectorUtil;
 import io.github.jbellis.jvector.vector.VectorizationProvider;
 import io.github.jbellis.jvector.vector.types.ByteSequence;
@@ -36,6 +37,7 @@ import java.util.Objects;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -50,6 +52,10 @@ import static java.lang.Math.sqrt;
 /**
  * Product Quantization for float vectors.  Supports arbitrary source and target dimensionality;
  * in particular, the source does not need to be evenly divisible by the target.
+ * <p>
+ * Optionally (see {@link #computeOptimized}), vectors are rotated by a learned orthogonal matrix before being
+ * split into subspaces, as in "Optimized Product Quantization" (Ge et al.).  The rotation is applied
+ * transparently when encoding vectors and when computing query-side partial sums.
  */
 public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, Accountable {
     private static final int MAGIC = 0x75EC4012; // JVECTOR, with some imagination
@@ -60,6 +66,13 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
     static final int DEFAULT_CLUSTERS = 256; // number of clusters per subspace = one byte's worth
     static final int K_MEANS_ITERATIONS = 6;
     public static final int MAX_PQ_TRAINING_SET_SIZE = 128000;
+    static final int OPQ_ITERATIONS = 10;
+    // each OPQ iteration costs O(n * d^2) to rotate the sample and to accumulate Y X^T, so we learn the rotation from fewer vectors than the codebooks
+    static final int MAX_OPQ_TRAINING_SET_SIZE = 16384;
+    public static final int DEFAULT_MINI_BATCH_SIZE = 4096;
+    static final int MINI_BATCH_MAX_ITERATIONS = 200;
+    // relative centroid movement (see KMeansPlusPlusClusterer.clusterOnceMiniBatch) below which a subspace has converged
+    static final float MINI_BATCH_TOLERANCE = 1e-4f;
 
     final VectorFloat<?>[] codebooks; // array of codebooks, where each codebook is a VectorFloat consisting of k contiguous subvectors each of length M
     final int M; // codebooks.length, redundantly reproduced for convenience
@@ -68,6 +81,8 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
     final VectorFloat<?> globalCentroid;
     final int[][] subvectorSizesAndOffsets;
     final float anisotropicThreshold; // parallel cost multiplier
+    final Matrix rotation; // OPQ rotation applied (after centering) before splitting into subspaces, or null
+    private final Matrix inverseRotation; // transpose of rotation
     private final float[][] centroidNormsSquared; // precomputed norms of the centroids, for encoding
     private final ThreadLocal<VectorFloat<?>> partialSums; // for dot product, euclidean, and cosine partials
     private final ThreadLocal<VectorFloat<?>> partialBestDistances; // for partial best distances during fused ADC
@@ -138,6 +153,237 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
         return new ProductQuantization(codebooks, clusterCount, subvectorSizesAndOffsets, globalCentroid, anisotropicThreshold);
     }
 
+    /**
+     * Initializes the codebooks using Optimized Product Quantization: an orthogonal rotation of the (centered) vectors
+     * is learned first, by alternating k-means on the rotated vectors with solving for the rotation that best maps
+     * the vectors onto their reconstructions, and the codebooks are then trained on the rotated vectors.  This balances
+     * the variance across subspaces and decorrelates them, which reduces quantization error at the same code size.
+     *
+     * @see #compute(RandomAccessVectorValues, int, int, boolean)
+     */
+    public static ProductQuantization computeOptimized(RandomAccessVectorValues ravv, int M, int clusterCount, boolean globallyCenter) {
+        return computeOptimized(ravv, M, clusterCount, globallyCenter, UNWEIGHTED, OPQ_ITERATIONS, PhysicalCoreExecutor.pool(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes the codebooks using Optimized Product Quantization.
+     *
+     * @param opqIterations the number of alternating k-means / rotation updates used to learn the rotation
+     * @see #compute(RandomAccessVectorValues, int, int, boolean, float, ForkJoinPool, ForkJoinPool)
+     */
+    public static ProductQuantization computeOptimized(RandomAccessVectorValues ravv,
+                                                       int M,
+                                                       int clusterCount,
+                                                       boolean globallyCenter,
+                                                       float anisotropicThreshold,
+                                                       int opqIterations,
+                                                       ForkJoinPool simdExecutor,
+                                                       ForkJoinPool parallelExecutor)
+    {
+        checkClusterCount(clusterCount);
+        if (opqIterations < 1) {
+            throw new IllegalArgumentException("opqIterations must be positive");
+        }
+
+        var subvectorSizesAndOffsets = getSubvectorSizesAndOffsets(ravv.dimension(), M);
+        var vectors = extractTrainingVectors(ravv, parallelExecutor);
+
+        VectorFloat<?> globalCentroid;
+        if (globallyCenter) {
+            globalCentroid = KMeansPlusPlusClusterer.centroidOf(vectors);
+            List<VectorFloat<?>> finalVectors = vectors;
+            vectors = simdExecutor.submit(() -> finalVectors.stream().parallel().map(v -> VectorUtil.sub(v, globalCentroid)).collect(Collectors.<VectorFloat<?>>toList())).join();
+        } else {
+            globalCentroid = null;
+        }
+
+        var rotation = trainRotation(vectors, subvectorSizesAndOffsets, clusterCount, opqIterations, simdExecutor);
+        var finalVectors = vectors;
+        var rotated = simdExecutor.submit(() -> finalVectors.stream().parallel().map(rotation::multiply).collect(Collectors.<VectorFloat<?>>toList())).join();
+
+        var codebooks = createCodebooks(rotated, subvectorSizesAndOffsets, clusterCount, anisotropicThreshold, simdExecutor);
+        return new ProductQuantization(codebooks, clusterCount, subvectorSizesAndOffsets, globalCentroid, anisotropicThreshold, rotation);
+    }
+
+    /**
+     * Initializes the codebooks with mini-batch k-means.  Instead of running full Lloyd iterations over a fixed sample
+     * of at most MAX_PQ_TRAINING_SET_SIZE vectors, each iteration assigns and updates on a fresh random batch drawn from
+     * all of `ravv`, and each subspace stops as soon as its centroids stop moving.  This trains faster on small datasets
+     * and sees more of the data on large ones, at the cost of somewhat noisier codebooks.
+     * <p>
+     * Only isotropic (unweighted) clustering is supported in this mode.
+     *
+     * @see #compute(RandomAccessVectorValues, int, int, boolean)
+     */
+    public static ProductQuantization computeMiniBatch(RandomAccessVectorValues ravv, int M, int clusterCount, boolean globallyCenter) {
+        return computeMiniBatch(ravv, M, clusterCount, globallyCenter, DEFAULT_MINI_BATCH_SIZE, MINI_BATCH_MAX_ITERATIONS, MINI_BATCH_TOLERANCE,
+                                PhysicalCoreExecutor.pool(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes the codebooks with mini-batch k-means.
+     *
+     * @param batchSize the number of vectors sampled for each iteration; the first batch also seeds the centroids,
+     *                  so it must be at least clusterCount
+     * @param maxIterations the maximum number of batches
+     * @param tolerance the mean squared centroid movement of an iteration, relative to the mean squared quantization error
+     *                  of its batch, below which a subspace is considered converged
+     * @see #compute(RandomAccessVectorValues, int, int, boolean, float, ForkJoinPool, ForkJoinPool)
+     */
+    public static ProductQuantization computeMiniBatch(RandomAccessVectorValues ravv,
+                                                       int M,
+                                                       int clusterCount,
+                                                       boolean globallyCenter,
+                                                       int batchSize,
+                                                       int maxIterations,
+                                                       float tolerance,
+                                                       ForkJoinPool simdExecutor,
+                                                       ForkJoinPool parallelExecutor)
+    {
+        checkClusterCount(clusterCount);
+        if (batchSize < clusterCount) {
+            throw new IllegalArgumentException(String.format("Batch size %d must be at least the number of clusters %d", batchSize, clusterCount));
+        }
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("maxIterations must be positive");
+        }
+
+        var subvectorSizesAndOffsets = getSubvectorSizesAndOffsets(ravv.dimension(), M);
+        var ravvCopy = ravv.threadLocalSupplier();
+
+        // the first batch estimates the global centroid and seeds the clusterers
+        var seed = sampleTrainingVectors(ravvCopy, ravv.size(), batchSize, parallelExecutor);
+        VectorFloat<?> globalCentroid = globallyCenter ? KMeansPlusPlusClusterer.centroidOf(seed) : null;
+        var centeredSeed = centerBatch(seed, globalCentroid, simdExecutor);
+        var clusterers = simdExecutor.submit(() -> IntStream.range(0, M).parallel()
+                .mapToObj(m -> new KMeansPlusPlusClusterer(extractSubvectors(centeredSeed, m, subvectorSizesAndOffsets), clusterCount))
+                .toArray(KMeansPlusPlusClusterer[]::new)).join();
+
+        var converged = new boolean[M];
+        int iterations = 0;
+        while (iterations < maxIterations && !allTrue(converged)) {
+            var batch = centerBatch(sampleTrainingVectors(ravvCopy, ravv.size(), batchSize, parallelExecutor), globalCentroid, simdExecutor);
+            simdExecutor.submit(() -> IntStream.range(0, M).parallel().filter(m -> !converged[m]).forEach(m -> {
+                float movement = clusterers[m].clusterOnceMiniBatch(extractSubvectors(batch, m, subvectorSizesAndOffsets));
+                converged[m] = movement < tolerance;
+            })).join();
+            iterations++;
+        }
+        LOG.fine(String.format("Mini-batch k-means finished after %d iterations of %d vectors", iterations, batchSize));
+
+        var codebooks = Arrays.stream(clusterers).map(KMeansPlusPlusClusterer::getCentroids).toArray(VectorFloat<?>[]::new);
+        return new ProductQuantization(codebooks, clusterCount, subvectorSizesAndOffsets, globalCentroid, UNWEIGHTED);
+    }
+
+    /**
+     * Samples `count` vectors uniformly, with replacement, from the first `size` ordinals of `ravv`.
+     */
+    private static List<VectorFloat<?>> sampleTrainingVectors(Supplier<RandomAccessVectorValues> ravv, int size, int count, ForkJoinPool parallelExecutor) {
+        return parallelExecutor.submit(() -> IntStream.range(0, count).parallel()
+                        .mapToObj(i -> {
+                            var localRavv = ravv.get();
+                            VectorFloat<?> v = localRavv.getVector(ThreadLocalRandom.current().nextInt(size));
+                            return localRavv.isValueShared() ? v.copy() : v;
+                        })
+                        .collect(Collectors.<VectorFloat<?>>toList()))
+                .join();
+    }
+
+    private static List<VectorFloat<?>> centerBatch(List<VectorFloat<?>> vectors, VectorFloat<?> globalCentroid, ForkJoinPool simdExecutor) {
+        if (globalCentroid == null) {
+            return vectors;
+        }
+        return simdExecutor.submit(() -> vectors.stream().parallel().map(v -> VectorUtil.sub(v, globalCentroid)).collect(Collectors.<VectorFloat<?>>toList())).join();
+    }
+
+    private static boolean allTrue(boolean[] values) {
+        for (boolean value : values) {
+            if (!value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Learns the OPQ rotation R with the non-parametric algorithm from the paper: starting from the identity,
+     * alternately (1) run a k-means iteration on the rotated vectors R x, and (2) set R to the orthogonal
+     * matrix minimizing ||R X - Y||, where Y are the reconstructions of the rotated vectors from the codebooks.
+     * (2) is the orthogonal Procrustes problem, solved by the orthogonal polar factor of Y X^T.
+     */
+    private static Matrix trainRotation(List<VectorFloat<?>> vectors, int[][] subvectorSizesAndOffsets, int clusterCount, int opqIterations, ForkJoinPool simdExecutor) {
+        // limit the number of vectors we learn the rotation from
+        var sample = vectors;
+        if (vectors.size() > MAX_OPQ_TRAINING_SET_SIZE) {
+            var P = MAX_OPQ_TRAINING_SET_SIZE / (float) vectors.size();
+            sample = vectors.stream().filter(v -> ThreadLocalRandom.current().nextFloat() < P).collect(Collectors.toList());
+        }
+        int n = sample.size();
+        int dimension = vectors.get(0).length();
+        int M = subvectorSizesAndOffsets.length;
+
+        // X and Y are stored transposed, one dimension per row, so that Y X^T is a dot product of rows
+        var xt = new Matrix(dimension, n);
+        for (int i = 0; i < n; i++) {
+            var v = sample.get(i);
+            for (int j = 0; j < dimension; j++) {
+                xt.set(j, i, v.get(j));
+            }
+        }
+        var yt = new Matrix(dimension, n);
+
+        var rotation = Matrix.identity(dimension);
+        VectorFloat<?>[] codebooks = null;
+        for (int iteration = 0; iteration < opqIterations; iteration++) {
+            var R = rotation;
+            var finalSample = sample;
+            var rotated = simdExecutor.submit(() -> finalSample.stream().parallel().map(R::multiply).collect(Collectors.<VectorFloat<?>>toList())).join();
+
+            var previousCodebooks = codebooks;
+            codebooks = simdExecutor.submit(() -> IntStream.range(0, M).parallel().mapToObj(m -> {
+                VectorFloat<?>[] subvectors = extractSubvectors(rotated, m, subvectorSizesAndOffsets);
+                KMeansPlusPlusClusterer clusterer;
+                if (previousCodebooks == null) {
+                    clusterer = new KMeansPlusPlusClusterer(subvectors, clusterCount);
+                    clusterer.cluster(K_MEANS_ITERATIONS, 0);
+                } else {
+                    // the rotation changes little from one iteration to the next, so a single Lloyd's round is enough
+                    clusterer = new KMeansPlusPlusClusterer(subvectors, previousCodebooks[m], UNWEIGHTED);
+                    clusterer.clusterOnceUnweighted();
+                }
+
+                // write the reconstructions of this subspace into Y
+                var centroids = clusterer.getCentroids();
+                int size = subvectorSizesAndOffsets[m][0];
+                int offset = subvectorSizesAndOffsets[m][1];
+                for (int i = 0; i < subvectors.length; i++) {
+                    int c = closestCentroid(subvectors[i], centroids, clusterCount);
+                    for (int j = 0; j < size; j++) {
+                        yt.set(offset + j, i, centroids.get(c * size + j));
+                    }
+                }
+                return centroids;
+            }).toArray(VectorFloat<?>[]::new)).join();
+
+            rotation = simdExecutor.submit(() -> yt.multiplyTransposed(xt).nearestOrthogonal()).join();
+        }
+        return rotation;
+    }
+
+    private static int closestCentroid(VectorFloat<?> subvector, VectorFloat<?> centroids, int clusterCount) {
+        int index = 0;
+        float minDist = Float.MAX_VALUE;
+        int size = subvector.length();
+        for (int i = 0; i < clusterCount; i++) {
+            float dist = VectorUtil.squareL2Distance(subvector, 0, centroids, i * size, size);
+            if (dist < minDist) {
+                minDist = dist;
+                index = i;
+            }
+        }
+        return index;
+    }
+
     static List<VectorFloat<?>> extractTrainingVectors(RandomAccessVectorValues ravv, ForkJoinPool parallelExecutor) {
         // limit the number of vectors we train on
         var P = min(1.0f, MAX_PQ_TRAINING_SET_SIZE / (float) ravv.size());
@@ -178,9 +424,9 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
 
         var subvectorSizesAndOffsets = getSubvectorSizesAndOffsets(ravv.dimension(), M);
         var vectorsMutable = extractTrainingVectors(ravv, parallelExecutor);
-        if (globalCentroid != null) {
+        if (globalCentroid != null || rotation != null) {
             var vectors = vectorsMutable;
-            vectorsMutable = simdExecutor.submit(() -> vectors.stream().parallel().map(v -> VectorUtil.sub(v, globalCentroid)).collect(Collectors.<VectorFloat<?>>toList())).join();
+            vectorsMutable = simdExecutor.submit(() -> vectors.stream().parallel().map(this::centerAndRotate).collect(Collectors.<VectorFloat<?>>toList())).join();
         }
         var vectors = vectorsMutable; // "effectively final" to make the closure happy
 
@@ -191,10 +437,14 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
                                      anisotropicThreshold == UNWEIGHTED ? 0 : lloydsRounds);
         }).toArray(VectorFloat<?>[]::new)).join();
 
-        return new ProductQuantization(refinedCodebooks, clusterCount, subvectorSizesAndOffsets, globalCentroid, anisotropicThreshold);
+        return new ProductQuantization(refinedCodebooks, clusterCount, subvectorSizesAndOffsets, globalCentroid, anisotropicThreshold, rotation);
     }
 
     ProductQuantization(VectorFloat<?>[] codebooks, int clusterCount, int[][] subvectorSizesAndOffsets, VectorFloat<?> globalCentroid, float anisotropicThreshold) {
+        this(codebooks, clusterCount, subvectorSizesAndOffsets, globalCentroid, anisotropicThreshold, null);
+    }
+
+    ProductQuantization(VectorFloat<?>[] codebooks, int clusterCount, int[][] subvectorSizesAndOffsets, VectorFloat<?> globalCentroid, float anisotropicThreshold, Matrix rotation) {
         checkClusterCount(clusterCount);
 
         this.codebooks = codebooks;
@@ -207,7 +457,13 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
             var msg = String.format("Global centroid length %d does not match vector dimensionality %d", globalCentroid.length(), originalDimension);
             throw new IllegalArgumentException(msg);
         }
+        if (rotation != null && (rotation.rowCount() != originalDimension || rotation.columnCount() != originalDimension)) {
+            var msg = String.format("Rotation of %dx%d does not match vector dimensionality %d", rotation.rowCount(), rotation.columnCount(), originalDimension);
+            throw new IllegalArgumentException(msg);
+        }
         this.anisotropicThreshold = anisotropicThreshold;
+        this.rotation = rotation;
+        this.inverseRotation = rotation == null ? null : rotation.transpose();
         this.partialSums = ThreadLocal.withInitial(() -> vectorTypeSupport.createFloatVector(getSubspaceCount() * getClusterCount()));
         this.partialBestDistances = ThreadLocal.withInitial(() -> vectorTypeSupport.createFloatVector(getSubspaceCount()));
         this.partialQuantizedSums = ThreadLocal.withInitial(() -> vectorTypeSupport.createByteSequence(getSubspaceCount() * getClusterCount() * 2));
@@ -415,9 +671,7 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
 
     @Override
     public void encodeTo(VectorFloat<?> vector, ByteSequence<?> dest) {
-        if (globalCentroid != null) {
-            vector = sub(vector, globalCentroid);
-        }
+        vector = centerAndRotate(vector);
 
         if (anisotropicThreshold > UNWEIGHTED)
             encodeAnisotropic(vector, dest);
@@ -431,6 +685,10 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
     public void decode(ByteSequence<?> encoded, VectorFloat<?> target) {
         decodeCentered(encoded, target);
 
+        if (inverseRotation != null) {
+            target.copyFrom(inverseRotation.multiply(target), 0, 0, originalDimension);
+        }
+
         if (globalCentroid != null) {
             // Add back the global centroid to get the approximate original vector.
             VectorUtil.addInPlace(target, globalCentroid);
@@ -438,7 +696,8 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
     }
 
     /**
-     * Decodes the quantized representation (ByteSequence) to its approximate original vector, relative to the global centroid.
+     * Decodes the quantized representation (ByteSequence) to its approximate original vector, relative to the global centroid
+     * (and rotated, if this is an OPQ).
      */
     void decodeCentered(ByteSequence<?> encoded, VectorFloat<?> target) {
         for (int m = 0; m < M; m++) {
@@ -447,6 +706,17 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
         }
     }
 
+    /**
+     * Maps a vector (or query) into the space the codebooks were trained in: subtracts the global centroid,
+     * if any, and then applies the OPQ rotation, if any.  May return the argument itself.
+     */
+    VectorFloat<?> centerAndRotate(VectorFloat<?> vector) {
+        if (globalCentroid != null) {
+            vector = sub(vector, globalCentroid);
+        }
+        return rotation == null ? vector : rotation.multiply(vector);
+    }
+
     /**
      * @return how many bytes we are compressing to
      */
@@ -553,6 +823,9 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
         if (version < 3 && anisotropicThreshold != UNWEIGHTED) {
             throw new IllegalArgumentException("Anisotropic threshold is only supported in serialization version 3 and above");
         }
+        if (version < 6 && rotation != null) {
+            throw new IllegalArgumentException("OPQ rotation is only supported in serialization version 6 and above");
+        }
 
         if (version >= 3) {
             out.writeInt(MAGIC);
@@ -584,24 +857,54 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
             assert codebook.length() == clusterCount * subvectorSizesAndOffsets[i][0];
             vectorTypeSupport.writeFloatVector(out, codebook);
         }
+
+        if (version >= 6) {
+            if (rotation == null) {
+                out.writeInt(0);
+            } else {
+                out.writeInt(originalDimension);
+                for (int i = 0; i < originalDimension; i++) {
+                    for (int j = 0; j < originalDimension; j++) {
+                        out.writeFloat(rotation.get(i, j));
+                    }
+                }
+            }
+        }
     }
 
     @Override
     public int compressorSize() {
+        return compressorSize(OnDiskGraphIndex.CURRENT_VERSION);
+    }
+
+    /**
+     * @return the number of bytes written by {@link #write(DataOutput, int)} for the given serialization version
+     */
+    public int compressorSize(int version) {
         int size = 0;
-        size += Integer.BYTES; // MAGIC
-        size += Integer.BYTES; // STORAGE_VERSION
+        if (version >= 3) {
+            size += Integer.BYTES; // MAGIC
+            size += Integer.BYTES; // STORAGE_VERSION
+        }
         size += Integer.BYTES; // globalCentroidLength
         if (globalCentroid != null) {
             size += Float.BYTES * globalCentroid.length();
         }
         size += Integer.BYTES; // M
         size += Integer.BYTES * M; // subvectorSizesAndOffsets (only the sizes are written)
-        size += Float.BYTES; // anisotropicThreshold
+        if (version >= 3) {
+            size += Float.BYTES; // anisotropicThreshold
+        }
         size += Integer.BYTES; // clusterCount
         for (int i = 0; i < M; i++) {
             size += Float.BYTES * codebooks[i].length();
         }
+        if (version >= 6) {
+            size += Integer.BYTES; // rotation dimension
+            if (rotation != null) {
+                size += Float.BYTES * originalDimension * originalDimension;
+            }
+        }
         return size;
     }
 
@@ -648,7 +951,19 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
             codebooks[m] = codebook;
         }
 
-        return new ProductQuantization(codebooks, clusters, subvectorSizes, globalCentroid, anisotropicThreshold);
+        Matrix rotation = null;
+        if (version >= 6) {
+            int rotationDimension = in.readInt();
+            if (rotationDimension > 0) {
+                var rows = new float[rotationDimension][rotationDimension];
+                for (var row : rows) {
+                    in.read(row, 0, rotationDimension);
+                }
+                rotation = Matrix.from(rows);
+            }
+        }
+
+        return new ProductQuantization(codebooks, clusters, subvectorSizes, globalCentroid, anisotropicThreshold, rotation);
     }
 
     @Override
@@ -661,7 +976,8 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
                 && Objects.equals(globalCentroid, that.globalCentroid)
                 && Arrays.deepEquals(subvectorSizesAndOffsets, that.subvectorSizesAndOffsets)
                 && Arrays.deepEquals(codebooks, that.codebooks)
-                && anisotropicThreshold == that.anisotropicThreshold;
+                && anisotropicThreshold == that.anisotropicThreshold
+                && Objects.equals(rotation, that.rotation);
     }
 
     @Override
@@ -696,7 +1012,7 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
             }
         }
         VectorUtil.scale(centroid, 1.0f / M);
-        return centroid;
+        return inverseRotation == null ? centroid : inverseRotation.multiply(centroid);
     }
 
     @Override
@@ -710,16 +1026,22 @@ public class ProductQuantization implements VectorCompressor<ByteSequence<?>>, A
         for (VectorFloat<?> codebook : codebooks) {
             size += codebook.ramBytesUsed();
         }
+        if (rotation != null) {
+            // rotation and its transpose
+            size += 2L * originalDimension * originalDimension * Float.BYTES;
+        }
 
         return size;
     }
 
     @Override
     public String toString() {
+        var name = rotation == null ? "ProductQuantization" : "OptimizedProductQuantization";
         if (anisotropicThreshold == UNWEIGHTED) {
-            return String.format("ProductQuantization(M=%d, clusters=%d)", M, clusterCount);
+            return String.format("%s(M=%d, clusters=%d)", name, M, clusterCount);
         }
-        return String.format("ProductQuantization(M=%d, clusters=%d, T=%.3f, eta=%.1f)",
+        return String.format("%s(M=%d, clusters=%d, T=%.3f, eta=%.1f)",
+                             name,
                              M,
                              clusterCount,
                              anisotropicThreshold,
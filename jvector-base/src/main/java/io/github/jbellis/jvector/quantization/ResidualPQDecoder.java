@@ -0,0 +1,118 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+
+/**
+ * Performs similarity comparisons with residual-PQ-compressed vectors without decoding them.
+ * <p>
+ * For a vector x = c + r in coarse cell c, the query is compared with one precomputed value for its cell
+ * (q.c, or ||q - c||^2 for Euclidean) plus sums over the PQ code of a per-query table of q.r and, where the
+ * norm of x is needed, of the compressor's per-cell table of 2 c.r + ||r||^2.
+ */
+abstract class ResidualPQDecoder implements ScoreFunction.ApproximateScoreFunction {
+    protected final ResidualPQVectors cv;
+    protected final ResidualProductQuantization rpq;
+    // q.r for every PQ centroid r, laid out like the PQ partial sums
+    protected final VectorFloat<?> partialSums;
+    // one value per coarse cell
+    protected final float[] cellTerms;
+
+    protected ResidualPQDecoder(ResidualPQVectors cv, VectorFloat<?> query, VectorSimilarityFunction cellFunction) {
+        this.cv = cv;
+        this.rpq = cv.rpq;
+        var pq = rpq.pq;
+
+        partialSums = pq.reusablePartialSums();
+        for (int m = 0; m < pq.getSubspaceCount(); m++) {
+            int size = pq.subvectorSizesAndOffsets[m][0];
+            int offset = pq.subvectorSizesAndOffsets[m][1];
+            VectorUtil.calculatePartialSums(pq.codebooks[m], m, size, pq.getClusterCount(), query, offset, VectorSimilarityFunction.DOT_PRODUCT, partialSums);
+        }
+
+        cellTerms = new float[rpq.getCoarseClusterCount()];
+        for (int c = 0; c < cellTerms.length; c++) {
+            var centroid = rpq.coarseCentroids[c];
+            cellTerms[c] = cellFunction == VectorSimilarityFunction.EUCLIDEAN
+                           ? VectorUtil.squareL2Distance(query, centroid)
+                           : VectorUtil.dotProduct(query, centroid);
+        }
+    }
+
+    /** the sum of the entries of `table` selected by the PQ code of node2 */
+    protected float sumResidual(VectorFloat<?> table, int node2) {
+        return VectorUtil.assembleAndSum(table, rpq.pq.getClusterCount(), cv.getChunk(node2), cv.getOffsetInChunk(node2) + 1, rpq.pq.getSubspaceCount());
+    }
+
+    protected int cell(int node2) {
+        return Byte.toUnsignedInt(cv.getChunk(node2).get(cv.getOffsetInChunk(node2)));
+    }
+
+    static class DotProductDecoder extends ResidualPQDecoder {
+        public DotProductDecoder(ResidualPQVectors cv, VectorFloat<?> query) {
+            super(cv, query, VectorSimilarityFunction.DOT_PRODUCT);
+        }
+
+        @Override
+        public float similarityTo(int node2) {
+            float dp = cellTerms[cell(node2)] + sumResidual(partialSums, node2);
+            return (1 + dp) / 2;
+        }
+    }
+
+    static class EuclideanDecoder extends ResidualPQDecoder {
+        private final VectorFloat<?>[] crossTerms;
+
+        public EuclideanDecoder(ResidualPQVectors cv, VectorFloat<?> query) {
+            super(cv, query, VectorSimilarityFunction.EUCLIDEAN);
+            crossTerms = rpq.residualCrossTerms();
+        }
+
+        @Override
+        public float similarityTo(int node2) {
+            // ||q - c - r||^2 = ||q - c||^2 - 2 q.r + (2 c.r + ||r||^2)
+            int cell = cell(node2);
+            float distance = cellTerms[cell] - 2 * sumResidual(partialSums, node2) + sumResidual(crossTerms[cell], node2);
+            return 1 / (1 + Math.max(0, distance));
+        }
+    }
+
+    static class CosineDecoder extends ResidualPQDecoder {
+        private final VectorFloat<?>[] crossTerms;
+        private final float queryNormSquared;
+
+        public CosineDecoder(ResidualPQVectors cv, VectorFloat<?> query) {
+            super(cv, query, VectorSimilarityFunction.COSINE);
+            crossTerms = rpq.residualCrossTerms();
+            queryNormSquared = VectorUtil.dotProduct(query, query);
+        }
+
+        @Override
+        public float similarityTo(int node2) {
+            int cell = cell(node2);
+            float dp = cellTerms[cell] + sumResidual(partialSums, node2);
+            // ||c + r||^2 = ||c||^2 + (2 c.r + ||r||^2)
+            float normSquared = rpq.coarseNormsSquared[cell] + sumResidual(crossTerms[cell], node2);
+            float cosine = dp / (float) Math.sqrt(queryNormSquared * normSquared);
+            return (1 + cosine) / 2;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.util.RamUsageEstimator;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.ByteSequence;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Vectors compressed with a {@link ResidualProductQuantization}.  Like PQVectors, the codes are stored in chunks
+ * so that large datasets do not exceed the maximum array size.
+ */
+public class ResidualPQVectors implements CompressedVectors {
+    private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    final ResidualProductQuantization rpq;
+    private final ByteSequence<?>[] compressedDataChunks;
+    private final int vectorCount;
+    private final int vectorsPerChunk;
+
+    public ResidualPQVectors(ResidualProductQuantization rpq, ByteSequence<?>[] compressedDataChunks, int vectorCount, int vectorsPerChunk) {
+        this.rpq = rpq;
+        this.compressedDataChunks = compressedDataChunks;
+        this.vectorCount = vectorCount;
+        this.vectorsPerChunk = vectorsPerChunk;
+    }
+
+    /**
+     * Encodes the vectors of `ravv` in parallel.  Missing vectors are encoded as all-zero codes.
+     */
+    public static ResidualPQVectors encodeAndBuild(ResidualProductQuantization rpq, RandomAccessVectorValues ravv, ForkJoinPool simdExecutor) {
+        int vectorCount = ravv.size();
+        int compressedSize = rpq.compressedVectorSize();
+        var chunks = allocateChunks(vectorCount, compressedSize);
+        int vectorsPerChunk = PQVectors.calculateChunkParameters(vectorCount, compressedSize)[0];
+
+        // the slices written by each task do not overlap, and joining publishes them
+        var ravvCopy = ravv.threadLocalSupplier();
+        simdExecutor.submit(() -> IntStream.range(0, vectorCount)
+                        .parallel()
+                        .forEach(ordinal -> {
+                            var slice = PQVectors.get(chunks, ordinal, vectorsPerChunk, compressedSize);
+                            var vector = ravvCopy.get().getVector(ordinal);
+                            if (vector != null)
+                                rpq.encodeTo(vector, slice);
+                            else
+                                slice.zero();
+                        }))
+                .join();
+
+        return new ResidualPQVectors(rpq, chunks, vectorCount, vectorsPerChunk);
+    }
+
+    private static ByteSequence<?>[] allocateChunks(int vectorCount, int compressedSize) {
+        int[] params = PQVectors.calculateChunkParameters(vectorCount, compressedSize);
+        int vectorsPerChunk = params[0];
+        int totalChunks = params[1];
+        int fullSizeChunks = params[2];
+        int remainingVectors = params[3];
+
+        var chunks = new ByteSequence<?>[totalChunks];
+        for (int i = 0; i < fullSizeChunks; i++) {
+            chunks[i] = vectorTypeSupport.createByteSequence(vectorsPerChunk * compressedSize);
+        }
+        if (totalChunks > fullSizeChunks) {
+            chunks[fullSizeChunks] = vectorTypeSupport.createByteSequence(remainingVectors * compressedSize);
+        }
+        return chunks;
+    }
+
+    public static ResidualPQVectors load(RandomAccessReader in) throws IOException {
+        var rpq = ResidualProductQuantization.load(in);
+
+        int vectorCount = in.readInt();
+        int compressedSize = in.readInt();
+        if (compressedSize != rpq.compressedVectorSize()) {
+            throw new IOException(String.format("Compressed vector size %d does not match the compressor's %d", compressedSize, rpq.compressedVectorSize()));
+        }
+
+        int[] params = PQVectors.calculateChunkParameters(vectorCount, compressedSize);
+        int vectorsPerChunk = params[0];
+        int totalChunks = params[1];
+        int fullSizeChunks = params[2];
+        int remainingVectors = params[3];
+
+        var chunks = new ByteSequence<?>[totalChunks];
+        for (int i = 0; i < fullSizeChunks; i++) {
+            chunks[i] = vectorTypeSupport.readByteSequence(in, vectorsPerChunk * compressedSize);
+        }
+        if (totalChunks > fullSizeChunks) {
+            chunks[fullSizeChunks] = vectorTypeSupport.readByteSequence(in, remainingVectors * compressedSize);
+        }
+
+        return new ResidualPQVectors(rpq, chunks, vectorCount, vectorsPerChunk);
+    }
+
+    public static ResidualPQVectors load(RandomAccessReader in, long offset) throws IOException {
+        in.seek(offset);
+        return load(in);
+    }
+
+    @Override
+    public void write(DataOutput out, int version) throws IOException {
+        rpq.write(out, version);
+
+        out.writeInt(vectorCount);
+        out.writeInt(rpq.compressedVectorSize());
+        for (var chunk : compressedDataChunks) {
+            vectorTypeSupport.writeByteSequence(out, chunk);
+        }
+    }
+
+    @Override
+    public ScoreFunction.ApproximateScoreFunction precomputedScoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
+        switch (similarityFunction) {
+            case DOT_PRODUCT:
+                return new ResidualPQDecoder.DotProductDecoder(this, q);
+            case EUCLIDEAN:
+                return new ResidualPQDecoder.EuclideanDecoder(this, q);
+            case COSINE:
+                return new ResidualPQDecoder.CosineDecoder(this, q);
+            default:
+                throw new IllegalArgumentException("Unsupported similarity function " + similarityFunction);
+        }
+    }
+
+    @Override
+    public ScoreFunction.ApproximateScoreFunction scoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
+        // decoding costs about as much as a single row of the precomputed tables, so for a handful of
+        // comparisons it is cheaper to decode each vector and compare it exactly
+        var decoded = vectorTypeSupport.createFloatVector(rpq.originalDimension);
+        return node2 -> {
+            rpq.decode(get(node2), decoded);
+            return similarityFunction.compare(q, decoded);
+        };
+    }
+
+    /**
+     * @return the encoded vector for the given ordinal: its coarse centroid index followed by its residual PQ code
+     */
+    public ByteSequence<?> get(int ordinal) {
+        if (ordinal < 0 || ordinal >= count())
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for vector count " + count());
+        return PQVectors.get(compressedDataChunks, ordinal, vectorsPerChunk, rpq.compressedVectorSize());
+    }
+
+    /**
+     * Returns the chunk holding the given ordinal, to avoid allocating a slice; see {@link #getOffsetInChunk}.
+     */
+    ByteSequence<?> getChunk(int ordinal) {
+        if (ordinal < 0 || ordinal >= count())
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for vector count " + count());
+        return PQVectors.getChunk(compressedDataChunks, ordinal, vectorsPerChunk);
+    }
+
+    int getOffsetInChunk(int ordinal) {
+        return (ordinal % vectorsPerChunk) * rpq.compressedVectorSize();
+    }
+
+    @Override
+    public int count() {
+        return vectorCount;
+    }
+
+    @Override
+    public int getOriginalSize() {
+        return rpq.originalDimension * Float.BYTES;
+    }
+
+    @Override
+    public int getCompressedSize() {
+        return rpq.compressedVectorSize();
+    }
+
+    @Override
+    public ResidualProductQuantization getCompressor() {
+        return rpq;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        int REF_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        int OH_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+        int AH_BYTES = RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+
+        long chunksArraySize = OH_BYTES + AH_BYTES + (long) compressedDataChunks.length * REF_BYTES;
+        long dataSize = 0;
+        for (var chunk : compressedDataChunks) {
+            dataSize += chunk.ramBytesUsed();
+        }
+        return rpq.ramBytesUsed() + chunksArraySize + dataSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ResidualPQVectors that = (ResidualPQVectors) o;
+        if (!Objects.equals(rpq, that.rpq)) return false;
+        if (this.count() != that.count()) return false;
+        for (int i = 0; i < this.count(); i++) {
+            if (!this.get(i).equals(that.get(i))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 * rpq.hashCode() + count();
+        for (int i = 0; i < count(); i++)
+            result = 31 * result + get(i).hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ResidualPQVectors{" +
+                "rpq=" + rpq +
+                ", count=" + count() +
+                '}';
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.util.Accountable;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.ByteSequence;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static io.github.jbellis.jvector.quantization.KMeansPlusPlusClusterer.UNWEIGHTED;
+
+/**
+ * Two-level ("IVF-style") quantization for float vectors.  Each vector is first assigned to the nearest of a small
+ * number of coarse centroids, and the residual (the vector minus that centroid) is then encoded with a
+ * ProductQuantization trained on the residuals.  The residuals are much smaller and more uniform than the vectors
+ * themselves, so on clustered data the PQ codebooks spend their resolution where it matters and approximate scores
+ * are noticeably more accurate than with a single global centering at a similar code size.
+ * <p>
+ * A compressed vector is one byte of coarse centroid index followed by the M bytes of the residual's PQ code.
+ * <p>
+ * Scores are computed without decoding: with x = c + r, the query-dependent terms are q.c (one per coarse cell)
+ * and q.r (a single PQ lookup table, since r does not depend on the cell), and the query-independent term
+ * ||c + r||^2 - ||c||^2 = 2 c.r + ||r||^2 is a per-cell table computed once per compressor.
+ */
+public class ResidualProductQuantization implements VectorCompressor<ByteSequence<?>>, Accountable {
+    private static final int MAGIC = 0x75EC4052; // JVECTOR, R for residual
+
+    private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
+    /** the coarse centroid index is stored in a single byte */
+    public static final int MAX_COARSE_CLUSTERS = 256;
+    // as in FAISS, more training points per coarse centroid than this buys little accuracy for a lot of k-means time
+    static final int MAX_TRAINING_POINTS_PER_COARSE_CLUSTER = 256;
+
+    final VectorFloat<?>[] coarseCentroids;
+    final ProductQuantization pq; // trained on the residuals, and never centered (the coarse centroids do that job)
+    final int originalDimension;
+    final float[] coarseNormsSquared;
+    private final VectorFloat<?> centroid; // mean of the coarse centroids
+    private final AtomicReference<VectorFloat<?>[]> residualCrossTerms; // per cell: 2 c.r + ||r||^2 for each PQ centroid r
+
+    /**
+     * Trains the coarse centroids and the residual PQ codebooks.
+     *
+     * @param ravv the vectors to quantize
+     * @param coarseClusterCount the number of coarse centroids, at most {@link #MAX_COARSE_CLUSTERS}
+     * @param M number of PQ subspaces
+     * @param clusterCount number of clusters per PQ subspace
+     */
+    public static ResidualProductQuantization compute(RandomAccessVectorValues ravv, int coarseClusterCount, int M, int clusterCount) {
+        return compute(ravv, coarseClusterCount, M, clusterCount, PhysicalCoreExecutor.pool(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Trains the coarse centroids and the residual PQ codebooks.
+     *
+     * @param simdExecutor     ForkJoinPool instance for SIMD operations, best is to use a pool with the size of
+     *                         the number of physical cores.
+     * @param parallelExecutor ForkJoinPool instance for parallel stream operations
+     * @see #compute(RandomAccessVectorValues, int, int, int)
+     */
+    public static ResidualProductQuantization compute(RandomAccessVectorValues ravv,
+                                                      int coarseClusterCount,
+                                                      int M,
+                                                      int clusterCount,
+                                                      ForkJoinPool simdExecutor,
+                                                      ForkJoinPool parallelExecutor)
+    {
+        if (coarseClusterCount < 1 || coarseClusterCount > MAX_COARSE_CLUSTERS) {
+            throw new IllegalArgumentException(String.format("Coarse cluster count %d must be between 1 and %d", coarseClusterCount, MAX_COARSE_CLUSTERS));
+        }
+        int dimension = ravv.dimension();
+        var vectors = ProductQuantization.extractTrainingVectors(ravv, parallelExecutor);
+
+        // coarse k-means on a subsample
+        var coarseTraining = vectors;
+        int maxCoarseTraining = MAX_TRAINING_POINTS_PER_COARSE_CLUSTER * coarseClusterCount;
+        if (vectors.size() > maxCoarseTraining) {
+            var P = maxCoarseTraining / (float) vectors.size();
+            coarseTraining = vectors.stream().filter(v -> ThreadLocalRandom.current().nextFloat() < P).collect(Collectors.toList());
+        }
+        var points = coarseTraining.toArray(VectorFloat<?>[]::new);
+        var flatCentroids = simdExecutor.submit(() -> new KMeansPlusPlusClusterer(points, coarseClusterCount)
+                .cluster(ProductQuantization.K_MEANS_ITERATIONS, 0)).join();
+        var coarseCentroids = new VectorFloat<?>[coarseClusterCount];
+        for (int c = 0; c < coarseClusterCount; c++) {
+            coarseCentroids[c] = vectorTypeSupport.createFloatVector(dimension);
+            coarseCentroids[c].copyFrom(flatCentroids, c * dimension, 0, dimension);
+        }
+
+        // PQ on the residuals of all the training vectors
+        List<VectorFloat<?>> residuals = simdExecutor.submit(() -> vectors.stream().parallel()
+                .map(v -> VectorUtil.sub(v, coarseCentroids[nearestCoarseCentroid(coarseCentroids, v)]))
+                .collect(Collectors.<VectorFloat<?>>toList())).join();
+        var pq = ProductQuantization.compute(new ListRandomAccessVectorValues(residuals, dimension),
+                                             M, clusterCount, false, UNWEIGHTED, simdExecutor, parallelExecutor);
+        return new ResidualProductQuantization(coarseCentroids, pq);
+    }
+
+    public ResidualProductQuantization(VectorFloat<?>[] coarseCentroids, ProductQuantization pq) {
+        if (coarseCentroids.length < 1 || coarseCentroids.length > MAX_COARSE_CLUSTERS) {
+            throw new IllegalArgumentException(String.format("Coarse cluster count %d must be between 1 and %d", coarseCentroids.length, MAX_COARSE_CLUSTERS));
+        }
+        if (pq.globalCentroid != null || pq.rotation != null) {
+            throw new IllegalArgumentException("The residual PQ must not be centered or rotated");
+        }
+        for (var c : coarseCentroids) {
+            if (c.length() != pq.originalDimension) {
+                throw new IllegalArgumentException(String.format("Coarse centroid dimension %d does not match PQ dimension %d", c.length(), pq.originalDimension));
+            }
+        }
+        this.coarseCentroids = coarseCentroids;
+        this.pq = pq;
+        this.originalDimension = pq.originalDimension;
+
+        coarseNormsSquared = new float[coarseCentroids.length];
+        centroid = vectorTypeSupport.createFloatVector(originalDimension);
+        for (int c = 0; c < coarseCentroids.length; c++) {
+            coarseNormsSquared[c] = VectorUtil.dotProduct(coarseCentroids[c], coarseCentroids[c]);
+            VectorUtil.addInPlace(centroid, coarseCentroids[c]);
+        }
+        VectorUtil.scale(centroid, 1.0f / coarseCentroids.length);
+        residualCrossTerms = new AtomicReference<>();
+    }
+
+    private static int nearestCoarseCentroid(VectorFloat<?>[] coarseCentroids, VectorFloat<?> v) {
+        int index = 0;
+        float minDist = Float.MAX_VALUE;
+        for (int c = 0; c < coarseCentroids.length; c++) {
+            float dist = VectorUtil.squareL2Distance(v, coarseCentroids[c]);
+            if (dist < minDist) {
+                minDist = dist;
+                index = c;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public ResidualPQVectors encodeAll(RandomAccessVectorValues ravv, ForkJoinPool simdExecutor) {
+        return ResidualPQVectors.encodeAndBuild(this, ravv, simdExecutor);
+    }
+
+    @Override
+    public ByteSequence<?> encode(VectorFloat<?> v) {
+        var result = vectorTypeSupport.createByteSequence(compressedVectorSize());
+        encodeTo(v, result);
+        return result;
+    }
+
+    @Override
+    public void encodeTo(VectorFloat<?> v, ByteSequence<?> dest) {
+        int cell = nearestCoarseCentroid(coarseCentroids, v);
+        dest.set(0, (byte) cell);
+        pq.encodeTo(VectorUtil.sub(v, coarseCentroids[cell]), dest.slice(1, pq.getSubspaceCount()));
+    }
+
+    /**
+     * Decodes the quantized representation (coarse centroid plus PQ-decoded residual) into `target`.
+     */
+    public void decode(ByteSequence<?> encoded, VectorFloat<?> target) {
+        pq.decode(encoded.slice(1, pq.getSubspaceCount()), target);
+        VectorUtil.addInPlace(target, coarseCentroids[Byte.toUnsignedInt(encoded.get(0))]);
+    }
+
+    /**
+     * @return the mean of the coarse centroids, an approximation of the centroid of the encoded vectors
+     */
+    public VectorFloat<?> getOrComputeCentroid() {
+        return centroid;
+    }
+
+    /**
+     * @return for each coarse cell c, a table of 2 c.r + ||r||^2 for each PQ centroid r, laid out like the PQ partial sums
+     */
+    VectorFloat<?>[] residualCrossTerms() {
+        return residualCrossTerms.updateAndGet(current -> {
+            if (current != null) {
+                return current;
+            }
+
+            int K = pq.getClusterCount();
+            var tables = new VectorFloat<?>[coarseCentroids.length];
+            for (int c = 0; c < coarseCentroids.length; c++) {
+                var table = vectorTypeSupport.createFloatVector(pq.getSubspaceCount() * K);
+                for (int m = 0; m < pq.getSubspaceCount(); m++) {
+                    int size = pq.subvectorSizesAndOffsets[m][0];
+                    int offset = pq.subvectorSizesAndOffsets[m][1];
+                    var codebook = pq.codebooks[m];
+                    for (int k = 0; k < K; k++) {
+                        float cr = VectorUtil.dotProduct(codebook, k * size, coarseCentroids[c], offset, size);
+                        float rr = VectorUtil.dotProduct(codebook, k * size, codebook, k * size, size);
+                        table.set(m * K + k, 2 * cr + rr);
+                    }
+                }
+                tables[c] = table;
+            }
+            return tables;
+        });
+    }
+
+    public int getCoarseClusterCount() {
+        return coarseCentroids.length;
+    }
+
+    /**
+     * @return the PQ used to encode the residuals
+     */
+    public ProductQuantization getResidualQuantization() {
+        return pq;
+    }
+
+    @Override
+    public void write(DataOutput out, int version) throws IOException {
+        if (version > OnDiskGraphIndex.CURRENT_VERSION) {
+            throw new IllegalArgumentException("Unsupported serialization version " + version);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+        out.writeInt(coarseCentroids.length);
+        out.writeInt(originalDimension);
+        for (var c : coarseCentroids) {
+            vectorTypeSupport.writeFloatVector(out, c);
+        }
+        pq.write(out, version);
+    }
+
+    public static ResidualProductQuantization load(RandomAccessReader in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a residual PQ: bad magic " + Integer.toHexString(magic));
+        }
+        int version = in.readInt();
+        if (version > OnDiskGraphIndex.CURRENT_VERSION) {
+            throw new IOException("Unsupported serialization version " + version);
+        }
+        int coarseClusterCount = in.readInt();
+        int dimension = in.readInt();
+        var coarseCentroids = new VectorFloat<?>[coarseClusterCount];
+        for (int c = 0; c < coarseClusterCount; c++) {
+            coarseCentroids[c] = vectorTypeSupport.readFloatVector(in, dimension);
+        }
+        var pq = ProductQuantization.load(in);
+        return new ResidualProductQuantization(coarseCentroids, pq);
+    }
+
+    @Override
+    @Deprecated
+    public ResidualPQVectors createCompressedVectors(Object[] compressedVectors) {
+        return new ResidualPQVectors(this, (ByteSequence<?>[]) compressedVectors, compressedVectors.length, 1);
+    }
+
+    @Override
+    public int compressorSize() {
+        int size = 0;
+        size += Integer.BYTES; // MAGIC
+        size += Integer.BYTES; // STORAGE_VERSION
+        size += Integer.BYTES; // coarseClusterCount
+        size += Integer.BYTES; // originalDimension
+        size += coarseCentroids.length * originalDimension * Float.BYTES;
+        size += pq.compressorSize();
+        return size;
+    }
+
+    @Override
+    public int compressedVectorSize() {
+        return 1 + pq.compressedVectorSize();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long size = pq.ramBytesUsed();
+        for (var c : coarseCentroids) {
+            size += c.ramBytesUsed();
+        }
+        var tables = residualCrossTerms.get();
+        if (tables != null) {
+            for (var t : tables) {
+                size += t.ramBytesUsed();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ResidualProductQuantization that = (ResidualProductQuantization) o;
+        return Arrays.equals(coarseCentroids, that.coarseCentroids) && Objects.equals(pq, that.pq);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(coarseCentroids) + pq.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResidualProductQuantization(coarse=%d, M=%d, clusters=%d)",
+                             coarseCentroids.length, pq.getSubspaceCount(), pq.getClusterCount());
+    }
+}
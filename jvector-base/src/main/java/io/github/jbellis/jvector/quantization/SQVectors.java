@@ -0,0 +1,145 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.util.RamUsageEstimator;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Vectors compressed with {@link ScalarQuantization}.  The query is quantized once per score function, and each
+ * comparison is then an int8 dot product of the codes plus a few scalar corrections.
+ */
+public class SQVectors implements CompressedVectors {
+    final ScalarQuantization sq;
+    final ScalarQuantization.QuantizedVector[] compressedVectors;
+
+    public SQVectors(ScalarQuantization sq, ScalarQuantization.QuantizedVector[] compressedVectors) {
+        this.sq = sq;
+        this.compressedVectors = compressedVectors;
+    }
+
+    @Override
+    public int count() {
+        return compressedVectors.length;
+    }
+
+    @Override
+    public void write(DataOutput out, int version) throws IOException {
+        sq.write(out, version);
+
+        out.writeInt(compressedVectors.length);
+        for (var v : compressedVectors) {
+            v.write(out);
+        }
+    }
+
+    public static SQVectors load(RandomAccessReader in) throws IOException {
+        var sq = ScalarQuantization.load(in);
+
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid compressed vector count " + size);
+        }
+        var compressedVectors = new ScalarQuantization.QuantizedVector[size];
+        for (int i = 0; i < size; i++) {
+            compressedVectors[i] = ScalarQuantization.QuantizedVector.load(in, sq.dimension);
+        }
+
+        return new SQVectors(sq, compressedVectors);
+    }
+
+    public static SQVectors load(RandomAccessReader in, long offset) throws IOException {
+        in.seek(offset);
+        return load(in);
+    }
+
+    /**
+     * There is nothing to precompute beyond quantizing the query, so this is the same as {@link #scoreFunctionFor}
+     */
+    @Override
+    public ScoreFunction.ApproximateScoreFunction precomputedScoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
+        return scoreFunctionFor(q, similarityFunction);
+    }
+
+    @Override
+    public ScoreFunction.ApproximateScoreFunction scoreFunctionFor(VectorFloat<?> q, VectorSimilarityFunction similarityFunction) {
+        var encodedQuery = sq.encode(q);
+        return node2 -> sq.similarity(encodedQuery, compressedVectors[node2], similarityFunction);
+    }
+
+    public ScalarQuantization.QuantizedVector get(int ordinal) {
+        return compressedVectors[ordinal];
+    }
+
+    @Override
+    public int getOriginalSize() {
+        return sq.dimension * Float.BYTES;
+    }
+
+    @Override
+    public int getCompressedSize() {
+        return sq.compressedVectorSize();
+    }
+
+    @Override
+    public ScalarQuantization getCompressor() {
+        return sq;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        int REF_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        int OH_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+
+        long listSize = (long) REF_BYTES * (1 + compressedVectors.length);
+        long dataSize = (long) (OH_BYTES + REF_BYTES + 3 * Float.BYTES + Integer.BYTES) * compressedVectors.length;
+        for (var v : compressedVectors) {
+            dataSize += v.codes.ramBytesUsed();
+        }
+        return listSize + dataSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SQVectors that = (SQVectors) o;
+        return Objects.equals(sq, that.sq) && Arrays.equals(compressedVectors, that.compressedVectors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sq, Arrays.hashCode(compressedVectors));
+    }
+
+    @Override
+    public String toString() {
+        return "SQVectors{" +
+                "sq=" + sq +
+                ", count=" + compressedVectors.length +
+                '}';
+    }
+}
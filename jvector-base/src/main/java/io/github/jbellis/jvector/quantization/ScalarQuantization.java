@@ -0,0 +1,297 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.ByteSequence;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Scalar quantization of each dimension to a signed byte, with a scale and offset per vector.
+ * <p>
+ * A vector v is encoded as codes c in [-127, 127] with v[i] ~= offset + scale * c[i], where offset is the
+ * midpoint of v's range and scale spreads that range over the codes.  Queries are quantized the same way, so
+ * that the inner product of two reconstructions
+ * <pre>
+ *   d * o_q * o_v + o_q * s_v * sum(c_v) + o_v * s_q * sum(c_q) + s_q * s_v * &lt;c_q, c_v&gt;
+ * </pre>
+ * needs only one integer dot product of the codes per comparison, which {@link VectorUtil#dotProductInt8}
+ * computes with int8 SIMD kernels.  The sum of the codes and the squared norm of the reconstruction are stored
+ * with each vector, so Euclidean and cosine similarities cost the same.
+ * <p>
+ * The compressor needs no training, so there is nothing to compute beyond the dimension.
+ */
+public class ScalarQuantization implements VectorCompressor<ScalarQuantization.QuantizedVector> {
+    private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
+    private static final int MAGIC = 0x5C4A1A8B;
+
+    // codes are symmetric around zero, so that -128 is never used and negating a code cannot overflow
+    private static final int MAX_CODE = 127;
+
+    final int dimension;
+
+    public static ScalarQuantization compute(RandomAccessVectorValues ravv) {
+        return new ScalarQuantization(ravv.dimension());
+    }
+
+    public ScalarQuantization(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimension must be positive, not " + dimension);
+        }
+        this.dimension = dimension;
+    }
+
+    @Override
+    public SQVectors encodeAll(RandomAccessVectorValues ravv) {
+        return encodeAll(ravv, PhysicalCoreExecutor.pool());
+    }
+
+    @Override
+    public SQVectors encodeAll(RandomAccessVectorValues ravv, ForkJoinPool simdExecutor) {
+        var ravvCopy = ravv.threadLocalSupplier();
+        var zero = vectorTypeSupport.createFloatVector(dimension);
+        var cv = simdExecutor.submit(() -> IntStream.range(0, ravv.size())
+                        .parallel()
+                        .mapToObj(i -> {
+                            var v = ravvCopy.get().getVector(i);
+                            return encode(v == null ? zero : v);
+                        })
+                        .toArray(QuantizedVector[]::new))
+                .join();
+        return new SQVectors(this, cv);
+    }
+
+    @Override
+    public QuantizedVector encode(VectorFloat<?> v) {
+        var qv = QuantizedVector.createEmpty(dimension);
+        encodeTo(v, qv);
+        return qv;
+    }
+
+    @Override
+    public void encodeTo(VectorFloat<?> v, QuantizedVector dest) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < dimension; i++) {
+            min = Math.min(min, v.get(i));
+            max = Math.max(max, v.get(i));
+        }
+
+        dest.offset = (min + max) / 2;
+        dest.scale = (max - min) / (2 * MAX_CODE);
+        int codeSum = 0;
+        double normSquared = 0;
+        for (int i = 0; i < dimension; i++) {
+            int code = dest.scale == 0 ? 0 : Math.round((v.get(i) - dest.offset) / dest.scale);
+            code = Math.min(Math.max(code, -MAX_CODE), MAX_CODE);
+            dest.codes.set(i, (byte) code);
+            codeSum += code;
+            float reconstructed = dest.offset + dest.scale * code;
+            normSquared += reconstructed * reconstructed;
+        }
+        dest.codeSum = codeSum;
+        dest.normSquared = (float) normSquared;
+    }
+
+    /**
+     * Decodes `qv` into `dest`
+     */
+    public void decode(QuantizedVector qv, VectorFloat<?> dest) {
+        for (int i = 0; i < dimension; i++) {
+            dest.set(i, qv.offset + qv.scale * qv.codes.get(i));
+        }
+    }
+
+    /**
+     * @return the inner product of the reconstructions of `a` and `b`
+     */
+    float dotProduct(QuantizedVector a, QuantizedVector b) {
+        int codeDotProduct = VectorUtil.dotProductInt8(a.codes, 0, b.codes, 0, dimension);
+        return dimension * a.offset * b.offset
+               + a.offset * b.scale * b.codeSum
+               + b.offset * a.scale * a.codeSum
+               + a.scale * b.scale * codeDotProduct;
+    }
+
+    /**
+     * @return the similarity between the reconstructions of `a` and `b`, as `similarityFunction` would score them
+     */
+    public float similarity(QuantizedVector a, QuantizedVector b, VectorSimilarityFunction similarityFunction) {
+        float dotProduct = dotProduct(a, b);
+        switch (similarityFunction) {
+            case DOT_PRODUCT:
+                return (1 + dotProduct) / 2;
+            case EUCLIDEAN:
+                float distance = a.normSquared + b.normSquared - 2 * dotProduct;
+                return 1 / (1 + Math.max(0, distance));
+            case COSINE:
+                float normProduct = (float) Math.sqrt(a.normSquared * b.normSquared);
+                float cosine = normProduct == 0 ? 0 : Math.max(-1, Math.min(1, dotProduct / normProduct));
+                return (1 + cosine) / 2;
+            default:
+                throw new IllegalArgumentException("Unsupported similarity function " + similarityFunction);
+        }
+    }
+
+    public int getOriginalDimension() {
+        return dimension;
+    }
+
+    @Override
+    public void write(DataOutput out, int version) throws IOException {
+        if (version > OnDiskGraphIndex.CURRENT_VERSION) {
+            throw new IllegalArgumentException("Unsupported serialization version " + version);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+        out.writeInt(dimension);
+    }
+
+    public static ScalarQuantization load(RandomAccessReader in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a scalar quantization: bad magic " + Integer.toHexString(magic));
+        }
+        int version = in.readInt();
+        if (version > OnDiskGraphIndex.CURRENT_VERSION) {
+            throw new IOException("Unsupported serialization version " + version);
+        }
+        int dimension = in.readInt();
+        return new ScalarQuantization(dimension);
+    }
+
+    @Override
+    @Deprecated
+    public CompressedVectors createCompressedVectors(Object[] compressedVectors) {
+        return new SQVectors(this, (QuantizedVector[]) compressedVectors);
+    }
+
+    @Override
+    public int compressorSize() {
+        int size = 0;
+        size += Integer.BYTES; // MAGIC
+        size += Integer.BYTES; // version
+        size += Integer.BYTES; // dimension
+        return size;
+    }
+
+    @Override
+    public int compressedVectorSize() {
+        return QuantizedVector.serializedSize(dimension);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return dimension == ((ScalarQuantization) o).dimension;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(dimension);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScalarQuantization(int8 x %d dimensions)", dimension);
+    }
+
+    /**
+     * A quantized vector: one signed byte per dimension, and the scalars that map the codes back to floats.
+     */
+    public static class QuantizedVector {
+        final ByteSequence<?> codes;
+        float scale;
+        float offset;
+        /** the sum of the codes, which the inner product needs whenever the other offset is nonzero */
+        int codeSum;
+        /** the squared norm of the reconstructed vector */
+        float normSquared;
+
+        private QuantizedVector(ByteSequence<?> codes) {
+            this.codes = codes;
+        }
+
+        public static QuantizedVector createEmpty(int dimension) {
+            return new QuantizedVector(vectorTypeSupport.createByteSequence(dimension));
+        }
+
+        public static int serializedSize(int dimension) {
+            return dimension + 3 * Float.BYTES + Integer.BYTES;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            vectorTypeSupport.writeByteSequence(out, codes);
+            out.writeFloat(scale);
+            out.writeFloat(offset);
+            out.writeInt(codeSum);
+            out.writeFloat(normSquared);
+        }
+
+        public static QuantizedVector load(RandomAccessReader in, int dimension) throws IOException {
+            var qv = new QuantizedVector(vectorTypeSupport.readByteSequence(in, dimension));
+            loadScalars(in, qv);
+            return qv;
+        }
+
+        /**
+         * Reads a vector written by {@link #write} into `dest`, reusing its codes
+         */
+        public static void loadInto(RandomAccessReader in, QuantizedVector dest) throws IOException {
+            vectorTypeSupport.readByteSequence(in, dest.codes);
+            loadScalars(in, dest);
+        }
+
+        private static void loadScalars(RandomAccessReader in, QuantizedVector qv) throws IOException {
+            qv.scale = in.readFloat();
+            qv.offset = in.readFloat();
+            qv.codeSum = in.readInt();
+            qv.normSquared = in.readFloat();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            QuantizedVector that = (QuantizedVector) o;
+            return Float.compare(scale, that.scale) == 0
+                   && Float.compare(offset, that.offset) == 0
+                   && codeSum == that.codeSum
+                   && Float.compare(normSquared, that.normSquared) == 0
+                   && codes.equalTo(that.codes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * codes.getHashCode() + Float.hashCode(scale);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import io.github.jbellis.jvector.graph.NodeQueue;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.util.BoundedLongHeap;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Empirical bounds on the error of the approximate scores of a {@link CompressedVectors}, for compressors that
+ * do not report bounds themselves.  Wrapping a search's approximate score function with {@link #bound} lets
+ * GraphSearcher stop reranking once the remaining candidates cannot enter the topK.
+ * <p>
+ * The error is measured on the candidates that matter for reranking: the best approximately-scored nodes
+ * for each calibration query.  Calibrate with queries that resemble the real workload.
+ */
+public class ScoreErrorCalibration {
+    /** the number of best approximate candidates per query whose error is measured */
+    public static final int CANDIDATES_PER_QUERY = 100;
+    // larger datasets are subsampled so that calibration costs at most this many approximate scores per query
+    private static final int MAX_SCORED_PER_QUERY = 100_000;
+
+    private final float maxUnderestimate;
+    private final float maxOverestimate;
+
+    /**
+     * @param maxUnderestimate the largest amount by which an exact score exceeds its approximation
+     * @param maxOverestimate the largest amount by which an approximation exceeds its exact score
+     */
+    public ScoreErrorCalibration(float maxUnderestimate, float maxOverestimate) {
+        if (maxUnderestimate < 0 || maxOverestimate < 0) {
+            throw new IllegalArgumentException("Error bounds must be non-negative");
+        }
+        this.maxUnderestimate = maxUnderestimate;
+        this.maxOverestimate = maxOverestimate;
+    }
+
+    /**
+     * Measures the error of the precomputed score functions of `cv` against the exact scores from `ravv`.
+     * @param coverage the fraction (e.g. 0.99) of measured scores that must fall within the bounds
+     */
+    public static ScoreErrorCalibration calibrate(CompressedVectors cv,
+                                                  RandomAccessVectorValues ravv,
+                                                  VectorSimilarityFunction similarityFunction,
+                                                  List<VectorFloat<?>> queries,
+                                                  float coverage)
+    {
+        if (coverage <= 0 || coverage > 1) {
+            throw new IllegalArgumentException("Coverage must be in (0, 1]");
+        }
+        int stride = Math.max(1, cv.count() / MAX_SCORED_PER_QUERY);
+        var best = new NodeQueue(new BoundedLongHeap(CANDIDATES_PER_QUERY), NodeQueue.Order.MIN_HEAP);
+        float[] underestimates = new float[queries.size() * CANDIDATES_PER_QUERY];
+        float[] overestimates = new float[underestimates.length];
+        int n = 0;
+        for (var q : queries) {
+            var sf = cv.precomputedScoreFunctionFor(q, similarityFunction);
+            best.clear();
+            for (int node = 0; node < cv.count(); node += stride) {
+                best.push(node, sf.similarityTo(node));
+            }
+            while (best.size() > 0) {
+                float approximate = best.topScore();
+                int node = best.pop();
+                var v = ravv.getVector(node);
+                if (v == null) {
+                    continue;
+                }
+                float error = similarityFunction.compare(q, v) - approximate;
+                underestimates[n] = error;
+                overestimates[n] = -error;
+                n++;
+            }
+        }
+        if (n == 0) {
+            return new ScoreErrorCalibration(0, 0);
+        }
+        return new ScoreErrorCalibration(quantile(underestimates, n, coverage), quantile(overestimates, n, coverage));
+    }
+
+    private static float quantile(float[] values, int n, float coverage) {
+        Arrays.sort(values, 0, n);
+        int index = Math.min(n - 1, (int) Math.ceil(coverage * n) - 1);
+        return Math.max(0, values[Math.max(0, index)]);
+    }
+
+    public float getMaxUnderestimate() {
+        return maxUnderestimate;
+    }
+
+    public float getMaxOverestimate() {
+        return maxOverestimate;
+    }
+
+    /**
+     * @return a score function that returns the same scores as `sf`, with bounds from this calibration
+     */
+    public ScoreFunction.BoundedApproximateScoreFunction bound(ScoreFunction.ApproximateScoreFunction sf) {
+        return new ScoreFunction.BoundedApproximateScoreFunction() {
+            @Override
+            public float similarityTo(int node2) {
+                return sf.similarityTo(node2);
+            }
+
+            @Override
+            public void similarityTo(int[] nodes, int count, float[] out) {
+                sf.similarityTo(nodes, count, out);
+            }
+
+            @Override
+            public float lowerBound(int node2) {
+                return sf.similarityTo(node2) - maxOverestimate;
+            }
+
+            @Override
+            public float upperBound(int node2) {
+                return sf.similarityTo(node2) + maxUnderestimate;
+            }
+
+            @Override
+            public VectorFloat<?> edgeLoadingSimilarityTo(int node2) {
+                return sf.edgeLoadingSimilarityTo(node2);
+            }
+
+            @Override
+            public boolean supportsEdgeLoadingSimilarity() {
+                return sf.supportsEdgeLoadingSimilarity();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScoreErrorCalibration(-%s, +%s)", maxOverestimate, maxUnderestimate);
+    }
+}
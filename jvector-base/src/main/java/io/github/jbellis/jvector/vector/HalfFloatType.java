@@ -0,0 +1,145 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.vector;
+
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The 16-bit floating point formats that vectors can be stored in, at half the size of float32.
+ * A half-precision vector is represented as a short[] of raw bits; the similarity kernels in
+ * {@link VectorUtilSupport} convert it to float32 as they go.
+ * <p>
+ * The order of this Enum SHOULD NOT be changed, as the ordinal is serialized.
+ */
+public enum HalfFloatType {
+    /**
+     * IEEE 754 binary16: 5 exponent bits and 10 mantissa bits.  More precise than bfloat16, but magnitudes
+     * above 65504 overflow to infinity, so it suits vectors whose components are of moderate size (e.g. normalized).
+     */
+    FLOAT16 {
+        @Override
+        public short fromFloat(float f) {
+            int bits = Float.floatToRawIntBits(f);
+            int sign = (bits >>> 16) & 0x8000;
+            int exponent = (bits >>> 23) & 0xff;
+            int mantissa = bits & 0x7fffff;
+            if (exponent == 0xff) {
+                // infinity stays infinity, and NaN keeps a nonzero mantissa
+                return (short) (sign | 0x7c00 | (mantissa == 0 ? 0 : 0x200 | (mantissa >>> 13)));
+            }
+
+            int halfExponent = exponent - 127 + 15;
+            if (halfExponent >= 0x1f) {
+                return (short) (sign | 0x7c00);
+            }
+            if (halfExponent <= 0) {
+                // subnormal, or too small to represent at all
+                if (halfExponent < -10) {
+                    return (short) sign;
+                }
+                mantissa |= 0x800000;
+                int shift = 14 - halfExponent;
+                return (short) (sign | roundToNearestEven(mantissa >>> shift, mantissa & ((1 << shift) - 1), 1 << (shift - 1)));
+            }
+            // rounding may carry into the exponent, which is still correct, up to and including infinity
+            return (short) (sign | roundToNearestEven((halfExponent << 10) | (mantissa >>> 13), mantissa & 0x1fff, 0x1000));
+        }
+
+        @Override
+        public float toFloat(short h) {
+            int sign = (h & 0x8000) << 16;
+            int exponent = (h >>> 10) & 0x1f;
+            int mantissa = h & 0x3ff;
+            if (exponent == 0x1f) {
+                return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+            }
+            if (exponent == 0) {
+                float subnormal = mantissa * 0x1p-24f;
+                return sign == 0 ? subnormal : -subnormal;
+            }
+            return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (mantissa << 13));
+        }
+    },
+
+    /**
+     * The upper 16 bits of a float32: 8 exponent bits and 7 mantissa bits.  Has the full range of float32 but
+     * less precision than float16.
+     */
+    BFLOAT16 {
+        @Override
+        public short fromFloat(float f) {
+            int bits = Float.floatToRawIntBits(f);
+            if ((bits & 0x7fffffff) > 0x7f800000) {
+                // rounding could turn a NaN into infinity, so set a mantissa bit that survives truncation
+                return (short) ((bits >>> 16) | 0x40);
+            }
+            return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+        }
+
+        @Override
+        public float toFloat(short h) {
+            return Float.intBitsToFloat(h << 16);
+        }
+    };
+
+    /**
+     * @return the bits of the value in this format closest to `f`, rounding ties to even
+     */
+    public abstract short fromFloat(float f);
+
+    /**
+     * @return the float32 value of the bits `h` in this format, which is exact
+     */
+    public abstract float toFloat(short h);
+
+    private static int roundToNearestEven(int truncated, int remainder, int halfway) {
+        if (remainder > halfway || (remainder == halfway && (truncated & 1) != 0)) {
+            return truncated + 1;
+        }
+        return truncated;
+    }
+
+    /**
+     * Converts `vector` to this format, into `dest`, which must be at least as long as `vector`
+     */
+    public void encode(VectorFloat<?> vector, short[] dest) {
+        for (int i = 0; i < vector.length(); i++) {
+            dest[i] = fromFloat(vector.get(i));
+        }
+    }
+
+    /**
+     * Converts `length` values of this format from `src` to float32, into `dest` starting at `offset`
+     */
+    public void decode(short[] src, int length, VectorFloat<?> dest, int offset) {
+        for (int i = 0; i < length; i++) {
+            dest.set(offset + i, toFloat(src[i]));
+        }
+    }
+
+    /**
+     * Writes `vector` in this format, two bytes per dimension
+     */
+    public void write(DataOutput out, VectorFloat<?> vector) throws IOException {
+        for (int i = 0; i < vector.length(); i++) {
+            out.writeShort(fromFloat(vector.get(i)));
+        }
+    }
+}
@@ -19,6 +19,9 @@ package io.github.jbellis.jvector.vector;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
 import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
 
+import java.util.Random;
+import java.util.stream.IntStream;
+
 import static java.lang.Math.abs;
 
 /**
@@ -122,6 +125,167 @@ public class Matrix {
         return inverse;
     }
 
+    public int rowCount() {
+        return data.length;
+    }
+
+    public int columnCount() {
+        return data[0].length();
+    }
+
+    public static Matrix identity(int n) {
+        var result = new Matrix(n, n);
+        for (int i = 0; i < n; i++) {
+            result.set(i, i, 1);
+        }
+        return result;
+    }
+
+    /**
+     * @return a uniformly random rotation: the orthonormalized rows of a matrix of standard normal entries
+     */
+    public static Matrix randomOrthogonal(int n, Random random) {
+        var result = new Matrix(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                result.set(i, j, (float) random.nextGaussian());
+            }
+        }
+        result.orthonormalizeRows();
+        return result;
+    }
+
+    public Matrix transpose() {
+        var result = new Matrix(columnCount(), rowCount());
+        for (int i = 0; i < rowCount(); i++) {
+            for (int j = 0; j < columnCount(); j++) {
+                result.set(j, i, get(i, j));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return this * other
+     */
+    public Matrix multiply(Matrix other) {
+        return multiplyTransposed(other.transpose());
+    }
+
+    /**
+     * Computes this * other^T, which is a dot product for each pair of rows.  Rows of the result
+     * are computed in parallel, in the current ForkJoinPool.
+     * @return this * other^T
+     */
+    public Matrix multiplyTransposed(Matrix other) {
+        if (columnCount() != other.columnCount()) {
+            throw new IllegalArgumentException("matrix dimensions differ for " + rowCount() + "x" + columnCount() + " * (" + other.rowCount() + "x" + other.columnCount() + ")^T");
+        }
+        var result = new Matrix(rowCount(), other.rowCount());
+        IntStream.range(0, rowCount()).parallel().forEach(i -> {
+            for (int j = 0; j < other.rowCount(); j++) {
+                result.set(i, j, VectorUtil.dotProduct(data[i], other.data[j]));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Computes the orthogonal matrix closest to this one in Frobenius norm, i.e., the orthogonal factor U V^T
+     * of the polar decomposition, where this = U S V^T.  Called on Y X^T, this solves the orthogonal Procrustes
+     * problem of finding the rotation R minimizing ||R X - Y||.
+     * <p>
+     * Uses the Newton-Schulz iteration, which needs only matrix products, followed by a Gram-Schmidt pass
+     * so that the result is orthogonal even where the iteration has not converged (directions in which
+     * this matrix is singular or nearly so).
+     */
+    public Matrix nearestOrthogonal() {
+        if (data.length == 0 || data.length != data[0].length()) {
+            throw new IllegalArgumentException("matrix must be square");
+        }
+        int N = data.length;
+
+        // scaling by the Frobenius norm puts every singular value in (0, 1], where the iteration converges
+        double norm = 0;
+        for (var row : data) {
+            norm += VectorUtil.dotProduct(row, row);
+        }
+        var x = new Matrix(N, N);
+        for (int i = 0; i < N; i++) {
+            x.data[i].copyFrom(data[i], 0, 0, N);
+        }
+        if (norm == 0) {
+            return identity(N);
+        }
+        x.scale((float) (1 / Math.sqrt(norm)));
+
+        for (int iteration = 0; iteration < 100; iteration++) {
+            // x = x (3I - x^T x) / 2
+            var xt = x.transpose();
+            var xtx = xt.multiplyTransposed(xt);
+            float error = 0;
+            for (int i = 0; i < N; i++) {
+                for (int j = 0; j < N; j++) {
+                    float e = xtx.get(i, j) - (i == j ? 1 : 0);
+                    error += e * e;
+                }
+            }
+            if (error < 1e-8f * N) {
+                break;
+            }
+            xtx.scale(-0.5f);
+            for (int i = 0; i < N; i++) {
+                xtx.addTo(i, i, 1.5f);
+            }
+            x = x.multiplyTransposed(xtx); // xtx is symmetric
+        }
+
+        x.orthonormalizeRows();
+        return x;
+    }
+
+    /**
+     * Modified Gram-Schmidt on the rows of a square matrix.  A row that is (nearly) dependent on
+     * the previous ones is replaced by the standard basis vector that is furthest from their span.
+     */
+    private void orthonormalizeRows() {
+        int N = data.length;
+        for (int i = 0; i < N; i++) {
+            var row = data[i];
+            for (int j = 0; j < i; j++) {
+                subtractProjection(row, data[j]);
+            }
+            float norm = (float) Math.sqrt(VectorUtil.dotProduct(row, row));
+            if (norm < 1e-3f) {
+                float bestNorm = -1;
+                VectorFloat<?> best = null;
+                for (int k = 0; k < N && bestNorm < 0.5f; k++) {
+                    var candidate = vts.createFloatVector(N);
+                    candidate.set(k, 1);
+                    for (int j = 0; j < i; j++) {
+                        subtractProjection(candidate, data[j]);
+                    }
+                    float candidateNorm = (float) Math.sqrt(VectorUtil.dotProduct(candidate, candidate));
+                    if (candidateNorm > bestNorm) {
+                        bestNorm = candidateNorm;
+                        best = candidate;
+                    }
+                }
+                row = best;
+                norm = bestNorm;
+                data[i] = row;
+            }
+            VectorUtil.scale(row, 1 / norm);
+        }
+    }
+
+    private static void subtractProjection(VectorFloat<?> v, VectorFloat<?> unit) {
+        float dot = VectorUtil.dotProduct(v, unit);
+        for (int k = 0; k < v.length(); k++) {
+            v.set(k, v.get(k) - dot * unit.get(k));
+        }
+    }
+
     public void addTo(int i, int j, float delta) {
         data[i].set(j, data[i].get(j) + delta);
     }
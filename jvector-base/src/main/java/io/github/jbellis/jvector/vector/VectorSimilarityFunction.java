@@ -39,6 +39,19 @@ public enum VectorSimilarityFunction {
     public float compare(VectorFloat<?> v1, VectorFloat<?> v2) {
       return 1 / (1 + VectorUtil.squareL2Distance(v1, v2));
     }
+
+    @Override
+    public float compare(VectorFloat<?> v1, short[] v2, HalfFloatType type) {
+      return 1 / (1 + VectorUtil.squareL2DistanceHalf(v1, v2, type));
+    }
+
+    @Override
+    public void compare(VectorFloat<?> v1, VectorFloat<?>[] vectors, int count, float[] results) {
+      VectorUtil.bulkSquareDistance(v1, vectors, count, results);
+      for (int i = 0; i < count; i++) {
+        results[i] = 1 / (1 + results[i]);
+      }
+    }
   },
 
   /**
@@ -53,6 +66,19 @@ public enum VectorSimilarityFunction {
     public float compare(VectorFloat<?> v1, VectorFloat<?> v2) {
       return (1 + VectorUtil.dotProduct(v1, v2)) / 2;
     }
+
+    @Override
+    public float compare(VectorFloat<?> v1, short[] v2, HalfFloatType type) {
+      return (1 + VectorUtil.dotProductHalf(v1, v2, type)) / 2;
+    }
+
+    @Override
+    public void compare(VectorFloat<?> v1, VectorFloat<?>[] vectors, int count, float[] results) {
+      VectorUtil.bulkDotProduct(v1, vectors, count, results);
+      for (int i = 0; i < count; i++) {
+        results[i] = (1 + results[i]) / 2;
+      }
+    }
   },
 
   /**
@@ -66,6 +92,11 @@ public enum VectorSimilarityFunction {
     public float compare(VectorFloat<?> v1, VectorFloat<?> v2) {
       return (1 + VectorUtil.cosine(v1, v2)) / 2;
     }
+
+    @Override
+    public float compare(VectorFloat<?> v1, short[] v2, HalfFloatType type) {
+      return (1 + VectorUtil.cosineHalf(v1, v2, type)) / 2;
+    }
   };
 
   /**
@@ -77,4 +108,24 @@ public enum VectorSimilarityFunction {
    * @return the value of the similarity function applied to the two vectors
    */
   public abstract float compare(VectorFloat<?> v1, VectorFloat<?> v2);
+
+  /**
+   * Calculates a similarity score between `v1` and a vector stored in half precision, as
+   * {@link #compare(VectorFloat, VectorFloat)} would after converting `v2` to float32.
+   *
+   * @param v2 the raw bits of another vector, of the same dimension, in the format `type`
+   */
+  public abstract float compare(VectorFloat<?> v1, short[] v2, HalfFloatType type);
+
+  /**
+   * Calculates the similarity of `v1` to each of vectors[0, count), as {@link #compare(VectorFloat, VectorFloat)}
+   * would, but scoring the candidates together so that their memory accesses overlap.
+   *
+   * @param results receives the score of vectors[i] at results[i]
+   */
+  public void compare(VectorFloat<?> v1, VectorFloat<?>[] vectors, int count, float[] results) {
+    for (int i = 0; i < count; i++) {
+      results[i] = compare(v1, vectors[i]);
+    }
+  }
 }
@@ -170,6 +170,10 @@ public final class VectorUtil {
     return impl.assembleAndSum(data, dataBase, dataOffsets, dataOffsetsOffset, dataOffsetsLength);
   }
 
+  public static void bulkAssembleAndSum(VectorFloat<?> data, int dataBase, ByteSequence<?> codes, int[] codeOffsets, int codeLength, int count, float[] results) {
+    impl.bulkAssembleAndSum(data, dataBase, codes, codeOffsets, codeLength, count, results);
+  }
+
   public static void bulkShuffleQuantizedSimilarity(ByteSequence<?> shuffles, int codebookCount, ByteSequence<?> quantizedPartials, float delta, float minDistance, VectorFloat<?> results, VectorSimilarityFunction vsf) {
     impl.bulkShuffleQuantizedSimilarity(shuffles, codebookCount, quantizedPartials, delta, minDistance, vsf, results);
   }
@@ -181,10 +185,85 @@ public final class VectorUtil {
     impl.bulkShuffleQuantizedSimilarityCosine(shuffles, codebookCount, quantizedPartialSums, sumDelta, minDistance, quantizedPartialMagnitudes, magnitudeDelta, minMagnitude, queryMagnitudeSquared, results);
   }
 
+  public static void bulkShuffleQuantizedSimilarity4bit(ByteSequence<?> shuffles, int codebookCount, ByteSequence<?> quantizedPartials, float delta, float minDistance, VectorFloat<?> results, VectorSimilarityFunction vsf) {
+    impl.bulkShuffleQuantizedSimilarity4bit(shuffles, codebookCount, quantizedPartials, delta, minDistance, vsf, results);
+  }
+
+  public static void bulkShuffleQuantizedSimilarityCosine4bit(ByteSequence<?> shuffles, int codebookCount,
+                                                              ByteSequence<?> quantizedPartialSums, float sumDelta, float minDistance,
+                                                              ByteSequence<?> quantizedPartialMagnitudes, float magnitudeDelta, float minMagnitude,
+                                                              float queryMagnitudeSquared, VectorFloat<?> results) {
+    impl.bulkShuffleQuantizedSimilarityCosine4bit(shuffles, codebookCount, quantizedPartialSums, sumDelta, minDistance, quantizedPartialMagnitudes, magnitudeDelta, minMagnitude, queryMagnitudeSquared, results);
+  }
+
+  /**
+   * Returns the dot product of `a` with the half-precision vector `b`.
+   *
+   * @throws IllegalArgumentException if the vectors' dimensions differ.
+   */
+  public static float dotProductHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+    if (a.length() != b.length) {
+      throw new IllegalArgumentException("vector dimensions differ: " + a.length() + "!=" + b.length);
+    }
+    return impl.dotProductHalf(a, b, type);
+  }
+
+  /**
+   * Returns the sum of squared differences between `a` and the half-precision vector `b`.
+   *
+   * @throws IllegalArgumentException if the vectors' dimensions differ.
+   */
+  public static float squareL2DistanceHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+    if (a.length() != b.length) {
+      throw new IllegalArgumentException("vector dimensions differ: " + a.length() + "!=" + b.length);
+    }
+    return impl.squareDistanceHalf(a, b, type);
+  }
+
+  /**
+   * Returns the cosine similarity between `a` and the half-precision vector `b`.
+   *
+   * @throws IllegalArgumentException if the vectors' dimensions differ.
+   */
+  public static float cosineHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+    if (a.length() != b.length) {
+      throw new IllegalArgumentException("vector dimensions differ: " + a.length() + "!=" + b.length);
+    }
+    return impl.cosineHalf(a, b, type);
+  }
+
+  /**
+   * Returns the dot product of the int8 codes `a` and `b`, which must be the same length.
+   *
+   * @throws IllegalArgumentException if the sequences' lengths differ.
+   */
+  public static int dotProductInt8(ByteSequence<?> a, ByteSequence<?> b) {
+    if (a.length() != b.length()) {
+      throw new IllegalArgumentException("vector dimensions differ: " + a.length() + "!=" + b.length());
+    }
+    return impl.dotProductInt8(a, 0, b, 0, a.length());
+  }
+
+  public static int dotProductInt8(ByteSequence<?> a, int aOffset, ByteSequence<?> b, int bOffset, int length) {
+    return impl.dotProductInt8(a, aOffset, b, bOffset, length);
+  }
+
   public static int hammingDistance(long[] v1, long[] v2) {
     return impl.hammingDistance(v1, v2);
   }
 
+  public static void bulkHammingDistance(long[] q, long[][] vectors, int count, int[] results) {
+    impl.bulkHammingDistance(q, vectors, count, results);
+  }
+
+  public static void bulkDotProduct(VectorFloat<?> q, VectorFloat<?>[] vectors, int count, float[] results) {
+    impl.bulkDotProduct(q, vectors, count, results);
+  }
+
+  public static void bulkSquareDistance(VectorFloat<?> q, VectorFloat<?>[] vectors, int count, float[] results) {
+    impl.bulkSquareDistance(q, vectors, count, results);
+  }
+
   public static void calculatePartialSums(VectorFloat<?> codebook, int codebookIndex, int size, int clusterCount, VectorFloat<?> query, int offset, VectorSimilarityFunction vsf, VectorFloat<?> partialSums, VectorFloat<?> partialBestDistances) {
     impl.calculatePartialSums(codebook, codebookIndex, size, clusterCount, query, offset, vsf, partialSums, partialBestDistances);
   }
@@ -193,6 +272,14 @@ public final class VectorUtil {
     impl.calculatePartialSums(codebook, codebookIndex, size, clusterCount, query, offset, vsf, partialSums);
   }
 
+  /**
+   * Finds the nearest centroid to each of points[start, end), comparing against all centroids at once.
+   * @see VectorUtilSupport#nearestCentroids
+   */
+  public static void nearestCentroids(VectorFloat<?>[] points, int start, int end, VectorFloat<?> transposedCentroids, int centroidCount, int[] nearest, float[] distances) {
+    impl.nearestCentroids(points, start, end, transposedCentroids, centroidCount, nearest, distances);
+  }
+
   public static void quantizePartials(float delta, VectorFloat<?> partials, VectorFloat<?> partialBase, ByteSequence<?> quantizedPartials) {
     impl.quantizePartials(delta, partials, partialBase, quantizedPartials);
   }
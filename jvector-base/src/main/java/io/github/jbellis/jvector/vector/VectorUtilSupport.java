@@ -52,6 +52,40 @@ public interface VectorUtilSupport {
   /** Calculates the sum of squared differences of float arrays of differing sizes, or a subset of the data */
   float squareDistance(VectorFloat<?> a, int aoffset, VectorFloat<?> b, int boffset, int length);
 
+  /** Returns the dot product of `a` with the half-precision vector `b`, whose values are in the given format. */
+  default float dotProductHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+    float sum = 0;
+    for (int i = 0; i < a.length(); i++) {
+      sum += a.get(i) * type.toFloat(b[i]);
+    }
+    return sum;
+  }
+
+  /** Returns the sum of squared differences between `a` and the half-precision vector `b`. */
+  default float squareDistanceHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+    float sum = 0;
+    for (int i = 0; i < a.length(); i++) {
+      float diff = a.get(i) - type.toFloat(b[i]);
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  /** Returns the cosine similarity between `a` and the half-precision vector `b`. */
+  default float cosineHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+    float sum = 0;
+    float aMagnitude = 0;
+    float bMagnitude = 0;
+    for (int i = 0; i < a.length(); i++) {
+      float x = a.get(i);
+      float y = type.toFloat(b[i]);
+      sum += x * y;
+      aMagnitude += x * x;
+      bMagnitude += y * y;
+    }
+    return (float) (sum / Math.sqrt((double) aMagnitude * (double) bMagnitude));
+  }
+
   /** returns the sum of the given vectors. */
   VectorFloat<?> sum(List<VectorFloat<?>> vectors);
 
@@ -115,6 +149,75 @@ public interface VectorUtilSupport {
 
   int hammingDistance(long[] v1, long[] v2);
 
+  /**
+   * Calculates the dot product of `length` signed bytes of `a`, starting at `aOffset`, with those of `b`,
+   * starting at `bOffset`.  The result is exact as long as length &lt;= 2^17, since each product is at most 2^14.
+   */
+  default int dotProductInt8(ByteSequence<?> a, int aOffset, ByteSequence<?> b, int bOffset, int length) {
+    int sum = 0;
+    for (int i = 0; i < length; i++) {
+      sum += a.get(aOffset + i) * b.get(bOffset + i);
+    }
+    return sum;
+  }
+
+  /**
+   * Calculates assembleAndSum for several codes at once: {@code results[i] = assembleAndSum(data, baseIndex, codes,
+   * codeOffsets[i], codeLength)} for each i &lt; count.  Implementations may vectorize across the codes rather than
+   * within each one, so that the table lookups of many candidates are in flight together.
+   */
+  default void bulkAssembleAndSum(VectorFloat<?> data, int baseIndex, ByteSequence<?> codes, int[] codeOffsets, int codeLength, int count, float[] results) {
+    for (int i = 0; i < count; i++) {
+      results[i] = assembleAndSum(data, baseIndex, codes, codeOffsets[i], codeLength);
+    }
+  }
+
+  /**
+   * Calculates the dot product of `q` with each of vectors[0, count).  Implementations may interleave the
+   * candidates, so that their loads overlap and each load of `q` is shared.
+   */
+  default void bulkDotProduct(VectorFloat<?> q, VectorFloat<?>[] vectors, int count, float[] results) {
+    for (int i = 0; i < count; i++) {
+      results[i] = dotProduct(q, vectors[i]);
+    }
+  }
+
+  /**
+   * Calculates the sum of squared differences between `q` and each of vectors[0, count).
+   * @see #bulkDotProduct
+   */
+  default void bulkSquareDistance(VectorFloat<?> q, VectorFloat<?>[] vectors, int count, float[] results) {
+    for (int i = 0; i < count; i++) {
+      results[i] = squareDistance(q, vectors[i]);
+    }
+  }
+
+  /**
+   * Calculates the Hamming distance between `q` and each of vectors[0, count), four candidates at a time
+   * so that each word of `q` is loaded once per group and the candidates' loads overlap.
+   */
+  default void bulkHammingDistance(long[] q, long[][] vectors, int count, int[] results) {
+    int i = 0;
+    for (; i + 4 <= count; i += 4) {
+      long[] v0 = vectors[i], v1 = vectors[i + 1], v2 = vectors[i + 2], v3 = vectors[i + 3];
+      int d0 = 0, d1 = 0, d2 = 0, d3 = 0;
+      for (int j = 0; j < q.length; j++) {
+        long w = q[j];
+        d0 += Long.bitCount(w ^ v0[j]);
+        d1 += Long.bitCount(w ^ v1[j]);
+        d2 += Long.bitCount(w ^ v2[j]);
+        d3 += Long.bitCount(w ^ v3[j]);
+      }
+      results[i] = d0;
+      results[i + 1] = d1;
+      results[i + 2] = d2;
+      results[i + 3] = d3;
+    }
+    for (; i < count; i++) {
+      results[i] = hammingDistance(q, vectors[i]);
+    }
+  }
+
 
   // default implementation used here because Panama SIMD can't express necessary SIMD operations and degrades to scalar
   /**
@@ -128,7 +231,8 @@ public interface VectorUtilSupport {
    *                          the fragments for one codebook, followed by all the fragments for the next codebook, and so on. These have been
    *                          quantized by quantizePartialSums.
    * @param vsf      The similarity function to use.
-   * @param results  The output vector to store the similarity scores. This should be pre-allocated to the same size as the number of shuffles.
+   * @param results  The output vector to store the similarity scores. This should be pre-allocated to the same size as the number of shuffles,
+   *                 i.e. the degree of the graph, which need not be 32.
    */
   default void bulkShuffleQuantizedSimilarity(ByteSequence<?> shuffles, int codebookCount, ByteSequence<?> quantizedPartials, float delta, float minDistance, VectorSimilarityFunction vsf, VectorFloat<?> results) {
     for (int i = 0; i < codebookCount; i++) {
@@ -203,6 +307,104 @@ public interface VectorUtilSupport {
     }
   }
 
+  /**
+   * Variant of {@link #bulkShuffleQuantizedSimilarity} for 16-cluster (4-bit) codebooks.  The shuffles are packed two codebooks
+   * to a byte: byte {@code (i / 2) * results.length() + j} holds the code of codebook i for vector j in its low nibble when i is
+   * even, and in its high nibble when i is odd.  Each codebook has 16 quantized partials, so a codebook's table is small enough
+   * to be held in a single register and indexed with an in-register shuffle.
+   * @param codebookCount The number of codebooks used in the PQ encoding (not the number of packed bytes per vector).
+   */
+  default void bulkShuffleQuantizedSimilarity4bit(ByteSequence<?> shuffles, int codebookCount, ByteSequence<?> quantizedPartials, float delta, float minDistance, VectorSimilarityFunction vsf, VectorFloat<?> results) {
+    int count = results.length();
+    for (int i = 0; i < codebookCount; i++) {
+      int shift = (i & 1) * 4;
+      for (int j = 0; j < count; j++) {
+        var shuffle = ((Byte.toUnsignedInt(shuffles.get((i >> 1) * count + j)) >> shift) & 0xF) * 2;
+        var lowByte = quantizedPartials.get(i * 32 + shuffle);
+        var highByte = quantizedPartials.get(i * 32 + shuffle + 1);
+        var val = ((Byte.toUnsignedInt(highByte) << 8) | Byte.toUnsignedInt(lowByte));
+        results.set(j, results.get(j) + val);
+      }
+    }
+
+    for (int i = 0; i < count; i++) {
+      switch (vsf) {
+        case EUCLIDEAN:
+          results.set(i, 1 / (1 + (delta * results.get(i)) + minDistance));
+          break;
+        case DOT_PRODUCT:
+          results.set(i, (1 + (delta * results.get(i)) + minDistance) / 2);
+          break;
+        default:
+          throw new UnsupportedOperationException("Unsupported similarity function " + vsf);
+      }
+    }
+  }
+
+  /**
+   * Variant of {@link #bulkShuffleQuantizedSimilarityCosine} for 16-cluster (4-bit) codebooks, using the packed
+   * layout described in {@link #bulkShuffleQuantizedSimilarity4bit}.
+   */
+  default void bulkShuffleQuantizedSimilarityCosine4bit(ByteSequence<?> shuffles, int codebookCount,
+                                                        ByteSequence<?> quantizedPartialSums, float sumDelta, float minDistance,
+                                                        ByteSequence<?> quantizedPartialSquaredMagnitudes, float magnitudeDelta, float minMagnitude,
+                                                        float queryMagnitudeSquared, VectorFloat<?> results) {
+    int count = results.length();
+    float[] sums = new float[count];
+    float[] magnitudes = new float[count];
+    for (int i = 0; i < codebookCount; i++) {
+      int shift = (i & 1) * 4;
+      for (int j = 0; j < count; j++) {
+        var shuffle = ((Byte.toUnsignedInt(shuffles.get((i >> 1) * count + j)) >> shift) & 0xF) * 2;
+        var lowByte = quantizedPartialSums.get(i * 32 + shuffle);
+        var highByte = quantizedPartialSums.get(i * 32 + shuffle + 1);
+        sums[j] += ((Byte.toUnsignedInt(highByte) << 8) | Byte.toUnsignedInt(lowByte));
+        lowByte = quantizedPartialSquaredMagnitudes.get(i * 32 + shuffle);
+        highByte = quantizedPartialSquaredMagnitudes.get(i * 32 + shuffle + 1);
+        magnitudes[j] += ((Byte.toUnsignedInt(highByte) << 8) | Byte.toUnsignedInt(lowByte));
+      }
+    }
+
+    for (int i = 0; i < count; i++) {
+      float unquantizedSum = sumDelta * sums[i] + minDistance;
+      float unquantizedMagnitude = magnitudeDelta * magnitudes[i] + minMagnitude;
+      double divisor = Math.sqrt(unquantizedMagnitude * queryMagnitudeSquared);
+      results.set(i, (1 + (float) (unquantizedSum / divisor)) / 2);
+    }
+  }
+
+  /**
+   * Finds the nearest centroid, by squared L2 distance, to each of points[start, end).  The centroids are passed transposed:
+   * component j of centroid c is at {@code j * centroidCount + c}.  This lets an implementation compare a block of points
+   * against many centroids per instruction however small the dimension is, which is what k-means on PQ subspaces
+   * (often only 2-8 dimensions wide) needs.  Ties go to the lowest centroid index.
+   * @param points the points to assign, all of the same dimension
+   * @param transposedCentroids the centroids, dimension-major
+   * @param centroidCount the number of centroids
+   * @param nearest receives the index of the centroid nearest to points[i] at nearest[i]
+   * @param distances receives the squared distance from points[i] to that centroid at distances[i]
+   */
+  default void nearestCentroids(VectorFloat<?>[] points, int start, int end, VectorFloat<?> transposedCentroids, int centroidCount, int[] nearest, float[] distances) {
+    for (int i = start; i < end; i++) {
+      var point = points[i];
+      float minDistance = Float.MAX_VALUE;
+      int minIndex = 0;
+      for (int c = 0; c < centroidCount; c++) {
+        float distance = 0;
+        for (int j = 0; j < point.length(); j++) {
+          float diff = transposedCentroids.get(j * centroidCount + c) - point.get(j);
+          distance += diff * diff;
+        }
+        if (distance < minDistance) {
+          minDistance = distance;
+          minIndex = c;
+        }
+      }
+      nearest[i] = minIndex;
+      distances[i] = minDistance;
+    }
+  }
+
   void calculatePartialSums(VectorFloat<?> codebook, int codebookIndex, int size, int clusterCount, VectorFloat<?> query, int offset, VectorSimilarityFunction vsf, VectorFloat<?> partialSums);
 
   void calculatePartialSums(VectorFloat<?> codebook, int codebookIndex, int size, int clusterCount, VectorFloat<?> query, int offset, VectorSimilarityFunction vsf, VectorFloat<?> partialSums, VectorFloat<?> partialMins);
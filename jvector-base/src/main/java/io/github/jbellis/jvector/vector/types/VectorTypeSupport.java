@@ -83,5 +83,16 @@ public interface VectorTypeSupport {
 
     void readByteSequence(RandomAccessReader r, ByteSequence<?> sequence) throws IOException;
 
+    /**
+     * Return a sequence over the next `size` bytes of the given reader that is backed directly by the reader's
+     * storage (e.g. a file mapping) instead of a copy, and advance the reader past them.  The sequence is only
+     * valid while the reader's storage remains open.
+     * @return the sequence, or null (leaving the reader's position unchanged) if this implementation cannot
+     * view the reader's storage in place.
+     */
+    default ByteSequence<?> viewByteSequence(RandomAccessReader r, int size) throws IOException {
+        return null;
+    }
+
     void writeByteSequence(DataOutput out, ByteSequence<?> sequence) throws IOException;
 }
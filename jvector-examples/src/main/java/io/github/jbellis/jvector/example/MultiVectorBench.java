@@ -0,0 +1,166 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.example;
+
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.MultiVectorDocuments;
+import io.github.jbellis.jvector.graph.MultiVectorSearcher;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the throughput and recall of late-interaction (ColBERT-style) document search with
+ * {@link MultiVectorSearcher}, on synthetic documents whose tokens are drawn from a shared vocabulary
+ * (so that, as with real token embeddings, the tokens of different documents form clusters).
+ * <p>
+ * Usage: MultiVectorBench [numDocs [dimension [queryTokens]]]
+ */
+public class MultiVectorBench {
+    private static final VectorTypeSupport vts = VectorizationProvider.getInstance().getVectorTypeSupport();
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.DOT_PRODUCT;
+
+    public static void main(String[] args) throws IOException {
+        int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int queryTokens = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int vocabulary = Math.max(100, numDocs);
+        int nQueries = 1_000;
+        int nGroundTruth = 50;
+        int topK = 10;
+        var random = new Random(42);
+
+        // documents of 8 to 56 tokens
+        var words = new ArrayList<VectorFloat<?>>(vocabulary);
+        for (int w = 0; w < vocabulary; w++) {
+            words.add(randomVector(random, dimension));
+        }
+        var docWords = new int[numDocs][];
+        var tokenCounts = new int[numDocs];
+        var vectors = new ArrayList<VectorFloat<?>>();
+        for (int d = 0; d < numDocs; d++) {
+            tokenCounts[d] = 8 + random.nextInt(49);
+            docWords[d] = new int[tokenCounts[d]];
+            for (int t = 0; t < tokenCounts[d]; t++) {
+                docWords[d][t] = random.nextInt(vocabulary);
+                vectors.add(near(words.get(docWords[d][t]), random));
+            }
+        }
+        var documents = MultiVectorDocuments.ofTokenCounts(tokenCounts);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        System.out.format("%d documents, %d token vectors of dimension %d, %d tokens per query%n",
+                          numDocs, vectors.size(), dimension, queryTokens);
+
+        // each query shares half of its tokens with one of the documents
+        var queries = new ArrayList<List<VectorFloat<?>>>(nQueries);
+        for (int i = 0; i < nQueries; i++) {
+            var doc = docWords[random.nextInt(numDocs)];
+            var query = new ArrayList<VectorFloat<?>>(queryTokens);
+            for (int t = 0; t < queryTokens; t++) {
+                int word = t % 2 == 0 ? doc[random.nextInt(doc.length)] : random.nextInt(vocabulary);
+                query.add(near(words.get(word), random));
+            }
+            queries.add(query);
+        }
+
+        long start = System.nanoTime();
+        var graph = new GraphIndexBuilder(ravv, VSF, 32, 100, 1.2f, 1.2f, true).build(ravv);
+        System.out.format("Build took %.1fs%n", (System.nanoTime() - start) / 1e9);
+
+        // the token searches of each query run one after another, in the query's thread
+        try (var searcher = new MultiVectorSearcher(graph, ravv, VSF, documents, Runnable::run)) {
+            start = System.nanoTime();
+            var groundTruth = PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, nGroundTruth).parallel()
+                    .mapToObj(i -> exactTopK(searcher, queries.get(i), numDocs, topK))
+                    .collect(Collectors.toList())).join();
+            System.out.format("Exact MaxSim over every document took %.1fms per query%n",
+                              (System.nanoTime() - start) / 1e6 / nGroundTruth * PhysicalCoreExecutor.pool().getParallelism());
+
+            System.out.format("%10s %10s %10s %14s %14s%n", "tokenTopK", "QPS", "Recall@" + topK, "Reranked docs", "Visited nodes");
+            for (int tokenTopK : List.of(16, 32, 64, 128, 256)) {
+                var reranked = new AtomicLong();
+                var visited = new AtomicLong();
+                // warm up, then measure
+                for (int pass = 0; pass < 2; pass++) {
+                    reranked.set(0);
+                    visited.set(0);
+                    start = System.nanoTime();
+                    PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, nQueries).parallel().forEach(i -> {
+                        var result = searcher.search(queries.get(i), topK, tokenTopK);
+                        reranked.addAndGet(result.getRerankedCount());
+                        visited.addAndGet(result.getVisitedCount());
+                    })).join();
+                }
+                double qps = nQueries / ((System.nanoTime() - start) / 1e9);
+
+                int hits = 0;
+                for (int i = 0; i < nGroundTruth; i++) {
+                    var expected = groundTruth.get(i);
+                    hits += (int) Arrays.stream(searcher.search(queries.get(i), topK, tokenTopK).getNodes())
+                            .filter(ns -> expected.contains(ns.node))
+                            .count();
+                }
+                System.out.format("%10d %10.1f %10.3f %14.1f %14.1f%n", tokenTopK, qps, hits / (double) (topK * nGroundTruth),
+                                  reranked.get() / (double) nQueries, visited.get() / (double) nQueries);
+            }
+        }
+    }
+
+    private static HashSet<Integer> exactTopK(MultiVectorSearcher searcher, List<VectorFloat<?>> query, int numDocs, int topK) {
+        return IntStream.range(0, numDocs)
+                .mapToObj(d -> new SearchResult.NodeScore(d, searcher.maxSim(query, d)))
+                .sorted(Comparator.naturalOrder())
+                .limit(topK)
+                .map(ns -> ns.node)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private static VectorFloat<?> randomVector(Random random, int dimension) {
+        var v = vts.createFloatVector(dimension);
+        for (int i = 0; i < dimension; i++) {
+            v.set(i, (float) random.nextGaussian());
+        }
+        VectorUtil.l2normalize(v);
+        return v;
+    }
+
+    // a token embedding of the given word, as it might appear in a different context
+    private static VectorFloat<?> near(VectorFloat<?> word, Random random) {
+        var v = randomVector(random, word.length());
+        VectorUtil.scale(v, 0.2f);
+        VectorUtil.addInPlace(v, word);
+        VectorUtil.l2normalize(v);
+        return v;
+    }
+}
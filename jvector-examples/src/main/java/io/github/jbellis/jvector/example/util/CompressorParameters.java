@@ -17,8 +17,11 @@
 package io.github.jbellis.jvector.example.util;
 
 import io.github.jbellis.jvector.quantization.BinaryQuantization;
+import io.github.jbellis.jvector.quantization.MultiBitBinaryQuantization;
 import io.github.jbellis.jvector.quantization.NVQuantization;
 import io.github.jbellis.jvector.quantization.ProductQuantization;
+import io.github.jbellis.jvector.quantization.ResidualProductQuantization;
+import io.github.jbellis.jvector.quantization.ScalarQuantization;
 import io.github.jbellis.jvector.quantization.VectorCompressor;
 
 public abstract class CompressorParameters {
@@ -64,6 +67,23 @@ public abstract class CompressorParameters {
         }
     }
 
+    public static class ResidualPQParameters extends CompressorParameters {
+        private final int coarseClusterCount;
+        private final int m;
+        private final int k;
+
+        public ResidualPQParameters(int coarseClusterCount, int m, int k) {
+            this.coarseClusterCount = coarseClusterCount;
+            this.m = m;
+            this.k = k;
+        }
+
+        @Override
+        public VectorCompressor<?> computeCompressor(DataSet ds) {
+            return ResidualProductQuantization.compute(ds.getBaseRavv(), coarseClusterCount, m, k);
+        }
+    }
+
     public static class BQParameters extends CompressorParameters {
         @Override
         public VectorCompressor<?> computeCompressor(DataSet ds) {
@@ -71,6 +91,26 @@ public abstract class CompressorParameters {
         }
     }
 
+    public static class MultiBitBQParameters extends CompressorParameters {
+        private final int bitsPerDimension;
+
+        public MultiBitBQParameters(int bitsPerDimension) {
+            this.bitsPerDimension = bitsPerDimension;
+        }
+
+        @Override
+        public VectorCompressor<?> computeCompressor(DataSet ds) {
+            return MultiBitBinaryQuantization.compute(ds.getBaseRavv(), bitsPerDimension);
+        }
+    }
+
+    public static class SQParameters extends CompressorParameters {
+        @Override
+        public VectorCompressor<?> computeCompressor(DataSet ds) {
+            return new ScalarQuantization(ds.getDimension());
+        }
+    }
+
     public static class NVQParameters extends CompressorParameters {
         private final int nSubVectors;
 
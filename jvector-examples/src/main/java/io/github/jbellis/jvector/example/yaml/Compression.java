@@ -58,8 +58,26 @@ public class Compression {
                         throw new IllegalArgumentException("Need to specify either 'm' or 'mFactor'");
                     }
                 };
+            case "ResidualPQ": {
+                int coarseClusterCount = Integer.parseInt(parameters.getOrDefault("coarseClusters", "256"));
+                int residualK = Integer.parseInt(parameters.getOrDefault("k", "256"));
+                if (parameters.containsKey("m")) {
+                    int m = Integer.parseInt(parameters.get("m"));
+                    return __ -> new CompressorParameters.ResidualPQParameters(coarseClusterCount, m, residualK);
+                } else if (parameters.containsKey("mFactor")) {
+                    int mFactor = Integer.parseInt(parameters.get("mFactor"));
+                    return ds -> new CompressorParameters.ResidualPQParameters(coarseClusterCount, ds.getDimension() / mFactor, residualK);
+                } else {
+                    throw new IllegalArgumentException("Need to specify either 'm' or 'mFactor'");
+                }
+            }
             case "BQ":
                 return ds -> new CompressorParameters.BQParameters();
+            case "MultiBitBQ":
+                int bits = Integer.parseInt(parameters.getOrDefault("bits", "4"));
+                return ds -> new CompressorParameters.MultiBitBQParameters(bits);
+            case "SQ":
+                return ds -> new CompressorParameters.SQParameters();
             default:
                 throw new IllegalArgumentException("Unsupported compression type: " + type);
 
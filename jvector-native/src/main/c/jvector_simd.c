@@ -289,6 +289,32 @@ float euclidean_f32(int preferred_size, const float* a, int aoffset, const float
            : euclidean_f32_256(a, aoffset, b, boffset, length);
 }
 
+/*
+ * Dot product of two int8 code sequences.  Each 32-byte load is sign-extended to 16-bit lanes, and pairs of
+ * lanes are multiplied and summed into 32-bit lanes by madd.  AVX512-VNNI's vpdpwssd would fuse the madd with
+ * the accumulation, but check_compatibility only requires AVX512BW, which is enough for this form.
+ */
+int dot_product_i8_512(const char* a, int aoffset, const char* b, int boffset, int length) {
+    __m512i sum = _mm512_setzero_si512();
+    int i = 0;
+    int limit = length - (length % 32);
+    a = a + aoffset;
+    b = b + boffset;
+
+    for (; i < limit; i += 32) {
+        __m512i va = _mm512_cvtepi8_epi16(_mm256_loadu_si256((__m256i *)(a + i)));
+        __m512i vb = _mm512_cvtepi8_epi16(_mm256_loadu_si256((__m256i *)(b + i)));
+        sum = _mm512_add_epi32(sum, _mm512_madd_epi16(va, vb));
+    }
+
+    int res = _mm512_reduce_add_epi32(sum);
+    for (; i < length; i++) {
+        res += a[i] * b[i];
+    }
+
+    return res;
+}
+
 float assemble_and_sum_f32_512(const float* data, int dataBase, const unsigned char* baseOffsets, int baseOffsetsOffset, int baseOffsetsLength) {
     __m512 sum = _mm512_setzero_ps();
     int i = 0;
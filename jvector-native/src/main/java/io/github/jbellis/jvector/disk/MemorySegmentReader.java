@@ -25,6 +25,7 @@ import java.lang.foreign.ValueLayout;
 import java.lang.foreign.ValueLayout.OfFloat;
 import java.lang.foreign.ValueLayout.OfInt;
 import java.lang.foreign.ValueLayout.OfLong;
+import java.lang.invoke.MethodHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
@@ -40,21 +41,31 @@ import org.slf4j.LoggerFactory;
  * RandomAccessReader implementation included with JVector.
  * <p>
  * MemorySegmentReader applies MADV_RANDOM to the backing storage, and doesn't have the 2GB file size limitation
- * of {@link SimpleMappedReader}.
+ * of {@link SimpleMappedReader}.  If created with read-ahead enabled, {@link #prefetch} hints are passed
+ * to the kernel as MADV_WILLNEED, which starts reading the pages without blocking the caller.
  */
 public class MemorySegmentReader implements RandomAccessReader {
     private static final Logger logger = LoggerFactory.getLogger(MemorySegmentReader.class);
 
     private static final int MADV_RANDOM = 1; // Value for Linux
+    private static final int MADV_WILLNEED = 3; // Value for Linux
+    private static final long PAGE_SIZE = 4096;
     private static final OfInt intLayout = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
     private static final OfFloat floatLayout = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
     private static final OfLong longLayout = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
 
     final MemorySegment memory;
+    // posix_madvise, or null if prefetch hints should be ignored
+    private final MethodHandle madvise;
     private long position = 0;
 
     MemorySegmentReader(MemorySegment memory) {
+        this(memory, null);
+    }
+
+    MemorySegmentReader(MemorySegment memory, MethodHandle madvise) {
         this.memory = memory;
+        this.madvise = madvise;
     }
 
     @Override
@@ -131,6 +142,31 @@ public class MemorySegmentReader implements RandomAccessReader {
         return memory.byteSize();
     }
 
+    @Override
+    public void prefetch(long offset, long length) {
+        if (madvise == null) {
+            return;
+        }
+        // madvise requires a page-aligned address; the mapping itself starts on a page boundary
+        long start = offset & -PAGE_SIZE;
+        long end = Math.min(offset + length, memory.byteSize());
+        if (start >= end) {
+            return;
+        }
+        try {
+            int ignored = (int) madvise.invokeExact(memory.asSlice(start, end - start), end - start, MADV_WILLNEED);
+        } catch (Throwable e) {
+            // prefetching is best-effort
+        }
+    }
+
+    /**
+     * @return a view of [offset, offset + length) of the mapped file, valid until the Supplier is closed
+     */
+    public MemorySegment slice(long offset, long length) {
+        return memory.asSlice(offset, length);
+    }
+
     /**
      * Loads the contents of the mapped segment into physical memory.
      * This is a best-effort mechanism.
@@ -148,9 +184,19 @@ public class MemorySegmentReader implements RandomAccessReader {
     public static class Supplier implements ReaderSupplier {
         private final Arena arena;
         private final MemorySegment memory;
+        private final MethodHandle willNeedAdvice;
 
         public Supplier(Path path) throws IOException {
+            this(path, false);
+        }
+
+        /**
+         * @param path the file to map
+         * @param readAhead if true, readers will pass {@link RandomAccessReader#prefetch} hints to the kernel
+         */
+        public Supplier(Path path, boolean readAhead) throws IOException {
             this.arena = Arena.ofShared();
+            MethodHandle madviseHandle = null;
             try (var ch = FileChannel.open(path, StandardOpenOption.READ)) {
                 this.memory = ch.map(MapMode.READ_ONLY, 0L, ch.size(), arena);
                 
@@ -164,6 +210,7 @@ public class MemorySegmentReader implements RandomAccessReader {
                     if (result != 0) {
                         throw new IOException("posix_madvise failed with error code: " + result);
                     }
+                    madviseHandle = madvise;
                 } else {
                     logger.warn("posix_madvise not found, MADV_RANDOM advice not applied");
                 }
@@ -174,11 +221,12 @@ public class MemorySegmentReader implements RandomAccessReader {
                 }
                 throw new RuntimeException(e);
             }
+            this.willNeedAdvice = readAhead ? madviseHandle : null;
         }
 
         @Override
         public MemorySegmentReader get() {
-            return new MemorySegmentReader(memory);
+            return new MemorySegmentReader(memory, willNeedAdvice);
         }
 
         @Override
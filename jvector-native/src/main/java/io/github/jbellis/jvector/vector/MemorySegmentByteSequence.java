@@ -26,7 +26,7 @@ import java.nio.Buffer;
 import java.nio.ByteOrder;
 
 /**
- * ByteSequence implementation backed by an on-heap MemorySegment.
+ * ByteSequence implementation backed by a MemorySegment: on-heap, unless it is a view over a file mapping.
  */
 public class MemorySegmentByteSequence implements ByteSequence<MemorySegment> {
     private final MemorySegment segment;
@@ -49,7 +49,7 @@ public class MemorySegmentByteSequence implements ByteSequence<MemorySegment> {
         this.length = data.length;
     }
 
-    private MemorySegmentByteSequence(MemorySegment segment) {
+    MemorySegmentByteSequence(MemorySegment segment) {
         this.segment = segment;
         this.length = Math.toIntExact(segment.byteSize());
     }
@@ -16,6 +16,7 @@
 
 package io.github.jbellis.jvector.vector;
 
+import io.github.jbellis.jvector.disk.MemorySegmentReader;
 import io.github.jbellis.jvector.disk.RandomAccessReader;
 import io.github.jbellis.jvector.vector.types.ByteSequence;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
@@ -94,6 +95,17 @@ public class MemorySegmentVectorProvider implements VectorTypeSupport
         r.readFully(((MemorySegmentByteSequence) sequence).get().asByteBuffer());
     }
 
+    @Override
+    public ByteSequence<?> viewByteSequence(RandomAccessReader r, int size) throws IOException {
+        if (!(r instanceof MemorySegmentReader)) {
+            return null;
+        }
+        long position = r.getPosition();
+        var sequence = new MemorySegmentByteSequence(((MemorySegmentReader) r).slice(position, size));
+        r.seek(position + size);
+        return sequence;
+    }
+
 
     @Override
     public void writeByteSequence(DataOutput out, ByteSequence<?> sequence) throws IOException
@@ -57,6 +57,21 @@ final class NativeVectorUtilSupport implements VectorUtilSupport
         return VectorSimdOps.dotProduct((MemorySegmentVectorFloat) a, aoffset, (MemorySegmentVectorFloat) b, boffset, length);
     }
 
+    @Override
+    public float dotProductHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+        return VectorSimdOps.dotProductHalf((MemorySegmentVectorFloat) a, b, type);
+    }
+
+    @Override
+    public float squareDistanceHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+        return VectorSimdOps.squareDistanceHalf((MemorySegmentVectorFloat) a, b, type);
+    }
+
+    @Override
+    public float cosineHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+        return VectorSimdOps.cosineHalf((MemorySegmentVectorFloat) a, b, type);
+    }
+
     @Override
     public VectorFloat<?> sum(List<VectorFloat<?>> vectors) {
         return VectorSimdOps.sum(vectors);
@@ -128,6 +143,11 @@ final class NativeVectorUtilSupport implements VectorUtilSupport
         return NativeSimdOps.assemble_and_sum_f32_512(((MemorySegmentVectorFloat) data).get(), dataBase, ((MemorySegmentByteSequence) baseOffsets).get(), baseOffsetsOffset, baseOffsetsLength);
     }
 
+    @Override
+    public int dotProductInt8(ByteSequence<?> a, int aOffset, ByteSequence<?> b, int bOffset, int length) {
+        return NativeSimdOps.dot_product_i8_512(((MemorySegmentByteSequence) a).get(), aOffset, ((MemorySegmentByteSequence) b).get(), bOffset, length);
+    }
+
     @Override
     public int hammingDistance(long[] v1, long[] v2) {
         return VectorSimdOps.hammingDistance(v1, v2);
@@ -169,6 +189,11 @@ final class NativeVectorUtilSupport implements VectorUtilSupport
     @Override
     public void bulkShuffleQuantizedSimilarity(ByteSequence<?> shuffles, int codebookCount, ByteSequence<?> quantizedPartials, float delta, float bestDistance, VectorSimilarityFunction vsf, VectorFloat<?> results) {
         assert shuffles.offset() == 0 : "Bulk shuffle shuffles are expected to have an offset of 0. Found: " + shuffles.offset();
+        // the native kernels score exactly 32 neighbors
+        if (results.length() != 32) {
+            VectorUtilSupport.super.bulkShuffleQuantizedSimilarity(shuffles, codebookCount, quantizedPartials, delta, bestDistance, vsf, results);
+            return;
+        }
         switch (vsf) {
             case DOT_PRODUCT -> NativeSimdOps.bulk_quantized_shuffle_dot_f32_512(((MemorySegmentByteSequence) shuffles).get(), codebookCount, ((MemorySegmentByteSequence) quantizedPartials).get(), delta, bestDistance, ((MemorySegmentVectorFloat) results).get());
             case EUCLIDEAN -> NativeSimdOps.bulk_quantized_shuffle_euclidean_f32_512(((MemorySegmentByteSequence) shuffles).get(), codebookCount, ((MemorySegmentByteSequence) quantizedPartials).get(), delta, bestDistance, ((MemorySegmentVectorFloat) results).get());
@@ -182,6 +207,11 @@ final class NativeVectorUtilSupport implements VectorUtilSupport
                                                      ByteSequence<?> quantizedPartialSquaredMagnitudes, float magnitudeDelta, float minMagnitude,
                                                      float queryMagnitudeSquared, VectorFloat<?> results) {
         assert shuffles.offset() == 0 : "Bulk shuffle shuffles are expected to have an offset of 0. Found: " + shuffles.offset();
+        if (results.length() != 32) {
+            VectorUtilSupport.super.bulkShuffleQuantizedSimilarityCosine(shuffles, codebookCount, quantizedPartialSums, sumDelta, minDistance,
+                    quantizedPartialSquaredMagnitudes, magnitudeDelta, minMagnitude, queryMagnitudeSquared, results);
+            return;
+        }
         NativeSimdOps.bulk_quantized_shuffle_cosine_f32_512(((MemorySegmentByteSequence) shuffles).get(), codebookCount, ((MemorySegmentByteSequence) quantizedPartialSums).get(), sumDelta, minDistance,
                 ((MemorySegmentByteSequence) quantizedPartialSquaredMagnitudes).get(), magnitudeDelta, minMagnitude, queryMagnitudeSquared, ((MemorySegmentVectorFloat) results).get());
     }
@@ -25,6 +25,8 @@ import jdk.incubator.vector.LongVector;
 import jdk.incubator.vector.ShortVector;
 import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
 
 import java.nio.ByteOrder;
 import java.util.List;
@@ -575,6 +577,85 @@ final class VectorSimdOps {
 
     }
 
+    // 16-bit lanes, as many as there are in FloatVector.SPECIES_PREFERRED
+    static final VectorSpecies<Short> HALF_SPECIES = VectorSpecies.of(short.class, VectorShape.forBitSize(FloatVector.SPECIES_PREFERRED.vectorBitSize() / 2));
+
+    /**
+     * Widens lanes [offset, offset + FloatVector.SPECIES_PREFERRED.length()) of a half-precision vector to float32.
+     */
+    static FloatVector halfToFloat(short[] b, int offset, HalfFloatType type) {
+        var ints = (IntVector) ShortVector.fromArray(HALF_SPECIES, b, offset)
+                .convertShape(VectorOperators.S2I, IntVector.SPECIES_PREFERRED, 0);
+        if (type == HalfFloatType.BFLOAT16) {
+            return ints.lanewise(VectorOperators.LSHL, 16).reinterpretAsFloats();
+        }
+        // move the float16 exponent and mantissa into float32 position, then multiply by 2^(127 - 15) to fix the
+        // exponent bias, which also normalizes subnormals.  Infinity and NaN would end up finite, so they are set apart
+        var magnitude = ints.and(0x7fff).lanewise(VectorOperators.LSHL, 13);
+        var sign = ints.and(0x8000).lanewise(VectorOperators.LSHL, 16);
+        var scaled = magnitude.reinterpretAsFloats().mul(0x1p112f).reinterpretAsInts();
+        var special = magnitude.compare(VectorOperators.GE, 0x7c00 << 13);
+        return scaled.blend(magnitude.or(0x7f800000), special).or(sign).reinterpretAsFloats();
+    }
+
+    static float dotProductHalf(MemorySegmentVectorFloat a, short[] b, HalfFloatType type) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        int vectorizedLength = species.loopBound(a.length());
+        var sum = FloatVector.zero(species);
+        for (int i = 0; i < vectorizedLength; i += species.length()) {
+            var x = FloatVector.fromMemorySegment(species, a.get(), a.offset(i), ByteOrder.LITTLE_ENDIAN);
+            sum = x.fma(halfToFloat(b, i, type), sum);
+        }
+        float res = sum.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < a.length(); i++) {
+            res += a.get(i) * type.toFloat(b[i]);
+        }
+        return res;
+    }
+
+    static float squareDistanceHalf(MemorySegmentVectorFloat a, short[] b, HalfFloatType type) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        int vectorizedLength = species.loopBound(a.length());
+        var sum = FloatVector.zero(species);
+        for (int i = 0; i < vectorizedLength; i += species.length()) {
+            var x = FloatVector.fromMemorySegment(species, a.get(), a.offset(i), ByteOrder.LITTLE_ENDIAN);
+            var diff = x.sub(halfToFloat(b, i, type));
+            sum = diff.fma(diff, sum);
+        }
+        float res = sum.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < a.length(); i++) {
+            float diff = a.get(i) - type.toFloat(b[i]);
+            res += diff * diff;
+        }
+        return res;
+    }
+
+    static float cosineHalf(MemorySegmentVectorFloat a, short[] b, HalfFloatType type) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        int vectorizedLength = species.loopBound(a.length());
+        var vsum = FloatVector.zero(species);
+        var vaMagnitude = FloatVector.zero(species);
+        var vbMagnitude = FloatVector.zero(species);
+        for (int i = 0; i < vectorizedLength; i += species.length()) {
+            var x = FloatVector.fromMemorySegment(species, a.get(), a.offset(i), ByteOrder.LITTLE_ENDIAN);
+            var y = halfToFloat(b, i, type);
+            vsum = x.fma(y, vsum);
+            vaMagnitude = x.fma(x, vaMagnitude);
+            vbMagnitude = y.fma(y, vbMagnitude);
+        }
+        float sum = vsum.reduceLanes(VectorOperators.ADD);
+        float aMagnitude = vaMagnitude.reduceLanes(VectorOperators.ADD);
+        float bMagnitude = vbMagnitude.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < a.length(); i++) {
+            float x = a.get(i);
+            float y = type.toFloat(b[i]);
+            sum += x * y;
+            aMagnitude += x * x;
+            bMagnitude += y * y;
+        }
+        return (float) (sum / Math.sqrt((double) aMagnitude * (double) bMagnitude));
+    }
+
     public static int hammingDistance(long[] a, long[] b) {
         var sum = LongVector.zero(LongVector.SPECIES_PREFERRED);
         int vectorizedLength = LongVector.SPECIES_PREFERRED.loopBound(a.length);
@@ -0,0 +1,253 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.disk;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestAsyncFileReader extends RandomizedTest {
+    private Path testDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    @Test
+    public void testRandomReads() throws IOException {
+        // a partial last page, and reads that straddle page boundaries
+        var data = new byte[AsyncFileReader.PAGE_SIZE * 5 + 123];
+        getRandom().nextBytes(data);
+        var path = testDirectory.resolve("data");
+        Files.write(path, data);
+        var expected = ByteBuffer.wrap(data);
+
+        // few cached pages so that slots are constantly evicted and reused
+        try (var supplier = new AsyncFileReader.Supplier(path, 2);
+             var reader = supplier.get())
+        {
+            assertEquals(data.length, reader.length());
+            for (int i = 0; i < 1000; i++) {
+                int count = randomIntBetween(1, 300);
+                int offset = randomIntBetween(0, data.length - count * Long.BYTES);
+                if (randomBoolean()) {
+                    reader.prefetch(offset, (long) count * Long.BYTES);
+                }
+
+                reader.seek(offset);
+                switch (randomIntBetween(0, 4)) {
+                    case 0:
+                        assertEquals(expected.getInt(offset), reader.readInt());
+                        assertEquals(offset + Integer.BYTES, reader.getPosition());
+                        break;
+                    case 1:
+                        assertEquals(expected.getLong(offset), reader.readLong());
+                        break;
+                    case 2:
+                        assertEquals(expected.getFloat(offset), reader.readFloat(), 0.0f);
+                        break;
+                    case 3:
+                        var ints = new int[count + 1];
+                        reader.read(ints, 1, count);
+                        for (int j = 0; j < count; j++) {
+                            assertEquals(expected.getInt(offset + j * Integer.BYTES), ints[j + 1]);
+                        }
+                        break;
+                    default:
+                        var bytes = new byte[count];
+                        reader.readFully(bytes);
+                        for (int j = 0; j < count; j++) {
+                            assertEquals(data[offset + j], bytes[j]);
+                        }
+                        assertEquals(offset + count, reader.getPosition());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGraphSearch() throws Exception {
+        var vectors = TestUtil.createRandomVectors(1000, 32);
+        var ravv = new ListRandomAccessVectorValues(vectors, 32);
+        var builder = new GraphIndexBuilder(ravv, VectorSimilarityFunction.EUCLIDEAN, 16, 64, 1.2f, 1.2f, true);
+        var graph = builder.build(ravv);
+        var outputPath = testDirectory.resolve("graph");
+        TestUtil.writeGraph(graph, ravv, outputPath);
+
+        try (var asyncSupplier = ReaderSupplierFactory.openAsync(outputPath);
+             var asyncGraph = OnDiskGraphIndex.load(asyncSupplier);
+             var asyncSearcher = new GraphSearcher(asyncGraph);
+             var mappedSupplier = new SimpleMappedReader.Supplier(outputPath);
+             var mappedGraph = OnDiskGraphIndex.load(mappedSupplier);
+             var mappedSearcher = new GraphSearcher(mappedGraph))
+        {
+            asyncSearcher.usePrefetching(8);
+            var asyncView = (OnDiskGraphIndex.View) asyncSearcher.getView();
+            var mappedView = (OnDiskGraphIndex.View) mappedSearcher.getView();
+            for (var q : TestUtil.createRandomVectors(20, 32)) {
+                var expected = mappedSearcher.search(DefaultSearchScoreProvider.exact(q, VectorSimilarityFunction.EUCLIDEAN, mappedView), 10, Bits.ALL);
+                var actual = asyncSearcher.search(DefaultSearchScoreProvider.exact(q, VectorSimilarityFunction.EUCLIDEAN, asyncView), 10, Bits.ALL);
+                assertArrayEquals(expected.getNodes(), actual.getNodes());
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedWaitDoesNotReuseBuffer() throws IOException {
+        var data = new byte[AsyncFileReader.PAGE_SIZE];
+        getRandom().nextBytes(data);
+        var path = testDirectory.resolve("data");
+        Files.write(path, data);
+        var expected = ByteBuffer.wrap(data);
+
+        try (var channel = new HeldReadChannel(AsynchronousFileChannel.open(path, StandardOpenOption.READ))) {
+            var reader = new AsyncFileReader(channel, 1);
+            channel.holdNextRead = true;
+            reader.prefetch(0, Integer.BYTES);
+
+            Thread.currentThread().interrupt();
+            try {
+                reader.readInt();
+                fail("Expected the wait for the prefetched page to be interrupted");
+            } catch (InterruptedIOException e) {
+                assertTrue(Thread.interrupted());
+            }
+
+            // the next read of the slot must not share a buffer with the read we stopped waiting for
+            reader.seek(0);
+            assertEquals(expected.getInt(0), reader.readInt());
+            channel.heldBuffer.clear();
+            while (channel.heldBuffer.hasRemaining()) {
+                channel.heldBuffer.put((byte) 0);
+            }
+            reader.seek(Integer.BYTES);
+            assertEquals(expected.getInt(Integer.BYTES), reader.readInt());
+        }
+    }
+
+    /**
+     * Delegates to a real channel, except that the read following {@code holdNextRead} never completes
+     * and its buffer is exposed so the test can write into it after the reader has given up on it.
+     */
+    private static class HeldReadChannel extends AsynchronousFileChannel {
+        private final AsynchronousFileChannel delegate;
+        boolean holdNextRead;
+        ByteBuffer heldBuffer;
+
+        HeldReadChannel(AsynchronousFileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Future<Integer> read(ByteBuffer dst, long position) {
+            if (holdNextRead) {
+                holdNextRead = false;
+                heldBuffer = dst;
+                return new CompletableFuture<>();
+            }
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public <A> void read(ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            delegate.read(dst, position, attachment, handler);
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public AsynchronousFileChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void force(boolean metaData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <A> void lock(long position, long size, boolean shared, A attachment, CompletionHandler<FileLock, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<FileLock> lock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <A> void write(ByteBuffer src, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Integer> write(ByteBuffer src, long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.disk;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestBlockCache extends RandomizedTest {
+    private static final int PAGE_SIZE = 256;
+
+    private Path testDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    private byte[] writeRandomFile(Path path, int size) throws IOException {
+        var data = new byte[size];
+        getRandom().nextBytes(data);
+        Files.write(path, data);
+        return data;
+    }
+
+    @Test
+    public void testReadsThroughSharedCache() throws IOException {
+        var data1 = writeRandomFile(testDirectory.resolve("a"), PAGE_SIZE * 40 + 17);
+        var data2 = writeRandomFile(testDirectory.resolve("b"), PAGE_SIZE * 40 + 17);
+        // 8 pages in 2 stripes, far smaller than the files, so pages are evicted constantly
+        var cache = new BlockCache(8 * PAGE_SIZE, PAGE_SIZE, 2);
+        try (var s1 = new CachingReaderSupplier(new SimpleMappedReader.Supplier(testDirectory.resolve("a")), cache);
+             var s2 = new CachingReaderSupplier(new SimpleMappedReader.Supplier(testDirectory.resolve("b")), cache);
+             var r1 = s1.get();
+             var r2 = s2.get())
+        {
+            for (int i = 0; i < 2000; i++) {
+                boolean first = randomBoolean();
+                var data = first ? data1 : data2;
+                var reader = first ? r1 : r2;
+                var expected = ByteBuffer.wrap(data);
+                int count = randomIntBetween(1, 100);
+                // bias towards the start of the file so that some pages are hot
+                int offset = randomBoolean() ? randomIntBetween(0, PAGE_SIZE) : randomIntBetween(0, data.length - count * Integer.BYTES);
+
+                reader.seek(offset);
+                if (randomBoolean()) {
+                    assertEquals(expected.getInt(offset), reader.readInt());
+                } else {
+                    var ints = new int[count];
+                    reader.read(ints, 0, count);
+                    for (int j = 0; j < count; j++) {
+                        assertEquals(expected.getInt(offset + j * Integer.BYTES), ints[j]);
+                    }
+                }
+            }
+        }
+        assertTrue(cache.hitCount() > 0);
+        assertTrue(cache.missCount() > 0);
+        assertTrue(cache.evictionCount() > 0);
+        // closing the suppliers drops their pages
+        assertEquals(0, cache.cachedPages());
+    }
+
+    @Test
+    public void testPinnedPagesAreNotEvicted() throws IOException {
+        var data = writeRandomFile(testDirectory.resolve("a"), PAGE_SIZE * 64);
+        var cache = new BlockCache(8 * PAGE_SIZE, PAGE_SIZE, 1);
+        try (var supplier = new CachingReaderSupplier(new SimpleMappedReader.Supplier(testDirectory.resolve("a")), cache);
+             var reader = supplier.get())
+        {
+            // page 1 is already cached; pinning loads page 0 without touching the statistics
+            reader.seek(PAGE_SIZE);
+            reader.readInt();
+            assertEquals(1, cache.missCount());
+            supplier.pin(0, 2 * PAGE_SIZE);
+            assertEquals(0, cache.hitCount());
+            assertEquals(1, cache.missCount());
+            assertEquals(2, cache.cachedPages());
+            // scan the rest of the file twice, which would evict everything without pinning
+            for (int pass = 0; pass < 2; pass++) {
+                for (int page = 2; page < 64; page++) {
+                    reader.seek((long) page * PAGE_SIZE);
+                    reader.readInt();
+                }
+            }
+
+            long misses = cache.missCount();
+            var bytes = new byte[2 * PAGE_SIZE];
+            reader.seek(0);
+            reader.readFully(bytes);
+            assertEquals(misses, cache.missCount());
+            assertArrayEquals(Arrays.copyOf(data, bytes.length), bytes);
+
+            // once unpinned they are evicted like any other page
+            supplier.unpin(0, 2 * PAGE_SIZE);
+            for (int page = 2; page < 64; page++) {
+                reader.seek((long) page * PAGE_SIZE);
+                reader.readInt();
+            }
+            reader.seek(0);
+            reader.readInt();
+            assertEquals(misses + 63, cache.missCount());
+        }
+    }
+
+    @Test
+    public void testGraphSearch() throws Exception {
+        var vectors = TestUtil.createRandomVectors(1000, 32);
+        var ravv = new ListRandomAccessVectorValues(vectors, 32);
+        var builder = new GraphIndexBuilder(ravv, VectorSimilarityFunction.EUCLIDEAN, 16, 64, 1.2f, 1.2f, true);
+        var graph = builder.build(ravv);
+        var outputPath = testDirectory.resolve("graph");
+        TestUtil.writeGraph(graph, ravv, outputPath);
+
+        var cache = new BlockCache(64 * 1024);
+        try (var cachedSupplier = new CachingReaderSupplier(new SimpleMappedReader.Supplier(outputPath), cache);
+             var cachedGraph = OnDiskGraphIndex.load(cachedSupplier);
+             var cachedSearcher = new GraphSearcher(cachedGraph);
+             var mappedSupplier = new SimpleMappedReader.Supplier(outputPath);
+             var mappedGraph = OnDiskGraphIndex.load(mappedSupplier);
+             var mappedSearcher = new GraphSearcher(mappedGraph))
+        {
+            cachedGraph.pinUpperLayerNodes();
+            assertTrue(cache.cachedPages() > 0);
+
+            var cachedView = (OnDiskGraphIndex.View) cachedSearcher.getView();
+            var mappedView = (OnDiskGraphIndex.View) mappedSearcher.getView();
+            for (var q : TestUtil.createRandomVectors(20, 32)) {
+                var expected = mappedSearcher.search(DefaultSearchScoreProvider.exact(q, VectorSimilarityFunction.EUCLIDEAN, mappedView), 10, Bits.ALL);
+                var actual = cachedSearcher.search(DefaultSearchScoreProvider.exact(q, VectorSimilarityFunction.EUCLIDEAN, cachedView), 10, Bits.ALL);
+                assertArrayEquals(expected.getNodes(), actual.getNodes());
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import io.github.jbellis.jvector.LuceneTestCase;
 import io.github.jbellis.jvector.TestUtil;
 import io.github.jbellis.jvector.disk.SimpleMappedReader;
 import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.VectorizationProvider;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
@@ -33,6 +34,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static io.github.jbellis.jvector.TestUtil.assertGraphEquals;
@@ -138,4 +142,37 @@ public class GraphIndexBuilderTest extends LuceneTestCase {
         }
         assertGraphEquals(graph, builder.graph);
     }
+
+    @Test
+    public void testOffHeapAdjacency() {
+        int dimension = randomIntBetween(2, 32);
+        int size = randomIntBetween(100, 1000);
+        var ravv = MockVectorValues.fromValues(createRandomFloatVectors(size, dimension, getRandom()));
+        var bsp = BuildScoreProvider.randomAccessScoreProvider(ravv, VectorSimilarityFunction.COSINE);
+        Function<Boolean, GraphIndexBuilder> newBuilder = offHeap ->
+                new GraphIndexBuilder(bsp, dimension, List.of(8), 20, 1.2f, 1.2f, true, true,
+                                      PhysicalCoreExecutor.pool(), ForkJoinPool.commonPool(), offHeap);
+
+        // built sequentially, the two stores produce the same graph
+        var onHeap = TestUtil.buildSequentially(newBuilder.apply(false), ravv);
+        var offHeap = TestUtil.buildSequentially(newBuilder.apply(true), ravv);
+        assertGraphEquals(onHeap, offHeap);
+
+        // concurrent construction and deletion
+        var builder = newBuilder.apply(true);
+        var graph = builder.build(ravv);
+        assertEquals(size, graph.size(0));
+        for (int i = 0; i < size; i += 3) {
+            builder.markNodeDeleted(i);
+        }
+        builder.cleanup();
+        var view = graph.getView();
+        for (int i = 0; i < size; i++) {
+            assertEquals(i % 3 != 0, graph.containsNode(i));
+            for (var it = view.getNeighborsIterator(0, i); it.hasNext(); ) {
+                int neighbor = it.nextInt();
+                assertTrue(neighbor + " should have been removed", neighbor % 3 != 0);
+            }
+        }
+    }
 }
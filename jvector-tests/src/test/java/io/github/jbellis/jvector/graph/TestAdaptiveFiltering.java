@@ -0,0 +1,161 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.FixedBitSet;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestAdaptiveFiltering extends RandomizedTest {
+    private static final int SIZE = 10_000;
+    private static final int DIMENSION = 8;
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+
+    private ListRandomAccessVectorValues ravv;
+    private GraphIndexBuilder builder;
+    private OnHeapGraphIndex graph;
+
+    @Before
+    public void setup() {
+        ravv = new ListRandomAccessVectorValues(TestUtil.createRandomVectors(SIZE, DIMENSION), DIMENSION);
+        builder = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, true);
+        graph = builder.build(ravv);
+    }
+
+    @Test
+    public void testStrategyFollowsSelectivity() throws Exception {
+        // with M=16 and rerankK=50, brute force is cheaper below ~28% selectivity, and two-hop is used below 50%
+        assertStrategy(Bits.ALL, SearchResult.FilterStrategy.GRAPH, 0.9);
+        assertStrategy(randomBits(0.01), SearchResult.FilterStrategy.BRUTE_FORCE, 1.0);
+        assertStrategy(randomBits(0.4), SearchResult.FilterStrategy.TWO_HOP, 0.9);
+        assertStrategy(randomBits(0.75), SearchResult.FilterStrategy.GRAPH, 0.9);
+        // filters that cannot count themselves are sampled, including periodic ones
+        assertStrategy(i -> i % 100 == 0, SearchResult.FilterStrategy.BRUTE_FORCE, 1.0);
+        assertStrategy(i -> i % 5 < 2, SearchResult.FilterStrategy.TWO_HOP, 0.9);
+    }
+
+    @Test
+    public void testSelectivityExcludesDeletedNodes() throws Exception {
+        // with 95% of the graph deleted, a 40% filter accepts only ~2% of the ordinals, which is cheapest to brute force
+        for (int i = 0; i < SIZE; i++) {
+            if (i % 20 != 0) {
+                builder.markNodeDeleted(i);
+            }
+        }
+        var acceptOrds = randomBits(0.4);
+        try (var searcher = new GraphSearcher(graph)) {
+            searcher.useAdaptiveFiltering(true);
+            var q = TestUtil.randomVector(getRandom(), DIMENSION);
+            var result = searcher.search(DefaultSearchScoreProvider.exact(q, VSF, ravv), 10, 50, 0.0f, 0.0f, acceptOrds);
+            assertEquals(SearchResult.FilterStrategy.BRUTE_FORCE, result.getFilterStrategy());
+            for (var ns : result.getNodes()) {
+                assertTrue(ns.node % 20 == 0 && acceptOrds.get(ns.node));
+            }
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        try (var searcher = new GraphSearcher(graph)) {
+            var q = TestUtil.randomVector(getRandom(), DIMENSION);
+            var result = searcher.search(DefaultSearchScoreProvider.exact(q, VSF, ravv), 10, randomBits(0.01));
+            assertEquals(SearchResult.FilterStrategy.GRAPH, result.getFilterStrategy());
+        }
+    }
+
+    @Test
+    public void testResumeAfterBruteForce() throws Exception {
+        var acceptOrds = randomBits(0.01);
+        try (var searcher = new GraphSearcher(graph)) {
+            searcher.useAdaptiveFiltering(true);
+            var q = TestUtil.randomVector(getRandom(), DIMENSION);
+            var initial = searcher.search(DefaultSearchScoreProvider.exact(q, VSF, ravv), 10, acceptOrds);
+            assertEquals(SearchResult.FilterStrategy.BRUTE_FORCE, initial.getFilterStrategy());
+            var resumed = searcher.resume(10, 10);
+            assertEquals(SearchResult.FilterStrategy.BRUTE_FORCE, resumed.getFilterStrategy());
+
+            // together, the two pages are exactly the 20 nearest accepted nodes, in order
+            var expected = nearest(q, acceptOrds, 20);
+            var actual = new ArrayList<Integer>();
+            for (var ns : initial.getNodes()) {
+                actual.add(ns.node);
+            }
+            for (var ns : resumed.getNodes()) {
+                actual.add(ns.node);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    private void assertStrategy(Bits acceptOrds, SearchResult.FilterStrategy expected, double minRecall) throws Exception {
+        int topK = 10;
+        int hits = 0;
+        int nQueries = 20;
+        try (var searcher = new GraphSearcher(graph)) {
+            searcher.useAdaptiveFiltering(true);
+            for (int i = 0; i < nQueries; i++) {
+                var q = TestUtil.randomVector(getRandom(), DIMENSION);
+                var result = searcher.search(DefaultSearchScoreProvider.exact(q, VSF, ravv), topK, 5 * topK, 0.0f, 0.0f, acceptOrds);
+                assertEquals(expected, result.getFilterStrategy());
+                var nearest = new HashSet<>(nearest(q, acceptOrds, topK));
+                for (var ns : result.getNodes()) {
+                    assertTrue(acceptOrds.get(ns.node));
+                    hits += nearest.contains(ns.node) ? 1 : 0;
+                }
+            }
+        }
+        double recall = hits / (double) (topK * nQueries);
+        assertTrue(String.format("recall %s for %s", recall, expected), recall >= minRecall);
+    }
+
+    private List<Integer> nearest(VectorFloat<?> q, Bits acceptOrds, int topK) {
+        var accepted = new ArrayList<Integer>();
+        for (int i = 0; i < SIZE; i++) {
+            if (acceptOrds.get(i)) {
+                accepted.add(i);
+            }
+        }
+        accepted.sort(Comparator.comparingDouble(i -> -VSF.compare(q, ravv.getVector(i))));
+        return accepted.subList(0, Math.min(topK, accepted.size()));
+    }
+
+    private FixedBitSet randomBits(double selectivity) {
+        var bits = new FixedBitSet(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            if (getRandom().nextDouble() < selectivity) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.graph;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.quantization.MultiBitBinaryQuantization;
+import io.github.jbellis.jvector.quantization.ProductQuantization;
+import io.github.jbellis.jvector.quantization.ScoreErrorCalibration;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.BoundedLongHeap;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.github.jbellis.jvector.TestUtil.createRandomVectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestBoundedRerank extends RandomizedTest {
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+
+    /** approximate scores are the exact ones plus noise of at most `margin`, and the bounds say so */
+    private static ScoreFunction.BoundedApproximateScoreFunction noisy(float[] exact, float[] noise, float margin) {
+        return new ScoreFunction.BoundedApproximateScoreFunction() {
+            @Override
+            public float similarityTo(int node2) {
+                return exact[node2] + noise[node2];
+            }
+
+            @Override
+            public float lowerBound(int node2) {
+                return similarityTo(node2) - margin;
+            }
+
+            @Override
+            public float upperBound(int node2) {
+                return similarityTo(node2) + margin;
+            }
+        };
+    }
+
+    @Test
+    public void testBoundsSkipHopelessCandidates() {
+        int n = 200;
+        int topK = 10;
+        float margin = 0.05f;
+        float[] exact = new float[n];
+        float[] noise = new float[n];
+        for (int i = 0; i < n; i++) {
+            exact[i] = margin + getRandom().nextFloat();
+            noise[i] = (2 * getRandom().nextFloat() - 1) * margin;
+        }
+        var bounded = noisy(exact, noise, margin);
+        int[] calls = new int[1];
+        ScoreFunction.ExactScoreFunction reranker = node -> {
+            calls[0]++;
+            return exact[node];
+        };
+
+        var unbounded = rerank(n, topK, bounded, reranker, null);
+        int unboundedCalls = calls[0];
+        calls[0] = 0;
+        var withBounds = rerank(n, topK, bounded, reranker, bounded);
+        int boundedCalls = calls[0];
+
+        assertEquals(n, unboundedCalls);
+        assertTrue("reranked " + boundedCalls, boundedCalls < n / 2);
+        // since the bounds hold, the results are identical
+        assertEquals(unbounded, withBounds);
+        var expected = IntStream.range(0, n).boxed()
+                .sorted((a, b) -> Float.compare(exact[b], exact[a]))
+                .limit(topK)
+                .collect(Collectors.toSet());
+        assertEquals(expected, withBounds);
+    }
+
+    private static Set<Integer> rerank(int n,
+                                       int topK,
+                                       ScoreFunction approximate,
+                                       ScoreFunction.ExactScoreFunction reranker,
+                                       ScoreFunction.BoundedApproximateScoreFunction bounds)
+    {
+        var queue = new NodeQueue(new BoundedLongHeap(n), NodeQueue.Order.MIN_HEAP);
+        for (int i = 0; i < n; i++) {
+            queue.push(i, approximate.similarityTo(i));
+        }
+        var reranked = new NodeQueue(new BoundedLongHeap(topK), NodeQueue.Order.MIN_HEAP);
+        var unused = new NodesUnsorted(n);
+        queue.rerank(topK, reranker, bounds, 0, reranked, unused);
+        assertEquals(n, reranked.size() + unused.size());
+        return Arrays.stream(reranked.nodesCopy()).boxed().collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testCalibratedPQSearch() {
+        int dimension = 32;
+        var vectors = createRandomVectors(3000, dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var graph = buildGraph(ravv, dimension);
+        var pqv = ProductQuantization.compute(ravv, 16, 256, true).encodeAll(ravv);
+        var calibration = ScoreErrorCalibration.calibrate(pqv, ravv, VSF, createRandomVectors(20, dimension), 0.99f);
+        assertTrue(calibration.getMaxUnderestimate() > 0);
+
+        compareSearches(graph, ravv, dimension,
+                        q -> pqv.precomputedScoreFunctionFor(q, VSF),
+                        q -> calibration.bound(pqv.precomputedScoreFunctionFor(q, VSF)));
+    }
+
+    @Test
+    public void testMultiBitBQSearch() {
+        int dimension = 64;
+        var vectors = createRandomVectors(3000, dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var graph = buildGraph(ravv, dimension);
+        var mbqv = MultiBitBinaryQuantization.compute(ravv, 4).encodeAll(ravv);
+
+        // hide the bounds for the baseline search
+        compareSearches(graph, ravv, dimension, q -> {
+            var sf = mbqv.precomputedScoreFunctionFor(q, VSF);
+            return (ScoreFunction.ApproximateScoreFunction) sf::similarityTo;
+        }, q -> mbqv.precomputedScoreFunctionFor(q, VSF));
+    }
+
+    private static OnHeapGraphIndex buildGraph(RandomAccessVectorValues ravv, int dimension) {
+        var bsp = BuildScoreProvider.randomAccessScoreProvider(ravv, VSF);
+        var builder = new GraphIndexBuilder(bsp, dimension, 16, 100, 1.2f, 1.2f, false);
+        return builder.build(ravv);
+    }
+
+    /**
+     * Searches with and without bounds, and checks that bounded reranking reads far fewer full vectors for
+     * (nearly) the same recall
+     */
+    private void compareSearches(OnHeapGraphIndex graph,
+                                 RandomAccessVectorValues ravv,
+                                 int dimension,
+                                 Function<VectorFloat<?>, ScoreFunction.ApproximateScoreFunction> unbounded,
+                                 Function<VectorFloat<?>, ScoreFunction.BoundedApproximateScoreFunction> bounded)
+    {
+        int topK = 10;
+        int rerankK = 100;
+        var queries = createRandomVectors(50, dimension);
+        int fixedReranked = 0, boundedReranked = 0;
+        double fixedRecall = 0, boundedRecall = 0;
+        try (var searcher = new GraphSearcher(graph)) {
+            for (var q : queries) {
+                var expected = groundTruth(ravv, q, topK);
+                var reranker = ravv.rerankerFor(q, VSF);
+
+                var fixedResult = searcher.search(new DefaultSearchScoreProvider(unbounded.apply(q), reranker), topK, rerankK, 0, 0, Bits.ALL);
+                fixedReranked += fixedResult.getRerankedCount();
+                fixedRecall += recall(fixedResult, expected);
+
+                var boundedResult = searcher.search(new DefaultSearchScoreProvider(bounded.apply(q), reranker), topK, rerankK, 0, 0, Bits.ALL);
+                boundedReranked += boundedResult.getRerankedCount();
+                boundedRecall += recall(boundedResult, expected);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        assertEquals(queries.size() * rerankK, fixedReranked);
+        assertTrue(String.format("bounded reranking read %d vectors vs %d", boundedReranked, fixedReranked),
+                   boundedReranked < 0.75 * fixedReranked);
+        assertTrue(String.format("recall %.3f vs %.3f", boundedRecall / queries.size(), fixedRecall / queries.size()),
+                   boundedRecall >= fixedRecall - 0.02 * queries.size());
+    }
+
+    private static Set<Integer> groundTruth(RandomAccessVectorValues ravv, VectorFloat<?> q, int topK) {
+        return IntStream.range(0, ravv.size()).boxed()
+                .sorted((a, b) -> Float.compare(VSF.compare(q, ravv.getVector(b)), VSF.compare(q, ravv.getVector(a))))
+                .limit(topK)
+                .collect(Collectors.toSet());
+    }
+
+    private static double recall(SearchResult result, Set<Integer> expected) {
+        var found = new HashSet<Integer>();
+        for (var ns : result.getNodes()) {
+            found.add(ns.node);
+        }
+        found.retainAll(expected);
+        return (double) found.size() / expected.size();
+    }
+}
@@ -27,13 +27,18 @@ import io.github.jbellis.jvector.vector.types.VectorFloat;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
 
 import static io.github.jbellis.jvector.TestUtil.assertGraphEquals;
 import static io.github.jbellis.jvector.graph.TestVectorGraph.createRandomFloatVectors;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 @ThreadLeakScope(ThreadLeakScope.Scope.NONE)
@@ -148,6 +153,108 @@ public class TestDeletions extends LuceneTestCase {
         assertNull(graph.entry());
     }
 
+    @Test
+    public void testIncrementalRemoval() {
+        testIncrementalRemoval(false);
+        testIncrementalRemoval(true);
+    }
+
+    public void testIncrementalRemoval(boolean addHierarchy) {
+        int dimension = 4;
+        var ravv = MockVectorValues.fromValues(createRandomFloatVectors(200, dimension, getRandom()));
+        var builder = new GraphIndexBuilder(ravv, VectorSimilarityFunction.COSINE, 8, 20, 1.2f, 1.2f, addHierarchy);
+        var graph = TestUtil.buildSequentially(builder, ravv);
+
+        int nDeleted = 0;
+        for (int i = 0; i < ravv.size(); i += 3) {
+            builder.markNodeDeleted(i);
+            nDeleted++;
+        }
+
+        // each call removes at most the requested number of nodes, and leaves the rest marked deleted
+        int calls = 0;
+        while (graph.getDeletedNodes().cardinality() > 0) {
+            int before = graph.size();
+            builder.removeDeletedNodes(10);
+            assertEquals(Math.min(10, before - (ravv.size() - nDeleted)), before - graph.size());
+            assertNoEdgesToRemovedNodes(graph);
+            calls++;
+        }
+        assertEquals((nDeleted + 9) / 10, calls);
+        assertEquals(ravv.size() - nDeleted, graph.size());
+
+        for (int i = 0; i < 20; i++) {
+            var v = TestUtil.randomVector(getRandom(), dimension);
+            var results = GraphSearcher.search(v, 5, ravv, VectorSimilarityFunction.COSINE, graph, Bits.ALL);
+            assertEquals(5, results.getNodes().length);
+            for (var ns : results.getNodes()) {
+                assertNotEquals(0, ns.node % 3);
+            }
+        }
+    }
+
+    @Test
+    public void testRemovalConcurrentWithInserts() throws InterruptedException {
+        int dimension = 8;
+        int size = 2000;
+        var ravv = MockVectorValues.fromValues(createRandomFloatVectors(size, dimension, getRandom()));
+        try (var builder = new GraphIndexBuilder(ravv, VectorSimilarityFunction.EUCLIDEAN, 8, 20, 1.2f, 1.2f, true)) {
+            for (int i = 0; i < size / 2; i++) {
+                builder.addGraphNode(i, ravv.getVector(i));
+            }
+
+            // insert the second half while the first half is deleted and removed in small batches
+            var failure = new AtomicReference<Throwable>();
+            var next = new AtomicInteger(size / 2);
+            var inserters = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                var thread = new Thread(() -> {
+                    try {
+                        for (int i = next.getAndIncrement(); i < size; i = next.getAndIncrement()) {
+                            builder.addGraphNode(i, ravv.getVector(i));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                inserters.add(thread);
+                thread.start();
+            }
+            for (int i = 0; i < size / 2; i++) {
+                builder.markNodeDeleted(i);
+                if (i % 50 == 49) {
+                    builder.removeDeletedNodes(25);
+                }
+            }
+            for (var thread : inserters) {
+                thread.join();
+            }
+            assertNull(failure.get());
+
+            builder.cleanup();
+            var graph = builder.getGraph();
+            assertEquals(size / 2, graph.size());
+            assertNoEdgesToRemovedNodes(graph);
+            for (int i = 0; i < size / 2; i++) {
+                assertNull(graph.getNeighbors(0, i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void assertNoEdgesToRemovedNodes(OnHeapGraphIndex graph) {
+        for (int level = 0; level <= graph.getMaxLevel(); level++) {
+            for (var it = graph.getNodes(level); it.hasNext(); ) {
+                int node = it.nextInt();
+                for (var nt = graph.getNeighborsIterator(level, node); nt.hasNext(); ) {
+                    int neighbor = nt.nextInt();
+                    assertNotNull("edge " + node + " -> " + neighbor + " at level " + level, graph.getNeighbors(level, neighbor));
+                }
+            }
+        }
+    }
+
     @Test
     public void testNoPathToLiveNodesWhenRemovingDeletedNodes2() throws IOException {
         testNoPathToLiveNodesWhenRemovingDeletedNodes2(false);
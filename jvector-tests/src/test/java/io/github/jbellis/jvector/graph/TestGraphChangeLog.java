@@ -0,0 +1,157 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.github.jbellis.jvector.TestUtil.assertGraphEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestGraphChangeLog extends RandomizedTest {
+    private Path testDirectory;
+    private ListRandomAccessVectorValues ravv;
+
+    @Before
+    public void setup() throws IOException {
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+        ravv = new ListRandomAccessVectorValues(TestUtil.createRandomVectors(600, 8), 8);
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    private GraphIndexBuilder newBuilder() {
+        return new GraphIndexBuilder(ravv, VectorSimilarityFunction.EUCLIDEAN, 8, 30, 1.2f, 1.2f, true);
+    }
+
+    private void addNodes(GraphIndexBuilder builder, int from, int to) {
+        IntStream.range(from, to).parallel().forEach(i -> builder.addGraphNode(i, ravv.getVector(i)));
+    }
+
+    @Test
+    public void testRecoverFromCheckpointsAndLog() throws IOException {
+        var logDirectory = testDirectory.resolve("log");
+        var builder = newBuilder();
+        // start with a non-empty graph, which the first checkpoint must include in full
+        addNodes(builder, 0, 100);
+        try (var changeLog = GraphChangeLog.create(builder, logDirectory)) {
+            changeLog.checkpoint();
+            addNodes(builder, 100, 300);
+            changeLog.checkpoint();
+            addNodes(builder, 300, 500);
+            for (int i = 0; i < 50; i++) {
+                builder.markNodeDeleted(i * 7);
+            }
+            builder.cleanup();
+            addNodes(builder, 500, 600);
+            changeLog.sync();
+
+            // recover while the original is still open, as if it had crashed
+            var recovered = newBuilder();
+            try (var ignored = GraphChangeLog.recover(recovered, testDirectory.resolve("log"))) {
+                assertGraphEquals(builder.getGraph(), recovered.getGraph());
+                assertEquals(0, recovered.getGraph().getDeletedNodes().cardinality());
+            }
+        }
+    }
+
+    @Test
+    public void testTornLogAndFullCheckpoint() throws IOException {
+        var logDirectory = testDirectory.resolve("log");
+        var builder = newBuilder();
+        try (var changeLog = GraphChangeLog.create(builder, logDirectory)) {
+            addNodes(builder, 0, 200);
+            changeLog.checkpoint();
+            addNodes(builder, 200, 400);
+            changeLog.checkpoint();
+            addNodes(builder, 400, 600);
+            builder.cleanup();
+            changeLog.fullCheckpoint();
+            // only the full checkpoint and the (empty) log that follows it are left
+            assertEquals(2, listFiles(logDirectory));
+            builder.markNodeDeleted(3);
+        }
+
+        // simulate a crash in the middle of appending a record
+        Path log;
+        try (var files = Files.list(logDirectory)) {
+            log = files.filter(p -> p.getFileName().toString().startsWith("log-")).findFirst().get();
+        }
+        Files.write(log, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        var recovered = newBuilder();
+        try (var changeLog = GraphChangeLog.recover(recovered, logDirectory)) {
+            assertGraphEquals(builder.getGraph(), recovered.getGraph());
+            assertTrue(recovered.getGraph().getDeletedNodes().get(3));
+
+            // changes after recovery are logged too
+            recovered.cleanup();
+            assertFalse(recovered.getGraph().containsNode(3));
+            changeLog.checkpoint();
+        }
+
+        var again = newBuilder();
+        try (var ignored = GraphChangeLog.recover(again, logDirectory)) {
+            assertGraphEquals(recovered.getGraph(), again.getGraph());
+        }
+    }
+
+    @Test
+    public void testInsertsOnlyMarkNodesDirty() throws IOException {
+        var logDirectory = testDirectory.resolve("log");
+        var builder = newBuilder();
+        try (var changeLog = GraphChangeLog.create(builder, logDirectory)) {
+            var log = logDirectory.resolve("log-0000000000");
+            long headerSize = Files.size(log);
+            addNodes(builder, 0, 300);
+            builder.markNodeDeleted(5);
+            // nothing is written on the inserting threads
+            assertEquals(headerSize, Files.size(log));
+
+            changeLog.sync();
+            assertTrue(Files.size(log) > headerSize);
+            var recovered = newBuilder();
+            try (var ignored = GraphChangeLog.recover(recovered, logDirectory)) {
+                assertGraphEquals(builder.getGraph(), recovered.getGraph());
+                assertTrue(recovered.getGraph().getDeletedNodes().get(5));
+            }
+        }
+    }
+
+    private static int listFiles(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.collect(Collectors.toList()).size();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.disk.SimpleMappedReader;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndexWriter;
+import io.github.jbellis.jvector.graph.disk.feature.Feature;
+import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
+import io.github.jbellis.jvector.graph.disk.feature.InlineVectors;
+import io.github.jbellis.jvector.graph.disk.feature.LabelEntryPoints;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.FixedBitSet;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.agrona.collections.IntArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestLabelAwareGraph extends RandomizedTest {
+    private static final int SIZE = 5_000;
+    private static final int DIMENSION = 16;
+    private static final int N_LABELS = 50;
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+
+    private ListRandomAccessVectorValues ravv;
+    private int[][] nodeLabels;
+    private Path testDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        ravv = new ListRandomAccessVectorValues(TestUtil.createRandomVectors(SIZE, DIMENSION), DIMENSION);
+        // one label per node, independent of its vector, and a second label for 10% of the nodes
+        nodeLabels = new int[SIZE][];
+        for (int i = 0; i < SIZE; i++) {
+            int a = getRandom().nextInt(N_LABELS);
+            int b = getRandom().nextInt(N_LABELS);
+            nodeLabels[i] = getRandom().nextInt(10) > 0 || a == b ? new int[] {a} : new int[] {Math.min(a, b), Math.max(a, b)};
+        }
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    @Test
+    public void testSharedLabels() {
+        assertTrue(NodeLabels.intersects(new int[] {1, 4, 7}, new int[] {2, 7}));
+        assertFalse(NodeLabels.intersects(new int[] {1, 4}, new int[] {2, 7}));
+        assertFalse(NodeLabels.intersects(new int[] {}, new int[] {2, 7}));
+
+        // (a ∩ b) ⊆ c
+        assertTrue(NodeLabels.sharedLabelsIn(new int[] {1, 4, 7}, new int[] {4, 7, 9}, new int[] {2, 4, 7}));
+        assertFalse(NodeLabels.sharedLabelsIn(new int[] {1, 4, 7}, new int[] {4, 7, 9}, new int[] {4, 9}));
+        // nothing shared, so any neighbor may prune
+        assertTrue(NodeLabels.sharedLabelsIn(new int[] {1}, new int[] {2}, new int[] {}));
+    }
+
+    @Test
+    public void testLabelsStayConnected() throws Exception {
+        var builder = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, true, i -> nodeLabels[i]);
+        var graph = builder.build(ravv);
+
+        // (almost) every node with a label can be reached from the label's entry node through nodes with the label.
+        // Each label has ~2% of the nodes, and in a graph built without labels only a few percent of them can be
+        int total = 0;
+        int reachable = 0;
+        for (int label = 0; label < N_LABELS; label++) {
+            int entry = graph.getLabelEntryNode(label);
+            assertTrue(hasLabel(entry, label));
+            total += nodesWithLabel(label).cardinality();
+            reachable += reachableWithin(graph, entry, label);
+        }
+        assertTrue(String.format("%d of %d reachable", reachable, total), reachable >= 0.99 * total);
+        assertEquals(-1, graph.getLabelEntryNode(N_LABELS));
+
+        try (var searcher = new GraphSearcher(graph)) {
+            double recall = labelRecall(searcher);
+            assertTrue("recall " + recall, recall >= 0.9);
+        }
+    }
+
+    @Test
+    public void testWriteLabelEntryPoints() throws Exception {
+        var builder = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, true, i -> nodeLabels[i]);
+        var graph = builder.build(ravv);
+        // delete a few nodes, so the writer renumbers the ordinals
+        for (int i = 0; i < SIZE; i += 100) {
+            builder.markNodeDeleted(i);
+        }
+        builder.cleanup();
+
+        var outputPath = testDirectory.resolve("labeled_graph");
+        var oldToNew = OnDiskGraphIndexWriter.sequentialRenumbering(graph);
+        try (var writer = new OnDiskGraphIndexWriter.Builder(graph, outputPath)
+                .with(new InlineVectors(DIMENSION))
+                .with(LabelEntryPoints.of(graph))
+                .withMap(oldToNew)
+                .build())
+        {
+            writer.write(Feature.singleStateFactory(FeatureId.INLINE_VECTORS, nodeId -> new InlineVectors.State(ravv.getVector(nodeId))));
+        }
+
+        try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+             var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+             var view = onDiskGraph.getView())
+        {
+            for (int label = 0; label < N_LABELS; label++) {
+                assertEquals((int) oldToNew.get(graph.getLabelEntryNode(label)), view.labelEntryNode(label));
+            }
+            assertEquals(-1, view.labelEntryNode(N_LABELS));
+        }
+    }
+
+    @Test
+    public void testReplaceDeletedEntryNode() {
+        var builder = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, false, i -> nodeLabels[i]);
+        var graph = builder.build(ravv);
+
+        int label = nodeLabels[0][0];
+        int oldEntry = graph.getLabelEntryNode(label);
+        builder.markNodeDeleted(oldEntry);
+        builder.cleanup();
+        int newEntry = graph.getLabelEntryNode(label);
+        assertNotEquals(oldEntry, newEntry);
+        assertTrue(graph.containsNode(newEntry));
+        assertTrue(hasLabel(newEntry, label));
+
+        // forget labels that no node has any more
+        var nodes = nodesWithLabel(label);
+        for (int i = 0; i < SIZE; i++) {
+            if (nodes.get(i)) {
+                builder.markNodeDeleted(i);
+            }
+        }
+        builder.cleanup();
+        assertEquals(-1, graph.getLabelEntryNode(label));
+    }
+
+    @Test
+    public void testReloadRestoresLabelEntryNodes() throws Exception {
+        var builder = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, true, i -> nodeLabels[i]);
+        var changeLog = GraphChangeLog.create(builder, testDirectory.resolve("log"));
+        var graph = builder.build(ravv);
+        changeLog.close();
+        var dataPath = testDirectory.resolve("labeled_graph.data");
+        try (var out = TestUtil.openDataOutputStream(dataPath)) {
+            graph.save(out);
+        }
+
+        var loaded = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, true, i -> nodeLabels[i]);
+        try (var readerSupplier = new SimpleMappedReader.Supplier(dataPath)) {
+            loaded.load(readerSupplier.get());
+        }
+        var recovered = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, true, i -> nodeLabels[i]);
+        GraphChangeLog.recover(recovered, testDirectory.resolve("log")).close();
+
+        for (var restored : List.of(loaded.getGraph(), recovered.getGraph())) {
+            assertEquals(graph.getLabelEntryNodes().keySet(), restored.getLabelEntryNodes().keySet());
+            for (int label = 0; label < N_LABELS; label++) {
+                assertTrue(hasLabel(restored.getLabelEntryNode(label), label));
+            }
+            try (var searcher = new GraphSearcher(restored)) {
+                double recall = labelRecall(searcher);
+                assertTrue("recall " + recall, recall >= 0.9);
+            }
+        }
+    }
+
+    private double labelRecall(GraphSearcher searcher) throws IOException {
+        int topK = 10;
+        int hits = 0;
+        int nQueries = 50;
+        for (int i = 0; i < nQueries; i++) {
+            int label = getRandom().nextInt(N_LABELS);
+            var acceptOrds = nodesWithLabel(label);
+            var q = TestUtil.randomVector(getRandom(), DIMENSION);
+            var result = searcher.search(DefaultSearchScoreProvider.exact(q, VSF, ravv), topK, topK, 0.0f, 0.0f, acceptOrds, label);
+            // only the nodes with the label are traversed
+            assertEquals(SearchResult.FilterStrategy.TWO_HOP, result.getFilterStrategy());
+            var nearest = new HashSet<>(nearest(q, acceptOrds, topK));
+            for (var ns : result.getNodes()) {
+                assertTrue(hasLabel(ns.node, label));
+                hits += nearest.contains(ns.node) ? 1 : 0;
+            }
+        }
+        return hits / (double) (topK * nQueries);
+    }
+
+    private int reachableWithin(OnHeapGraphIndex graph, int start, int label) {
+        var seen = new FixedBitSet(SIZE);
+        var queue = new IntArrayList();
+        seen.set(start);
+        queue.add(start);
+        var view = graph.getView();
+        for (int head = 0; head < queue.size(); head++) {
+            for (var it = view.getNeighborsIterator(0, queue.getInt(head)); it.hasNext(); ) {
+                int n = it.nextInt();
+                if (hasLabel(n, label) && !seen.getAndSet(n)) {
+                    queue.add(n);
+                }
+            }
+        }
+        return queue.size();
+    }
+
+    private boolean hasLabel(int node, int label) {
+        return node >= 0 && IntStream.of(nodeLabels[node]).anyMatch(l -> l == label);
+    }
+
+    private FixedBitSet nodesWithLabel(int label) {
+        var bits = new FixedBitSet(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            if (hasLabel(i, label)) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private List<Integer> nearest(VectorFloat<?> q, Bits acceptOrds, int topK) {
+        return IntStream.range(0, SIZE)
+                .filter(acceptOrds::get)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> -VSF.compare(q, ravv.getVector(i))))
+                .limit(topK)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.graph.similarity.SearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestMultiIndexSearcher extends RandomizedTest {
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+    private static final int DIMENSION = 16;
+
+    @Test
+    public void testUniformSegments() throws IOException {
+        var segments = new ArrayList<List<VectorFloat<?>>>();
+        for (int size : new int[] {1000, 500, 200, 50}) {
+            segments.add(TestUtil.createRandomVectors(size, DIMENSION));
+        }
+        var result = searchAndCheckRecall(segments, TestUtil.createRandomVectors(50, DIMENSION));
+        assertTrue(result.getVisitedCount() > 0);
+    }
+
+    @Test
+    public void testSmallSegmentHoldsAllResults() throws IOException {
+        // the small segment lives in a region of its own, so queries in that region find all their results there,
+        // far more than its share of topK
+        var large = TestUtil.createRandomVectors(2000, DIMENSION);
+        var small = shifted(TestUtil.createRandomVectors(100, DIMENSION));
+        var queries = shifted(TestUtil.createRandomVectors(20, DIMENSION));
+        var result = searchAndCheckRecall(List.of(large, small), queries);
+        assertTrue(result.getResumedCount() > 0);
+    }
+
+    @Test
+    public void testIncomparableApproximateScores() throws IOException {
+        // inflating one segment's approximate scores, as a codebook that is optimistic relative to the other
+        // segment's would, must not change the results, since approximate scores are not compared across segments
+        var graphs = new ArrayList<OnHeapGraphIndex>();
+        var ravvs = new ArrayList<RandomAccessVectorValues>();
+        for (int i = 0; i < 2; i++) {
+            var ravv = new ListRandomAccessVectorValues(TestUtil.createRandomVectors(1000, DIMENSION), DIMENSION);
+            graphs.add(new GraphIndexBuilder(ravv, VSF, 16, 64, 1.2f, 1.2f, true).build(ravv));
+            ravvs.add(ravv);
+        }
+
+        // searching the segments in order guarantees that the first segment's scores are seen by the second
+        try (var searcher = new MultiIndexSearcher(graphs, Runnable::run)) {
+            var acceptOrds = Collections.nCopies(2, Bits.ALL);
+            for (var q : TestUtil.createRandomVectors(20, DIMENSION)) {
+                var plain = searcher.search(List.of(approximate(q, ravvs.get(0), 0.0f), approximate(q, ravvs.get(1), 0.0f)), 10, 20, acceptOrds);
+                var inflated = searcher.search(List.of(approximate(q, ravvs.get(0), 10.0f), approximate(q, ravvs.get(1), 0.0f)), 10, 20, acceptOrds);
+                assertArrayEquals(plain.getNodes(), inflated.getNodes());
+                assertEquals(plain.getVisitedCount(), inflated.getVisitedCount());
+            }
+        }
+    }
+
+    private static SearchScoreProvider approximate(VectorFloat<?> q, RandomAccessVectorValues ravv, float offset) {
+        var exact = DefaultSearchScoreProvider.exact(q, VSF, ravv).exactScoreFunction();
+        ScoreFunction.ApproximateScoreFunction approximate = node -> exact.similarityTo(node) + offset;
+        return new DefaultSearchScoreProvider(approximate, exact);
+    }
+
+    private static List<VectorFloat<?>> shifted(List<VectorFloat<?>> vectors) {
+        for (var v : vectors) {
+            VectorUtil.addInPlace(v, 2.0f);
+        }
+        return vectors;
+    }
+
+    private static long key(MultiIndexSearcher.Result.IndexedNodeScore ns) {
+        return ((long) ns.index << 32) | ns.node;
+    }
+
+    /**
+     * Searches the segments for each query, checks recall against brute force, and returns the last result.
+     */
+    private MultiIndexSearcher.Result searchAndCheckRecall(List<List<VectorFloat<?>>> segments, List<VectorFloat<?>> queries) throws IOException {
+        int topK = 10;
+        var graphs = new ArrayList<OnHeapGraphIndex>();
+        var ravvs = new ArrayList<RandomAccessVectorValues>();
+        for (var vectors : segments) {
+            var ravv = new ListRandomAccessVectorValues(vectors, DIMENSION);
+            var builder = new GraphIndexBuilder(ravv, VSF, 16, 64, 1.2f, 1.2f, true);
+            graphs.add(builder.build(ravv));
+            ravvs.add(ravv);
+        }
+
+        MultiIndexSearcher.Result result = null;
+        int matches = 0;
+        try (var searcher = new MultiIndexSearcher(graphs)) {
+            for (var q : queries) {
+                var ssps = new ArrayList<SearchScoreProvider>();
+                for (var ravv : ravvs) {
+                    ssps.add(DefaultSearchScoreProvider.exact(q, VSF, ravv));
+                }
+                result = searcher.search(ssps, topK, 2 * topK, Collections.nCopies(ssps.size(), Bits.ALL));
+                var nodes = result.getNodes();
+                assertEquals(topK, nodes.length);
+                for (int i = 1; i < nodes.length; i++) {
+                    assertTrue(nodes[i - 1].compareTo(nodes[i]) < 0);
+                }
+
+                var expected = new ArrayList<MultiIndexSearcher.Result.IndexedNodeScore>();
+                for (int s = 0; s < segments.size(); s++) {
+                    for (int node = 0; node < segments.get(s).size(); node++) {
+                        expected.add(new MultiIndexSearcher.Result.IndexedNodeScore(s, node, VSF.compare(q, segments.get(s).get(node))));
+                    }
+                }
+                var expectedSet = expected.stream()
+                        .sorted(Comparator.naturalOrder())
+                        .limit(topK)
+                        .map(TestMultiIndexSearcher::key)
+                        .collect(Collectors.toSet());
+                var actual = new HashSet<Long>();
+                for (var ns : nodes) {
+                    actual.add(key(ns));
+                }
+                actual.retainAll(expectedSet);
+                matches += actual.size();
+            }
+        }
+        double recall = matches / (double) (topK * queries.size());
+        assertTrue("recall=" + recall, recall > 0.9);
+        return result;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.jbellis.jvector.graph;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.github.jbellis.jvector.vector.VectorUtil.addInPlace;
+import static io.github.jbellis.jvector.vector.VectorUtil.l2normalize;
+import static io.github.jbellis.jvector.vector.VectorUtil.scale;
+import static org.junit.Assert.*;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestMultiVectorSearcher extends RandomizedTest {
+    private static final int N_DOCS = 500;
+    private static final int DIMENSION = 16;
+    private static final int VOCABULARY = 200;
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.DOT_PRODUCT;
+
+    private List<VectorFloat<?>> words;
+    private int[][] docWords;
+    private MultiVectorDocuments documents;
+    private ListRandomAccessVectorValues ravv;
+    private OnHeapGraphIndex graph;
+
+    @Before
+    public void setup() {
+        // like text, documents are made of tokens from a shared vocabulary, and the embeddings of the same
+        // token are close to each other
+        words = new ArrayList<>();
+        for (int w = 0; w < VOCABULARY; w++) {
+            words.add(TestUtil.randomVector(getRandom(), DIMENSION));
+        }
+        docWords = new int[N_DOCS][];
+        var tokenCounts = new int[N_DOCS];
+        var vectors = new ArrayList<VectorFloat<?>>();
+        for (int d = 0; d < N_DOCS; d++) {
+            tokenCounts[d] = 4 + getRandom().nextInt(12);
+            docWords[d] = new int[tokenCounts[d]];
+            for (int t = 0; t < tokenCounts[d]; t++) {
+                docWords[d][t] = getRandom().nextInt(VOCABULARY);
+                vectors.add(near(words.get(docWords[d][t])));
+            }
+        }
+        documents = MultiVectorDocuments.ofTokenCounts(tokenCounts);
+        ravv = new ListRandomAccessVectorValues(vectors, DIMENSION);
+        graph = new GraphIndexBuilder(ravv, VSF, 16, 100, 1.2f, 1.2f, true).build(ravv);
+    }
+
+    @Test
+    public void testDocuments() {
+        var byCounts = MultiVectorDocuments.ofTokenCounts(new int[] {2, 1, 3});
+        assertEquals(3, byCounts.documentCount());
+        assertEquals(6, byCounts.tokenCount());
+        assertEquals(1, byCounts.docOf(2));
+        assertEquals(3, byCounts.tokenOrdinal(2, 0));
+
+        var byIds = MultiVectorDocuments.ofDocIds(new int[] {1, 0, 1, 2, 0});
+        assertEquals(3, byIds.documentCount());
+        assertEquals(2, byIds.tokenCount(0));
+        assertEquals(2, byIds.tokenCount(1));
+        assertEquals(1, byIds.tokenCount(2));
+        assertEquals(1, byIds.tokenOrdinal(0, 0));
+        assertEquals(4, byIds.tokenOrdinal(0, 1));
+        assertEquals(2, byIds.tokenOrdinal(1, 1));
+
+        // every document needs at least one token
+        assertThrows(IllegalArgumentException.class, () -> MultiVectorDocuments.ofDocIds(new int[] {0, 2}));
+        assertThrows(IllegalArgumentException.class, () -> MultiVectorDocuments.ofTokenCounts(new int[] {1, 0}));
+    }
+
+    @Test
+    public void testMaxSimRecall() throws Exception {
+        int topK = 10;
+        int nQueries = 20;
+        int hits = 0;
+        int reranked = 0;
+        try (var searcher = new MultiVectorSearcher(graph, ravv, VSF, documents)) {
+            for (int i = 0; i < nQueries; i++) {
+                var query = randomQuery();
+                var result = searcher.search(query, topK, 128);
+                assertEquals(topK, result.getNodes().length);
+                reranked += result.getRerankedCount();
+
+                var expected = new HashSet<>(nearestDocs(searcher, query, topK));
+                float previous = Float.POSITIVE_INFINITY;
+                for (var ns : result.getNodes()) {
+                    // results are exact MaxSim scores, best first
+                    assertEquals(searcher.maxSim(query, ns.node), ns.score, 1e-5);
+                    assertTrue(ns.score <= previous);
+                    previous = ns.score;
+                    hits += expected.contains(ns.node) ? 1 : 0;
+                }
+            }
+        }
+        double recall = hits / (double) (topK * nQueries);
+        assertTrue("recall " + recall, recall >= 0.9);
+        // reranking stops long before every document is scored
+        assertTrue(reranked < nQueries * documents.documentCount() / 4);
+    }
+
+    @Test
+    public void testSequentialExecutor() throws Exception {
+        var query = randomQuery();
+        try (var concurrent = new MultiVectorSearcher(graph, ravv, VSF, documents);
+             var sequential = new MultiVectorSearcher(graph, ravv, VSF, documents, Runnable::run))
+        {
+            assertArrayEquals(concurrent.search(query, 5, 64).getNodes(), sequential.search(query, 5, 64).getNodes());
+        }
+    }
+
+    // a query sharing half of its tokens with one of the documents
+    private List<VectorFloat<?>> randomQuery() {
+        var doc = docWords[getRandom().nextInt(N_DOCS)];
+        var query = new ArrayList<VectorFloat<?>>();
+        for (int t = 0; t < 8; t++) {
+            int word = t % 2 == 0 ? doc[getRandom().nextInt(doc.length)] : getRandom().nextInt(VOCABULARY);
+            query.add(near(words.get(word)));
+        }
+        return query;
+    }
+
+    private VectorFloat<?> near(VectorFloat<?> word) {
+        var v = TestUtil.randomVector(getRandom(), DIMENSION);
+        scale(v, 0.1f);
+        addInPlace(v, word);
+        l2normalize(v);
+        return v;
+    }
+
+    private List<Integer> nearestDocs(MultiVectorSearcher searcher, List<VectorFloat<?>> query, int topK) {
+        return IntStream.range(0, N_DOCS)
+                .boxed()
+                .sorted(Comparator.comparingDouble(d -> -searcher.maxSim(query, d)))
+                .limit(topK)
+                .collect(Collectors.toList());
+    }
+}
@@ -19,6 +19,7 @@ package io.github.jbellis.jvector.graph.disk;
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
 import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.disk.MappedChunkReader;
 import io.github.jbellis.jvector.disk.SimpleMappedReader;
 import io.github.jbellis.jvector.graph.GraphIndexBuilder;
 import io.github.jbellis.jvector.graph.GraphSearcher;
@@ -29,14 +30,22 @@ import io.github.jbellis.jvector.graph.TestVectorGraph;
 import io.github.jbellis.jvector.graph.disk.feature.Feature;
 import io.github.jbellis.jvector.graph.disk.feature.FeatureId;
 import io.github.jbellis.jvector.graph.disk.feature.FusedADC;
+import io.github.jbellis.jvector.graph.disk.feature.InlineHalfVectors;
 import io.github.jbellis.jvector.graph.disk.feature.InlineVectors;
 import io.github.jbellis.jvector.graph.disk.feature.NVQ;
+import io.github.jbellis.jvector.graph.disk.feature.SQ;
+import io.github.jbellis.jvector.graph.disk.feature.SeparatedHalfVectors;
 import io.github.jbellis.jvector.graph.disk.feature.SeparatedNVQ;
 import io.github.jbellis.jvector.graph.disk.feature.SeparatedVectors;
+import io.github.jbellis.jvector.graph.disk.feature.Tombstones;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.SearchScoreProvider;
 import io.github.jbellis.jvector.quantization.NVQuantization;
 import io.github.jbellis.jvector.quantization.PQVectors;
 import io.github.jbellis.jvector.quantization.ProductQuantization;
+import io.github.jbellis.jvector.quantization.ScalarQuantization;
 import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.HalfFloatType;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import org.junit.After;
 import org.junit.Before;
@@ -48,6 +57,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 import static io.github.jbellis.jvector.TestUtil.getNeighborNodes;
 import static io.github.jbellis.jvector.TestUtil.randomVector;
@@ -142,6 +152,36 @@ public class TestOnDiskGraphIndex extends RandomizedTest {
             throw new RuntimeException(e);
         }
     }
+
+    @Test
+    public void testLocalityRenumbering() throws Exception {
+        var vectors = TestUtil.createRandomVectors(500, 16);
+        var ravv = new ListRandomAccessVectorValues(vectors, 16);
+        var builder = new GraphIndexBuilder(ravv, VectorSimilarityFunction.EUCLIDEAN, 8, 32, 1.2f, 1.2f, true);
+        var original = builder.build(ravv);
+
+        var oldToNewMap = OnDiskGraphIndexWriter.localityRenumbering(original);
+        // every node gets a distinct new ordinal, and the entry node comes first
+        assertEquals(original.size(0), oldToNewMap.size());
+        assertEquals(oldToNewMap.size(), new HashSet<>(oldToNewMap.values()).size());
+        assertEquals(0, (int) oldToNewMap.get(original.getView().entryNode().node));
+
+        var outputPath = testDirectory.resolve("locality_graph");
+        OnDiskGraphIndex.write(original, ravv, oldToNewMap, outputPath);
+        try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath);
+             var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+             var onDiskView = onDiskGraph.getView();
+             var originalView = original.getView())
+        {
+            for (int node = 0; node < original.getIdUpperBound(); node++) {
+                int newNode = oldToNewMap.get(node);
+                assertEquals(ravv.getVector(node), onDiskView.getVector(newNode));
+                var expected = getNeighborNodes(originalView, 0, node).stream().map(oldToNewMap::get).collect(Collectors.toSet());
+                assertEquals(expected, getNeighborNodes(onDiskView, 0, newNode));
+            }
+        }
+    }
+
     @Test
     public void testReorderingRenumbering() throws IOException {
         testReorderingRenumbering(false);
@@ -268,6 +308,83 @@ public class TestOnDiskGraphIndex extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testHalfVectors() throws Exception {
+        var graph = randomlyConnectedGraph;
+        int dimension = 24;
+        var vectors = TestUtil.createRandomVectors(graph.size(), dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        for (var type : HalfFloatType.values()) {
+            for (boolean separated : List.of(false, true)) {
+                var outputPath = testDirectory.resolve("test_graph_half_" + type + "_" + separated);
+                Feature feature = separated
+                        ? new SeparatedHalfVectors(dimension, type, 0L)
+                        : new InlineHalfVectors(dimension, type);
+                assertEquals(dimension * Short.BYTES, feature.featureSize());
+                try (var writer = new OnDiskGraphIndexWriter.Builder(graph, outputPath).with(feature).build()) {
+                    writer.write(Feature.singleStateFactory(feature.id(), nodeId -> new InlineVectors.State(ravv.getVector(nodeId))));
+                }
+
+                try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+                     var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+                     var onDiskView = onDiskGraph.getView())
+                {
+                    TestUtil.assertGraphEquals(graph, onDiskGraph);
+                    assertEquals(dimension, onDiskGraph.getDimension());
+                    var h = new short[dimension];
+                    var q = randomVector(getRandom(), dimension);
+                    for (var vsf : VectorSimilarityFunction.values()) {
+                        var reranker = onDiskView.rerankerFor(q, vsf);
+                        for (int i = 0; i < graph.size(); i++) {
+                            type.encode(ravv.getVector(i), h);
+                            assertEquals(vsf.compare(q, h, type), reranker.similarityTo(i), 0);
+                            assertEquals(vsf.compare(q, ravv.getVector(i)), reranker.similarityTo(i), 1e-2);
+                        }
+                    }
+                    // without full-resolution vectors, getVector returns the converted ones
+                    for (int i = 0; i < graph.size(); i++) {
+                        var v = onDiskView.getVector(i);
+                        type.encode(ravv.getVector(i), h);
+                        for (int j = 0; j < dimension; j++) {
+                            assertEquals(type.toFloat(h[j]), v.get(j), 0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSQVectors() throws Exception {
+        var graph = randomlyConnectedGraph;
+        int dimension = 24;
+        var vectors = TestUtil.createRandomVectors(graph.size(), dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var sq = ScalarQuantization.compute(ravv);
+        var sqv = sq.encodeAll(ravv);
+        var outputPath = testDirectory.resolve("test_graph_sq");
+        var feature = new SQ(sq);
+        try (var writer = new OnDiskGraphIndexWriter.Builder(graph, outputPath).with(feature).build()) {
+            writer.write(Feature.singleStateFactory(FeatureId.SQ_VECTORS, nodeId -> new SQ.State(sqv.get(nodeId))));
+        }
+
+        try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+             var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+             var onDiskView = onDiskGraph.getView())
+        {
+            TestUtil.assertGraphEquals(graph, onDiskGraph);
+            assertEquals(dimension, onDiskGraph.getDimension());
+            var q = randomVector(getRandom(), dimension);
+            for (var vsf : VectorSimilarityFunction.values()) {
+                var reranker = onDiskView.rerankerFor(q, vsf);
+                var sf = sqv.scoreFunctionFor(q, vsf);
+                for (int i = 0; i < graph.size(); i++) {
+                    assertEquals(sf.similarityTo(i), reranker.similarityTo(i), 0);
+                }
+            }
+        }
+    }
+
     @Test
     public void testLargeGraphSeparatedNVQ() throws Exception {
         // Build a large-ish graph
@@ -329,6 +446,224 @@ public class TestOnDiskGraphIndex extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testSearchBatch() throws Exception {
+        var vectors = TestUtil.createRandomVectors(1000, 32);
+        var ravv = new ListRandomAccessVectorValues(vectors, 32);
+        var builder = new GraphIndexBuilder(ravv, VectorSimilarityFunction.EUCLIDEAN, 16, 64, 1.2f, 1.2f, true);
+        var graph = builder.build(ravv);
+        var outputPath = testDirectory.resolve("batch_graph");
+        TestUtil.writeGraph(graph, ravv, outputPath);
+
+        var queries = TestUtil.createRandomVectors(20, 32);
+        try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+             var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+             var batchSearcher = new GraphSearcher(onDiskGraph);
+             var sequentialSearcher = new GraphSearcher(onDiskGraph))
+        {
+            var view = (OnDiskGraphIndex.View) batchSearcher.getView();
+            var ssps = new ArrayList<SearchScoreProvider>();
+            for (var q : queries) {
+                ssps.add(DefaultSearchScoreProvider.exact(q, VectorSimilarityFunction.EUCLIDEAN, view));
+            }
+            var batchResults = batchSearcher.searchBatch(ssps, 10, Bits.ALL);
+            assertEquals(queries.size(), batchResults.size());
+
+            // batching must not change the results
+            for (int i = 0; i < queries.size(); i++) {
+                var ssp = DefaultSearchScoreProvider.exact(queries.get(i), VectorSimilarityFunction.EUCLIDEAN, view);
+                var expected = sequentialSearcher.search(ssp, 10, Bits.ALL);
+                assertArrayEquals(expected.getNodes(), batchResults.get(i).getNodes());
+                assertEquals(expected.getVisitedCount(), batchResults.get(i).getVisitedCount());
+            }
+        }
+    }
+
+    @Test
+    public void testSearchWithPrefetching() throws Exception {
+        var vectors = TestUtil.createRandomVectors(1000, 32);
+        var ravv = new ListRandomAccessVectorValues(vectors, 32);
+        var builder = new GraphIndexBuilder(ravv, VectorSimilarityFunction.EUCLIDEAN, 16, 64, 1.2f, 1.2f, true);
+        var graph = builder.build(ravv);
+        var outputPath = testDirectory.resolve("prefetch_graph");
+        TestUtil.writeGraph(graph, ravv, outputPath);
+
+        var queries = TestUtil.createRandomVectors(20, 32);
+        try (var readerSupplier = new MappedChunkReader.Supplier(outputPath.toAbsolutePath(), true);
+             var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+             var prefetchingSearcher = new GraphSearcher(onDiskGraph);
+             var plainSearcher = new GraphSearcher(onDiskGraph))
+        {
+            prefetchingSearcher.usePrefetching(4);
+            var prefetchingView = (OnDiskGraphIndex.View) prefetchingSearcher.getView();
+            var plainView = (OnDiskGraphIndex.View) plainSearcher.getView();
+            // prefetching is only a hint and must not change the results
+            for (var q : queries) {
+                var expected = plainSearcher.search(DefaultSearchScoreProvider.exact(q, VectorSimilarityFunction.EUCLIDEAN, plainView), 10, Bits.ALL);
+                var actual = prefetchingSearcher.search(DefaultSearchScoreProvider.exact(q, VectorSimilarityFunction.EUCLIDEAN, prefetchingView), 10, Bits.ALL);
+                assertArrayEquals(expected.getNodes(), actual.getNodes());
+                assertEquals(expected.getVisitedCount(), actual.getVisitedCount());
+            }
+        }
+    }
+
+    @Test
+    public void testPatchDeletions() throws Exception {
+        int dimension = 32;
+        var vectors = TestUtil.createRandomVectors(1000, dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var vsf = VectorSimilarityFunction.EUCLIDEAN;
+        var builder = new GraphIndexBuilder(ravv, vsf, 16, 64, 1.2f, 1.2f, true);
+        var graph = builder.build(ravv);
+        var outputPath = testDirectory.resolve("tombstoned_graph");
+
+        // the tombstone bitmap must cover every ordinal
+        assertThrows(IllegalArgumentException.class,
+                     () -> new OnDiskGraphIndexWriter.Builder(graph, outputPath).with(new InlineVectors(dimension)).with(new Tombstones(graph.size() - 1)).build());
+        try (var writer = new OnDiskGraphIndexWriter.Builder(graph, outputPath)
+                .with(new InlineVectors(dimension))
+                .with(new Tombstones(graph.size()))
+                .build())
+        {
+            writer.write(Feature.singleStateFactory(FeatureId.INLINE_VECTORS, nodeId -> new InlineVectors.State(ravv.getVector(nodeId))));
+        }
+
+        var deleted = new HashSet<Integer>();
+        // delete 20%, including the entry node, then another 10%
+        for (int fraction : List.of(5, 10)) {
+            try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+                 var onDiskGraph = OnDiskGraphIndex.load(readerSupplier))
+            {
+                var patcher = new OnDiskGraphIndexPatcher(onDiskGraph, vsf, 1.2f);
+                assertEquals(0, patcher.patch(outputPath));
+                if (deleted.isEmpty()) {
+                    deleted.add(onDiskGraph.entryNode.node);
+                    patcher.markNodeDeleted(onDiskGraph.entryNode.node);
+                }
+                for (int i = 0; i < graph.size(); i++) {
+                    if (getRandom().nextInt(fraction) == 0 && deleted.add(i)) {
+                        patcher.markNodeDeleted(i);
+                    }
+                }
+                assertTrue(patcher.patch(outputPath) > 0);
+            }
+
+            try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+                 var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+                 var searcher = new GraphSearcher(onDiskGraph))
+            {
+                var view = (OnDiskGraphIndex.View) searcher.getView();
+                for (int i = 0; i < graph.size(); i++) {
+                    assertEquals(!deleted.contains(i), view.liveNodes().get(i));
+                }
+                // live nodes no longer link to deleted ones, at any level
+                for (int level = 0; level <= onDiskGraph.getMaxLevel(); level++) {
+                    for (var it = onDiskGraph.getNodes(level); it.hasNext(); ) {
+                        int node = it.nextInt();
+                        if (deleted.contains(node)) {
+                            continue;
+                        }
+                        var neighbors = view.getNeighborsIterator(level, node);
+                        assertTrue(neighbors.size() > 0 || onDiskGraph.size(level) - deleted.size() <= 1);
+                        assertTrue(neighbors.size() <= onDiskGraph.getDegree(level));
+                        while (neighbors.hasNext()) {
+                            assertFalse(deleted.contains(neighbors.nextInt()));
+                        }
+                    }
+                }
+
+                // searches never return deleted nodes, and still find the nearest live ones
+                int topK = 10;
+                int hits = 0;
+                var queries = TestUtil.createRandomVectors(20, dimension);
+                for (var q : queries) {
+                    var result = searcher.search(DefaultSearchScoreProvider.exact(q, vsf, view), topK, 5 * topK, 0.0f, 0.0f, Bits.ALL);
+                    var expected = new ArrayList<Integer>();
+                    for (int i = 0; i < graph.size(); i++) {
+                        if (!deleted.contains(i)) {
+                            expected.add(i);
+                        }
+                    }
+                    expected.sort(Comparator.comparingDouble(i -> -vsf.compare(q, ravv.getVector(i))));
+                    var nearest = new HashSet<>(expected.subList(0, topK));
+                    for (var ns : result.getNodes()) {
+                        assertFalse(deleted.contains(ns.node));
+                        hits += nearest.contains(ns.node) ? 1 : 0;
+                    }
+                }
+                double recall = hits / (double) (topK * queries.size());
+                assertTrue("recall " + recall, recall > 0.9);
+            }
+        }
+    }
+
+    @Test
+    public void testPatchDeletionsWithFusedADC() throws Exception {
+        int dimension = 32;
+        var vectors = TestUtil.createRandomVectors(1000, dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var vsf = VectorSimilarityFunction.EUCLIDEAN;
+        var builder = new GraphIndexBuilder(ravv, vsf, 32, 64, 1.2f, 1.2f, false);
+        var graph = builder.build(ravv);
+        var pq = ProductQuantization.compute(ravv, 8, 256, false);
+        var pqv = (PQVectors) pq.encodeAll(ravv);
+        var outputPath = testDirectory.resolve("tombstoned_fused_graph");
+        try (var writer = new OnDiskGraphIndexWriter.Builder(graph, outputPath)
+                .with(new InlineVectors(dimension))
+                .with(new FusedADC(graph.getDegree(0), pq))
+                .with(new Tombstones(graph.size()))
+                .build())
+        {
+            writer.write(Map.of(FeatureId.INLINE_VECTORS, nodeId -> new InlineVectors.State(ravv.getVector(nodeId)),
+                                FeatureId.FUSED_ADC, nodeId -> new FusedADC.State(graph.getView(), pqv, nodeId)));
+        }
+
+        var deleted = new HashSet<Integer>();
+        try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+             var onDiskGraph = OnDiskGraphIndex.load(readerSupplier))
+        {
+            var patcher = new OnDiskGraphIndexPatcher(onDiskGraph, vsf, 1.2f);
+            for (int i = 0; i < graph.size(); i++) {
+                if (getRandom().nextInt(5) == 0 && i != onDiskGraph.entryNode.node && deleted.add(i)) {
+                    patcher.markNodeDeleted(i);
+                }
+            }
+            assertTrue(patcher.patch(outputPath) > 0);
+        }
+
+        // every live node's fused codes describe its current neighbors, in order
+        try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath.toAbsolutePath());
+             var onDiskGraph = OnDiskGraphIndex.load(readerSupplier);
+             var view = onDiskGraph.getView())
+        {
+            var fusedADC = (FusedADC) onDiskGraph.features.get(FeatureId.FUSED_ADC);
+            var packedNeighbors = fusedADC.new PackedNeighbors(view);
+            int degree = onDiskGraph.getDegree(0);
+            for (int node = 0; node < graph.size(); node++) {
+                if (deleted.contains(node)) {
+                    continue;
+                }
+                var neighbors = toArray(view.getNeighborsIterator(0, node));
+                var packed = packedNeighbors.getPackedNeighbors(node);
+                for (int n = 0; n < neighbors.length; n++) {
+                    assertFalse(deleted.contains(neighbors[n]));
+                    var codes = pqv.get(neighbors[n]);
+                    for (int j = 0; j < codes.length(); j++) {
+                        assertEquals(codes.get(j), packed.get(j * degree + n));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[] toArray(NodesIterator it) {
+        var nodes = new int[it.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = it.nextInt();
+        }
+        return nodes;
+    }
+
     @Test
     public void testV0Read() throws IOException {
         // using a random graph from testLargeGraph generated on old version
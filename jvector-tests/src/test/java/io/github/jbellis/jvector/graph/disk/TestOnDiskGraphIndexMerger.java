@@ -0,0 +1,232 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph.disk;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.disk.SimpleMappedReader;
+import io.github.jbellis.jvector.disk.SimpleWriter;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestOnDiskGraphIndexMerger extends RandomizedTest {
+    private Path testDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    @Test
+    public void testMergeSegments() throws Exception {
+        // drop every tenth node of the second segment, as if it had been deleted
+        mergeAndCheck(3, 600, 16, (s, segment, i) -> s == 1 && i % 10 == 0);
+    }
+
+    @Test
+    public void testMergeRepairsDroppedNodes() throws Exception {
+        // compacting away most of a segment leaves its survivors with few live neighbors unless the holes
+        // are repaired; with a single segment, there are no cross-segment neighbors to make up for them
+        mergeAndCheck(1, 2000, 16, (s, segment, i) -> i % 5 != 0);
+    }
+
+    @Test
+    public void testMergeDropsEntryNodes() throws Exception {
+        // the merged graph must enter at another node of the largest segment's top layer
+        mergeAndCheck(3, 600, 16, (s, segment, i) -> i == segment.entryNode.node);
+    }
+
+    private interface DropRule {
+        boolean isDropped(int s, OnDiskGraphIndex segment, int node);
+    }
+
+    private void mergeAndCheck(int segmentCount, int segmentSize, int dimension, DropRule dropped) throws Exception {
+        var vsf = VectorSimilarityFunction.EUCLIDEAN;
+
+        var segments = new ArrayList<OnDiskGraphIndex>();
+        var suppliers = new ArrayList<SimpleMappedReader.Supplier>();
+        var mappers = new ArrayList<OrdinalMapper>();
+        // vectors of the merged index, and the segment and ordinal they come from, by merged ordinal
+        var merged = new ArrayList<VectorFloat<?>>();
+        var origins = new ArrayList<int[]>();
+        try {
+            for (int s = 0; s < segmentCount; s++) {
+                var vectors = TestUtil.createRandomVectors(segmentSize, dimension);
+                var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+                var builder = new GraphIndexBuilder(ravv, vsf, 16, 64, 1.2f, 1.2f, true);
+                var path = testDirectory.resolve("segment" + s);
+                TestUtil.writeGraph(builder.build(ravv), ravv, path);
+                var supplier = new SimpleMappedReader.Supplier(path);
+                suppliers.add(supplier);
+                var segment = OnDiskGraphIndex.load(supplier);
+                segments.add(segment);
+
+                var oldToNew = new HashMap<Integer, Integer>();
+                for (int i = 0; i < segmentSize; i++) {
+                    if (dropped.isDropped(s, segment, i)) {
+                        oldToNew.put(i, -1);
+                    } else {
+                        oldToNew.put(i, merged.size());
+                        merged.add(vectors.get(i));
+                        origins.add(new int[] {s, i});
+                    }
+                }
+                mappers.add(new OrdinalMapper.MapMapper(oldToNew));
+            }
+
+            var outputPath = testDirectory.resolve("merged");
+            try (var out = new SimpleWriter(outputPath)) {
+                new OnDiskGraphIndexMerger(segments, mappers, vsf, 16, 64, 1.2f).merge(out);
+            }
+
+            try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath);
+                 var graph = OnDiskGraphIndex.load(readerSupplier);
+                 var searcher = new GraphSearcher(graph))
+            {
+                assertEquals(merged.size(), graph.size(0));
+                var view = (OnDiskGraphIndex.View) searcher.getView();
+                for (int node = 0; node < merged.size(); node++) {
+                    assertEquals(merged.get(node), view.getVector(node));
+                }
+                assertLayers(graph, segments, mappers, origins);
+                assertRecall(searcher, view, merged, vsf);
+            }
+        } finally {
+            for (var segment : segments) {
+                segment.close();
+            }
+            for (var supplier : suppliers) {
+                supplier.close();
+            }
+        }
+    }
+
+    /**
+     * Checks that the merged graph keeps the layers of the segment with the most live nodes, enters at a live
+     * node of its top layer, and that every node stays in the layers it was in, up to that height.
+     */
+    private static void assertLayers(OnDiskGraphIndex graph, List<OnDiskGraphIndex> segments, List<OrdinalMapper> mappers, List<int[]> origins) {
+        int largest = 0;
+        var liveCounts = new int[segments.size()];
+        for (var origin : origins) {
+            liveCounts[origin[0]]++;
+        }
+        for (int s = 1; s < segments.size(); s++) {
+            if (liveCounts[s] > liveCounts[largest]) {
+                largest = s;
+            }
+        }
+        int expectedMaxLevel = segments.get(largest).getMaxLevel();
+        while (expectedMaxLevel > 0 && liveNodeCount(segments.get(largest), mappers.get(largest), expectedMaxLevel) == 0) {
+            expectedMaxLevel--;
+        }
+        assertTrue(segments.get(largest).getMaxLevel() > 0);
+        assertEquals(expectedMaxLevel, graph.getMaxLevel());
+
+        var entry = origins.get(graph.entryNode.node);
+        assertEquals(largest, entry[0]);
+        assertTrue(nodesAt(segments.get(largest), graph.getMaxLevel()).contains(entry[1]));
+        int segmentEntry = segments.get(largest).entryNode.node;
+        if (mappers.get(largest).oldToNew(segmentEntry) >= 0) {
+            assertEquals(segmentEntry, entry[1]);
+        }
+
+        for (int level = 1; level <= graph.getMaxLevel(); level++) {
+            var expected = new HashSet<Integer>();
+            for (int s = 0; s < segments.size(); s++) {
+                if (segments.get(s).getMaxLevel() < level) {
+                    continue;
+                }
+                for (int local : nodesAt(segments.get(s), level)) {
+                    int node = mappers.get(s).oldToNew(local);
+                    if (node >= 0) {
+                        expected.add(node);
+                    }
+                }
+            }
+            assertEquals(expected, nodesAt(graph, level));
+        }
+    }
+
+    private static int liveNodeCount(OnDiskGraphIndex segment, OrdinalMapper mapper, int level) {
+        int live = 0;
+        for (int local : nodesAt(segment, level)) {
+            if (mapper.oldToNew(local) >= 0) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private static Set<Integer> nodesAt(OnDiskGraphIndex graph, int level) {
+        var nodes = new HashSet<Integer>();
+        for (var it = graph.getNodes(level); it.hasNext(); ) {
+            nodes.add(it.nextInt());
+        }
+        return nodes;
+    }
+
+    private static void assertRecall(GraphSearcher searcher, OnDiskGraphIndex.View view, List<VectorFloat<?>> vectors, VectorSimilarityFunction vsf) {
+        int topK = 10;
+        int matches = 0;
+        var queries = TestUtil.createRandomVectors(50, vectors.get(0).length());
+        for (var q : queries) {
+            var result = searcher.search(DefaultSearchScoreProvider.exact(q, vsf, view), topK, 50, 0.0f, 0.0f, Bits.ALL);
+            var expected = IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -vsf.compare(q, vectors.get(i))))
+                    .limit(topK)
+                    .collect(Collectors.toSet());
+            var actual = new HashSet<Integer>();
+            for (var ns : result.getNodes()) {
+                actual.add(ns.node);
+            }
+            actual.retainAll(expected);
+            matches += actual.size();
+        }
+        double recall = matches / (double) (topK * queries.size());
+        assertTrue("recall=" + recall, recall > 0.9);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.jbellis.jvector.graph.disk;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.disk.SimpleMappedReader;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestPartitionedGraphIndexBuilder extends RandomizedTest {
+    private Path testDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    @Test
+    public void testSinglePartition() throws Exception {
+        testBuild(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testMultiplePartitions() throws Exception {
+        // room for about 500 nodes per partition
+        testBuild(500 * PartitionedGraphIndexBuilder.estimateBytesPerNode(16, 16, 1.2f));
+    }
+
+    private void testBuild(long memoryBudget) throws Exception {
+        int size = 2000;
+        int dimension = 16;
+        var vectors = TestUtil.createRandomVectors(size, dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var vsf = VectorSimilarityFunction.EUCLIDEAN;
+
+        var outputPath = testDirectory.resolve("graph");
+        var builder = new PartitionedGraphIndexBuilder(ravv, vsf, 16, 64, 1.2f, 1.2f, memoryBudget, testDirectory);
+        builder.build(outputPath);
+        // only the output is left behind
+        try (var files = Files.list(testDirectory)) {
+            assertEquals(1, files.count());
+        }
+
+        try (var readerSupplier = new SimpleMappedReader.Supplier(outputPath);
+             var graph = OnDiskGraphIndex.load(readerSupplier);
+             var searcher = new GraphSearcher(graph))
+        {
+            assertEquals(size, graph.size(0));
+            assertEquals(16, graph.getDegree(0));
+            var view = (OnDiskGraphIndex.View) searcher.getView();
+            for (int node = 0; node < size; node++) {
+                assertEquals(ravv.getVector(node), view.getVector(node));
+            }
+
+            int topK = 10;
+            int matches = 0;
+            var queries = TestUtil.createRandomVectors(50, dimension);
+            for (var q : queries) {
+                var result = searcher.search(DefaultSearchScoreProvider.exact(q, vsf, view), topK, 50, 0.0f, 0.0f, Bits.ALL);
+                var expected = IntStream.range(0, size).boxed()
+                        .sorted(Comparator.comparingDouble(i -> -vsf.compare(q, ravv.getVector(i))))
+                        .limit(topK)
+                        .collect(Collectors.toSet());
+                var actual = new HashSet<Integer>();
+                for (var ns : result.getNodes()) {
+                    actual.add(ns.node);
+                }
+                actual.retainAll(expected);
+                matches += actual.size();
+            }
+            double recall = matches / (double) (topK * queries.size());
+            assertTrue("recall=" + recall, recall > 0.9);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.microbench;
+
+import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.disk.SimpleMappedReader;
+import io.github.jbellis.jvector.disk.SimpleWriter;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.OnHeapGraphIndex;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndexMerger;
+import io.github.jbellis.jvector.graph.disk.OrdinalMapper;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares merging on-disk segments with OnDiskGraphIndexMerger against rebuilding a graph of all their
+ * vectors with GraphIndexBuilder, with the same M and beam width.
+ */
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(warmups = 0, value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SegmentMergeBench {
+    private static final VectorSimilarityFunction VSF = VectorSimilarityFunction.EUCLIDEAN;
+    private static final int M = 16;
+    private static final int BEAM_WIDTH = 64;
+
+    @Param({"4"})
+    private int segmentCount;
+
+    @Param({"10000"})
+    private int segmentSize;
+
+    @Param({"32"})
+    private int dimension;
+
+    private Path directory;
+    private final List<VectorFloat<?>> vectors = new ArrayList<>();
+    private final List<SimpleMappedReader.Supplier> suppliers = new ArrayList<>();
+    private final List<OnDiskGraphIndex> segments = new ArrayList<>();
+    private final List<OrdinalMapper> mappers = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("segment-merge-bench");
+        var random = new Random(42);
+        for (int s = 0; s < segmentCount; s++) {
+            var segmentVectors = new ArrayList<VectorFloat<?>>(segmentSize);
+            for (int i = 0; i < segmentSize; i++) {
+                segmentVectors.add(TestUtil.randomVector(random, dimension));
+            }
+            var ravv = new ListRandomAccessVectorValues(segmentVectors, dimension);
+            var path = directory.resolve("segment" + s);
+            TestUtil.writeGraph(new GraphIndexBuilder(ravv, VSF, M, BEAM_WIDTH, 1.2f, 1.2f, true).build(ravv), ravv, path);
+            var supplier = new SimpleMappedReader.Supplier(path);
+            suppliers.add(supplier);
+            segments.add(OnDiskGraphIndex.load(supplier));
+
+            var oldToNew = new HashMap<Integer, Integer>();
+            for (int i = 0; i < segmentSize; i++) {
+                oldToNew.put(i, vectors.size() + i);
+            }
+            mappers.add(new OrdinalMapper.MapMapper(oldToNew));
+            vectors.addAll(segmentVectors);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (var segment : segments) {
+            segment.close();
+        }
+        for (var supplier : suppliers) {
+            supplier.close();
+        }
+        TestUtil.deleteQuietly(directory);
+    }
+
+    @Benchmark
+    public long merge() throws IOException {
+        var path = directory.resolve("merged");
+        try (var out = new SimpleWriter(path)) {
+            new OnDiskGraphIndexMerger(segments, mappers, VSF, M, BEAM_WIDTH, 1.2f).merge(out);
+        }
+        return Files.size(path);
+    }
+
+    @Benchmark
+    public OnHeapGraphIndex rebuild() {
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        return new GraphIndexBuilder(ravv, VSF, M, BEAM_WIDTH, 1.2f, 1.2f, true).build(ravv);
+    }
+}
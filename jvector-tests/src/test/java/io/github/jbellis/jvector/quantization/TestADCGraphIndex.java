@@ -22,6 +22,7 @@ import io.github.jbellis.jvector.TestUtil;
 import io.github.jbellis.jvector.disk.SimpleMappedReader;
 import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
 import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.disk.feature.FusedADC;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import org.junit.After;
 import org.junit.Before;
@@ -33,6 +34,7 @@ import java.nio.file.Path;
 
 import static io.github.jbellis.jvector.TestUtil.createRandomVectors;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 
 @ThreadLeakScope(ThreadLeakScope.Scope.NONE)
 public class TestADCGraphIndex extends RandomizedTest {
@@ -52,11 +54,34 @@ public class TestADCGraphIndex extends RandomizedTest {
     @Test
     public void testFusedGraph() throws Exception {
         // generate random graph, M=32, 256-dimension vectors
-        var graph = new TestUtil.RandomlyConnectedGraphIndex(1000, 32, getRandom());
-        var outputPath = testDirectory.resolve("large_graph");
+        testFusedGraph(32, 8, 256);
+    }
+
+    @Test
+    public void testFusedGraphLargerDegree() throws Exception {
+        testFusedGraph(48, 8, 256);
+    }
+
+    @Test
+    public void testFusedGraph4bit() throws Exception {
+        testFusedGraph(32, 16, 16);
+        // odd subspace count leaves the last packed byte half empty
+        testFusedGraph(64, 7, 16);
+    }
+
+    @Test
+    public void testInvalidDegree() {
+        var ravv = new ListRandomAccessVectorValues(createRandomVectors(300, 16), 16);
+        var pq = ProductQuantization.compute(ravv, 4, 256, false);
+        assertThrows(IllegalArgumentException.class, () -> new FusedADC(40, pq));
+    }
+
+    private void testFusedGraph(int degree, int subspaces, int clusters) throws Exception {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex(1000, degree, getRandom());
+        var outputPath = testDirectory.resolve("large_graph_" + degree + "_" + subspaces + "_" + clusters);
         var vectors = createRandomVectors(1000,  512);
         var ravv = new ListRandomAccessVectorValues(vectors, 512);
-        var pq = ProductQuantization.compute(ravv, 8, 256, false);
+        var pq = ProductQuantization.compute(ravv, subspaces, clusters, false);
         var pqv = (PQVectors) pq.encodeAll(ravv);
 
         TestUtil.writeFusedGraph(graph, ravv, pqv, outputPath);
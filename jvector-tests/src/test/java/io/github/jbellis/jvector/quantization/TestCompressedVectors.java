@@ -19,24 +19,35 @@ package io.github.jbellis.jvector.quantization;
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
 import io.github.jbellis.jvector.TestUtil;
+import io.github.jbellis.jvector.disk.MappedChunkReader;
 import io.github.jbellis.jvector.disk.SimpleMappedReader;
 import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.VectorUtil;
 import io.github.jbellis.jvector.vector.types.VectorFloat;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static io.github.jbellis.jvector.TestUtil.createRandomVectors;
 import static io.github.jbellis.jvector.TestUtil.createNormalRandomVectors;
 import static io.github.jbellis.jvector.TestUtil.nextInt;
 import static java.lang.Math.abs;
 import static java.lang.Math.log;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ThreadLeakScope(ThreadLeakScope.Scope.NONE)
 public class TestCompressedVectors extends RandomizedTest {
@@ -65,6 +76,129 @@ public class TestCompressedVectors extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testMappedPQ() throws Exception {
+        int dimension = 32;
+        var vectors = createRandomVectors(1000, dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var cv = (PQVectors) ProductQuantization.compute(ravv, 8, 256, true).encodeAll(ravv);
+
+        // write the vectors after some unrelated bytes, as when they are part of a larger file
+        File cvFile = File.createTempFile("pqtest", ".cv");
+        cvFile.deleteOnExit();
+        int headerSize = 13;
+        try (var out = new DataOutputStream(new FileOutputStream(cvFile))) {
+            out.write(new byte[headerSize]);
+            cv.write(out);
+        }
+
+        try (var readerSupplier = new MappedChunkReader.Supplier(cvFile.toPath());
+             var mapped = MappedPQVectors.load(readerSupplier, headerSize))
+        {
+            assertEquals(cv.count(), mapped.count());
+            assertEquals(cv.getCompressor(), mapped.getCompressor());
+            assertTrue(mapped.ramBytesUsed() < cv.ramBytesUsed() - (long) cv.count() * cv.getCompressedSize());
+            for (int i = 0; i < cv.count(); i++) {
+                assertEquals(cv.get(i), mapped.get(i));
+            }
+
+            var q = TestUtil.randomVector(getRandom(), dimension);
+            for (var vsf : VectorSimilarityFunction.values()) {
+                var expectedPrecomputed = cv.precomputedScoreFunctionFor(q, vsf);
+                var expectedDirect = cv.scoreFunctionFor(q, vsf);
+                var precomputed = mapped.precomputedScoreFunctionFor(q, vsf);
+                var direct = mapped.scoreFunctionFor(q, vsf);
+                for (int i = 0; i < cv.count(); i++) {
+                    assertEquals(expectedPrecomputed.similarityTo(i), precomputed.similarityTo(i));
+                    assertEquals(expectedDirect.similarityTo(i), direct.similarityTo(i));
+                }
+            }
+
+            // scoring from several threads at once reads each node's own codes
+            var sf = mapped.precomputedScoreFunctionFor(q, VectorSimilarityFunction.EUCLIDEAN);
+            var expected = cv.precomputedScoreFunctionFor(q, VectorSimilarityFunction.EUCLIDEAN);
+            IntStream.range(0, cv.count()).parallel().forEach(i -> assertEquals(expected.similarityTo(i), sf.similarityTo(i)));
+
+            // writing a mapped instance produces the same bytes
+            var baos = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(baos)) {
+                mapped.write(out);
+            }
+            var original = Files.readAllBytes(cvFile.toPath());
+            assertArrayEquals(Arrays.copyOfRange(original, headerSize, original.length), baos.toByteArray());
+        }
+    }
+
+    @Test
+    public void testBulkScoring() throws Exception {
+        int dimension = 64;
+        var vectors = createRandomVectors(1000, dimension);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var pqv = (PQVectors) ProductQuantization.compute(ravv, 16, 256, true).encodeAll(ravv);
+        var bqv = BinaryQuantization.compute(ravv).encodeAll(ravv);
+        var nvqv = NVQuantization.compute(ravv, 2).encodeAll(ravv);
+
+        File cvFile = File.createTempFile("pqtest", ".cv");
+        cvFile.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(cvFile))) {
+            pqv.write(out);
+        }
+
+        try (var readerSupplier = new MappedChunkReader.Supplier(cvFile.toPath());
+             var mapped = MappedPQVectors.load(readerSupplier, 0))
+        {
+            for (int i = 0; i < 10; i++) {
+                var q = TestUtil.randomVector(getRandom(), dimension);
+                for (var vsf : VectorSimilarityFunction.values()) {
+                    assertBulkScoresMatch(DefaultSearchScoreProvider.exact(q, vsf, ravv).scoreFunction(), ravv.size());
+                    assertBulkScoresMatch(pqv.precomputedScoreFunctionFor(q, vsf), pqv.count());
+                    assertBulkScoresMatch(pqv.scoreFunctionFor(q, vsf), pqv.count());
+                    assertBulkScoresMatch(mapped.precomputedScoreFunctionFor(q, vsf), mapped.count());
+                    assertBulkScoresMatch(nvqv.scoreFunctionFor(q, vsf), nvqv.count());
+                }
+                assertBulkScoresMatch(bqv.precomputedScoreFunctionFor(q, VectorSimilarityFunction.COSINE), bqv.count());
+            }
+        }
+    }
+
+    /** scores a random selection of nodes (including repeats, and counts that leave a tail) in bulk and one at a time */
+    private void assertBulkScoresMatch(ScoreFunction sf, int size) {
+        int count = randomIntBetween(0, 67);
+        int[] nodes = new int[count + 3];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = randomIntBetween(0, size - 1);
+        }
+        float[] scores = new float[count + 3];
+        Arrays.fill(scores, -1);
+        sf.similarityTo(nodes, count, scores);
+        for (int i = 0; i < count; i++) {
+            assertEquals(sf.similarityTo(nodes[i]), scores[i], 1e-5f * Math.max(1, abs(scores[i])));
+        }
+        // nothing past count is written
+        for (int i = count; i < scores.length; i++) {
+            assertEquals(-1, scores[i]);
+        }
+    }
+
+    @Test
+    public void testMappedPQTruncated() throws Exception {
+        var vectors = createRandomVectors(100, 4);
+        var ravv = new ListRandomAccessVectorValues(vectors, 4);
+        var cv = ProductQuantization.compute(ravv, 2, 16, false).encodeAll(ravv);
+
+        var baos = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(baos)) {
+            cv.write(out);
+        }
+        var bytes = baos.toByteArray();
+        File cvFile = File.createTempFile("pqtest", ".cv");
+        cvFile.deleteOnExit();
+        Files.write(cvFile.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+        try (var readerSupplier = new SimpleMappedReader.Supplier(cvFile.toPath())) {
+            assertThrows(IOException.class, () -> MappedPQVectors.load(readerSupplier, 0));
+        }
+    }
+
     @Test
     public void testSaveLoadBQ() throws Exception {
         // Generate a PQ for random vectors
@@ -0,0 +1,153 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.disk.SimpleMappedReader;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.vector.Matrix;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import static io.github.jbellis.jvector.TestUtil.createNormalRandomVectors;
+import static io.github.jbellis.jvector.TestUtil.normalRandomVector;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestMultiBitBinaryQuantization extends RandomizedTest {
+    private static final int DIMENSION = 96;
+
+    private static List<VectorFloat<?>> normalizedVectors(int count) {
+        var vectors = createNormalRandomVectors(count, DIMENSION);
+        vectors.forEach(VectorUtil::l2normalize);
+        return vectors;
+    }
+
+    @Test
+    public void testBoundsContainExactScore() {
+        var vectors = createNormalRandomVectors(1000, DIMENSION);
+        var ravv = new ListRandomAccessVectorValues(vectors, DIMENSION);
+        for (int bits : new int[] {1, 2, 4}) {
+            var mbqv = MultiBitBinaryQuantization.compute(ravv, bits).encodeAll(ravv);
+            for (var vsf : VectorSimilarityFunction.values()) {
+                int comparisons = 0;
+                int misses = 0;
+                for (int i = 0; i < 20; i++) {
+                    var q = normalRandomVector(getRandom(), DIMENSION);
+                    var sf = mbqv.precomputedScoreFunctionFor(q, vsf);
+                    for (int node = 0; node < vectors.size(); node++) {
+                        float exact = vsf.compare(q, vectors.get(node));
+                        float lower = sf.lowerBound(node);
+                        float upper = sf.upperBound(node);
+                        float estimate = sf.similarityTo(node);
+                        assertTrue(lower <= estimate && estimate <= upper);
+                        comparisons++;
+                        if (exact < lower - 1e-6f || exact > upper + 1e-6f) {
+                            misses++;
+                        }
+                    }
+                }
+                assertTrue(String.format("%d-bit %s: %d of %d exact scores outside the bounds", bits, vsf, misses, comparisons),
+                           misses < 0.01 * comparisons);
+            }
+        }
+    }
+
+    @Test
+    public void testMoreBitsAreMoreAccurate() {
+        var vectors = normalizedVectors(1000);
+        var ravv = new ListRandomAccessVectorValues(vectors, DIMENSION);
+        var vsf = VectorSimilarityFunction.COSINE;
+
+        double previousError = Double.MAX_VALUE;
+        double previousWidth = Double.MAX_VALUE;
+        for (int bits : new int[] {1, 2, 4}) {
+            var mbqv = MultiBitBinaryQuantization.compute(ravv, bits).encodeAll(ravv);
+            double error = 0;
+            double width = 0;
+            for (int i = 0; i < 10; i++) {
+                var q = vectors.get(getRandom().nextInt(vectors.size()));
+                var sf = mbqv.precomputedScoreFunctionFor(q, vsf);
+                for (int node = 0; node < vectors.size(); node++) {
+                    error += Math.abs(sf.similarityTo(node) - vsf.compare(q, vectors.get(node)));
+                    width += sf.upperBound(node) - sf.lowerBound(node);
+                }
+            }
+            assertTrue(String.format("%d bits: error %.4f should be below %.4f", bits, error, previousError), error < previousError * 0.7);
+            assertTrue(String.format("%d bits: width %.4f should be below %.4f", bits, width, previousWidth), width < previousWidth * 0.7);
+            previousError = error;
+            previousWidth = width;
+        }
+    }
+
+    @Test
+    public void testPrecomputedMatchesDirect() {
+        var vectors = createNormalRandomVectors(200, DIMENSION + 3);
+        var ravv = new ListRandomAccessVectorValues(vectors, DIMENSION + 3);
+        for (int bits : new int[] {1, 2, 4}) {
+            var mbqv = MultiBitBinaryQuantization.compute(ravv, bits).encodeAll(ravv);
+            var q = normalRandomVector(getRandom(), DIMENSION + 3);
+            for (var vsf : VectorSimilarityFunction.values()) {
+                var precomputed = mbqv.precomputedScoreFunctionFor(q, vsf);
+                var direct = mbqv.scoreFunctionFor(q, vsf);
+                for (int node = 0; node < vectors.size(); node++) {
+                    assertEquals(direct.similarityTo(node), precomputed.similarityTo(node), 1e-4f);
+                    assertEquals(direct.lowerBound(node), precomputed.lowerBound(node), 1e-4f);
+                    assertEquals(direct.upperBound(node), precomputed.upperBound(node), 1e-4f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        var vectors = createNormalRandomVectors(100, 20);
+        var ravv = new ListRandomAccessVectorValues(vectors, 20);
+        var mbq = MultiBitBinaryQuantization.compute(ravv, 2);
+        var mbqv = mbq.encodeAll(ravv);
+
+        var file = File.createTempFile("mbqtest", ".mbq");
+        file.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(file))) {
+            mbqv.write(out);
+        }
+        try (var readerSupplier = new SimpleMappedReader.Supplier(file.toPath())) {
+            var loaded = MultiBitBQVectors.load(readerSupplier.get());
+            assertEquals(mbq, loaded.getCompressor());
+            assertEquals(mbqv, loaded);
+            assertEquals(file.length(), mbq.compressorSize() + Integer.BYTES + (long) mbqv.count() * mbq.compressedVectorSize());
+        }
+    }
+
+    @Test
+    public void testInvalidBits() {
+        var centroid = normalRandomVector(getRandom(), 8);
+        var rotation = Matrix.identity(8);
+        assertThrows(IllegalArgumentException.class, () -> new MultiBitBinaryQuantization(centroid, rotation, 3));
+        assertThrows(IllegalArgumentException.class, () -> new MultiBitBinaryQuantization(centroid, Matrix.identity(4), 2));
+    }
+}
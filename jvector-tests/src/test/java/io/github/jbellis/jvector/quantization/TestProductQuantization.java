@@ -20,6 +20,9 @@ import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
 import io.github.jbellis.jvector.disk.SimpleMappedReader;
 import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.Matrix;
 import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import io.github.jbellis.jvector.vector.VectorUtil;
 import io.github.jbellis.jvector.vector.VectorizationProvider;
@@ -34,6 +37,7 @@ import java.io.FileOutputStream;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -154,6 +158,49 @@ public class TestProductQuantization extends RandomizedTest {
         assertTrue(improvedLoss < initialLoss);
     }
 
+    @Test
+    public void testMiniBatchConvergence() {
+        var R = getRandom();
+        var vectors = generate(DEFAULT_CLUSTERS + R.nextInt(10 * DEFAULT_CLUSTERS),
+                               2 + R.nextInt(10),
+                               10_000 + R.nextInt(10_000));
+
+        var clusterer = new KMeansPlusPlusClusterer(Arrays.copyOf(vectors, 1024), DEFAULT_CLUSTERS);
+        var initialLoss = loss(clusterer, vectors, UNWEIGHTED);
+
+        // with a learning rate of 1 / count the centroids must settle down
+        float movement = Float.MAX_VALUE;
+        for (int i = 0; i < 200 && movement >= 1e-4f; i++) {
+            var batch = new VectorFloat<?>[1024];
+            for (int j = 0; j < batch.length; j++) {
+                batch[j] = vectors[R.nextInt(vectors.length)];
+            }
+            movement = clusterer.clusterOnceMiniBatch(batch);
+        }
+        assertTrue("movement=" + movement, movement < 1e-4f);
+
+        var improvedLoss = loss(clusterer, vectors, UNWEIGHTED);
+        assertTrue("improvedLoss=" + improvedLoss + " initialLoss=" + initialLoss, improvedLoss < initialLoss);
+    }
+
+    @Test
+    public void testComputeMiniBatch() {
+        var vectors = correlatedVectors(20_000, 16);
+        var ravv = new ListRandomAccessVectorValues(vectors, 16);
+        for (var center : List.of(false, true)) {
+            var pq = ProductQuantization.compute(ravv, 4, 64, center);
+            var mbpq = ProductQuantization.computeMiniBatch(ravv, 4, 64, center);
+            assertEquals(center, mbpq.globalCentroid != null);
+
+            var pqError = reconstructionError(pq, vectors);
+            var mbpqError = reconstructionError(mbpq, vectors);
+            assertTrue("pqError=" + pqError + " mbpqError=" + mbpqError, mbpqError < 1.1 * pqError);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> ProductQuantization.computeMiniBatch(ravv, 4, 64, false, 32, 10, 1e-4f,
+                                                                                               PhysicalCoreExecutor.pool(), ForkJoinPool.commonPool()));
+    }
+
     /**
      * only include vectors whose dot product is greater than or equal to T
      */
@@ -212,6 +259,117 @@ public class TestProductQuantization extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testCompressorSizeByVersion() throws Exception {
+        var vectors = createRandomVectors(512, 4);
+        var pq = ProductQuantization.compute(new ListRandomAccessVectorValues(vectors, 4), 2, 256, true);
+
+        var file = File.createTempFile("pqtest", ".pq");
+        for (int version = 2; version <= OnDiskGraphIndex.CURRENT_VERSION; version++) {
+            try (var out = new DataOutputStream(new FileOutputStream(file))) {
+                pq.write(out, version);
+            }
+            assertEquals(pq.compressorSize(version), file.length());
+        }
+        assertEquals(pq.compressorSize(OnDiskGraphIndex.CURRENT_VERSION), pq.compressorSize());
+    }
+
+    @Test
+    public void testOptimizedReducesQuantizationError() {
+        var vectors = correlatedVectors(4000, 16);
+        var ravv = new ListRandomAccessVectorValues(vectors, 16);
+        var pq = ProductQuantization.compute(ravv, 4, 16, false);
+        var opq = ProductQuantization.computeOptimized(ravv, 4, 16, false);
+        assertNull(pq.rotation);
+
+        var pqError = reconstructionError(pq, vectors);
+        var opqError = reconstructionError(opq, vectors);
+        assertTrue("pqError=" + pqError + " opqError=" + opqError, opqError < pqError);
+    }
+
+    @Test
+    public void testOptimizedScoreFunctions() {
+        var vectors = correlatedVectors(1000, 16);
+        var ravv = new ListRandomAccessVectorValues(vectors, 16);
+        for (var center : List.of(false, true)) {
+            var opq = ProductQuantization.computeOptimized(ravv, 4, 32, center);
+            var pqv = (PQVectors) opq.encodeAll(ravv);
+
+            // the query-side partial sums must be computed in the same rotated space as the codes
+            var decoded = vectorTypeSupport.createFloatVector(16);
+            for (var vsf : VectorSimilarityFunction.values()) {
+                if (center && vsf != VectorSimilarityFunction.EUCLIDEAN) {
+                    // with centering, the other functions are relative to the global centroid
+                    continue;
+                }
+                var q = randomVector(getRandom(), 16);
+                var precomputed = pqv.precomputedScoreFunctionFor(q, vsf);
+                var direct = pqv.scoreFunctionFor(q, vsf);
+                for (int i = 0; i < 20; i++) {
+                    opq.decode(pqv.get(i), decoded);
+                    var expected = vsf.compare(q, decoded);
+                    assertEquals(expected, precomputed.similarityTo(i), 1e-3);
+                    assertEquals(expected, direct.similarityTo(i), 1e-3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOptimizedSaveLoad() throws Exception {
+        var vectors = correlatedVectors(500, 8);
+        var ravv = new ListRandomAccessVectorValues(vectors, 8);
+        var opq = ProductQuantization.computeOptimized(ravv, 2, 16, true);
+
+        var file = File.createTempFile("opqtest", ".pq");
+        try (var out = new DataOutputStream(new FileOutputStream(file))) {
+            opq.write(out);
+        }
+        assertEquals(opq.compressorSize(), file.length());
+        try (var readerSupplier = new SimpleMappedReader.Supplier(file.toPath())) {
+            var opq2 = ProductQuantization.load(readerSupplier.get());
+            Assertions.assertEquals(opq, opq2);
+            assertEquals(opq.encode(vectors.get(0)), opq2.encode(vectors.get(0)));
+        }
+
+        // older versions cannot represent the rotation
+        try (var out = new DataOutputStream(new FileOutputStream(file))) {
+            assertThrows(IllegalArgumentException.class, () -> opq.write(out, 5));
+        }
+    }
+
+    private static double reconstructionError(ProductQuantization pq, List<VectorFloat<?>> vectors) {
+        var decoded = vectorTypeSupport.createFloatVector(vectors.get(0).length());
+        double error = 0;
+        for (var v : vectors) {
+            pq.decode(pq.encode(v), decoded);
+            error += VectorUtil.squareL2Distance(v, decoded);
+        }
+        return error / vectors.size();
+    }
+
+    /**
+     * Gaussian vectors whose variance is concentrated in a few dimensions, then mixed by a random rotation,
+     * so that the dimensions are correlated and the variance is unevenly split across subspaces.
+     */
+    private static List<VectorFloat<?>> correlatedVectors(int count, int dimension) {
+        var R = getRandom();
+        var mixing = new float[dimension][dimension];
+        for (var row : mixing) {
+            for (int j = 0; j < dimension; j++) {
+                row[j] = (float) R.nextGaussian();
+            }
+        }
+        var rotation = Matrix.from(mixing).nearestOrthogonal();
+        return IntStream.range(0, count).mapToObj(i -> {
+            var v = vectorTypeSupport.createFloatVector(dimension);
+            for (int j = 0; j < dimension; j++) {
+                v.set(j, (float) R.nextGaussian() * (j < dimension / 4 ? 10 : 1));
+            }
+            return rotation.multiply(v);
+        }).collect(Collectors.toList());
+    }
+
     @Test
     public void testLoadVersion0() throws Exception {
         var file = new File("resources/version0.pq");
@@ -0,0 +1,217 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.disk.SimpleMappedReader;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.ByteSequence;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.github.jbellis.jvector.TestUtil.randomVector;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestResidualProductQuantization extends RandomizedTest {
+    private static final VectorTypeSupport vectorTypeSupport = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    /**
+     * Vectors drawn from tight gaussian blobs around `clusters` random centers, the case that residual
+     * quantization is meant for
+     */
+    private List<VectorFloat<?>> clusteredVectors(int count, int dimension, int clusters) {
+        var R = getRandom();
+        var centers = IntStream.range(0, clusters)
+                .mapToObj(i -> {
+                    var v = randomVector(R, dimension);
+                    VectorUtil.scale(v, 10);
+                    return v;
+                })
+                .collect(Collectors.toList());
+        var vectors = new ArrayList<VectorFloat<?>>(count);
+        for (int i = 0; i < count; i++) {
+            var v = centers.get(R.nextInt(clusters)).copy();
+            for (int j = 0; j < dimension; j++) {
+                v.set(j, v.get(j) + (float) R.nextGaussian() * 0.5f);
+            }
+            vectors.add(v);
+        }
+        return vectors;
+    }
+
+    private static double reconstructionError(VectorCompressor<ByteSequence<?>> compressor, List<VectorFloat<?>> vectors) {
+        int dimension = vectors.get(0).length();
+        var decoded = vectorTypeSupport.createFloatVector(dimension);
+        double error = 0;
+        for (var v : vectors) {
+            var encoded = compressor.encode(v);
+            if (compressor instanceof ProductQuantization) {
+                ((ProductQuantization) compressor).decode(encoded, decoded);
+            } else {
+                ((ResidualProductQuantization) compressor).decode(encoded, decoded);
+            }
+            error += VectorUtil.squareL2Distance(v, decoded);
+        }
+        return error / vectors.size();
+    }
+
+    @Test
+    public void testBeatsPlainPQAtSameCodeSize() {
+        var vectors = clusteredVectors(4000, 32, 64);
+        var ravv = new ListRandomAccessVectorValues(vectors, 32);
+
+        // 1 byte for the coarse cell + 4 residual subspaces vs 5 subspaces of plain PQ
+        var rpq = ResidualProductQuantization.compute(ravv, 64, 4, 256);
+        var pq = ProductQuantization.compute(ravv, 5, 256, false);
+        assertEquals(pq.compressedVectorSize(), rpq.compressedVectorSize());
+
+        var rpqError = reconstructionError(rpq, vectors);
+        var pqError = reconstructionError(pq, vectors);
+        assertTrue(String.format("residual error %.3f should be well below PQ error %.3f", rpqError, pqError),
+                   rpqError < 0.75 * pqError);
+    }
+
+    @Test
+    public void testPrecomputedScoresMatchDecoded() {
+        var vectors = clusteredVectors(2000, 24, 32);
+        var ravv = new ListRandomAccessVectorValues(vectors, 24);
+        var rpq = ResidualProductQuantization.compute(ravv, 32, 6, 64);
+        var rpqv = (ResidualPQVectors) rpq.encodeAll(ravv);
+
+        var decoded = vectorTypeSupport.createFloatVector(24);
+        for (var vsf : VectorSimilarityFunction.values()) {
+            for (int i = 0; i < 10; i++) {
+                var q = vsf == VectorSimilarityFunction.DOT_PRODUCT
+                        ? normalized(randomVector(getRandom(), 24))
+                        : randomVector(getRandom(), 24);
+                var precomputed = rpqv.precomputedScoreFunctionFor(q, vsf);
+                var direct = rpqv.scoreFunctionFor(q, vsf);
+                for (int node = 0; node < rpqv.count(); node += 37) {
+                    rpq.decode(rpqv.get(node), decoded);
+                    float expected = vsf.compare(q, decoded);
+                    assertEquals(vsf + " node " + node, expected, precomputed.similarityTo(node), 1e-3f);
+                    assertEquals(vsf + " node " + node, expected, direct.similarityTo(node), 1e-6f);
+                }
+            }
+        }
+    }
+
+    private static VectorFloat<?> normalized(VectorFloat<?> v) {
+        VectorUtil.l2normalize(v);
+        return v;
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        var vectors = clusteredVectors(1000, 16, 16);
+        var ravv = new ListRandomAccessVectorValues(vectors, 16);
+        var rpq = ResidualProductQuantization.compute(ravv, 16, 4, 32);
+        var rpqv = (ResidualPQVectors) rpq.encodeAll(ravv);
+
+        var file = File.createTempFile("rpqtest", ".rpq");
+        file.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(file))) {
+            rpqv.write(out, OnDiskGraphIndex.CURRENT_VERSION);
+        }
+        try (var readerSupplier = new SimpleMappedReader.Supplier(file.toPath())) {
+            var reader = readerSupplier.get();
+            var loaded = ResidualPQVectors.load(reader);
+            assertEquals(rpq, loaded.getCompressor());
+            assertEquals(rpqv, loaded);
+            assertEquals(file.length(), rpq.compressorSize() + 8L + (long) rpqv.count() * rpq.compressedVectorSize());
+
+            var q = randomVector(getRandom(), 16);
+            var sf1 = rpqv.precomputedScoreFunctionFor(q, VectorSimilarityFunction.EUCLIDEAN);
+            var sf2 = loaded.precomputedScoreFunctionFor(q, VectorSimilarityFunction.EUCLIDEAN);
+            for (int i = 0; i < rpqv.count(); i++) {
+                assertEquals(sf1.similarityTo(i), sf2.similarityTo(i), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidParameters() {
+        var vectors = clusteredVectors(500, 8, 4);
+        var ravv = new ListRandomAccessVectorValues(vectors, 8);
+        assertThrows(IllegalArgumentException.class,
+                     () -> ResidualProductQuantization.compute(ravv, ResidualProductQuantization.MAX_COARSE_CLUSTERS + 1, 2, 16));
+
+        var centered = ProductQuantization.compute(ravv, 2, 16, true);
+        var coarse = new VectorFloat<?>[] { vectors.get(0) };
+        assertThrows(IllegalArgumentException.class, () -> new ResidualProductQuantization(coarse, centered));
+    }
+
+    @Test
+    public void testBuildScoreProvider() {
+        int dimension = 32;
+        var vectors = clusteredVectors(3000, dimension, 32);
+        var ravv = new ListRandomAccessVectorValues(vectors, dimension);
+        var vsf = VectorSimilarityFunction.EUCLIDEAN;
+        var rpq = ResidualProductQuantization.compute(ravv, 32, 8, 256);
+        var rpqv = (ResidualPQVectors) rpq.encodeAll(ravv, PhysicalCoreExecutor.pool());
+
+        var bsp = BuildScoreProvider.pqBuildScoreProvider(vsf, rpqv);
+        var builder = new GraphIndexBuilder(bsp, dimension, 16, 100, 1.2f, 1.2f, false);
+        var graph = builder.build(ravv);
+
+        int topK = 10;
+        int queries = 50;
+        int hits = 0;
+        for (int i = 0; i < queries; i++) {
+            var q = vectors.get(getRandom().nextInt(vectors.size())).copy();
+            VectorUtil.addInPlace(q, randomVector(getRandom(), dimension));
+            var expected = IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(j -> -vsf.compare(q, vectors.get(j))))
+                    .limit(topK)
+                    .collect(Collectors.toSet());
+            SearchResult result = GraphSearcher.search(q, topK, ravv, vsf, graph, Bits.ALL);
+            var actual = new HashSet<Integer>();
+            for (var ns : result.getNodes()) {
+                actual.add(ns.node);
+            }
+            actual.retainAll(expected);
+            hits += actual.size();
+        }
+        double recall = (double) hits / (queries * topK);
+        assertTrue("recall " + recall, recall > 0.9);
+    }
+}
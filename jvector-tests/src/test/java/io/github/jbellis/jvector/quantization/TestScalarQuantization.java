@@ -0,0 +1,151 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.quantization;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.disk.SimpleMappedReader;
+import io.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import io.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static io.github.jbellis.jvector.TestUtil.createNormalRandomVectors;
+import static io.github.jbellis.jvector.TestUtil.normalRandomVector;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestScalarQuantization extends RandomizedTest {
+    private static final VectorTypeSupport vts = VectorizationProvider.getInstance().getVectorTypeSupport();
+    private static final int DIMENSION = 96;
+
+    @Test
+    public void testDotProductInt8() {
+        for (int length : new int[] {1, 7, 16, 31, 32, 33, 64, 100, 255, 1024}) {
+            int aOffset = getRandom().nextInt(8);
+            int bOffset = getRandom().nextInt(8);
+            var a = vts.createByteSequence(aOffset + length);
+            var b = vts.createByteSequence(bOffset + length);
+            for (int i = 0; i < a.length(); i++) {
+                a.set(i, (byte) (getRandom().nextInt(256) - 128));
+            }
+            for (int i = 0; i < b.length(); i++) {
+                b.set(i, (byte) (getRandom().nextInt(256) - 128));
+            }
+
+            int expected = 0;
+            for (int i = 0; i < length; i++) {
+                expected += a.get(aOffset + i) * b.get(bOffset + i);
+            }
+            assertEquals("length " + length, expected, VectorUtil.dotProductInt8(a, aOffset, b, bOffset, length));
+        }
+
+        // the extremes, where 16-bit accumulation would overflow
+        var min = vts.createByteSequence(300);
+        for (int i = 0; i < min.length(); i++) {
+            min.set(i, Byte.MIN_VALUE);
+        }
+        assertEquals(300 * 128 * 128, VectorUtil.dotProductInt8(min, min));
+    }
+
+    @Test
+    public void testReconstructionError() {
+        var sq = new ScalarQuantization(DIMENSION);
+        var decoded = vts.createFloatVector(DIMENSION);
+        for (int n = 0; n < 100; n++) {
+            var v = normalRandomVector(getRandom(), DIMENSION);
+            var qv = sq.encode(v);
+            sq.decode(qv, decoded);
+            for (int i = 0; i < DIMENSION; i++) {
+                assertTrue(Math.abs(v.get(i) - decoded.get(i)) <= qv.scale / 2 + 1e-6f);
+            }
+            assertEquals(VectorUtil.dotProduct(decoded, decoded), qv.normSquared, 1e-3f * qv.normSquared);
+        }
+    }
+
+    @Test
+    public void testConstantVector() {
+        var sq = new ScalarQuantization(8);
+        var v = vts.createFloatVector(8);
+        for (int i = 0; i < 8; i++) {
+            v.set(i, 0.25f);
+        }
+        var qv = sq.encode(v);
+        assertEquals(0, qv.scale, 0);
+        assertEquals(0, qv.codeSum);
+        var decoded = vts.createFloatVector(8);
+        sq.decode(qv, decoded);
+        assertEquals(v, decoded);
+    }
+
+    @Test
+    public void testScoresMatchReconstruction() {
+        var vectors = createNormalRandomVectors(200, DIMENSION + 3);
+        vectors.forEach(VectorUtil::l2normalize);
+        var ravv = new ListRandomAccessVectorValues(vectors, DIMENSION + 3);
+        var sq = ScalarQuantization.compute(ravv);
+        var sqv = sq.encodeAll(ravv);
+
+        var q = normalRandomVector(getRandom(), DIMENSION + 3);
+        VectorUtil.l2normalize(q);
+        var decodedQuery = vts.createFloatVector(DIMENSION + 3);
+        sq.decode(sq.encode(q), decodedQuery);
+        var decoded = vts.createFloatVector(DIMENSION + 3);
+        for (var vsf : VectorSimilarityFunction.values()) {
+            var sf = sqv.scoreFunctionFor(q, vsf);
+            for (int node = 0; node < vectors.size(); node++) {
+                sq.decode(sqv.get(node), decoded);
+                assertEquals(vsf.compare(decodedQuery, decoded), sf.similarityTo(node), 1e-4f);
+                assertEquals(vsf.compare(q, vectors.get(node)), sf.similarityTo(node), 1e-2f);
+            }
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        var vectors = createNormalRandomVectors(100, 20);
+        var ravv = new ListRandomAccessVectorValues(vectors, 20);
+        var sq = ScalarQuantization.compute(ravv);
+        var sqv = sq.encodeAll(ravv);
+
+        var file = File.createTempFile("sqtest", ".sq");
+        file.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(file))) {
+            sqv.write(out);
+        }
+        try (var readerSupplier = new SimpleMappedReader.Supplier(file.toPath())) {
+            var loaded = SQVectors.load(readerSupplier.get());
+            assertEquals(sq, loaded.getCompressor());
+            assertEquals(sqv, loaded);
+            assertEquals(file.length(), sq.compressorSize() + Integer.BYTES + (long) sqv.count() * sq.compressedVectorSize());
+        }
+    }
+
+    @Test
+    public void testInvalidDimension() {
+        assertThrows(IllegalArgumentException.class, () -> new ScalarQuantization(0));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.jbellis.jvector.vector;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import org.junit.Test;
+
+import static io.github.jbellis.jvector.TestUtil.randomVector;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestHalfFloatType extends RandomizedTest {
+    private static final VectorTypeSupport vts = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    private static void assertSameFloat(String message, float expected, float actual) {
+        if (Float.isNaN(expected)) {
+            assertTrue(message + ": " + actual, Float.isNaN(actual));
+        } else {
+            assertEquals(message, expected, actual, 0);
+        }
+    }
+
+    @Test
+    public void testEveryValueRoundTrips() {
+        for (var type : HalfFloatType.values()) {
+            for (int bits = 0; bits < 1 << 16; bits++) {
+                short h = (short) bits;
+                float f = type.toFloat(h);
+                if (Float.isNaN(f)) {
+                    assertTrue(Float.isNaN(type.toFloat(type.fromFloat(f))));
+                } else {
+                    assertEquals(type + " " + Integer.toHexString(bits), h, type.fromFloat(f));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFloat16Rounding() {
+        var type = HalfFloatType.FLOAT16;
+        assertEquals(1.0f, type.toFloat(type.fromFloat(1.0f)), 0);
+        assertEquals(65504f, type.toFloat(type.fromFloat(65504f)), 0);
+        // ties go to even, which at the top of the range is infinity
+        assertEquals(1.0f, type.toFloat(type.fromFloat(1 + 0x1p-11f)), 0);
+        assertEquals(1 + 0x1p-9f, type.toFloat(type.fromFloat(1 + 3 * 0x1p-11f)), 0);
+        assertEquals(Float.POSITIVE_INFINITY, type.toFloat(type.fromFloat(65520f)), 0);
+        assertEquals(65504f, type.toFloat(type.fromFloat(65519f)), 0);
+        assertEquals(Float.NEGATIVE_INFINITY, type.toFloat(type.fromFloat(-1e10f)), 0);
+        // subnormals
+        assertEquals(0x1p-24f, type.toFloat(type.fromFloat(0x1p-24f)), 0);
+        assertEquals(0f, type.toFloat(type.fromFloat(0x1p-25f)), 0);
+        assertEquals(0x1p-24f, type.toFloat(type.fromFloat(1.5f * 0x1p-25f)), 0);
+        assertEquals(0x3ffp-24f, type.toFloat(type.fromFloat(0x3ffp-24f)), 0);
+
+        for (int i = 0; i < 10_000; i++) {
+            float f = (float) ((2 * getRandom().nextDouble() - 1) * 1000);
+            float error = Math.abs(type.toFloat(type.fromFloat(f)) - f);
+            assertTrue(f + " error " + error, error <= Math.ulp(f) * (1 << 12));
+        }
+    }
+
+    @Test
+    public void testBFloat16Rounding() {
+        var type = HalfFloatType.BFLOAT16;
+        assertEquals(1.0f, type.toFloat(type.fromFloat(1.0f)), 0);
+        assertEquals(1.0f, type.toFloat(type.fromFloat(1 + 0x1p-8f)), 0);
+        assertEquals(1 + 0x1p-6f, type.toFloat(type.fromFloat(1 + 3 * 0x1p-8f)), 0);
+        assertEquals(Float.POSITIVE_INFINITY, type.toFloat(type.fromFloat(Float.MAX_VALUE)), 0);
+        assertTrue(Float.isNaN(type.toFloat(type.fromFloat(Float.intBitsToFloat(0x7f800001)))));
+
+        for (int i = 0; i < 10_000; i++) {
+            float f = (float) ((2 * getRandom().nextDouble() - 1) * 1e30);
+            float error = Math.abs(type.toFloat(type.fromFloat(f)) - f);
+            assertTrue(f + " error " + error, error <= Math.ulp(f) * (1 << 15));
+        }
+    }
+
+    /** a unit query picks out one component, so the kernels' conversion of every bit pattern can be checked */
+    @Test
+    public void testKernelsConvertEveryValue() {
+        int dimension = 37;
+        for (var type : HalfFloatType.values()) {
+            for (int bits = 0; bits < 1 << 16; bits++) {
+                int position = bits % dimension;
+                var q = vts.createFloatVector(dimension);
+                q.set(position, 1);
+                var h = new short[dimension];
+                h[position] = (short) bits;
+                assertSameFloat(type + " " + Integer.toHexString(bits), type.toFloat((short) bits), VectorUtil.dotProductHalf(q, h, type));
+            }
+        }
+    }
+
+    @Test
+    public void testKernels() {
+        for (var type : HalfFloatType.values()) {
+            for (int i = 0; i < 100; i++) {
+                int dimension = randomIntBetween(1, 200);
+                var q = randomVector(getRandom(), dimension);
+                var v = randomVector(getRandom(), dimension);
+                var h = new short[dimension];
+                type.encode(v, h);
+                VectorFloat<?> decoded = vts.createFloatVector(dimension);
+                type.decode(h, dimension, decoded, 0);
+
+                assertEquals(VectorUtil.dotProduct(q, decoded), VectorUtil.dotProductHalf(q, h, type), 1e-4f);
+                assertEquals(VectorUtil.squareL2Distance(q, decoded), VectorUtil.squareL2DistanceHalf(q, h, type), 1e-4f);
+                assertEquals(VectorUtil.cosine(q, decoded), VectorUtil.cosineHalf(q, h, type), 1e-4f);
+                for (var vsf : VectorSimilarityFunction.values()) {
+                    assertEquals(vsf.compare(q, decoded), vsf.compare(q, h, type), 1e-4f);
+                    // and the conversion itself costs little
+                    assertEquals(vsf.compare(q, v), vsf.compare(q, h, type), 1e-2f);
+                }
+            }
+        }
+    }
+}
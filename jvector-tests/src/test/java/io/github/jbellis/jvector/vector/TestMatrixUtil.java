@@ -26,6 +26,8 @@ package io.github.jbellis.jvector.vector;
 
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
@@ -37,6 +39,67 @@ public class TestMatrixUtil {
         assertEquals(expected, matrix.invert());
     }
 
+    @Test
+    public void testMultiply() {
+        var a = Matrix.from(new float[][] {{1, 2, 3}, {4, 5, 6}});
+        var b = Matrix.from(new float[][] {{7, 8}, {9, 10}, {11, 12}});
+        assertEquals(Matrix.from(new float[][] {{58, 64}, {139, 154}}), a.multiply(b));
+        assertEquals(Matrix.from(new float[][] {{1, 4}, {2, 5}, {3, 6}}), a.transpose());
+    }
+
+    @Test
+    public void testNearestOrthogonal() {
+        var random = new Random(42);
+        int n = 24;
+        var values = new float[n][n];
+        for (var row : values) {
+            for (int j = 0; j < n; j++) {
+                row[j] = (float) random.nextGaussian();
+            }
+        }
+        var q = Matrix.from(values).nearestOrthogonal();
+        assertOrthogonal(q);
+
+        // the polar factor of Q S, for symmetric positive definite S, is Q
+        var s = Matrix.identity(n);
+        for (int i = 0; i < n; i++) {
+            s.set(i, i, 1 + i);
+            if (i > 0) {
+                s.set(i, i - 1, 0.5f);
+                s.set(i - 1, i, 0.5f);
+            }
+        }
+        var recovered = q.multiply(s).nearestOrthogonal();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                assertEquals(q.get(i, j), recovered.get(i, j), 1e-3);
+            }
+        }
+
+        // rank-deficient input still produces an orthogonal matrix
+        for (int j = 0; j < n; j++) {
+            values[n - 1][j] = values[0][j];
+            values[n - 2][j] = 0;
+        }
+        assertOrthogonal(Matrix.from(values).nearestOrthogonal());
+    }
+
+    @Test
+    public void testRandomOrthogonal() {
+        var random = new Random(42);
+        assertOrthogonal(Matrix.randomOrthogonal(37, random));
+        assertOrthogonal(Matrix.randomOrthogonal(1, random));
+    }
+
+    private static void assertOrthogonal(Matrix q) {
+        var qqt = q.multiply(q.transpose());
+        for (int i = 0; i < q.rowCount(); i++) {
+            for (int j = 0; j < q.rowCount(); j++) {
+                assertEquals(i == j ? 1 : 0, qqt.get(i, j), 1e-4);
+            }
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testInvertNonSquareMatrix() {
         var matrix = Matrix.from(new float[][] {{1, 2, 3}, {4, 5, 6}});
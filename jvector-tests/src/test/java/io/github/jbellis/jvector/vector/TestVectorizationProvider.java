@@ -77,6 +77,112 @@ public class TestVectorizationProvider extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testBulkShuffleQuantizedSimilarity4bit() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int degree : new int[] {16, 32, 48, 64}) {
+            for (int codebookCount : new int[] {7, 8, 64}) {
+                var shuffles = new byte[(codebookCount + 1) / 2 * degree];
+                getRandom().nextBytes(shuffles);
+                var partials = randomQuantizedPartials(codebookCount);
+                var magnitudes = randomQuantizedPartials(codebookCount);
+                float delta = randomFloat() / 1000;
+
+                for (var vsf : new VectorSimilarityFunction[] {VectorSimilarityFunction.EUCLIDEAN, VectorSimilarityFunction.DOT_PRODUCT}) {
+                    var expected = a.getVectorTypeSupport().createFloatVector(degree);
+                    var actual = vectorTypeSupport.createFloatVector(degree);
+                    a.getVectorUtilSupport().bulkShuffleQuantizedSimilarity4bit(a.getVectorTypeSupport().createByteSequence(shuffles), codebookCount,
+                            a.getVectorTypeSupport().createByteSequence(partials), delta, 0.5f, vsf, expected);
+                    b.getVectorUtilSupport().bulkShuffleQuantizedSimilarity4bit(vectorTypeSupport.createByteSequence(shuffles), codebookCount,
+                            vectorTypeSupport.createByteSequence(partials), delta, 0.5f, vsf, actual);
+                    assertBulkScoresEqual(expected, actual);
+                }
+
+                var expected = a.getVectorTypeSupport().createFloatVector(degree);
+                var actual = vectorTypeSupport.createFloatVector(degree);
+                a.getVectorUtilSupport().bulkShuffleQuantizedSimilarityCosine4bit(a.getVectorTypeSupport().createByteSequence(shuffles), codebookCount,
+                        a.getVectorTypeSupport().createByteSequence(partials), delta, -0.5f,
+                        a.getVectorTypeSupport().createByteSequence(magnitudes), delta, 1.0f, 2.0f, expected);
+                b.getVectorUtilSupport().bulkShuffleQuantizedSimilarityCosine4bit(vectorTypeSupport.createByteSequence(shuffles), codebookCount,
+                        vectorTypeSupport.createByteSequence(partials), delta, -0.5f,
+                        vectorTypeSupport.createByteSequence(magnitudes), delta, 1.0f, 2.0f, actual);
+                assertBulkScoresEqual(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testNearestCentroids() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int dimension : new int[] {1, 2, 4, 8, 17}) {
+            for (int centroidCount : new int[] {1, 5, 16, 100, 256}) {
+                int pointCount = randomIntBetween(1, 50);
+                int start = randomIntBetween(0, pointCount - 1);
+                var aPoints = new VectorFloat<?>[pointCount];
+                var bPoints = new VectorFloat<?>[pointCount];
+                for (int i = 0; i < pointCount; i++) {
+                    var values = randomFloats(dimension);
+                    aPoints[i] = a.getVectorTypeSupport().createFloatVector(values);
+                    bPoints[i] = vectorTypeSupport.createFloatVector(values);
+                }
+                var centroids = randomFloats(dimension * centroidCount);
+
+                var expectedNearest = new int[pointCount];
+                var expectedDistances = new float[pointCount];
+                a.getVectorUtilSupport().nearestCentroids(aPoints, start, pointCount, a.getVectorTypeSupport().createFloatVector(centroids),
+                                                          centroidCount, expectedNearest, expectedDistances);
+                var actualNearest = new int[pointCount];
+                var actualDistances = new float[pointCount];
+                b.getVectorUtilSupport().nearestCentroids(bPoints, start, pointCount, vectorTypeSupport.createFloatVector(centroids),
+                                                          centroidCount, actualNearest, actualDistances);
+
+                for (int i = start; i < pointCount; i++) {
+                    Assert.assertEquals(expectedDistances[i], actualDistances[i], 0.0001f);
+                    // summation order may differ, so only require that the centroid found is (one of) the nearest
+                    float distance = 0;
+                    for (int j = 0; j < dimension; j++) {
+                        float diff = centroids[j * centroidCount + actualNearest[i]] - aPoints[i].get(j);
+                        distance += diff * diff;
+                    }
+                    Assert.assertEquals(expectedDistances[i], distance, 0.0001f);
+                }
+            }
+        }
+    }
+
+    private static float[] randomFloats(int length) {
+        var values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = randomFloat();
+        }
+        return values;
+    }
+
+    /** 16 little-endian shorts per codebook, small enough that their sum across codebooks does not saturate */
+    private static byte[] randomQuantizedPartials(int codebookCount) {
+        var bytes = new byte[codebookCount * 32];
+        for (int i = 0; i < codebookCount * 16; i++) {
+            int value = randomIntBetween(0, 65535 / codebookCount);
+            bytes[2 * i] = (byte) value;
+            bytes[2 * i + 1] = (byte) (value >> 8);
+        }
+        return bytes;
+    }
+
+    private static void assertBulkScoresEqual(VectorFloat<?> expected, VectorFloat<?> actual) {
+        for (int i = 0; i < expected.length(); i++) {
+            Assert.assertEquals(expected.get(i), actual.get(i), 0.0001f);
+        }
+    }
+
     public static String REQUIRE_SPECIFIC_VECTORIZATION_PROVIDER="Test_RequireSpecificVectorizationProvider";
 
     /**
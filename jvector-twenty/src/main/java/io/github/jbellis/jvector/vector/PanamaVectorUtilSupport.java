@@ -52,6 +52,21 @@ final class PanamaVectorUtilSupport implements VectorUtilSupport {
         return SimdOps.dotProduct((ArrayVectorFloat)a, aoffset, (ArrayVectorFloat)b, boffset, length);
     }
 
+    @Override
+    public float dotProductHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+        return SimdOps.dotProductHalf((ArrayVectorFloat) a, b, type);
+    }
+
+    @Override
+    public float squareDistanceHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+        return SimdOps.squareDistanceHalf((ArrayVectorFloat) a, b, type);
+    }
+
+    @Override
+    public float cosineHalf(VectorFloat<?> a, short[] b, HalfFloatType type) {
+        return SimdOps.cosineHalf((ArrayVectorFloat) a, b, type);
+    }
+
     @Override
     public VectorFloat<?> sum(List<VectorFloat<?>> vectors) {
         return SimdOps.sum(vectors);
@@ -121,6 +136,26 @@ final class PanamaVectorUtilSupport implements VectorUtilSupport {
         return SimdOps.assembleAndSum(((ArrayVectorFloat) data).get(), dataBase, ((ByteSequence<byte[]>) baseOffsets), baseOffsetsOffset, baseOffsetsLength);
     }
 
+    @Override
+    public void bulkAssembleAndSum(VectorFloat<?> data, int baseIndex, ByteSequence<?> codes, int[] codeOffsets, int codeLength, int count, float[] results) {
+        SimdOps.bulkAssembleAndSum(((ArrayVectorFloat) data).get(), baseIndex, (ByteSequence<byte[]>) codes, codeOffsets, codeLength, count, results);
+    }
+
+    @Override
+    public void bulkDotProduct(VectorFloat<?> q, VectorFloat<?>[] vectors, int count, float[] results) {
+        SimdOps.bulkDotProduct((ArrayVectorFloat) q, vectors, count, results);
+    }
+
+    @Override
+    public void bulkSquareDistance(VectorFloat<?> q, VectorFloat<?>[] vectors, int count, float[] results) {
+        SimdOps.bulkSquareDistance((ArrayVectorFloat) q, vectors, count, results);
+    }
+
+    @Override
+    public int dotProductInt8(ByteSequence<?> a, int aOffset, ByteSequence<?> b, int bOffset, int length) {
+        return SimdOps.dotProductInt8((ByteSequence<byte[]>) a, aOffset, (ByteSequence<byte[]>) b, bOffset, length);
+    }
+
     @Override
     public int hammingDistance(long[] v1, long[] v2) {
         return SimdOps.hammingDistance(v1, v2);
@@ -182,6 +217,35 @@ final class PanamaVectorUtilSupport implements VectorUtilSupport {
         SimdOps.quantizePartials(delta, (ArrayVectorFloat) partials, (ArrayVectorFloat) partialBases, (ArrayByteSequence) quantizedPartials);
     }
 
+    @Override
+    public void bulkShuffleQuantizedSimilarity4bit(ByteSequence<?> shuffles, int codebookCount, ByteSequence<?> quantizedPartials, float delta, float minDistance, VectorSimilarityFunction vsf, VectorFloat<?> results) {
+        // 256-bit shorts are emulated on narrower hardware, where the scalar loop is faster
+        if (SimdOps.PREFERRED_BIT_SIZE < 256 || results.length() % 16 != 0) {
+            VectorUtilSupport.super.bulkShuffleQuantizedSimilarity4bit(shuffles, codebookCount, quantizedPartials, delta, minDistance, vsf, results);
+            return;
+        }
+        SimdOps.bulkShuffleQuantizedSimilarity4bit((ByteSequence<byte[]>) shuffles, codebookCount, (ArrayByteSequence) quantizedPartials, delta, minDistance, vsf, (ArrayVectorFloat) results);
+    }
+
+    @Override
+    public void bulkShuffleQuantizedSimilarityCosine4bit(ByteSequence<?> shuffles, int codebookCount,
+                                                         ByteSequence<?> quantizedPartialSums, float sumDelta, float minDistance,
+                                                         ByteSequence<?> quantizedPartialSquaredMagnitudes, float magnitudeDelta, float minMagnitude,
+                                                         float queryMagnitudeSquared, VectorFloat<?> results) {
+        if (SimdOps.PREFERRED_BIT_SIZE < 256 || results.length() % 16 != 0) {
+            VectorUtilSupport.super.bulkShuffleQuantizedSimilarityCosine4bit(shuffles, codebookCount, quantizedPartialSums, sumDelta, minDistance,
+                    quantizedPartialSquaredMagnitudes, magnitudeDelta, minMagnitude, queryMagnitudeSquared, results);
+            return;
+        }
+        SimdOps.bulkShuffleQuantizedSimilarityCosine4bit((ByteSequence<byte[]>) shuffles, codebookCount, (ArrayByteSequence) quantizedPartialSums, sumDelta, minDistance,
+                (ArrayByteSequence) quantizedPartialSquaredMagnitudes, magnitudeDelta, minMagnitude, queryMagnitudeSquared, (ArrayVectorFloat) results);
+    }
+
+    @Override
+    public void nearestCentroids(VectorFloat<?>[] points, int start, int end, VectorFloat<?> transposedCentroids, int centroidCount, int[] nearest, float[] distances) {
+        SimdOps.nearestCentroids(points, start, end, (ArrayVectorFloat) transposedCentroids, centroidCount, nearest, distances);
+    }
+
     @Override
     public float pqDecodedCosineSimilarity(ByteSequence<?> encoded, int clusterCount, VectorFloat<?> partialSums, VectorFloat<?> aMagnitude, float bMagnitude) {
         return pqDecodedCosineSimilarity(encoded, 0, encoded.length(),  clusterCount, partialSums, aMagnitude, bMagnitude);
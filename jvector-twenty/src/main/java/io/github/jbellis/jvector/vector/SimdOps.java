@@ -26,6 +26,8 @@ import jdk.incubator.vector.LongVector;
 import jdk.incubator.vector.ShortVector;
 import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
 
 import java.util.List;
 
@@ -36,6 +38,10 @@ final class SimdOps {
 
     static final ThreadLocal<int[]> scratchInt512 = ThreadLocal.withInitial(() -> new int[IntVector.SPECIES_512.length()]);
     static final ThreadLocal<int[]> scratchInt256 = ThreadLocal.withInitial(() -> new int[IntVector.SPECIES_256.length()]);
+    // 16-bit lanes, as many as there are in FloatVector.SPECIES_PREFERRED
+    static final VectorSpecies<Short> HALF_SPECIES = VectorSpecies.of(short.class, VectorShape.forBitSize(PREFERRED_BIT_SIZE / 2));
+    // 8-bit lanes, as many as there are 16-bit lanes in ShortVector.SPECIES_PREFERRED
+    static final VectorSpecies<Byte> INT8_SPECIES = VectorSpecies.of(byte.class, VectorShape.forBitSize(PREFERRED_BIT_SIZE / 2));
 
     static float sum(ArrayVectorFloat vector) {
         var sum = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
@@ -708,6 +714,83 @@ final class SimdOps {
         return sum;
     }
 
+    /**
+     * Widens lanes [offset, offset + FloatVector.SPECIES_PREFERRED.length()) of a half-precision vector to float32.
+     */
+    static FloatVector halfToFloat(short[] b, int offset, HalfFloatType type) {
+        var ints = (IntVector) ShortVector.fromArray(HALF_SPECIES, b, offset)
+                .convertShape(VectorOperators.S2I, IntVector.SPECIES_PREFERRED, 0);
+        if (type == HalfFloatType.BFLOAT16) {
+            return ints.lanewise(VectorOperators.LSHL, 16).reinterpretAsFloats();
+        }
+        // move the float16 exponent and mantissa into float32 position, then multiply by 2^(127 - 15) to fix the
+        // exponent bias, which also normalizes subnormals.  Infinity and NaN would end up finite, so they are set apart
+        var magnitude = ints.and(0x7fff).lanewise(VectorOperators.LSHL, 13);
+        var sign = ints.and(0x8000).lanewise(VectorOperators.LSHL, 16);
+        var scaled = magnitude.reinterpretAsFloats().mul(0x1p112f).reinterpretAsInts();
+        var special = magnitude.compare(VectorOperators.GE, 0x7c00 << 13);
+        return scaled.blend(magnitude.or(0x7f800000), special).or(sign).reinterpretAsFloats();
+    }
+
+    static float dotProductHalf(ArrayVectorFloat a, short[] b, HalfFloatType type) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        float[] av = a.get();
+        int vectorizedLength = species.loopBound(a.length());
+        var sum = FloatVector.zero(species);
+        for (int i = 0; i < vectorizedLength; i += species.length()) {
+            sum = FloatVector.fromArray(species, av, i).fma(halfToFloat(b, i, type), sum);
+        }
+        float res = sum.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < a.length(); i++) {
+            res += av[i] * type.toFloat(b[i]);
+        }
+        return res;
+    }
+
+    static float squareDistanceHalf(ArrayVectorFloat a, short[] b, HalfFloatType type) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        float[] av = a.get();
+        int vectorizedLength = species.loopBound(a.length());
+        var sum = FloatVector.zero(species);
+        for (int i = 0; i < vectorizedLength; i += species.length()) {
+            var diff = FloatVector.fromArray(species, av, i).sub(halfToFloat(b, i, type));
+            sum = diff.fma(diff, sum);
+        }
+        float res = sum.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < a.length(); i++) {
+            float diff = av[i] - type.toFloat(b[i]);
+            res += diff * diff;
+        }
+        return res;
+    }
+
+    static float cosineHalf(ArrayVectorFloat a, short[] b, HalfFloatType type) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        float[] av = a.get();
+        int vectorizedLength = species.loopBound(a.length());
+        var vsum = FloatVector.zero(species);
+        var vaMagnitude = FloatVector.zero(species);
+        var vbMagnitude = FloatVector.zero(species);
+        for (int i = 0; i < vectorizedLength; i += species.length()) {
+            var x = FloatVector.fromArray(species, av, i);
+            var y = halfToFloat(b, i, type);
+            vsum = x.fma(y, vsum);
+            vaMagnitude = x.fma(x, vaMagnitude);
+            vbMagnitude = y.fma(y, vbMagnitude);
+        }
+        float sum = vsum.reduceLanes(VectorOperators.ADD);
+        float aMagnitude = vaMagnitude.reduceLanes(VectorOperators.ADD);
+        float bMagnitude = vbMagnitude.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < a.length(); i++) {
+            float x = av[i];
+            float y = type.toFloat(b[i]);
+            sum += x * y;
+            aMagnitude += x * x;
+            bMagnitude += y * y;
+        }
+        return (float) (sum / Math.sqrt((double) aMagnitude * (double) bMagnitude));
+    }
+
     /**
      * Vectorized calculation of Hamming distance for two arrays of long integers.
      * Both arrays should have the same length.
@@ -739,6 +822,33 @@ final class SimdOps {
         return res;
     }
 
+    /**
+     * Dot product of two int8 code sequences.  The codes are widened to 16 bits, where their products fit, and
+     * the products are widened again and accumulated in 32-bit lanes, much as AVX512-VNNI does in one instruction.
+     */
+    public static int dotProductInt8(ByteSequence<byte[]> a, int aOffset, ByteSequence<byte[]> b, int bOffset, int length) {
+        var sum = IntVector.zero(IntVector.SPECIES_PREFERRED);
+        int vectorizedLength = INT8_SPECIES.loopBound(length);
+        int aStart = a.offset() + aOffset;
+        int bStart = b.offset() + bOffset;
+
+        for (int i = 0; i < vectorizedLength; i += INT8_SPECIES.length()) {
+            var va = (ShortVector) ByteVector.fromArray(INT8_SPECIES, a.get(), aStart + i)
+                    .convertShape(VectorOperators.B2S, ShortVector.SPECIES_PREFERRED, 0);
+            var vb = (ShortVector) ByteVector.fromArray(INT8_SPECIES, b.get(), bStart + i)
+                    .convertShape(VectorOperators.B2S, ShortVector.SPECIES_PREFERRED, 0);
+            var products = va.mul(vb);
+            sum = sum.add(products.convertShape(VectorOperators.S2I, IntVector.SPECIES_PREFERRED, 0))
+                     .add(products.convertShape(VectorOperators.S2I, IntVector.SPECIES_PREFERRED, 1));
+        }
+
+        int res = sum.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < length; i++) {
+            res += a.get(aOffset + i) * b.get(bOffset + i);
+        }
+        return res;
+    }
+
     public static float max(ArrayVectorFloat v) {
         var accum = FloatVector.broadcast(FloatVector.SPECIES_PREFERRED, -Float.MAX_VALUE);
         int vectorizedLength = FloatVector.SPECIES_PREFERRED.loopBound(v.length());
@@ -791,6 +901,341 @@ final class SimdOps {
         }
     }
 
+    /**
+     * Scores 16-cluster PQ codes packed two to a byte (see VectorUtilSupport.bulkShuffleQuantizedSimilarity4bit).
+     * Each codebook's 16 quantized partials fill a single 256-bit register, so the lookup for sixteen neighbors
+     * at a time is an in-register shuffle rather than a gather.  results.length() must be a multiple of 16.
+     */
+    public static void bulkShuffleQuantizedSimilarity4bit(ByteSequence<byte[]> shuffles, int codebookCount, ArrayByteSequence quantizedPartials,
+                                                          float delta, float minDistance, VectorSimilarityFunction vsf, ArrayVectorFloat results) {
+        int count = results.length();
+        var resultsArray = results.get();
+        for (int b = 0; b < count; b += ShortVector.SPECIES_256.length()) {
+            var sum = sumQuantizedPartials4bit(shuffles, b, count, codebookCount, quantizedPartials.get());
+            for (int part = 0; part < 2; part++) {
+                var distance = dequantize256(sum, part, delta, minDistance);
+                FloatVector score;
+                switch (vsf) {
+                    case EUCLIDEAN:
+                        score = FloatVector.broadcast(FloatVector.SPECIES_256, 1).div(distance.add(1));
+                        break;
+                    case DOT_PRODUCT:
+                        score = distance.add(1).div(2);
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("Unsupported similarity function " + vsf);
+                }
+                score.intoArray(resultsArray, b + part * FloatVector.SPECIES_256.length());
+            }
+        }
+    }
+
+    public static void bulkShuffleQuantizedSimilarityCosine4bit(ByteSequence<byte[]> shuffles, int codebookCount,
+                                                                ArrayByteSequence quantizedPartialSums, float sumDelta, float minDistance,
+                                                                ArrayByteSequence quantizedPartialSquaredMagnitudes, float magnitudeDelta, float minMagnitude,
+                                                                float queryMagnitudeSquared, ArrayVectorFloat results) {
+        int count = results.length();
+        var resultsArray = results.get();
+        for (int b = 0; b < count; b += ShortVector.SPECIES_256.length()) {
+            var sum = sumQuantizedPartials4bit(shuffles, b, count, codebookCount, quantizedPartialSums.get());
+            var magnitude = sumQuantizedPartials4bit(shuffles, b, count, codebookCount, quantizedPartialSquaredMagnitudes.get());
+            for (int part = 0; part < 2; part++) {
+                var unquantizedSum = dequantize256(sum, part, sumDelta, minDistance);
+                var divisor = dequantize256(magnitude, part, magnitudeDelta, minMagnitude)
+                        .mul(queryMagnitudeSquared)
+                        .lanewise(VectorOperators.SQRT);
+                unquantizedSum.div(divisor).add(1).div(2)
+                        .intoArray(resultsArray, b + part * FloatVector.SPECIES_256.length());
+            }
+        }
+    }
+
+    /**
+     * @return the saturating sum of the quantized partials for neighbors [base, base + 16) across all codebooks
+     */
+    private static ShortVector sumQuantizedPartials4bit(ByteSequence<byte[]> shuffles, int base, int stride, int codebookCount, byte[] quantizedPartials) {
+        var sum = ShortVector.zero(ShortVector.SPECIES_256);
+        for (int i = 0; i < codebookCount; i += 2) {
+            var packed = (ShortVector) ByteVector.fromArray(ByteVector.SPECIES_128, shuffles.get(), shuffles.offset() + (i >> 1) * stride + base)
+                    .convertShape(VectorOperators.B2S, ShortVector.SPECIES_256, 0);
+            var low = packed.lanewise(VectorOperators.AND, (short) 0xF);
+            sum = addSaturating(sum, low.selectFrom(partialsTable4bit(quantizedPartials, i)));
+            if (i + 1 < codebookCount) {
+                var high = packed.lanewise(VectorOperators.LSHR, 4).lanewise(VectorOperators.AND, (short) 0xF);
+                sum = addSaturating(sum, high.selectFrom(partialsTable4bit(quantizedPartials, i + 1)));
+            }
+        }
+        return sum;
+    }
+
+    private static ShortVector partialsTable4bit(byte[] quantizedPartials, int codebook) {
+        // 16 little-endian shorts
+        return ByteVector.fromArray(ByteVector.SPECIES_256, quantizedPartials, codebook * 32).reinterpretAsShorts();
+    }
+
+    /** unsigned 16-bit addition that saturates at 65535 instead of wrapping */
+    private static ShortVector addSaturating(ShortVector a, ShortVector b) {
+        var sum = a.add(b);
+        return sum.blend((short) -1, sum.compare(VectorOperators.UNSIGNED_LT, a));
+    }
+
+    private static FloatVector dequantize256(ShortVector quantized, int part, float delta, float base) {
+        return ((IntVector) quantized.convertShape(VectorOperators.S2I, IntVector.SPECIES_256, part))
+                .lanewise(VectorOperators.AND, 0xFFFF)
+                .convert(VectorOperators.I2F, 0)
+                .reinterpretAsFloats()
+                .mul(delta)
+                .add(base);
+    }
+
+    /**
+     * See VectorUtilSupport.nearestCentroids.  Each lane accumulates the distance to a different centroid, so the
+     * dimension only determines the length of the inner loop, and points are processed four at a time so that every
+     * block of centroids loaded is compared against all four.
+     */
+    public static void nearestCentroids(VectorFloat<?>[] points, int start, int end, ArrayVectorFloat transposedCentroids, int centroidCount, int[] nearest, float[] distances) {
+        var centroids = transposedCentroids.get();
+        int i = start;
+        for (; i + 4 <= end; i += 4) {
+            nearestCentroids4(((ArrayVectorFloat) points[i]).get(), ((ArrayVectorFloat) points[i + 1]).get(),
+                              ((ArrayVectorFloat) points[i + 2]).get(), ((ArrayVectorFloat) points[i + 3]).get(),
+                              centroids, centroidCount, i, nearest, distances);
+        }
+        for (; i < end; i++) {
+            nearestCentroid(((ArrayVectorFloat) points[i]).get(), centroids, centroidCount, i, nearest, distances);
+        }
+    }
+
+    private static void nearestCentroids4(float[] x0, float[] x1, float[] x2, float[] x3, float[] centroids, int centroidCount,
+                                          int i, int[] nearest, float[] distances) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        int dimension = x0.length;
+        int vectorizedCount = species.loopBound(centroidCount);
+
+        var index = IntVector.zero(IntVector.SPECIES_PREFERRED).addIndex(1);
+        var best0 = FloatVector.broadcast(species, Float.MAX_VALUE);
+        var best1 = best0;
+        var best2 = best0;
+        var best3 = best0;
+        var bestIndex0 = IntVector.zero(IntVector.SPECIES_PREFERRED);
+        var bestIndex1 = bestIndex0;
+        var bestIndex2 = bestIndex0;
+        var bestIndex3 = bestIndex0;
+        for (int c = 0; c < vectorizedCount; c += species.length()) {
+            var d0 = FloatVector.zero(species);
+            var d1 = d0;
+            var d2 = d0;
+            var d3 = d0;
+            for (int j = 0; j < dimension; j++) {
+                var centroid = FloatVector.fromArray(species, centroids, j * centroidCount + c);
+                var diff0 = centroid.sub(x0[j]);
+                d0 = diff0.fma(diff0, d0);
+                var diff1 = centroid.sub(x1[j]);
+                d1 = diff1.fma(diff1, d1);
+                var diff2 = centroid.sub(x2[j]);
+                d2 = diff2.fma(diff2, d2);
+                var diff3 = centroid.sub(x3[j]);
+                d3 = diff3.fma(diff3, d3);
+            }
+            // strictly less, so that each lane keeps the lowest index among equal distances
+            var closer0 = d0.lt(best0);
+            best0 = best0.blend(d0, closer0);
+            bestIndex0 = bestIndex0.blend(index, closer0.cast(IntVector.SPECIES_PREFERRED));
+            var closer1 = d1.lt(best1);
+            best1 = best1.blend(d1, closer1);
+            bestIndex1 = bestIndex1.blend(index, closer1.cast(IntVector.SPECIES_PREFERRED));
+            var closer2 = d2.lt(best2);
+            best2 = best2.blend(d2, closer2);
+            bestIndex2 = bestIndex2.blend(index, closer2.cast(IntVector.SPECIES_PREFERRED));
+            var closer3 = d3.lt(best3);
+            best3 = best3.blend(d3, closer3);
+            bestIndex3 = bestIndex3.blend(index, closer3.cast(IntVector.SPECIES_PREFERRED));
+            index = index.add(species.length());
+        }
+
+        reduceNearest(best0, bestIndex0, x0, centroids, centroidCount, vectorizedCount, i, nearest, distances);
+        reduceNearest(best1, bestIndex1, x1, centroids, centroidCount, vectorizedCount, i + 1, nearest, distances);
+        reduceNearest(best2, bestIndex2, x2, centroids, centroidCount, vectorizedCount, i + 2, nearest, distances);
+        reduceNearest(best3, bestIndex3, x3, centroids, centroidCount, vectorizedCount, i + 3, nearest, distances);
+    }
+
+    private static void nearestCentroid(float[] x, float[] centroids, int centroidCount, int i, int[] nearest, float[] distances) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        int vectorizedCount = species.loopBound(centroidCount);
+
+        var index = IntVector.zero(IntVector.SPECIES_PREFERRED).addIndex(1);
+        var best = FloatVector.broadcast(species, Float.MAX_VALUE);
+        var bestIndex = IntVector.zero(IntVector.SPECIES_PREFERRED);
+        for (int c = 0; c < vectorizedCount; c += species.length()) {
+            var d = FloatVector.zero(species);
+            for (int j = 0; j < x.length; j++) {
+                var diff = FloatVector.fromArray(species, centroids, j * centroidCount + c).sub(x[j]);
+                d = diff.fma(diff, d);
+            }
+            var closer = d.lt(best);
+            best = best.blend(d, closer);
+            bestIndex = bestIndex.blend(index, closer.cast(IntVector.SPECIES_PREFERRED));
+            index = index.add(species.length());
+        }
+
+        reduceNearest(best, bestIndex, x, centroids, centroidCount, vectorizedCount, i, nearest, distances);
+    }
+
+    /**
+     * Picks the closest of the per-lane best centroids, then checks the centroids past the vectorized bound.
+     */
+    private static void reduceNearest(FloatVector best, IntVector bestIndex, float[] x, float[] centroids, int centroidCount,
+                                      int vectorizedCount, int i, int[] nearest, float[] distances) {
+        float minDistance = best.reduceLanes(VectorOperators.MIN);
+        int minIndex = 0;
+        if (vectorizedCount > 0) {
+            minIndex = bestIndex.reduceLanes(VectorOperators.MIN, best.eq(minDistance).cast(IntVector.SPECIES_PREFERRED));
+        }
+        for (int c = vectorizedCount; c < centroidCount; c++) {
+            float distance = 0;
+            for (int j = 0; j < x.length; j++) {
+                float diff = centroids[j * centroidCount + c] - x[j];
+                distance += diff * diff;
+            }
+            if (distance < minDistance) {
+                minDistance = distance;
+                minIndex = c;
+            }
+        }
+        nearest[i] = minIndex;
+        distances[i] = minDistance;
+    }
+
+    /**
+     * See VectorUtilSupport.bulkAssembleAndSum.  Each lane accumulates the sum for a different candidate, so every
+     * gather from `data` fetches one subspace's partial for a whole block of candidates at once, and the
+     * candidates' cache misses overlap instead of being serialized.
+     */
+    static void bulkAssembleAndSum(float[] data, int dataBase, ByteSequence<byte[]> codes, int[] codeOffsets, int codeLength, int count, float[] results) {
+        if (PREFERRED_BIT_SIZE == 128) {
+            // as with assembleAndSum128, gathers are not worth it at this width
+            for (int i = 0; i < count; i++) {
+                results[i] = assembleAndSum128(data, dataBase, codes, codeOffsets[i], codeLength);
+            }
+            return;
+        }
+
+        var species = FloatVector.SPECIES_PREFERRED;
+        int[] indexes = PREFERRED_BIT_SIZE == 512 ? scratchInt512.get() : scratchInt256.get();
+        byte[] bytes = codes.get();
+        int base = codes.offset();
+        int i = 0;
+        for (; i + species.length() <= count; i += species.length()) {
+            var sum = FloatVector.zero(species);
+            for (int m = 0; m < codeLength; m++) {
+                for (int j = 0; j < species.length(); j++) {
+                    indexes[j] = Byte.toUnsignedInt(bytes[base + codeOffsets[i + j] + m]);
+                }
+                sum = sum.add(FloatVector.fromArray(species, data, m * dataBase, indexes, 0));
+            }
+            sum.intoArray(results, i);
+        }
+        for (; i < count; i++) {
+            results[i] = assembleAndSum(data, dataBase, codes, codeOffsets[i], codeLength);
+        }
+    }
+
+    /**
+     * See VectorUtilSupport.bulkDotProduct.  Candidates are processed four at a time, sharing each load of `q`.
+     */
+    static void bulkDotProduct(ArrayVectorFloat q, VectorFloat<?>[] vectors, int count, float[] results) {
+        int i = 0;
+        for (; i + 4 <= count; i += 4) {
+            bulkDotProduct4(q.get(), ((ArrayVectorFloat) vectors[i]).get(), ((ArrayVectorFloat) vectors[i + 1]).get(),
+                            ((ArrayVectorFloat) vectors[i + 2]).get(), ((ArrayVectorFloat) vectors[i + 3]).get(), i, results);
+        }
+        for (; i < count; i++) {
+            results[i] = dotProduct(q, (ArrayVectorFloat) vectors[i]);
+        }
+    }
+
+    private static void bulkDotProduct4(float[] q, float[] v0, float[] v1, float[] v2, float[] v3, int i, float[] results) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        int vectorizedLength = species.loopBound(q.length);
+        var sum0 = FloatVector.zero(species);
+        var sum1 = sum0;
+        var sum2 = sum0;
+        var sum3 = sum0;
+        for (int j = 0; j < vectorizedLength; j += species.length()) {
+            var a = FloatVector.fromArray(species, q, j);
+            sum0 = a.fma(FloatVector.fromArray(species, v0, j), sum0);
+            sum1 = a.fma(FloatVector.fromArray(species, v1, j), sum1);
+            sum2 = a.fma(FloatVector.fromArray(species, v2, j), sum2);
+            sum3 = a.fma(FloatVector.fromArray(species, v3, j), sum3);
+        }
+        float r0 = sum0.reduceLanes(VectorOperators.ADD);
+        float r1 = sum1.reduceLanes(VectorOperators.ADD);
+        float r2 = sum2.reduceLanes(VectorOperators.ADD);
+        float r3 = sum3.reduceLanes(VectorOperators.ADD);
+        for (int j = vectorizedLength; j < q.length; j++) {
+            r0 += q[j] * v0[j];
+            r1 += q[j] * v1[j];
+            r2 += q[j] * v2[j];
+            r3 += q[j] * v3[j];
+        }
+        results[i] = r0;
+        results[i + 1] = r1;
+        results[i + 2] = r2;
+        results[i + 3] = r3;
+    }
+
+    /**
+     * See VectorUtilSupport.bulkSquareDistance.  Candidates are processed four at a time, sharing each load of `q`.
+     */
+    static void bulkSquareDistance(ArrayVectorFloat q, VectorFloat<?>[] vectors, int count, float[] results) {
+        int i = 0;
+        for (; i + 4 <= count; i += 4) {
+            bulkSquareDistance4(q.get(), ((ArrayVectorFloat) vectors[i]).get(), ((ArrayVectorFloat) vectors[i + 1]).get(),
+                                ((ArrayVectorFloat) vectors[i + 2]).get(), ((ArrayVectorFloat) vectors[i + 3]).get(), i, results);
+        }
+        for (; i < count; i++) {
+            results[i] = squareDistance(q, (ArrayVectorFloat) vectors[i]);
+        }
+    }
+
+    private static void bulkSquareDistance4(float[] q, float[] v0, float[] v1, float[] v2, float[] v3, int i, float[] results) {
+        var species = FloatVector.SPECIES_PREFERRED;
+        int vectorizedLength = species.loopBound(q.length);
+        var sum0 = FloatVector.zero(species);
+        var sum1 = sum0;
+        var sum2 = sum0;
+        var sum3 = sum0;
+        for (int j = 0; j < vectorizedLength; j += species.length()) {
+            var a = FloatVector.fromArray(species, q, j);
+            var diff0 = a.sub(FloatVector.fromArray(species, v0, j));
+            sum0 = diff0.fma(diff0, sum0);
+            var diff1 = a.sub(FloatVector.fromArray(species, v1, j));
+            sum1 = diff1.fma(diff1, sum1);
+            var diff2 = a.sub(FloatVector.fromArray(species, v2, j));
+            sum2 = diff2.fma(diff2, sum2);
+            var diff3 = a.sub(FloatVector.fromArray(species, v3, j));
+            sum3 = diff3.fma(diff3, sum3);
+        }
+        float r0 = sum0.reduceLanes(VectorOperators.ADD);
+        float r1 = sum1.reduceLanes(VectorOperators.ADD);
+        float r2 = sum2.reduceLanes(VectorOperators.ADD);
+        float r3 = sum3.reduceLanes(VectorOperators.ADD);
+        for (int j = vectorizedLength; j < q.length; j++) {
+            float d0 = q[j] - v0[j];
+            float d1 = q[j] - v1[j];
+            float d2 = q[j] - v2[j];
+            float d3 = q[j] - v3[j];
+            r0 += d0 * d0;
+            r1 += d1 * d1;
+            r2 += d2 * d2;
+            r3 += d3 * d3;
+        }
+        results[i] = r0;
+        results[i + 1] = r1;
+        results[i + 2] = r2;
+        results[i + 3] = r3;
+    }
+
     public static float pqDecodedCosineSimilarity(ByteSequence<byte[]> encoded, int encodedOffset, int encodedLength, int clusterCount, ArrayVectorFloat partialSums, ArrayVectorFloat aMagnitude, float bMagnitude) {
         return switch (PREFERRED_BIT_SIZE) {
             case 512 -> pqDecodedCosineSimilarity512(encoded, encodedOffset, encodedLength, clusterCount, partialSums, aMagnitude, bMagnitude);